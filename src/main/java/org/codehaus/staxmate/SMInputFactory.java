@@ -2,6 +2,9 @@ package org.codehaus.staxmate;
 
 import java.io.*;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
 
 import javax.xml.stream.*;
 
@@ -10,7 +13,12 @@ import org.codehaus.stax2.XMLStreamReader2;
 import org.codehaus.stax2.io.Stax2ByteArraySource;
 import org.codehaus.stax2.ri.Stax2ReaderAdapter;
 
+import org.w3c.dom.Node;
+
+import org.codehaus.staxmate.dom.DOMStreamReader;
+
 import org.codehaus.staxmate.in.*;
+import org.codehaus.staxmate.util.MappedChannelInputStream;
 
 /**
  * Factory class used to create {@link SMInputCursor} instances.
@@ -41,6 +49,15 @@ import org.codehaus.staxmate.in.*;
  */
 public final class SMInputFactory
 {
+    /**
+     * Inputs from file channels up to this size (1 megabyte) are read
+     * in fully, instead of memory-mapping them, since mapping has
+     * overhead that only pays off for larger inputs.
+     *
+     * @since 2.4.2
+     */
+    final static long MAX_UNMAPPED_CHANNEL_INPUT = 1024 * 1024;
+
     /**
      * Xml input stream factory used for constructing stream readers.
      */
@@ -132,6 +149,42 @@ public final class SMInputFactory
         return hierarchicCursor(sr, null);
     }
 
+    /**
+     * Convenience method that will construct and return a root element
+     * cursor (similar to {@link #rootElementCursor(XMLStreamReader)})
+     * that supports {@link SMHierarchicCursor#mark} and
+     * {@link SMHierarchicCursor#reset}, as do all its child cursors.
+     * This allows "sniffing" content (to detect format, for example)
+     * before actual processing, without having to re-read the input.
+     *<p>
+     * Note: typed access for such cursors is implemented by StaxMate,
+     * and not by the underlying stream reader.
+     *
+     * @param maxMarkedEvents Maximum number of events buffered after
+     *   a mark; if more events are read, mark is dropped
+     *
+     * @since 2.4.2
+     */
+    public static SMHierarchicCursor markableRootElementCursor(XMLStreamReader sr, int maxMarkedEvents)
+    {
+        return constructHierarchic(new MarkableStreamReader(wrapIfNecessary(sr), maxMarkedEvents),
+                SMFilterFactory.getElementOnlyFilter());
+    }
+
+    /**
+     * Convenience method that will construct and return a root element
+     * cursor that supports mark/reset (see
+     * {@link #markableRootElementCursor(XMLStreamReader,int)}), buffering
+     * at most {@link MarkableStreamReader#DEFAULT_MAX_MARKED_EVENTS}
+     * events after a mark.
+     *
+     * @since 2.4.2
+     */
+    public static SMHierarchicCursor markableRootElementCursor(XMLStreamReader sr)
+    {
+        return markableRootElementCursor(sr, MarkableStreamReader.DEFAULT_MAX_MARKED_EVENTS);
+    }
+
     /*
     /**********************************************************************
     /* Stream reader construction
@@ -235,6 +288,61 @@ public final class SMInputFactory
         return wrapIfNecessary(_staxFactory.createXMLStreamReader(r));
     }
 
+    /**
+     * Method for constructing Stax stream reader to read contents
+     * of given file channel, from its current position to its end.
+     * Large inputs are memory-mapped (in segments of up to 64 megabytes),
+     * so that content is read directly from the OS page cache instead
+     * of being copied through stream buffers; small inputs are read
+     * in fully and parsed from a byte array.
+     *<p>
+     * Offsets reported by the stream reader (see
+     * {@link org.codehaus.stax2.LocationInfo}) are relative to the
+     * position of the channel when this method is called; so if channel
+     * is positioned at the beginning, they are offsets within the file.
+     * Channel is not closed when the stream reader is closed; and its
+     * position is not changed.
+     *
+     * @since 2.4.2
+     */
+    public XMLStreamReader2 createStax2Reader(FileChannel ch)
+        throws XMLStreamException
+    {
+        try {
+            long start = ch.position();
+            long len = ch.size() - start;
+            if (len <= MAX_UNMAPPED_CHANNEL_INPUT) {
+                byte[] data = new byte[(int) Math.max(0L, len)];
+                ByteBuffer bb = ByteBuffer.wrap(data);
+                while (bb.hasRemaining()) {
+                    if (ch.read(bb, start + bb.position()) < 0) {
+                        break;
+                    }
+                }
+                return createStax2Reader(data, 0, bb.position());
+            }
+            return createStax2Reader(MappedChannelInputStream.forChannel(ch, false));
+        } catch (IOException ioe) {
+            throw new XMLStreamException(ioe);
+        }
+    }
+
+    /**
+     * Method for constructing Stax stream reader to read contents
+     * of given DOM node (document, element or document fragment)
+     * directly from the tree, without serializing it.
+     * Namespace-awareness and coalescing settings of the underlying
+     * Stax input factory are used for the reader.
+     *
+     * @since 2.4.2
+     */
+    public XMLStreamReader2 createStax2Reader(Node node)
+        throws XMLStreamException
+    {
+        return DOMStreamReader.createFrom(node, _isEnabled(XMLInputFactory.IS_NAMESPACE_AWARE, true),
+                _isEnabled(XMLInputFactory.IS_COALESCING, false));
+    }
+
     /*
     /**********************************************************************
     /* Cursor construction, "full service" (non-static)
@@ -338,6 +446,46 @@ public final class SMInputFactory
         return constructHierarchic(createStax2Reader(r), SMFilterFactory.getElementOnlyFilter());
     }
 
+    /**
+     * Method that will construct and return 
+     * a nested cursor that will only ever iterate to one node, that
+     * is, the root element of the document reader is reading.
+     *<p>
+     * Cursor is built based on Stax stream reader constructed to
+     * read contents of given file channel; see
+     * {@link #createStax2Reader(FileChannel)} for details.
+     *<p>
+     * Method uses standard "element-only" filter from
+     *  {@link org.codehaus.staxmate.in.SMFilterFactory}.
+     *
+     * @since 2.4.2
+     */
+    public SMHierarchicCursor rootElementCursor(FileChannel ch)
+        throws XMLStreamException
+    {
+        return constructHierarchic(createStax2Reader(ch), SMFilterFactory.getElementOnlyFilter());
+    }
+
+    /**
+     * Method that will construct and return 
+     * a nested cursor that will only ever iterate to one node, that
+     * is, the root element of given DOM document (or given element).
+     *<p>
+     * Cursor is built based on Stax stream reader that reads contents
+     * of the DOM tree directly; see {@link #createStax2Reader(Node)}
+     * for details.
+     *<p>
+     * Method uses standard "element-only" filter from
+     *  {@link org.codehaus.staxmate.in.SMFilterFactory}.
+     *
+     * @since 2.4.2
+     */
+    public SMHierarchicCursor rootElementCursor(Node node)
+        throws XMLStreamException
+    {
+        return constructHierarchic(createStax2Reader(node), SMFilterFactory.getElementOnlyFilter());
+    }
+
     public SMFlatteningCursor flatteningCursor(File input, SMFilter f)
         throws XMLStreamException
     {
@@ -362,6 +510,92 @@ public final class SMInputFactory
         return constructFlattening(createStax2Reader(r), f);
     }
 
+    /**
+     * @since 2.4.2
+     */
+    public SMFlatteningCursor flatteningCursor(FileChannel ch, SMFilter f)
+        throws XMLStreamException
+    {
+        return constructFlattening(createStax2Reader(ch), f);
+    }
+
+    /**
+     * @since 2.4.2
+     */
+    public SMFlatteningCursor flatteningCursor(Node node, SMFilter f)
+        throws XMLStreamException
+    {
+        return constructFlattening(createStax2Reader(node), f);
+    }
+
+    /*
+    /**********************************************************************
+    /* Record-oriented processing
+    /**********************************************************************
+     */
+
+    /**
+     * Method for constructing a processor that can be used to process
+     * child elements of the root element ("records") of large documents
+     * in parallel, using given executor for running tasks. Chunks of
+     * records are parsed using stream readers constructed by this factory.
+     *
+     * @since 2.4.2
+     */
+    public SMRecordProcessor recordProcessor(ExecutorService executor)
+    {
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor can not be null");
+        }
+        return new SMRecordProcessor(this, executor);
+    }
+
+    /**
+     * Method for constructing a non-blocking reader for documents that
+     * consist of records (child elements of the root element), to which
+     * content is fed as it becomes available, instead of reader
+     * blocking to read it from a stream.
+     *
+     * @since 2.4.2
+     */
+    public SMAsyncRecordReader asyncRecordReader()
+    {
+        return new SMAsyncRecordReader(this);
+    }
+
+    /*
+    /**********************************************************************
+    /* Pre-parsed event buffers
+    /**********************************************************************
+     */
+
+    /**
+     * Method for parsing given file into an {@link SMEventBuffer}, which
+     * can be read any number of times (see
+     * {@link SMEventBuffer#rootElementCursor}), and written out in
+     * a binary format for caching (see {@link SMEventBuffer#writeTo}).
+     *
+     * @since 2.4.2
+     */
+    public SMEventBuffer bufferDocument(File f)
+        throws XMLStreamException
+    {
+        return _bufferDocument(createStax2Reader(f), true);
+    }
+
+    /**
+     * Method for parsing document read from given input stream into an
+     * {@link SMEventBuffer} (see {@link #bufferDocument(File)} for details).
+     * Input stream is not closed.
+     *
+     * @since 2.4.2
+     */
+    public SMEventBuffer bufferDocument(InputStream in)
+        throws XMLStreamException
+    {
+        return _bufferDocument(createStax2Reader(in), false);
+    }
+
     /*
     /**********************************************************************
     /* Convenience methods
@@ -425,6 +659,20 @@ public final class SMInputFactory
     /**********************************************************************
      */
 
+    private static SMEventBuffer _bufferDocument(XMLStreamReader2 sr, boolean closeInput)
+        throws XMLStreamException
+    {
+        try {
+            return SMEventBuffer.bufferDocument(sr);
+        } finally {
+            if (closeInput) {
+                sr.closeCompletely();
+            } else {
+                sr.close();
+            }
+        }
+    }
+
     protected final static SMHierarchicCursor constructHierarchic(XMLStreamReader2 sr, SMFilter f)
     {
         SMInputContext ctxt = new SMInputContext(sr);
@@ -437,6 +685,16 @@ public final class SMInputFactory
         return new SMFlatteningCursor(ctxt, null, f);
     }
 
+    /**
+     * Helper method for checking whether given boolean property
+     * of the underlying Stax input factory is enabled.
+     */
+    private boolean _isEnabled(String property, boolean defaultState)
+    {
+        Object o = _staxFactory.getProperty(property);
+        return (o instanceof Boolean) ? ((Boolean) o).booleanValue() : defaultState;
+    }
+
     protected final static XMLStreamReader2 wrapIfNecessary(XMLStreamReader sr)
     {
         return Stax2ReaderAdapter.wrapIfNecessary(sr);     
@@ -0,0 +1,411 @@
+package org.codehaus.staxmate.bind;
+
+import java.lang.reflect.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.codehaus.staxmate.in.SMAttrKey;
+import org.codehaus.staxmate.in.SMInputCursor;
+
+/**
+ * Binding information for a single class, constructed once (see
+ * {@link SMBinder}) and used for populating instances from cursors.
+ * Attribute bindings use precompiled {@link SMAttrKey}s; element
+ * bindings are stored in a small open-addressing hash table keyed
+ * by interned local name.
+ *
+ * @since 2.4.2
+ */
+final class BindingPlan
+{
+    // // // Value types
+
+    final static int TYPE_STRING = 1;
+    final static int TYPE_BOOLEAN = 2;
+    final static int TYPE_INT = 3;
+    final static int TYPE_LONG = 4;
+    final static int TYPE_DOUBLE = 5;
+    final static int TYPE_ENUM = 6;
+    final static int TYPE_OBJECT = 7;
+
+    final Class<?> _type;
+
+    final Constructor<?> _constructor;
+
+    final Slot[] _attrSlots;
+
+    /**
+     * Element slots, indexed by hash slot of local name; null for
+     * unused entries
+     */
+    final Slot[] _elemSlots;
+
+    final int _elemHashMask;
+
+    final boolean _hasElems;
+
+    private BindingPlan(Class<?> type, Constructor<?> ctor, List<Slot> attrs, List<Slot> elems)
+    {
+        _type = type;
+        _constructor = ctor;
+        _attrSlots = attrs.toArray(new Slot[attrs.size()]);
+        int size = 4;
+        while (size < (elems.size() << 1)) {
+            size += size;
+        }
+        _elemSlots = new Slot[size];
+        _elemHashMask = size-1;
+        _hasElems = !elems.isEmpty();
+        for (Slot slot : elems) {
+            int ix = slot.localName.hashCode() & _elemHashMask;
+            while (_elemSlots[ix] != null) {
+                if (_elemSlots[ix].localName == slot.localName
+                    && _elemSlots[ix].nsURI == slot.nsURI) {
+                    throw new IllegalArgumentException("Duplicate element binding for '"+slot.localName
+                            +"' in class "+type.getName());
+                }
+                ix = (ix + 1) & _elemHashMask;
+            }
+            _elemSlots[ix] = slot;
+        }
+    }
+
+    /**
+     * Method for introspecting given class, to construct its binding plan.
+     *
+     * @throws IllegalArgumentException If class can not be bound (has no
+     *   default constructor, or has annotated fields of unsupported types)
+     */
+    public static BindingPlan construct(Class<?> type)
+    {
+        Constructor<?> ctor;
+        try {
+            ctor = type.getDeclaredConstructor();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("Class "+type.getName()+" has no default (no-arguments) constructor");
+        }
+        if (Modifier.isAbstract(type.getModifiers()) || type.isInterface()) {
+            throw new IllegalArgumentException("Can not bind abstract type "+type.getName());
+        }
+        ctor.setAccessible(true);
+        List<Slot> attrs = new ArrayList<Slot>();
+        List<Slot> elems = new ArrayList<Slot>();
+        for (Class<?> cls = type; cls != null && cls != Object.class; cls = cls.getSuperclass()) {
+            for (Field f : cls.getDeclaredFields()) {
+                if (Modifier.isStatic(f.getModifiers())) {
+                    continue;
+                }
+                SMBindAttribute attrAnn = f.getAnnotation(SMBindAttribute.class);
+                SMBindElement elemAnn = f.getAnnotation(SMBindElement.class);
+                if (attrAnn != null) {
+                    if (elemAnn != null) {
+                        throw new IllegalArgumentException("Field "+_desc(f)+" can not be bound both as attribute and element");
+                    }
+                    Slot slot = new Slot(f, attrAnn.namespace(), _name(attrAnn.value(), f), true);
+                    if (slot.collection || slot.valueType == TYPE_OBJECT) {
+                        throw new IllegalArgumentException("Unsupported type for attribute field "+_desc(f)
+                                +": only String, primitive and enum types can be bound from attributes");
+                    }
+                    attrs.add(slot);
+                } else if (elemAnn != null) {
+                    elems.add(new Slot(f, elemAnn.namespace(), _name(elemAnn.value(), f), false));
+                }
+            }
+        }
+        return new BindingPlan(type, ctor, attrs, elems);
+    }
+
+    private static String _name(String name, Field f) {
+        return (name.length() == 0) ? f.getName() : name;
+    }
+
+    static String _desc(Field f) {
+        return f.getDeclaringClass().getName()+"."+f.getName();
+    }
+
+    /*
+    /**********************************************************************
+    /* Binding
+    /**********************************************************************
+     */
+
+    public Object newInstance()
+    {
+        try {
+            return _constructor.newInstance();
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Failed to instantiate "+_type.getName()+": "+e.getTargetException(),
+                    e.getTargetException());
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to instantiate "+_type.getName()+": "+e, e);
+        }
+    }
+
+    /**
+     * Method for binding attributes and child elements of the START_ELEMENT
+     * given cursor points to, into given bean. Contents of the element
+     * will be consumed.
+     */
+    public void bind(SMBinder binder, Object bean, SMInputCursor crsr)
+        throws XMLStreamException
+    {
+        try {
+            for (Slot slot : _attrSlots) {
+                int ix = crsr.findAttrIndex(slot.attrKey);
+                if (ix >= 0) {
+                    _bindAttr(slot, bean, crsr, ix);
+                }
+            }
+            // No element bindings? Can just let caller skip contents
+            if (!_hasElems) {
+                return;
+            }
+            final boolean interned = crsr.getContext().hasInternedNames();
+            SMInputCursor kids = crsr.childElementCursor();
+            while (kids.getNext() != null) {
+                Slot slot = _findElemSlot(kids, interned);
+                if (slot != null) {
+                    _bindElem(binder, slot, bean, kids);
+                }
+            }
+        } catch (IllegalAccessException e) { // should never occur, since fields are made accessible
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Slot _findElemSlot(SMInputCursor crsr, boolean interned)
+        throws XMLStreamException
+    {
+        final String ln = crsr.getLocalName();
+        for (int ix = ln.hashCode() & _elemHashMask; ; ix = (ix + 1) & _elemHashMask) {
+            Slot slot = _elemSlots[ix];
+            if (slot == null) {
+                return null;
+            }
+            if (slot.localName == ln || (!interned && slot.localName.equals(ln))) {
+                String uri = crsr.getNsUri();
+                if (uri == null || uri.length() == 0) {
+                    if (slot.nsURI.length() == 0) {
+                        return slot;
+                    }
+                } else if (uri.equals(slot.nsURI)) {
+                    return slot;
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void _bindAttr(Slot slot, Object bean, SMInputCursor crsr, int ix)
+        throws XMLStreamException, IllegalAccessException
+    {
+        final Field f = slot.field;
+        switch (slot.valueType) {
+        case TYPE_STRING:
+            f.set(bean, crsr.getAttrValue(ix));
+            return;
+        case TYPE_BOOLEAN:
+            if (slot.primitive) {
+                f.setBoolean(bean, crsr.getAttrBooleanValue(ix));
+            } else {
+                f.set(bean, Boolean.valueOf(crsr.getAttrBooleanValue(ix)));
+            }
+            return;
+        case TYPE_INT:
+            if (slot.primitive) {
+                f.setInt(bean, crsr.getAttrIntValue(ix));
+            } else {
+                f.set(bean, Integer.valueOf(crsr.getAttrIntValue(ix)));
+            }
+            return;
+        case TYPE_LONG:
+            if (slot.primitive) {
+                f.setLong(bean, crsr.getAttrLongValue(ix));
+            } else {
+                f.set(bean, Long.valueOf(crsr.getAttrLongValue(ix)));
+            }
+            return;
+        case TYPE_DOUBLE:
+            if (slot.primitive) {
+                f.setDouble(bean, crsr.getAttrDoubleValue(ix));
+            } else {
+                f.set(bean, Double.valueOf(crsr.getAttrDoubleValue(ix)));
+            }
+            return;
+        case TYPE_ENUM:
+            f.set(bean, crsr.getAttrEnumValue(ix, (Class) slot.valueClass));
+            return;
+        }
+        throw new IllegalStateException("Internal error: unexpected value type "+slot.valueType);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void _bindElem(SMBinder binder, Slot slot, Object bean, SMInputCursor crsr)
+        throws XMLStreamException, IllegalAccessException
+    {
+        final Field f = slot.field;
+        // Primitives are common enough to warrant avoiding boxing
+        if (slot.primitive) {
+            switch (slot.valueType) {
+            case TYPE_BOOLEAN:
+                f.setBoolean(bean, crsr.getElemBooleanValue());
+                return;
+            case TYPE_INT:
+                f.setInt(bean, crsr.getElemIntValue());
+                return;
+            case TYPE_LONG:
+                f.setLong(bean, crsr.getElemLongValue());
+                return;
+            case TYPE_DOUBLE:
+                f.setDouble(bean, crsr.getElemDoubleValue());
+                return;
+            }
+        }
+        Object value;
+        switch (slot.valueType) {
+        case TYPE_STRING:
+            value = crsr.getElemStringValue();
+            break;
+        case TYPE_BOOLEAN:
+            value = Boolean.valueOf(crsr.getElemBooleanValue());
+            break;
+        case TYPE_INT:
+            value = Integer.valueOf(crsr.getElemIntValue());
+            break;
+        case TYPE_LONG:
+            value = Long.valueOf(crsr.getElemLongValue());
+            break;
+        case TYPE_DOUBLE:
+            value = Double.valueOf(crsr.getElemDoubleValue());
+            break;
+        case TYPE_ENUM:
+            value = crsr.getElemEnumValue((Class) slot.valueClass);
+            break;
+        case TYPE_OBJECT:
+            value = binder.read(crsr, slot.valueClass);
+            break;
+        default:
+            throw new IllegalStateException("Internal error: unexpected value type "+slot.valueType);
+        }
+        if (slot.collection) {
+            Collection<Object> coll = (Collection<Object>) f.get(bean);
+            if (coll == null) {
+                coll = new ArrayList<Object>();
+                f.set(bean, coll);
+            }
+            coll.add(value);
+        } else {
+            f.set(bean, value);
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    /**
+     * Binding of a single field
+     */
+    final static class Slot
+    {
+        final Field field;
+
+        /**
+         * Interned local name of the attribute or element
+         */
+        final String localName;
+
+        /**
+         * Interned namespace URI; empty String for "no namespace"
+         */
+        final String nsURI;
+
+        /**
+         * Key used for accessing attribute, for attribute bindings
+         */
+        final SMAttrKey attrKey;
+
+        /**
+         * Whether field is a Collection, to which values are to be added
+         */
+        final boolean collection;
+
+        final boolean primitive;
+
+        final int valueType;
+
+        /**
+         * Type of values: field type for non-collection fields,
+         * element type for collections
+         */
+        final Class<?> valueClass;
+
+        Slot(Field f, String nsURI, String localName, boolean isAttr)
+        {
+            field = f;
+            f.setAccessible(true);
+            this.nsURI = nsURI.intern();
+            this.localName = localName.intern();
+            attrKey = isAttr ? new SMAttrKey(nsURI, localName) : null;
+
+            Class<?> type = f.getType();
+            if (Collection.class.isAssignableFrom(type)) {
+                if (!type.isAssignableFrom(ArrayList.class)) {
+                    throw new IllegalArgumentException("Unsupported collection type "+type.getName()+" for field "
+                            +_desc(f)+": must be List or Collection");
+                }
+                collection = true;
+                type = _elementType(f);
+            } else {
+                collection = false;
+            }
+            valueClass = type;
+            primitive = type.isPrimitive();
+            valueType = _valueType(f, type);
+        }
+
+        private static Class<?> _elementType(Field f)
+        {
+            Type t = f.getGenericType();
+            if (t instanceof ParameterizedType) {
+                Type[] args = ((ParameterizedType) t).getActualTypeArguments();
+                if (args.length == 1 && args[0] instanceof Class<?>) {
+                    return (Class<?>) args[0];
+                }
+            }
+            throw new IllegalArgumentException("Can not determine element type for collection field "+_desc(f)
+                    +": must be declared with a concrete type parameter");
+        }
+
+        private static int _valueType(Field f, Class<?> type)
+        {
+            if (type == String.class) {
+                return TYPE_STRING;
+            }
+            if (type == Boolean.TYPE || type == Boolean.class) {
+                return TYPE_BOOLEAN;
+            }
+            if (type == Integer.TYPE || type == Integer.class) {
+                return TYPE_INT;
+            }
+            if (type == Long.TYPE || type == Long.class) {
+                return TYPE_LONG;
+            }
+            if (type == Double.TYPE || type == Double.class) {
+                return TYPE_DOUBLE;
+            }
+            if (type.isEnum()) {
+                return TYPE_ENUM;
+            }
+            if (type.isPrimitive() || type.isArray() || type.getName().startsWith("java.")) {
+                throw new IllegalArgumentException("Unsupported type "+type.getName()+" for field "+_desc(f));
+            }
+            return TYPE_OBJECT;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package org.codehaus.staxmate.bind;
+
+import java.lang.annotation.*;
+
+/**
+ * Annotation used to indicate that a field is to be bound from
+ * an attribute of the element the containing object is bound from.
+ * Supported field types are String, primitive (and wrapper) types
+ * boolean, int, long and double, and Enum types.
+ *
+ * @since 2.4.2
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface SMBindAttribute
+{
+    /**
+     * Local name of the attribute; if left empty, name of the field
+     * is used.
+     */
+    public String value() default "";
+
+    /**
+     * Namespace URI of the attribute, if any
+     */
+    public String namespace() default "";
+}
@@ -0,0 +1,32 @@
+package org.codehaus.staxmate.bind;
+
+import java.lang.annotation.*;
+
+/**
+ * Annotation used to indicate that a field is to be bound from
+ * a child element of the element the containing object is bound from.
+ * Supported field types are String, primitive (and wrapper) types
+ * boolean, int, long and double, and Enum types (which are bound from
+ * textual content of the child element); other types, which are bound
+ * recursively from the child element; and {@link java.util.List}s
+ * (or {@link java.util.Collection}s) of any of these, for repeated
+ * child elements.
+ *
+ * @since 2.4.2
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface SMBindElement
+{
+    /**
+     * Local name of the element; if left empty, name of the field
+     * is used.
+     */
+    public String value() default "";
+
+    /**
+     * Namespace URI of the element, if any
+     */
+    public String namespace() default "";
+}
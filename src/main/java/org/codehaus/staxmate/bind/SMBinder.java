@@ -0,0 +1,111 @@
+package org.codehaus.staxmate.bind;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.codehaus.staxmate.in.SMEvent;
+import org.codehaus.staxmate.in.SMInputCursor;
+
+/**
+ * Simple data binder that populates Java objects from elements
+ * that {@link SMInputCursor}s point to, based on annotations
+ * ({@link SMBindAttribute}, {@link SMBindElement}) on fields of
+ * bound classes. For each class, a binding plan is constructed
+ * once (using reflection) and cached; binding itself reads values
+ * using Typed Access methods of cursors, without constructing any
+ * intermediate representation.
+ *<p>
+ * Bound classes need to have a default (no-arguments) constructor,
+ * which may be private. Attributes and child elements for which there
+ * is no binding are ignored.
+ *<p>
+ * Instances are thread-safe, and since binding plans are cached per
+ * binder, it is usually best to share a single instance.
+ *
+ * @since 2.4.2
+ */
+public class SMBinder
+{
+    private final ConcurrentHashMap<Class<?>,BindingPlan> _plans
+        = new ConcurrentHashMap<Class<?>,BindingPlan>();
+
+    public SMBinder() { }
+
+    /*
+    /**********************************************************************
+    /* Public API
+    /**********************************************************************
+     */
+
+    /**
+     * Method for binding an instance of given type from the element given
+     * cursor points to. Contents of the element are consumed, so cursor
+     * can only be advanced after the call.
+     *
+     * @throws IllegalArgumentException If given type can not be bound
+     * @throws XMLStreamException If cursor does not point to a START_ELEMENT,
+     *   or if contents can not be read (for example, typed values
+     *   are invalid)
+     */
+    public <T> T read(SMInputCursor crsr, Class<T> type)
+        throws XMLStreamException
+    {
+        if (crsr.getCurrEvent() != SMEvent.START_ELEMENT) {
+            throw crsr.constructStreamException("Can not bind "+type.getName()
+                    +": cursor does not point to START_ELEMENT (but "+crsr.getCurrEvent()+")");
+        }
+        BindingPlan plan = _findPlan(type);
+        Object bean = plan.newInstance();
+        plan.bind(this, bean, crsr);
+        return type.cast(bean);
+    }
+
+    /**
+     * Method for binding an instance of given type from every element
+     * given cursor iterates over (starting with the next event),
+     * until cursor has no more events.
+     */
+    public <T> List<T> readAll(SMInputCursor crsr, Class<T> type)
+        throws XMLStreamException
+    {
+        List<T> result = new ArrayList<T>();
+        SMEvent evt;
+        while ((evt = crsr.getNext()) != null) {
+            if (evt == SMEvent.START_ELEMENT) {
+                result.add(read(crsr, type));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Method that can be called to verify that given type can be bound,
+     * and to construct its binding plan eagerly.
+     *
+     * @throws IllegalArgumentException If given type can not be bound
+     */
+    public void prepare(Class<?> type)
+    {
+        _findPlan(type);
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    BindingPlan _findPlan(Class<?> type)
+    {
+        BindingPlan plan = _plans.get(type);
+        if (plan == null) {
+            // May get constructed more than once concurrently; no harm done
+            plan = BindingPlan.construct(type);
+            _plans.put(type, plan);
+        }
+        return plan;
+    }
+}
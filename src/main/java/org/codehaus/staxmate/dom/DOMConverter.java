@@ -7,6 +7,7 @@ import javax.xml.parsers.ParserConfigurationException;
 import org.w3c.dom.*;
 
 import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
 import javax.xml.stream.*;
 
 import org.codehaus.stax2.XMLStreamReader2;
@@ -14,6 +15,11 @@ import org.codehaus.stax2.XMLStreamWriter2;
 import org.codehaus.stax2.ri.Stax2ReaderAdapter;
 import org.codehaus.stax2.ri.Stax2WriterAdapter;
 
+import org.codehaus.staxmate.in.SMEvent;
+import org.codehaus.staxmate.in.SMFilter;
+import org.codehaus.staxmate.in.SMFilterFactory;
+import org.codehaus.staxmate.in.SMInputCursor;
+
 /**
  * Class that can build DOM trees and fragments using
  * Stax stream readers, and write them out using
@@ -314,6 +320,119 @@ public class DOMConverter
         }
     }
 
+    /*
+    /**********************************************************************
+    /* Public API, input (DOM for records, from cursors)
+    /**********************************************************************
+     */
+
+    /**
+     * Method for building a DOM tree for the element given cursor points
+     * to (a "record"), so that the element becomes the document element
+     * of given document. Document is reused: its existing contents are
+     * removed first, which allows processing of any number of records
+     * (such as child elements of the root element of a big document)
+     * using a single Document instance.
+     * After the call, cursor will point to the END_ELEMENT matching the
+     * START_ELEMENT, and can be advanced normally.
+     *<p>
+     * Note: namespace declarations of ancestor elements of the record
+     * are not added as attributes, although namespace URIs of elements
+     * and attributes are retained.
+     *
+     * @param doc Document to reuse; if null, a new document is constructed
+     *   using the DocumentBuilder of this converter
+     *
+     * @return Document that contains the record
+     *
+     * @throws XMLStreamException If cursor does not point to a START_ELEMENT,
+     *   or if the reader threw such exception
+     *
+     * @since 2.4.2
+     */
+    public Document buildRecord(SMInputCursor crsr, Document doc)
+        throws XMLStreamException
+    {
+        if (crsr.getCurrEvent() != SMEvent.START_ELEMENT || !crsr.readerAccessible()) {
+            throw crsr.constructStreamException("Can not build record: cursor does not point to START_ELEMENT");
+        }
+        if (doc == null) {
+            doc = _docBuilder.newDocument();
+        } else {
+            for (Node n = doc.getFirstChild(); n != null; n = doc.getFirstChild()) {
+                doc.removeChild(n);
+            }
+        }
+        buildDocument(crsr.getStreamReader(), doc);
+        crsr.markSubtreeConsumed();
+        return doc;
+    }
+
+    /**
+     * Method that will advance given cursor to the next START_ELEMENT
+     * accepted by given filter, and build a DOM tree for it in given
+     * document, as per {@link #buildRecord}. Elements not accepted are
+     * skipped without building DOM trees; with child cursors this
+     * includes their contents, whereas descendant cursors can find
+     * records at any level.
+     * Typical usage is:
+     *<pre>
+     *  Document doc = null;
+     *  while ((doc = conv.buildNextRecord(crsr, filter, doc)) != null) {
+     *      // process the record; cursor can be used, too
+     *  }
+     *</pre>
+     *
+     * @param filter Filter for selecting elements to build; if null,
+     *   all elements are built
+     * @param doc Document to reuse; if null, a new document is constructed
+     *
+     * @return Document that contains the record, if one was found;
+     *   null if cursor has no more events
+     *
+     * @since 2.4.2
+     */
+    public Document buildNextRecord(SMInputCursor crsr, SMFilter filter, Document doc)
+        throws XMLStreamException
+    {
+        SMEvent evt;
+        while ((evt = crsr.getNext()) != null) {
+            if (evt == SMEvent.START_ELEMENT
+                && (filter == null || filter.accept(evt, crsr))) {
+                return buildRecord(crsr, doc);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Convenience method for building the next record element that
+     * has given name, and that does not belong to a namespace;
+     * see {@link #buildNextRecord(SMInputCursor, SMFilter, Document)}
+     * for details.
+     *
+     * @since 2.4.2
+     */
+    public Document buildNextRecord(SMInputCursor crsr, String localName, Document doc)
+        throws XMLStreamException
+    {
+        return buildNextRecord(crsr, SMFilterFactory.getElementOnlyFilter(localName), doc);
+    }
+
+    /**
+     * Convenience method for building the next record element that
+     * has given name;
+     * see {@link #buildNextRecord(SMInputCursor, SMFilter, Document)}
+     * for details.
+     *
+     * @since 2.4.2
+     */
+    public Document buildNextRecord(SMInputCursor crsr, QName elemName, Document doc)
+        throws XMLStreamException
+    {
+        return buildNextRecord(crsr, SMFilterFactory.getElementOnlyFilter(elemName), doc);
+    }
+
     /*
     /**********************************************************************
     /* Public API, output (DOM written using stax stream writer)
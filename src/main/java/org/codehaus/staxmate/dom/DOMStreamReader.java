@@ -0,0 +1,145 @@
+package org.codehaus.staxmate.dom;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.dom.DOMSource;
+
+import org.w3c.dom.Node;
+
+import org.codehaus.stax2.ri.dom.DOMWrappingReader;
+
+/**
+ * Stax2 stream reader implementation that reads contents of a DOM tree
+ * (document, element or document fragment) by walking the tree, so that
+ * cursors can be used for traversing DOM trees without serializing and
+ * re-parsing them (see
+ * {@link org.codehaus.staxmate.SMInputFactory#rootElementCursor(Node)}).
+ * Most of the functionality, including Typed Access API, comes from
+ * {@link DOMWrappingReader} of the Stax2 reference implementation.
+ *<p>
+ * Note that the tree should not be modified while it is being read.
+ *
+ * @since 2.4.2
+ */
+public class DOMStreamReader
+    extends DOMWrappingReader
+{
+    /**
+     * Element nesting depth as defined by Stax2 API: depth of
+     * START_ELEMENT and matching END_ELEMENT are the same, and root
+     * element has depth of 1.
+     */
+    protected int _elemDepth;
+
+    /*
+    /**********************************************************************
+    /* Construction
+    /**********************************************************************
+     */
+
+    protected DOMStreamReader(DOMSource src, boolean nsAware, boolean coalescing)
+        throws XMLStreamException
+    {
+        super(src, nsAware, coalescing);
+    }
+
+    /**
+     * Factory method for constructing a namespace-aware, non-coalescing
+     * reader for given DOM node.
+     *
+     * @param node Document, element or document fragment to read
+     */
+    public static DOMStreamReader createFrom(Node node)
+        throws XMLStreamException
+    {
+        return createFrom(node, true, false);
+    }
+
+    /**
+     * @param node Document, element or document fragment to read
+     * @param nsAware Whether reader is to be namespace-aware
+     * @param coalescing Whether adjacent text nodes (including CDATA
+     *   sections) are to be reported as a single text event
+     */
+    public static DOMStreamReader createFrom(Node node, boolean nsAware, boolean coalescing)
+        throws XMLStreamException
+    {
+        if (node == null) {
+            throw new IllegalArgumentException("Node can not be null");
+        }
+        return new DOMStreamReader(new DOMSource(node), nsAware, coalescing);
+    }
+
+    /*
+    /**********************************************************************
+    /* Overridden methods
+    /**********************************************************************
+     */
+
+    @Override
+    public int next()
+        throws XMLStreamException
+    {
+        if (_currEvent == END_ELEMENT) {
+            --_elemDepth;
+        }
+        int type = super.next();
+        if (type == START_ELEMENT) {
+            ++_elemDepth;
+        }
+        return type;
+    }
+
+    /**
+     * Overridden since depth reported by the base class for START_ELEMENTs
+     * is one less than for the matching END_ELEMENTs, and cursors rely on
+     * depths being the same.
+     */
+    @Override
+    public int getDepth() {
+        return _elemDepth;
+    }
+
+    /*
+    /**********************************************************************
+    /* Abstract method implementations
+    /**********************************************************************
+     */
+
+    @Override
+    public Object getProperty(String name)
+    {
+        if (XMLInputFactory.IS_NAMESPACE_AWARE.equals(name)) {
+            return Boolean.valueOf(_cfgNsAware);
+        }
+        if (XMLInputFactory.IS_COALESCING.equals(name)) {
+            return Boolean.valueOf(_coalescing);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean isPropertySupported(String name) {
+        return getProperty(name) != null;
+    }
+
+    /**
+     * Properties of DOM-backed readers can not be changed, so this
+     * method always returns false.
+     */
+    @Override
+    public boolean setProperty(String name, Object value) {
+        return false;
+    }
+
+    @Override
+    protected void throwStreamException(String msg, Location loc)
+        throws XMLStreamException
+    {
+        if (loc == null) {
+            throw new XMLStreamException(msg);
+        }
+        throw new XMLStreamException(msg, loc);
+    }
+}
@@ -0,0 +1,91 @@
+package org.codehaus.staxmate.in;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+
+import org.codehaus.stax2.XMLStreamReader2;
+
+/**
+ * Element-only filter that accepts START_ELEMENTs that have specified
+ * attribute, optionally with specified value. Since attributes are
+ * not available for END_ELEMENTs, they are never accepted (unlike with
+ * {@link ElementFilter}); so filter is usually used with child cursors,
+ * or combined with other filters (see {@link SMFilterFactory#or}).
+ *<p>
+ * Instances are immutable and can be shared between cursors
+ * and threads.
+ *
+ * @since 2.4.2
+ */
+public class AttributeFilter
+    extends SimpleFilter
+{
+    /**
+     * Namespace URI of the attribute; empty String for "no namespace"
+     */
+    final String mNsURI;
+
+    final String mLocalName;
+
+    /**
+     * Value attribute must have; null if any value is accepted
+     */
+    final String mValue;
+
+    /*
+    /////////////////////////////////////////////////////
+    // Life-cycle
+    /////////////////////////////////////////////////////
+     */
+
+    /**
+     * @param nsURI Namespace URI of the attribute; null or empty String
+     *   for attributes that do not belong to a namespace
+     * @param value Value attribute must have to be accepted; null if
+     *   attribute just has to exist
+     */
+    public AttributeFilter(String nsURI, String localName, String value)
+    {
+        super(1 << XMLStreamConstants.START_ELEMENT);
+        if (localName == null) {
+            throw new NullPointerException("localName can not be null");
+        }
+        mNsURI = (nsURI == null) ? "" : nsURI;
+        mLocalName = localName;
+        mValue = value;
+    }
+
+    public AttributeFilter(QName attrName, String value)
+    {
+        this(attrName.getNamespaceURI(), attrName.getLocalPart(), value);
+    }
+
+    /*
+    /////////////////////////////////////////////////////
+    // SMFilter implementation
+    /////////////////////////////////////////////////////
+     */
+
+    public boolean accept(SMEvent evt, SMInputCursor caller)
+        throws XMLStreamException
+    {
+        if (!super.accept(evt, caller)) {
+            return false;
+        }
+        final XMLStreamReader2 sr = caller._getStreamReader();
+        for (int i = 0, len = sr.getAttributeCount(); i < len; ++i) {
+            if (!mLocalName.equals(sr.getAttributeLocalName(i))) {
+                continue;
+            }
+            String uri = sr.getAttributeNamespace(i);
+            if (uri == null) {
+                uri = "";
+            }
+            if (mNsURI.equals(uri)) {
+                return (mValue == null) || mValue.equals(sr.getAttributeValue(i));
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,259 @@
+package org.codehaus.staxmate.in;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Base class for filters that combine other filters: conjunctions
+ * ("and"), disjunctions ("or") and negations ("not"). Instances are
+ * constructed using factory methods of {@link SMFilterFactory}, which
+ * normalize combinations when filters are built: nested combinations
+ * of the same kind are flattened, and checks of filters that only
+ * check event type (see {@link SMFilter#isTypeOnly}) are folded into
+ * a single type mask, reported by {@link #getAcceptedTypes} (and
+ * checked by cursors before calling the filter). When nothing but
+ * type checks remains, a {@link SimpleFilter} is built instead.
+ *<p>
+ * Instances are immutable (as long as component filters are),
+ * and can be shared between cursors and threads.
+ *
+ * @since 2.4.2
+ */
+public abstract class CompositeFilter
+    extends SMFilter
+{
+    /**
+     * Component filters that need to be called (ones that only
+     * check event type are not included)
+     */
+    final SMFilter[] mFilters;
+
+    /**
+     * Types accepted by component filters, matching {@link #mFilters}
+     */
+    final int[] mFilterTypes;
+
+    /**
+     * Types this filter may accept
+     */
+    final int mAcceptedTypes;
+
+    protected CompositeFilter(List<SMFilter> filters, int acceptedTypes)
+    {
+        mFilters = filters.toArray(new SMFilter[filters.size()]);
+        mFilterTypes = new int[mFilters.length];
+        for (int i = 0; i < mFilters.length; ++i) {
+            mFilterTypes[i] = mFilters[i].getAcceptedTypes();
+        }
+        mAcceptedTypes = acceptedTypes;
+    }
+
+    /*
+    /////////////////////////////////////////////////////
+    // Construction
+    /////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for constructing a filter that accepts events accepted
+     * by all of given filters.
+     */
+    static SMFilter and(SMFilter... filters)
+    {
+        int types = ALL_TYPES;
+        List<SMFilter> preds = new ArrayList<SMFilter>();
+        for (SMFilter f : _flatten(filters, And.class)) {
+            types &= f.getAcceptedTypes();
+            if (!f.isTypeOnly()) {
+                preds.add(f);
+            }
+        }
+        if (preds.isEmpty()) {
+            return new SimpleFilter(types);
+        }
+        if (preds.size() == 1 && preds.get(0).getAcceptedTypes() == types) {
+            return preds.get(0);
+        }
+        return new And(preds, types);
+    }
+
+    /**
+     * Method for constructing a filter that accepts events accepted
+     * by any of given filters.
+     */
+    static SMFilter or(SMFilter... filters)
+    {
+        int types = 0;
+        int passTypes = 0;
+        List<SMFilter> preds = new ArrayList<SMFilter>();
+        for (SMFilter f : _flatten(filters, Or.class)) {
+            types |= f.getAcceptedTypes();
+            if (f.isTypeOnly()) {
+                passTypes |= f.getAcceptedTypes();
+            } else {
+                preds.add(f);
+            }
+        }
+        // events of "pass" types are accepted without calling predicates
+        for (int i = preds.size(); --i >= 0; ) {
+            if ((preds.get(i).getAcceptedTypes() & ~passTypes) == 0) {
+                preds.remove(i);
+            }
+        }
+        if (preds.isEmpty()) {
+            return new SimpleFilter(types);
+        }
+        if (preds.size() == 1 && passTypes == 0) {
+            return preds.get(0);
+        }
+        return new Or(preds, types, passTypes);
+    }
+
+    /**
+     * Method for constructing a filter that accepts events not
+     * accepted by given filter.
+     */
+    static SMFilter not(SMFilter filter)
+    {
+        if (filter == null) {
+            throw new IllegalArgumentException("Filter can not be null");
+        }
+        if (filter instanceof Not) {
+            return ((Not) filter).mFilters[0];
+        }
+        if (filter.isTypeOnly()) {
+            return new SimpleFilter(~filter.getAcceptedTypes() & ALL_TYPES);
+        }
+        List<SMFilter> list = new ArrayList<SMFilter>(1);
+        list.add(filter);
+        return new Not(list);
+    }
+
+    private static List<SMFilter> _flatten(SMFilter[] filters, Class<?> type)
+    {
+        if (filters == null || filters.length == 0) {
+            throw new IllegalArgumentException("Need at least one filter to combine");
+        }
+        List<SMFilter> result = new ArrayList<SMFilter>();
+        for (SMFilter f : filters) {
+            if (f == null) {
+                throw new IllegalArgumentException("Filter can not be null");
+            }
+            if (f.getClass() == type) {
+                CompositeFilter cf = (CompositeFilter) f;
+                for (SMFilter child : cf.mFilters) {
+                    result.add(child);
+                }
+                // type checks were folded into masks, need to retain them
+                if (cf instanceof Or) {
+                    int passTypes = ((Or) cf).mPassTypes;
+                    if (passTypes != 0) {
+                        result.add(new SimpleFilter(passTypes));
+                    }
+                } else if (cf.mAcceptedTypes != ALL_TYPES) {
+                    result.add(new SimpleFilter(cf.mAcceptedTypes));
+                }
+            } else {
+                result.add(f);
+            }
+        }
+        return result;
+    }
+
+    /*
+    /////////////////////////////////////////////////////
+    // Public API
+    /////////////////////////////////////////////////////
+     */
+
+    /**
+     * @return Number of component filters that are called by this filter
+     *   (filters that only check event types are not included)
+     */
+    public int size() {
+        return mFilters.length;
+    }
+
+    @Override
+    public int getAcceptedTypes() {
+        return mAcceptedTypes;
+    }
+
+    /*
+    /////////////////////////////////////////////////////
+    // Implementations
+    /////////////////////////////////////////////////////
+     */
+
+    final static class And extends CompositeFilter
+    {
+        And(List<SMFilter> filters, int acceptedTypes) {
+            super(filters, acceptedTypes);
+        }
+
+        public boolean accept(SMEvent evt, SMInputCursor caller)
+            throws XMLStreamException
+        {
+            final int bit = 1 << evt.getEventCode();
+            if ((mAcceptedTypes & bit) == 0) {
+                return false;
+            }
+            // accepted types are common to all filters, no need to check per filter
+            final SMFilter[] filters = mFilters;
+            for (int i = 0, len = filters.length; i < len; ++i) {
+                if (!filters[i].accept(evt, caller)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    final static class Or extends CompositeFilter
+    {
+        /**
+         * Types accepted without calling component filters
+         */
+        final int mPassTypes;
+
+        Or(List<SMFilter> filters, int acceptedTypes, int passTypes) {
+            super(filters, acceptedTypes);
+            mPassTypes = passTypes;
+        }
+
+        public boolean accept(SMEvent evt, SMInputCursor caller)
+            throws XMLStreamException
+        {
+            final int bit = 1 << evt.getEventCode();
+            if ((mPassTypes & bit) != 0) {
+                return true;
+            }
+            final SMFilter[] filters = mFilters;
+            for (int i = 0, len = filters.length; i < len; ++i) {
+                if ((mFilterTypes[i] & bit) != 0 && filters[i].accept(evt, caller)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    final static class Not extends CompositeFilter
+    {
+        Not(List<SMFilter> filters) {
+            // events the filter never accepts are always accepted
+            super(filters, ALL_TYPES);
+        }
+
+        public boolean accept(SMEvent evt, SMInputCursor caller)
+            throws XMLStreamException
+        {
+            if ((mFilterTypes[0] & (1 << evt.getEventCode())) == 0) {
+                return true;
+            }
+            return !mFilters[0].accept(evt, caller);
+        }
+    }
+}
@@ -88,8 +88,20 @@ abstract class CursorBase
      * Depth the underlying stream reader had when this cursor was
      * created (which is the number of currently open parent elements).
      * 0 only for root cursor.
+     *<p>
+     * Note: not final since 2.4.2, as recycled cursors are re-initialized
+     * with a new base depth.
+     */
+    protected int _baseDepth;
+
+    /**
+     * Whether sub-trees can be skipped using
+     * {@link XMLStreamReader2#skipElement} (true), or need to be
+     * traversed event by event (false).
+     *
+     * @since 2.4.2
      */
-    protected final int _baseDepth;
+    protected final boolean _nativeSkip;
 
     /**
      * Current state of the cursor.
@@ -131,6 +143,33 @@ abstract class CursorBase
      */
     protected SMElementInfo _parentTrackedElement = null;
 
+    /**
+     * Lowest element depth for which path stack entries of the input
+     * context are valid for this cursor, when using
+     * {@link SMInputCursor.Tracking#PATH}: depth of the outermost
+     * element of the chain of parent cursors that also track paths.
+     *
+     * @since 2.4.2
+     */
+    protected int _pathStart;
+
+    /**
+     * Element tracked by the closest ancestor cursor that does not
+     * track paths (that is, parent of the element at
+     * {@link #_pathStart}), if any.
+     *
+     * @since 2.4.2
+     */
+    protected SMElementInfo _pathBaseElement;
+
+    /**
+     * Depth of the element that was last "tracked", when using
+     * {@link SMInputCursor.Tracking#PATH}; 0 if none yet.
+     *
+     * @since 2.4.2
+     */
+    protected int _trackedDepth;
+
     /**
      * Cursor that has been opened for iterating child nodes of the
      * start element node this cursor points to. Needed to keep
@@ -139,6 +178,24 @@ abstract class CursorBase
      */
     protected SMInputCursor _childCursor = null;
 
+    /**
+     * Whether this cursor is to be marked as released when invalidated;
+     * set for cursors created when cursor recycling is enabled with
+     * checks (see {@link SMInputContext#setCursorRecyclingChecks}).
+     *
+     * @since 2.4.2
+     */
+    boolean _checkRelease;
+
+    /**
+     * Flag set when a cursor with {@link #_checkRelease} enabled has
+     * been invalidated; after this any use is an error, since with
+     * recycling this instance could have been reused.
+     *
+     * @since 2.4.2
+     */
+    boolean _released;
+
     /*
     /**********************************************************************
     /* Life-cycle
@@ -153,6 +210,7 @@ abstract class CursorBase
     {
         _context = ctxt;
         _streamReader = ctxt.getStreamReader();
+        _nativeSkip = ctxt.canSkipNatively();
         _baseDepth = baseDepth;
     }
 
@@ -218,6 +276,14 @@ abstract class CursorBase
         final XMLStreamReader2 sr = _streamReader;
 
         for (int type = sr.getEventType(); true; type = sr.next()) {
+            /* With native Stax2 readers, any START_ELEMENT (including the
+             * one child cursor was created for, if it was never advanced)
+             * can be skipped in one go, leaving us at matching END_ELEMENT
+             */
+            if (type == XMLStreamConstants.START_ELEMENT && _nativeSkip) {
+                sr.skipElement();
+                type = XMLStreamConstants.END_ELEMENT;
+            }
             if (type == XMLStreamConstants.END_ELEMENT) {
                 int depth = sr.getDepth();
                 if (depth > endDepth) {
@@ -254,6 +320,9 @@ abstract class CursorBase
     {
         _state = State.CLOSED;
         _currEvent = null;
+        if (_checkRelease) {
+            _released = true;
+        }
 
         // child cursor(s) to delegate skipping to?
         if (_childCursor != null) {
@@ -299,6 +368,9 @@ abstract class CursorBase
     protected XMLStreamException _notAccessible(String method)
         throws XMLStreamException
     {
+        if (_released) {
+            throw _releasedCursorUsed(method);
+        }
         if (_childCursor != null) {
             return constructStreamException("Can not call '"+method+"(): cursor does not point to a valid node, as it has an active open child cursor.");
         }
@@ -306,6 +378,18 @@ abstract class CursorBase
                                         +getStateDesc()+")");
     }
 
+    /**
+     * Method called to construct exception to throw when a cursor that has
+     * been released (with recycling checks enabled) is used.
+     *
+     * @since 2.4.2
+     */
+    protected IllegalStateException _releasedCursorUsed(String method)
+    {
+        return new IllegalStateException("Can not call '"+method+"()': cursor was invalidated when its parent cursor"
+                +" was advanced, and would have been recycled (cursors must not be retained when cursor recycling is enabled)");
+    }
+
     protected XMLStreamException _wrongState(String method, SMEvent expState)
         throws XMLStreamException
     {
@@ -0,0 +1,174 @@
+package org.codehaus.staxmate.in;
+
+import java.util.Collection;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+
+import org.codehaus.stax2.XMLStreamReader2;
+
+/**
+ * Element-only filter that accepts elements whose name is one of
+ * a given set of names. Compared to chaining multiple
+ * {@link ElementFilter}s, names are "compiled" into a small
+ * open-addressing hash table when the filter is constructed,
+ * so that matching is a single hash lookup. Further, since
+ * all names are interned, matching is done by identity
+ * if the stream reader is known to intern names (see
+ * {@link org.codehaus.stax2.XMLInputFactory2#P_INTERN_NAMES}),
+ * and only falls back to {@link String#equals} if not.
+ *<p>
+ * Instances are immutable and can be shared between cursors
+ * and threads.
+ *
+ * @since 2.4.2
+ */
+public class ElementNameSetFilter
+    extends SimpleFilter
+{
+    /**
+     * Local names of entries, indexed by hash slot; null for
+     * unused slots
+     */
+    final String[] mLocalNames;
+
+    /**
+     * Namespace URIs of entries, matching {@link #mLocalNames};
+     * empty String for "no namespace".
+     */
+    final String[] mNsURIs;
+
+    final int mHashMask;
+
+    final int mSize;
+
+    /*
+    /////////////////////////////////////////////////////
+    // Life-cycle
+    /////////////////////////////////////////////////////
+     */
+
+    public ElementNameSetFilter(QName... names)
+    {
+        super((1 << XMLStreamConstants.START_ELEMENT) |
+              (1 << XMLStreamConstants.END_ELEMENT));
+        // Load factor of at most 50% keeps probe sequences short
+        int size = 4;
+        while (size < (names.length << 1)) {
+            size += size;
+        }
+        mLocalNames = new String[size];
+        mNsURIs = new String[size];
+        mHashMask = size-1;
+
+        int count = 0;
+        for (QName name : names) {
+            if (_add(name.getNamespaceURI(), name.getLocalPart())) {
+                ++count;
+            }
+        }
+        mSize = count;
+    }
+
+    public ElementNameSetFilter(Collection<QName> names)
+    {
+        this(names.toArray(new QName[names.size()]));
+    }
+
+    /**
+     * Convenience constructor for matching names that do not belong
+     * to a namespace.
+     */
+    public ElementNameSetFilter(String... localNames)
+    {
+        this(_toQNames(localNames));
+    }
+
+    private static QName[] _toQNames(String[] localNames)
+    {
+        QName[] result = new QName[localNames.length];
+        for (int i = 0; i < localNames.length; ++i) {
+            if (localNames[i] == null) {
+                throw new NullPointerException("localName can not be null");
+            }
+            result[i] = new QName(localNames[i]);
+        }
+        return result;
+    }
+
+    /**
+     * @return False if entry was a duplicate and not added
+     */
+    private boolean _add(String nsURI, String localName)
+    {
+        if (localName == null) {
+            throw new NullPointerException("localName can not be null");
+        }
+        localName = localName.intern();
+        nsURI = (nsURI == null) ? "" : nsURI.intern();
+        int ix = localName.hashCode() & mHashMask;
+        while (mLocalNames[ix] != null) {
+            if (mLocalNames[ix] == localName && mNsURIs[ix] == nsURI) {
+                return false;
+            }
+            ix = (ix + 1) & mHashMask;
+        }
+        mLocalNames[ix] = localName;
+        mNsURIs[ix] = nsURI;
+        return true;
+    }
+
+    /*
+    /////////////////////////////////////////////////////
+    // Public API
+    /////////////////////////////////////////////////////
+     */
+
+    /**
+     * @return Number of distinct names this filter matches
+     */
+    public int size() { return mSize; }
+
+    /*
+    /////////////////////////////////////////////////////
+    // SMFilter implementation
+    /////////////////////////////////////////////////////
+     */
+
+    public boolean accept(SMEvent evt, SMInputCursor caller)
+        throws XMLStreamException
+    {
+        if (!super.accept(evt, caller)) {
+            return false;
+        }
+        final SMInputContext ctxt = caller._context;
+        final XMLStreamReader2 sr = caller._getStreamReader();
+        final String ln = sr.getLocalName();
+        final boolean internedNames = ctxt._internNames;
+        final String[] names = mLocalNames;
+        int ix = ln.hashCode() & mHashMask;
+        String uri = null;
+        boolean uriFetched = false;
+
+        for (String name; (name = names[ix]) != null; ix = (ix + 1) & mHashMask) {
+            if (name != ln && (internedNames || !name.equals(ln))) {
+                continue;
+            }
+            // Local name matches; need to verify namespace as well
+            if (!uriFetched) {
+                uri = sr.getNamespaceURI();
+                uriFetched = true;
+            }
+            String expURI = mNsURIs[ix];
+            if (expURI.length() == 0) {
+                if (uri == null || uri.length() == 0) {
+                    return true;
+                }
+            } else if (expURI == uri || (!ctxt._internNsUris && expURI.equals(uri))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
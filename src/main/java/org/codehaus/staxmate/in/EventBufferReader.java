@@ -0,0 +1,706 @@
+package org.codehaus.staxmate.in;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Stax stream reader implementation that reads events buffered in
+ * a {@link SMEventBuffer}. For buffered element sub-trees, reader
+ * returns START_DOCUMENT, followed by buffered events, followed by
+ * END_DOCUMENT; for fragments (used by {@link MarkableStreamReader})
+ * reader starts positioned at the first buffered event, and does not
+ * add any events.
+ *<p>
+ * Instances are wrapped as {@link org.codehaus.stax2.XMLStreamReader2}s
+ * using {@link org.codehaus.stax2.ri.Stax2ReaderAdapter}, which
+ * implements Typed Access API (and depth tracking) on top of
+ * basic Stax API.
+ *
+ * @since 2.4.2
+ */
+final class EventBufferReader
+    implements XMLStreamReader, NamespaceContext
+{
+    private final static int EVENT_SIZE = SMEventBuffer.EVENT_SIZE;
+    private final static int ATTR_SIZE = SMEventBuffer.ATTR_SIZE;
+
+    private final SMEventBuffer _buffer;
+
+    private final int[] _events;
+
+    private final int _end;
+
+    /**
+     * Offset of the current event in event array; -1 before the first
+     * buffered event (START_DOCUMENT), and <code>_end</code> after
+     * the last one (END_DOCUMENT).
+     */
+    private int _ptr;
+
+    private int _type;
+
+    /**
+     * Offsets (within event array) of START_ELEMENTs of currently
+     * open elements, needed for namespace resolution
+     */
+    private int[] _openElements = new int[16];
+
+    private int _depth;
+
+    /**
+     * Constructor for reader that reads a buffered element sub-tree
+     * as a document.
+     */
+    public EventBufferReader(SMEventBuffer buffer)
+    {
+        _buffer = buffer;
+        _events = buffer._events;
+        _end = buffer._eventCount * EVENT_SIZE;
+        _ptr = -1;
+        _type = START_DOCUMENT;
+    }
+
+    /**
+     * Constructor for reader that reads a buffered fragment, starting
+     * positioned at the buffered event with given index.
+     */
+    public EventBufferReader(SMEventBuffer buffer, int firstEvent)
+    {
+        _buffer = buffer;
+        _events = buffer._events;
+        _end = buffer._eventCount * EVENT_SIZE;
+        _ptr = firstEvent * EVENT_SIZE;
+        _type = _events[_ptr];
+        // need to know elements opened by preceding events, for namespace resolution
+        for (int ix = 0; ix <= _ptr; ix += EVENT_SIZE) {
+            int type = _events[ix];
+            if (type == START_ELEMENT) {
+                if (_depth >= _openElements.length) {
+                    _openElements = Arrays.copyOf(_openElements, _depth + _depth);
+                }
+                _openElements[_depth++] = ix;
+            } else if (type == END_ELEMENT && ix < _ptr && _depth > 0) {
+                --_depth;
+            }
+        }
+    }
+
+    /**
+     * @return True if there are buffered events after the current one
+     */
+    public boolean hasMoreBuffered() {
+        return (_ptr + EVENT_SIZE) < _end;
+    }
+
+    /**
+     * @return Index of the current buffered event
+     */
+    public int getEventIndex() {
+        return _ptr / EVENT_SIZE;
+    }
+
+    /**
+     * Method for constructing an immutable copy of namespace bindings
+     * currently in scope.
+     */
+    public NamespaceContext snapshotNamespaceContext()
+    {
+        HashMap<String,String> bindings = new HashMap<String,String>();
+        final String[] decls = _buffer._nsDecls;
+        // outermost first, so that inner declarations override
+        for (int d = 0; d < _depth; ++d) {
+            int ix = _openElements[d];
+            int start = _events[ix+3];
+            for (int i = start, end = start + (_events[ix+4] & 0xFFFF); i < end; ++i) {
+                bindings.put(decls[i+i], decls[i+i+1]);
+            }
+        }
+        return new SnapshotNamespaceContext(bindings, _buffer._rootNsContext);
+    }
+
+    /*
+    /**********************************************************************
+    /* XMLStreamReader implementation, iteration
+    /**********************************************************************
+     */
+
+    public Object getProperty(String name) {
+        return null;
+    }
+
+    public int next() throws XMLStreamException
+    {
+        if (_type == END_DOCUMENT) {
+            throw new NoSuchElementException("Can not call next() after END_DOCUMENT");
+        }
+        // fragments may contain END_ELEMENTs of elements started before them
+        if (_type == END_ELEMENT && _depth > 0) {
+            --_depth;
+        }
+        if (_ptr < 0) {
+            _ptr = 0;
+        } else {
+            _ptr += EVENT_SIZE;
+        }
+        if (_ptr >= _end) {
+            _ptr = _end;
+            return (_type = END_DOCUMENT);
+        }
+        _type = _events[_ptr];
+        if (_type == START_ELEMENT) {
+            if (_depth >= _openElements.length) {
+                _openElements = Arrays.copyOf(_openElements, _depth + _depth);
+            }
+            _openElements[_depth++] = _ptr;
+        }
+        return _type;
+    }
+
+    public void require(int type, String nsURI, String localName)
+        throws XMLStreamException
+    {
+        if (type != _type) {
+            throw new XMLStreamException("Expected event type "+type+", current event type "+_type);
+        }
+        if (localName != null && !localName.equals(getLocalName())) {
+            throw new XMLStreamException("Expected local name '"+localName+"', current '"+getLocalName()+"'");
+        }
+        if (nsURI != null && !nsURI.equals(_nsURIOrEmpty())) {
+            throw new XMLStreamException("Expected namespace '"+nsURI+"', current '"+getNamespaceURI()+"'");
+        }
+    }
+
+    public String getElementText() throws XMLStreamException
+    {
+        if (_type != START_ELEMENT) {
+            throw new XMLStreamException("Can not call getElementText() when not pointing to START_ELEMENT");
+        }
+        StringBuilder sb = null;
+        String text = null;
+        while (true) {
+            int type = next();
+            if (type == END_ELEMENT) {
+                break;
+            }
+            if (type == COMMENT || type == PROCESSING_INSTRUCTION) {
+                continue;
+            }
+            if (type == START_ELEMENT) {
+                throw new XMLStreamException("Unexpected START_ELEMENT when reading element text");
+            }
+            if (!hasText()) {
+                throw new XMLStreamException("Unexpected event type "+type+" when reading element text");
+            }
+            if (text == null) {
+                text = getText();
+            } else {
+                if (sb == null) {
+                    sb = new StringBuilder(text);
+                }
+                if (type == ENTITY_REFERENCE) {
+                    sb.append(getText());
+                } else {
+                    sb.append(_buffer._text, getTextStart(), getTextLength());
+                }
+            }
+        }
+        if (sb != null) {
+            return sb.toString();
+        }
+        return (text == null) ? "" : text;
+    }
+
+    public int nextTag() throws XMLStreamException
+    {
+        while (true) {
+            int type = next();
+            switch (type) {
+            case START_ELEMENT:
+            case END_ELEMENT:
+                return type;
+            case SPACE:
+            case COMMENT:
+            case PROCESSING_INSTRUCTION:
+                continue;
+            case CHARACTERS:
+            case CDATA:
+                if (isWhiteSpace()) {
+                    continue;
+                }
+            }
+            throw new XMLStreamException("Unexpected event type "+type+" when expecting START_ELEMENT or END_ELEMENT");
+        }
+    }
+
+    public boolean hasNext() {
+        return _type != END_DOCUMENT;
+    }
+
+    public void close() { }
+
+    public int getEventType() {
+        return _type;
+    }
+
+    public boolean isStartElement() { return _type == START_ELEMENT; }
+
+    public boolean isEndElement() { return _type == END_ELEMENT; }
+
+    public boolean isCharacters() { return _type == CHARACTERS; }
+
+    public boolean isWhiteSpace()
+    {
+        if (_type == SPACE) {
+            return true;
+        }
+        if (_type != CHARACTERS && _type != CDATA) {
+            return false;
+        }
+        final char[] text = _buffer._text;
+        for (int i = getTextStart(), end = i + getTextLength(); i < end; ++i) {
+            if (text[i] > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+    /**********************************************************************
+    /* XMLStreamReader implementation, attributes
+    /**********************************************************************
+     */
+
+    public String getAttributeValue(String nsURI, String localName)
+    {
+        _verifyStartElement();
+        int count = getAttributeCount();
+        for (int i = 0; i < count; ++i) {
+            QName name = _attrName(i);
+            if (name.getLocalPart().equals(localName)
+                && (nsURI == null || nsURI.equals(name.getNamespaceURI()))) {
+                return getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+
+    public int getAttributeCount()
+    {
+        _verifyStartElement();
+        return _events[_ptr+4] >>> 16;
+    }
+
+    public QName getAttributeName(int index) {
+        return _attrName(index);
+    }
+
+    public String getAttributeNamespace(int index) {
+        String uri = _attrName(index).getNamespaceURI();
+        return (uri.length() == 0) ? null : uri;
+    }
+
+    public String getAttributeLocalName(int index) {
+        return _attrName(index).getLocalPart();
+    }
+
+    public String getAttributePrefix(int index) {
+        String prefix = _attrName(index).getPrefix();
+        return (prefix.length() == 0) ? null : prefix;
+    }
+
+    public String getAttributeType(int index) {
+        _attrName(index);
+        return "CDATA";
+    }
+
+    public String getAttributeValue(int index)
+    {
+        int ix = _attrOffset(index);
+        int[] attrs = _buffer._attrs;
+        return new String(_buffer._text, attrs[ix+1], attrs[ix+2]);
+    }
+
+    public boolean isAttributeSpecified(int index) {
+        _attrName(index);
+        return true;
+    }
+
+    /*
+    /**********************************************************************
+    /* XMLStreamReader implementation, namespaces
+    /**********************************************************************
+     */
+
+    public String getNamespaceURI(String prefix)
+    {
+        if (prefix == null) {
+            throw new IllegalArgumentException("Prefix can not be null");
+        }
+        if (XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+            return XMLConstants.XML_NS_URI;
+        }
+        if (XMLConstants.XMLNS_ATTRIBUTE.equals(prefix)) {
+            return XMLConstants.XMLNS_ATTRIBUTE_NS_URI;
+        }
+        final String[] decls = _buffer._nsDecls;
+        for (int d = _depth; --d >= 0; ) {
+            int ix = _openElements[d];
+            int start = _events[ix+3];
+            for (int i = start + (_events[ix+4] & 0xFFFF); --i >= start; ) {
+                if (decls[i+i].equals(prefix)) {
+                    String uri = decls[i+i+1];
+                    return (uri.length() == 0) ? null : uri;
+                }
+            }
+        }
+        NamespaceContext root = _buffer._rootNsContext;
+        return (root == null) ? null : root.getNamespaceURI(prefix);
+    }
+
+    public int getNamespaceCount()
+    {
+        if (_type != START_ELEMENT && _type != END_ELEMENT) {
+            throw new IllegalStateException("Current event not START_ELEMENT or END_ELEMENT");
+        }
+        return _events[_ptr+4] & 0xFFFF;
+    }
+
+    public String getNamespacePrefix(int index)
+    {
+        String prefix = _buffer._nsDecls[_nsDeclOffset(index)];
+        return (prefix.length() == 0) ? null : prefix;
+    }
+
+    public String getNamespaceURI(int index) {
+        return _buffer._nsDecls[_nsDeclOffset(index)+1];
+    }
+
+    public NamespaceContext getNamespaceContext() {
+        return this;
+    }
+
+    /*
+    /**********************************************************************
+    /* XMLStreamReader implementation, text
+    /**********************************************************************
+     */
+
+    public String getText()
+    {
+        switch (_type) {
+        case CHARACTERS:
+        case CDATA:
+        case SPACE:
+        case COMMENT:
+        case DTD:
+            return new String(_buffer._text, _events[_ptr+1], _events[_ptr+2]);
+        case ENTITY_REFERENCE:
+            return new String(_buffer._text, _events[_ptr+3], _events[_ptr+4]);
+        }
+        throw new IllegalStateException("Current event ("+_type+") not textual");
+    }
+
+    public char[] getTextCharacters()
+    {
+        _verifyText();
+        return _buffer._text;
+    }
+
+    public int getTextCharacters(int sourceStart, char[] target, int targetStart, int length)
+    {
+        _verifyText();
+        int available = _events[_ptr+2] - sourceStart;
+        if (available <= 0) {
+            return 0;
+        }
+        int count = Math.min(available, length);
+        System.arraycopy(_buffer._text, _events[_ptr+1] + sourceStart, target, targetStart, count);
+        return count;
+    }
+
+    public int getTextStart()
+    {
+        _verifyText();
+        return _events[_ptr+1];
+    }
+
+    public int getTextLength()
+    {
+        _verifyText();
+        return _events[_ptr+2];
+    }
+
+    public String getEncoding() {
+        return null;
+    }
+
+    public boolean hasText()
+    {
+        switch (_type) {
+        case CHARACTERS:
+        case CDATA:
+        case SPACE:
+        case COMMENT:
+        case DTD:
+        case ENTITY_REFERENCE:
+            return true;
+        }
+        return false;
+    }
+
+    public Location getLocation() {
+        return BufferLocation.INSTANCE;
+    }
+
+    /*
+    /**********************************************************************
+    /* XMLStreamReader implementation, names, PIs, document info
+    /**********************************************************************
+     */
+
+    public QName getName()
+    {
+        if (_type != START_ELEMENT && _type != END_ELEMENT) {
+            throw new IllegalStateException("Current event not START_ELEMENT or END_ELEMENT");
+        }
+        return _buffer._names[_events[_ptr+1]];
+    }
+
+    public String getLocalName()
+    {
+        if (_type == ENTITY_REFERENCE) {
+            return new String(_buffer._text, _events[_ptr+1], _events[_ptr+2]);
+        }
+        return getName().getLocalPart();
+    }
+
+    public boolean hasName() {
+        return _type == START_ELEMENT || _type == END_ELEMENT;
+    }
+
+    public String getNamespaceURI()
+    {
+        if (!hasName()) {
+            return null;
+        }
+        String uri = getName().getNamespaceURI();
+        return (uri.length() == 0) ? null : uri;
+    }
+
+    public String getPrefix()
+    {
+        if (!hasName()) {
+            return null;
+        }
+        String prefix = getName().getPrefix();
+        return (prefix.length() == 0) ? null : prefix;
+    }
+
+    public String getVersion() {
+        return null;
+    }
+
+    public boolean isStandalone() {
+        return false;
+    }
+
+    public boolean standaloneSet() {
+        return false;
+    }
+
+    public String getCharacterEncodingScheme() {
+        return null;
+    }
+
+    public String getPITarget()
+    {
+        if (_type != PROCESSING_INSTRUCTION) {
+            return null;
+        }
+        return new String(_buffer._text, _events[_ptr+1], _events[_ptr+2]);
+    }
+
+    public String getPIData()
+    {
+        if (_type != PROCESSING_INSTRUCTION) {
+            return null;
+        }
+        return new String(_buffer._text, _events[_ptr+3], _events[_ptr+4]);
+    }
+
+    /*
+    /**********************************************************************
+    /* NamespaceContext implementation
+    /**********************************************************************
+     */
+
+    public String getPrefix(String nsURI)
+    {
+        Iterator<String> it = getPrefixes(nsURI);
+        return it.hasNext() ? it.next() : null;
+    }
+
+    public Iterator<String> getPrefixes(String nsURI)
+    {
+        if (nsURI == null) {
+            throw new IllegalArgumentException("Namespace URI can not be null");
+        }
+        List<String> result = new ArrayList<String>();
+        final String[] decls = _buffer._nsDecls;
+        for (int d = _depth; --d >= 0; ) {
+            int ix = _openElements[d];
+            int start = _events[ix+3];
+            for (int i = start + (_events[ix+4] & 0xFFFF); --i >= start; ) {
+                String prefix = decls[i+i];
+                if (decls[i+i+1].equals(nsURI) && !result.contains(prefix)
+                    && nsURI.equals(getNamespaceURI(prefix))) {
+                    result.add(prefix);
+                }
+            }
+        }
+        NamespaceContext root = _buffer._rootNsContext;
+        if (root != null) {
+            Iterator<?> it = root.getPrefixes(nsURI);
+            while (it.hasNext()) {
+                String prefix = (String) it.next();
+                if (!result.contains(prefix) && nsURI.equals(getNamespaceURI(prefix))) {
+                    result.add(prefix);
+                }
+            }
+        }
+        return Collections.unmodifiableList(result).iterator();
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    private void _verifyStartElement()
+    {
+        if (_type != START_ELEMENT) {
+            throw new IllegalStateException("Current event not START_ELEMENT");
+        }
+    }
+
+    private void _verifyText()
+    {
+        switch (_type) {
+        case CHARACTERS:
+        case CDATA:
+        case SPACE:
+        case COMMENT:
+            return;
+        }
+        throw new IllegalStateException("Current event ("+_type+") not textual");
+    }
+
+    private String _nsURIOrEmpty()
+    {
+        String uri = getNamespaceURI();
+        return (uri == null) ? "" : uri;
+    }
+
+    private int _attrOffset(int index)
+    {
+        int count = getAttributeCount();
+        if (index < 0 || index >= count) {
+            throw new IllegalArgumentException("Illegal attribute index "+index+"; element has "+count+" attributes");
+        }
+        return (_events[_ptr+2] + index) * ATTR_SIZE;
+    }
+
+    private QName _attrName(int index) {
+        return _buffer._names[_buffer._attrs[_attrOffset(index)]];
+    }
+
+    private int _nsDeclOffset(int index)
+    {
+        int count = getNamespaceCount();
+        if (index < 0 || index >= count) {
+            throw new IllegalArgumentException("Illegal namespace declaration index "+index+"; element has "+count+" declarations");
+        }
+        return (_events[_ptr+3] + index) * 2;
+    }
+
+    /**
+     * Immutable namespace context that consists of explicit bindings,
+     * and (optionally) a parent context for other prefixes.
+     */
+    final static class SnapshotNamespaceContext implements NamespaceContext
+    {
+        private final HashMap<String,String> _bindings;
+
+        private final NamespaceContext _parent;
+
+        SnapshotNamespaceContext(HashMap<String,String> bindings, NamespaceContext parent)
+        {
+            _bindings = bindings;
+            _parent = parent;
+        }
+
+        public String getNamespaceURI(String prefix)
+        {
+            String uri = _bindings.get(prefix);
+            if (uri != null) {
+                return (uri.length() == 0) ? null : uri;
+            }
+            return (_parent == null) ? null : _parent.getNamespaceURI(prefix);
+        }
+
+        public String getPrefix(String nsURI)
+        {
+            Iterator<String> it = getPrefixes(nsURI);
+            return it.hasNext() ? it.next() : null;
+        }
+
+        public Iterator<String> getPrefixes(String nsURI)
+        {
+            List<String> result = new ArrayList<String>();
+            for (Map.Entry<String,String> en : _bindings.entrySet()) {
+                if (en.getValue().equals(nsURI)) {
+                    result.add(en.getKey());
+                }
+            }
+            if (_parent != null) {
+                Iterator<?> it = _parent.getPrefixes(nsURI);
+                while (it.hasNext()) {
+                    String prefix = (String) it.next();
+                    if (!result.contains(prefix) && !_bindings.containsKey(prefix)) {
+                        result.add(prefix);
+                    }
+                }
+            }
+            return Collections.unmodifiableList(result).iterator();
+        }
+    }
+
+    /**
+     * Buffered events have no meaningful locations
+     */
+    private final static class BufferLocation implements Location
+    {
+        final static BufferLocation INSTANCE = new BufferLocation();
+
+        public int getLineNumber() { return -1; }
+        public int getColumnNumber() { return -1; }
+        public int getCharacterOffset() { return -1; }
+        public String getPublicId() { return null; }
+        public String getSystemId() { return null; }
+    }
+}
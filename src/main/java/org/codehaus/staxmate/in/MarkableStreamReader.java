@@ -0,0 +1,287 @@
+package org.codehaus.staxmate.in;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+
+import org.codehaus.stax2.XMLStreamReader2;
+import org.codehaus.stax2.ri.Stax2ReaderAdapter;
+
+/**
+ * Stream reader wrapper that allows marking the current position of
+ * the underlying reader, and later on returning back to it: events
+ * read after the mark are recorded (in the same compact form used by
+ * {@link SMEventBuffer}), and replayed after reset, before continuing
+ * with events from the underlying reader.
+ * Number of events recorded is bounded: if more events are read
+ * after the mark, mark is dropped and it can not be reset to any more.
+ *<p>
+ * Instances are usually not used directly, but via
+ * {@link SMHierarchicCursor#mark} and {@link SMHierarchicCursor#reset},
+ * for cursors constructed using
+ * {@link org.codehaus.staxmate.SMInputFactory#markableRootElementCursor}.
+ *<p>
+ * Note: typed access is implemented by {@link Stax2ReaderAdapter};
+ * and no location information is available for replayed events.
+ *
+ * @since 2.4.2
+ */
+public final class MarkableStreamReader
+    extends Stax2ReaderAdapter
+{
+    /**
+     * Default maximum number of events buffered after a mark
+     */
+    public final static int DEFAULT_MAX_MARKED_EVENTS = 10000;
+
+    private final XMLStreamReader2 _source;
+
+    private final int _maxMarkedEvents;
+
+    /**
+     * Events recorded since the mark (and possibly before it, if mark
+     * was set while replaying); null if no mark is set and no events
+     * are being replayed.
+     */
+    private SMEventBuffer.Builder _recorded;
+
+    /**
+     * Index of the marked event within {@link #_recorded}
+     */
+    private int _markIndex;
+
+    /**
+     * Element depth at the marked event
+     */
+    private int _markDepth;
+
+    /**
+     * Object that set the current mark, if any; needed to detect marks
+     * replaced by other callers.
+     */
+    private Object _markOwner;
+
+    /**
+     * Reader for recorded events, while they are being replayed;
+     * null when reading from the underlying reader.
+     */
+    private EventBufferReader _replay;
+
+    /**
+     * @param source Reader to read events from
+     * @param maxMarkedEvents Maximum number of events buffered after
+     *   a mark, before the mark is dropped
+     */
+    public MarkableStreamReader(XMLStreamReader2 source, int maxMarkedEvents)
+    {
+        super(source);
+        if (maxMarkedEvents < 1) {
+            throw new IllegalArgumentException("Maximum number of marked events must be positive (got "+maxMarkedEvents+")");
+        }
+        _source = source;
+        _maxMarkedEvents = maxMarkedEvents;
+        int depth = source.getDepth();
+        // Stax2 reports END_ELEMENTs at the depth of their START_ELEMENTs
+        _depth = (source.getEventType() == XMLStreamConstants.END_ELEMENT) ? depth-1 : depth;
+    }
+
+    /*
+    /**********************************************************************
+    /* Mark/reset
+    /**********************************************************************
+     */
+
+    public int getMaxMarkedEvents() { return _maxMarkedEvents; }
+
+    /**
+     * @return True if there is a mark set by given owner, which can be
+     *   reset to
+     */
+    public boolean hasMark(Object owner) {
+        return (_markOwner != null) && (_markOwner == owner);
+    }
+
+    /**
+     * Method for marking the current event, to be returned to using
+     * {@link #reset}. Any existing mark is replaced.
+     *
+     * @param owner Object that sets the mark (and can reset to it)
+     */
+    public void mark(Object owner)
+        throws XMLStreamException
+    {
+        if (_typedContent != null) {
+            throw new IllegalStateException("Can not mark position while reading typed element content");
+        }
+        if (_replay != null) { // can just mark position within recorded events
+            _markIndex = _replay.getEventIndex();
+        } else {
+            _recorded = new SMEventBuffer.Builder(_source.getNonTransientNamespaceContext());
+            _recorded.append(_source);
+            _markIndex = 0;
+        }
+        _markDepth = _depth;
+        _markOwner = owner;
+    }
+
+    /**
+     * Method for returning to the event marked by given owner.
+     *
+     * @throws IllegalStateException If there is no such mark, either because
+     *   it was never set, was replaced by another mark, or because too
+     *   many events were read after it
+     */
+    public void reset(Object owner)
+    {
+        if (!hasMark(owner)) {
+            throw new IllegalStateException("Can not reset: no valid mark (mark not set, replaced by another mark,"
+                    +" or more than "+_maxMarkedEvents+" events read after it)");
+        }
+        _replay = new EventBufferReader(_recorded.build(), _markIndex);
+        setParent(_replay);
+        _depth = _markDepth;
+        _typedContent = null;
+    }
+
+    /**
+     * Method for clearing mark set by given owner, if it is still
+     * the current mark.
+     */
+    public void clearMark(Object owner)
+    {
+        if (hasMark(owner)) {
+            _markOwner = null;
+            if (_replay == null) {
+                _recorded = null;
+            }
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Overridden XMLStreamReader methods
+    /**********************************************************************
+     */
+
+    @Override
+    public int next() throws XMLStreamException
+    {
+        // After reading typed array content, END_ELEMENT was already read
+        if (_typedContent != null) {
+            return super.next();
+        }
+        if (_replay != null) {
+            if (_replay.hasMoreBuffered()) {
+                return super.next();
+            }
+            // underlying reader points to the last recorded event
+            _replay = null;
+            setParent(_source);
+        }
+        int type = super.next();
+        if (_recorded != null) {
+            if (_markOwner == null) {
+                _recorded = null;
+            } else if ((_recorded.eventCount() - _markIndex) >= _maxMarkedEvents) {
+                clearMark(_markOwner);
+            } else {
+                _recorded.append(_source);
+            }
+        }
+        return type;
+    }
+
+    @Override
+    public String getElementText() throws XMLStreamException
+    {
+        // Underlying readers would advance without recording or replaying
+        if (_recorded == null) {
+            return super.getElementText();
+        }
+        if (getEventType() != START_ELEMENT) {
+            throw new XMLStreamException("Can not call getElementText() when not pointing to START_ELEMENT");
+        }
+        String text = null;
+        StringBuilder sb = null;
+        while (true) {
+            int type = next();
+            if (type == END_ELEMENT) {
+                break;
+            }
+            if (type == COMMENT || type == PROCESSING_INSTRUCTION) {
+                continue;
+            }
+            if (type == START_ELEMENT) {
+                throw new XMLStreamException("Unexpected START_ELEMENT when reading element text");
+            }
+            if (text == null) {
+                text = getText();
+            } else {
+                if (sb == null) {
+                    sb = new StringBuilder(text);
+                }
+                sb.append(getText());
+            }
+        }
+        if (sb != null) {
+            return sb.toString();
+        }
+        return (text == null) ? "" : text;
+    }
+
+    @Override
+    public int nextTag() throws XMLStreamException
+    {
+        while (true) {
+            int type = next();
+            switch (type) {
+            case START_ELEMENT:
+            case END_ELEMENT:
+                return type;
+            case SPACE:
+            case COMMENT:
+            case PROCESSING_INSTRUCTION:
+                continue;
+            case CHARACTERS:
+            case CDATA:
+                if (isWhiteSpace()) {
+                    continue;
+                }
+            }
+            throw new XMLStreamException("Unexpected event type "+type+" when expecting START_ELEMENT or END_ELEMENT");
+        }
+    }
+
+    @Override
+    public NamespaceContext getNonTransientNamespaceContext()
+    {
+        if (_replay != null) {
+            return _replay.snapshotNamespaceContext();
+        }
+        return _source.getNonTransientNamespaceContext();
+    }
+
+    @Override
+    public void close() throws XMLStreamException
+    {
+        _release();
+        _source.close();
+    }
+
+    @Override
+    public void closeCompletely() throws XMLStreamException
+    {
+        _release();
+        _source.closeCompletely();
+    }
+
+    private void _release()
+    {
+        _markOwner = null;
+        _recorded = null;
+        if (_replay != null) {
+            _replay = null;
+            setParent(_source);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package org.codehaus.staxmate.in;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Simple byte-level scanner used by {@link SMRecordProcessor} and
+ * {@link SMAsyncRecordReader} for
+ * locating boundaries of "records" (child elements of the root element)
+ * without parsing the document. It only understands enough of XML
+ * syntax to track element nesting: tags (with quoted attribute values),
+ * comments, processing instructions, CDATA sections and DOCTYPE
+ * declaration; and only works for encodings that are ASCII-compatible
+ * for markup characters (UTF-8, ISO-8859-x, and so on).
+ *<p>
+ * Scanning is incremental, so that content can be fed in arbitrary
+ * segments; all offsets are relative to the buffer caller passes.
+ *
+ * @since 2.4.2
+ */
+final class RecordBoundaryScanner
+{
+    private final static int S_TEXT = 0;
+    private final static int S_LT = 1;
+    private final static int S_PI = 2;
+    private final static int S_BANG = 3;
+    private final static int S_COMMENT_START = 4;
+    private final static int S_COMMENT = 5;
+    private final static int S_CDATA = 6;
+    private final static int S_DOCTYPE = 7;
+    private final static int S_START_TAG = 8;
+    private final static int S_END_TAG = 9;
+
+    /**
+     * Offset of the first byte of the document
+     */
+    private final int _origin;
+
+    private int _state = S_TEXT;
+
+    private int _depth;
+
+    /**
+     * Quote character of the attribute value being scanned, if any
+     */
+    private int _quote;
+
+    /**
+     * Number of consecutive characters that may start a terminator
+     * ('?' for PIs, '-' for comments, ']' for CDATA sections)
+     */
+    private int _repeat;
+
+    private int _bracketDepth;
+
+    private boolean _prevSlash;
+
+    /**
+     * Offset of the '&lt;' that started current markup construct
+     */
+    private int _constructStart;
+
+    // // // Information about prolog and root element
+
+    /**
+     * Offset of the XML declaration, if document has one; -1 if not
+     */
+    int declStart = -1;
+
+    /**
+     * Offset right after the XML declaration, if document has one; -1 if not
+     */
+    int declEnd = -1;
+
+    /**
+     * Offset of the '&lt;' of the root element start tag, if encountered;
+     * -1 if not
+     */
+    int rootStart = -1;
+
+    /**
+     * Offset right after the root element start tag, if encountered;
+     * -1 if not
+     */
+    int rootTagEnd = -1;
+
+    boolean rootClosed;
+
+    public RecordBoundaryScanner(int origin)
+    {
+        _origin = origin;
+    }
+
+    /**
+     * Method for scanning content from <code>ptr</code> up to
+     * <code>end</code> (exclusive), until end of the next record
+     * (child element of root element) is found.
+     *
+     * @return Offset right after the end of the record found; or -1
+     *   if no record ended within scanned content (in which case
+     *   all content was scanned)
+     */
+    public int scan(byte[] buf, int ptr, final int end)
+    {
+        for (; ptr < end; ++ptr) {
+            final int c = buf[ptr];
+            switch (_state) {
+            case S_TEXT:
+                if (c == '<') {
+                    _state = S_LT;
+                    _constructStart = ptr;
+                }
+                break;
+            case S_LT:
+                if (c == '?') {
+                    _state = S_PI;
+                    _repeat = 0;
+                } else if (c == '!') {
+                    _state = S_BANG;
+                } else if (c == '/') {
+                    _state = S_END_TAG;
+                } else {
+                    _state = S_START_TAG;
+                    _quote = 0;
+                    _prevSlash = false;
+                    if (_depth == 0 && rootStart < 0) {
+                        rootStart = _constructStart;
+                    }
+                }
+                break;
+            case S_PI:
+                if (c == '>' && _repeat > 0) {
+                    _state = S_TEXT;
+                    // XML declaration can only be preceded by a BOM
+                    if (rootStart < 0 && declEnd < 0 && (_constructStart - _origin) <= 3) {
+                        declStart = _constructStart;
+                        declEnd = ptr+1;
+                    }
+                }
+                _repeat = (c == '?') ? 1 : 0;
+                break;
+            case S_BANG:
+                if (c == '-') {
+                    _state = S_COMMENT_START;
+                } else if (c == '[') {
+                    _state = S_CDATA;
+                    _repeat = 0;
+                } else {
+                    _state = S_DOCTYPE;
+                    _quote = 0;
+                    _bracketDepth = 0;
+                }
+                break;
+            case S_COMMENT_START:
+                _state = S_COMMENT;
+                _repeat = 0;
+                break;
+            case S_COMMENT:
+                if (c == '>' && _repeat >= 2) {
+                    _state = S_TEXT;
+                }
+                _repeat = (c == '-') ? (_repeat+1) : 0;
+                break;
+            case S_CDATA:
+                if (c == '>' && _repeat >= 2) {
+                    _state = S_TEXT;
+                }
+                _repeat = (c == ']') ? (_repeat+1) : 0;
+                break;
+            case S_DOCTYPE:
+                if (_quote != 0) {
+                    if (c == _quote) {
+                        _quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    _quote = c;
+                } else if (c == '[') {
+                    ++_bracketDepth;
+                } else if (c == ']') {
+                    --_bracketDepth;
+                } else if (c == '>' && _bracketDepth <= 0) {
+                    _state = S_TEXT;
+                }
+                break;
+            case S_START_TAG:
+                if (_quote != 0) {
+                    if (c == _quote) {
+                        _quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    _quote = c;
+                    _prevSlash = false;
+                } else if (c == '>') {
+                    _state = S_TEXT;
+                    if (_depth == 0 && rootTagEnd < 0) {
+                        rootTagEnd = ptr+1;
+                    }
+                    if (_prevSlash) { // empty element
+                        if (_depth == 1) {
+                            return ptr+1;
+                        }
+                        if (_depth == 0) {
+                            rootClosed = true;
+                        }
+                    } else {
+                        ++_depth;
+                    }
+                } else {
+                    _prevSlash = (c == '/');
+                }
+                break;
+            case S_END_TAG:
+                if (c == '>') {
+                    _state = S_TEXT;
+                    if (--_depth == 1) {
+                        return ptr+1;
+                    }
+                    if (_depth == 0) {
+                        rootClosed = true;
+                    }
+                }
+                break;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Method for constructing the beginning of documents that contain
+     * a subset of records: XML declaration (if any) followed by the
+     * root element start tag. Only to be called once root element start
+     * tag has been scanned, with the buffer that contains it.
+     */
+    public byte[] constructChunkPrefix(byte[] doc)
+    {
+        int declLen = (declEnd < 0) ? 0 : (declEnd - declStart);
+        int tagLen = rootTagEnd - rootStart;
+        byte[] result = new byte[declLen + tagLen];
+        if (declLen > 0) {
+            System.arraycopy(doc, declStart, result, 0, declLen);
+        }
+        System.arraycopy(doc, rootStart, result, declLen, tagLen);
+        return result;
+    }
+
+    /**
+     * Method for constructing the end of documents that contain
+     * a subset of records: the root element end tag. Only to be called
+     * once root element start tag has been scanned, with the buffer
+     * that contains it.
+     */
+    public byte[] constructChunkSuffix(byte[] doc)
+    {
+        int nameEnd = rootStart+1;
+        while (nameEnd < rootTagEnd) {
+            byte b = doc[nameEnd];
+            if (b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == '/' || b == '>') {
+                break;
+            }
+            ++nameEnd;
+        }
+        int nameLen = nameEnd - rootStart - 1;
+        byte[] result = new byte[nameLen + 3];
+        result[0] = '<';
+        result[1] = '/';
+        System.arraycopy(doc, rootStart+1, result, 2, nameLen);
+        result[nameLen+2] = '>';
+        return result;
+    }
+
+    /**
+     * Method for verifying that the whole document has been scanned,
+     * once all input has been fed.
+     */
+    public void verifyComplete() throws XMLStreamException
+    {
+        if (rootTagEnd < 0) {
+            throw new XMLStreamException("Unexpected end of input: no root element found");
+        }
+        if (!rootClosed) {
+            throw new XMLStreamException("Unexpected end of input: root element not closed");
+        }
+    }
+
+    /**
+     * Method for verifying that document uses an encoding this scanner
+     * can handle, given (at least) the first two bytes of document.
+     */
+    public static void verifyEncoding(byte[] buf, int ptr, int end)
+    {
+        // UTF-16 and UTF-32 have nulls around ASCII chars, or BOMs starting with 0xFE/0xFF
+        if ((end - ptr) >= 2) {
+            int b0 = buf[ptr] & 0xFF;
+            int b1 = buf[ptr+1] & 0xFF;
+            if (b0 == 0 || b1 == 0 || (b0 == 0xFE && b1 == 0xFF) || (b0 == 0xFF && b1 == 0xFE)) {
+                throw new IllegalArgumentException("Unsupported document encoding: only ASCII-compatible encodings (like UTF-8) can be split into records");
+            }
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package org.codehaus.staxmate.in;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.codehaus.stax2.XMLStreamReader2;
+
+import org.codehaus.staxmate.SMInputFactory;
+
+/**
+ * Non-blocking reader for documents that consist of "records"
+ * (child elements of the root element), for cases where content
+ * arrives in chunks (for example, from a non-blocking socket).
+ * Instead of pulling content from a stream (and blocking until more
+ * is available), caller pushes content using <code>feedInput</code>
+ * methods as it arrives, and iterates over records available using
+ * {@link #nextRecord}, which returns null when more input is needed
+ * (see {@link #needMoreInput}).
+ *<p>
+ * Content is buffered until all records fed so far are complete
+ * (as determined by a fast byte-level scan); complete records are
+ * then parsed (as a document that consists of the XML declaration and
+ * root element start tag of the original document, to retain encoding
+ * and namespace declarations, followed by records), and since all
+ * their content is available, parsing never blocks. Only incomplete
+ * records are buffered, so memory usage is bounded by the record size
+ * and the size of input chunks.
+ *<p>
+ * Limitations: encoding of the document must be ASCII-compatible
+ * (such as UTF-8 or ISO-8859-1); DOCTYPE declarations are not passed
+ * to the parser (so records can not use entities it declares); and
+ * locations reported by record cursors are relative to the parsed
+ * record batch, not the whole document.
+ *<p>
+ * Instances are created using {@link SMInputFactory#asyncRecordReader};
+ * they are not thread-safe, and can only be used for reading
+ * a single document.
+ *
+ * @since 2.4.2
+ */
+public class SMAsyncRecordReader
+{
+    protected final SMInputFactory _inputFactory;
+
+    protected final RecordBoundaryScanner _scanner = new RecordBoundaryScanner(0);
+
+    /**
+     * Content fed so far and not yet parsed (starting at
+     * {@link #_inputStart}); may also contain content of the
+     * record batch being parsed.
+     */
+    protected byte[] _inputBuffer = new byte[4000];
+
+    protected int _inputStart;
+
+    protected int _inputEnd;
+
+    /**
+     * Offset right after the end of the last complete record
+     * (or root element start tag, if no records yet found)
+     * within input buffer; -1 if root element start tag not yet found
+     */
+    protected int _recordsEnd = -1;
+
+    protected boolean _endOfInput;
+
+    protected boolean _finished;
+
+    protected byte[] _prefix, _suffix;
+
+    /**
+     * Stream reader for the record batch being iterated over, if any
+     */
+    protected XMLStreamReader2 _batchReader;
+
+    /**
+     * Cursor for the record batch being iterated over, if any
+     */
+    protected SMInputCursor _batchCursor;
+
+    public SMAsyncRecordReader(SMInputFactory f)
+    {
+        _inputFactory = f;
+    }
+
+    /*
+    /**********************************************************************
+    /* Public API, feeding input
+    /**********************************************************************
+     */
+
+    /**
+     * Method for feeding more content of the document. Content is
+     * copied, so caller can reuse the buffer after the call.
+     *
+     * @throws IllegalStateException If {@link #endOfInput} has been called
+     * @throws IllegalArgumentException If the document does not use
+     *   an ASCII-compatible encoding
+     */
+    public void feedInput(byte[] buf, int offset, int len)
+    {
+        _verifyFeedable();
+        _ensureRoom(len);
+        System.arraycopy(buf, offset, _inputBuffer, _inputEnd, len);
+        _scanInput(len);
+    }
+
+    /**
+     * Method for feeding all remaining content of given buffer; after
+     * the call, buffer will have no content remaining.
+     *
+     * @throws IllegalStateException If {@link #endOfInput} has been called
+     * @throws IllegalArgumentException If the document does not use
+     *   an ASCII-compatible encoding
+     */
+    public void feedInput(ByteBuffer bb)
+    {
+        _verifyFeedable();
+        int len = bb.remaining();
+        _ensureRoom(len);
+        bb.get(_inputBuffer, _inputEnd, len);
+        _scanInput(len);
+    }
+
+    /**
+     * Method to call to indicate that all content has been fed.
+     */
+    public void endOfInput()
+    {
+        _endOfInput = true;
+    }
+
+    /*
+    /**********************************************************************
+    /* Public API, reading records
+    /**********************************************************************
+     */
+
+    /**
+     * Method for advancing to the next record, if one is available.
+     * Cursor returned points to the START_ELEMENT of the record, and is
+     * only valid until the next call to this method.
+     *
+     * @return Cursor that points to the next record, if one is available;
+     *   null if more input is needed (in which case
+     *   {@link #needMoreInput} returns true), or if all records have
+     *   been read (in which case {@link #isFinished} returns true)
+     *
+     * @throws XMLStreamException If content is not well-formed; or,
+     *   after {@link #endOfInput} has been called, if document is
+     *   not complete
+     */
+    public SMInputCursor nextRecord()
+        throws XMLStreamException
+    {
+        while (true) {
+            if (_batchCursor != null) {
+                if (_batchCursor.getNext() != null) {
+                    return _batchCursor;
+                }
+                _closeBatch();
+            }
+            if (_recordsEnd > _inputStart) {
+                _openBatch();
+                continue;
+            }
+            if (_endOfInput && !_finished) {
+                _scanner.verifyComplete();
+                _finished = true;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Method that can be called to check whether more input is needed
+     * before more records can be read.
+     */
+    public boolean needMoreInput()
+    {
+        return !_endOfInput && (_batchCursor == null) && (_recordsEnd <= _inputStart);
+    }
+
+    /**
+     * Method that can be called to check whether all records
+     * have been read.
+     */
+    public boolean isFinished()
+    {
+        return _finished;
+    }
+
+    /**
+     * Method that can be called to release resources (stream reader
+     * of the record batch being read, buffered input), if reading is
+     * to be stopped before all records have been read.
+     */
+    public void close()
+        throws XMLStreamException
+    {
+        _endOfInput = true;
+        _finished = true;
+        if (_batchReader != null) {
+            _closeBatch();
+        }
+        _inputBuffer = null;
+        _recordsEnd = _inputStart = _inputEnd = 0;
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    private void _verifyFeedable()
+    {
+        if (_endOfInput) {
+            throw new IllegalStateException("Can not feed more input: end of input already indicated");
+        }
+    }
+
+    /**
+     * Method that makes sure there is room for given amount of
+     * content at the end of input buffer.
+     */
+    private void _ensureRoom(int len)
+    {
+        if ((_inputBuffer.length - _inputEnd) >= len) {
+            return;
+        }
+        // Prolog is needed until root start tag is complete; and content
+        // being parsed must not be overwritten (but may be left in the old buffer)
+        int keepFrom = (_recordsEnd < 0) ? 0 : _inputStart;
+        int remaining = _inputEnd - keepFrom;
+        byte[] buf = _inputBuffer;
+        if (_batchReader != null || (buf.length - remaining) < len) {
+            buf = new byte[Math.max(buf.length + (buf.length >> 1), remaining + len)];
+        }
+        System.arraycopy(_inputBuffer, keepFrom, buf, 0, remaining);
+        _inputBuffer = buf;
+        _inputStart -= keepFrom;
+        _inputEnd -= keepFrom;
+        // (scanner offsets need no adjustment: only prolog offsets are used)
+        if (_recordsEnd >= 0) {
+            _recordsEnd -= keepFrom;
+        }
+    }
+
+    private void _scanInput(int len)
+    {
+        int ptr = _inputEnd;
+        _inputEnd += len;
+        if (ptr < 2 && _inputEnd >= 2) {
+            RecordBoundaryScanner.verifyEncoding(_inputBuffer, 0, _inputEnd);
+        }
+        while (true) {
+            int recordEnd = _scanner.scan(_inputBuffer, ptr, _inputEnd);
+            if (_recordsEnd < 0 && _scanner.rootTagEnd >= 0) {
+                _prefix = _scanner.constructChunkPrefix(_inputBuffer);
+                _suffix = _scanner.constructChunkSuffix(_inputBuffer);
+                _inputStart = _recordsEnd = _scanner.rootTagEnd;
+            }
+            if (recordEnd < 0) {
+                break;
+            }
+            ptr = _recordsEnd = recordEnd;
+        }
+    }
+
+    private void _openBatch()
+        throws XMLStreamException
+    {
+        InputStream in = new SequenceInputStream(new ByteArrayInputStream(_prefix),
+                new SequenceInputStream(new ByteArrayInputStream(_inputBuffer,
+                        _inputStart, _recordsEnd - _inputStart),
+                        new ByteArrayInputStream(_suffix)));
+        _inputStart = _recordsEnd;
+        _batchReader = _inputFactory.createStax2Reader(in);
+        _batchCursor = SMInputFactory.rootElementCursor(_batchReader).advance().childElementCursor();
+    }
+
+    private void _closeBatch()
+        throws XMLStreamException
+    {
+        _batchCursor = null;
+        XMLStreamReader2 sr = _batchReader;
+        _batchReader = null;
+        sr.closeCompletely();
+    }
+}
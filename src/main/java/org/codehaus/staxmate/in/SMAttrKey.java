@@ -0,0 +1,130 @@
+package org.codehaus.staxmate.in;
+
+import javax.xml.namespace.QName;
+
+import org.codehaus.stax2.XMLStreamReader2;
+
+/**
+ * Precompiled handle for accessing an attribute by name, using methods
+ * like {@link SMInputCursor#getAttrValue(SMAttrKey)}. Names are interned
+ * when key is constructed, so that they can be compared by identity
+ * if the stream reader interns names; and each key remembers index
+ * at which attribute was last found, and verifies name at that index
+ * before doing a full lookup. For elements that have attributes in
+ * fixed order (which is common for repeated sibling elements), most
+ * lookups need no searching.
+ *<p>
+ * Keys are meant to be constructed once and stored (in static
+ * fields, for example): they can be shared between cursors and threads,
+ * since cached index is only used as a hint that is always verified.
+ *
+ * @since 2.4.2
+ */
+public final class SMAttrKey
+{
+    /**
+     * Interned namespace URI of the attribute; empty String for
+     * "no namespace"
+     */
+    final String _nsURI;
+
+    /**
+     * Interned local name of the attribute
+     */
+    final String _localName;
+
+    /**
+     * Index at which attribute was last found. Not volatile since it is
+     * only used as a hint: if another thread updates it, worst case is an
+     * extra full lookup.
+     */
+    int _lastIndex;
+
+    /**
+     * Constructor for a key for attribute that does not belong
+     * to a namespace
+     */
+    public SMAttrKey(String localName)
+    {
+        this(null, localName);
+    }
+
+    /**
+     * @param nsURI Namespace URI of the attribute; null or empty
+     *   String for "no namespace"
+     * @param localName Local name of the attribute
+     */
+    public SMAttrKey(String nsURI, String localName)
+    {
+        if (localName == null) {
+            throw new IllegalArgumentException("Attribute local name can not be null");
+        }
+        _nsURI = (nsURI == null) ? "" : nsURI.intern();
+        _localName = localName.intern();
+    }
+
+    public SMAttrKey(QName name)
+    {
+        this(name.getNamespaceURI(), name.getLocalPart());
+    }
+
+    /*
+    /**********************************************************************
+    /* Public API
+    /**********************************************************************
+     */
+
+    /**
+     * @return Namespace URI of the attribute; empty String if attribute
+     *   does not belong to a namespace
+     */
+    public String getNamespaceURI() { return _nsURI; }
+
+    public String getLocalName() { return _localName; }
+
+    @Override
+    public String toString()
+    {
+        if (_nsURI.length() == 0) {
+            return _localName;
+        }
+        return "{"+_nsURI+"}"+_localName;
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    /**
+     * Method for finding index of the attribute this key refers to,
+     * for the START_ELEMENT given stream reader points to.
+     *
+     * @return Index of the attribute, if element has it; -1 if not
+     */
+    int findIndex(XMLStreamReader2 sr, SMInputContext ctxt)
+    {
+        // First things first: is it where it was last time?
+        int ix = _lastIndex;
+        if (ix < sr.getAttributeCount()) {
+            String ln = sr.getAttributeLocalName(ix);
+            if (ln == _localName || (!ctxt._internNames && _localName.equals(ln))) {
+                String uri = sr.getAttributeNamespace(ix);
+                if (uri == null || uri.length() == 0) {
+                    if (_nsURI.length() == 0) {
+                        return ix;
+                    }
+                } else if (uri == _nsURI || (!ctxt._internNsUris && uri.equals(_nsURI))) {
+                    return ix;
+                }
+            }
+        }
+        // If not, need to do full lookup
+        ix = sr.getAttributeIndex(_nsURI, _localName);
+        if (ix >= 0) {
+            _lastIndex = ix;
+        }
+        return ix;
+    }
+}
@@ -0,0 +1,710 @@
+package org.codehaus.staxmate.in;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+
+import org.codehaus.stax2.XMLStreamReader2;
+
+/**
+ * Compact, immutable tree representation of an XML element sub-tree,
+ * meant as a light-weight alternative to DOM for read-only access
+ * (such as lookups of configuration settings or catalog entries).
+ * Memory usage is a small fraction of that of DOM trees, which makes
+ * it possible to keep large numbers of (small) documents in memory.
+ *<p>
+ * Nodes are identified by int ids (root element having id 0, other nodes
+ * numbered in document order) and stored in parallel int arrays
+ * (parent, first child, next sibling, name, text); all textual content
+ * (text and attribute values) in a single char array; and names in
+ * a {@link SMNameTable}, which can be shared by any number of trees.
+ * Only elements, attributes and text are retained: comments, processing
+ * instructions and namespace declarations are dropped, and adjacent
+ * text (including CDATA sections) is combined into a single text node.
+ *<p>
+ * Navigation is done using node ids, with accessors named like those of
+ * {@link SMInputCursor}; for example:
+ *<pre>
+ *  SMCompactTree tree = SMCompactTree.build(crsr);
+ *  for (int n = tree.getFirstChildElement(tree.getRoot()); n != SMCompactTree.NO_NODE;
+ *       n = tree.getNextSiblingElement(n)) {
+ *      String id = tree.getAttrValue(n, "id");
+ *      String value = tree.getElemStringValue(n);
+ *  }
+ *</pre>
+ * Instances can be accessed concurrently.
+ *
+ * @since 2.4.2
+ */
+public final class SMCompactTree
+{
+    /**
+     * Node id returned by navigation methods to indicate that there
+     * is no such node
+     */
+    public final static int NO_NODE = -1;
+
+    /**
+     * Name id used for text nodes
+     */
+    final static int TEXT_NODE = -1;
+
+    private final SMNameTable _nameTable;
+
+    private final int _nodeCount;
+
+    private final int[] _parents;
+
+    private final int[] _firstChildren;
+
+    private final int[] _nextSiblings;
+
+    /**
+     * Name ids of element nodes; {@link #TEXT_NODE} for text nodes
+     */
+    private final int[] _names;
+
+    /**
+     * For text nodes, index of the text segment; for elements, offset
+     * of attribute entry in {@link #_attrs}, or -1 if element has no
+     * attributes
+     */
+    private final int[] _data;
+
+    /**
+     * Attribute entries: attribute count, followed by name id and
+     * value segment index of each attribute
+     */
+    private final int[] _attrs;
+
+    /**
+     * Start offsets of text segments within {@link #_chars}; has one more
+     * entry than there are segments, for the end of the last segment
+     */
+    private final int[] _segments;
+
+    private final char[] _chars;
+
+    private SMCompactTree(Builder b)
+    {
+        _nameTable = b._nameTable;
+        int count = b._nodeCount;
+        _nodeCount = count;
+        _parents = Arrays.copyOf(b._parents, count);
+        _firstChildren = Arrays.copyOf(b._firstChildren, count);
+        _nextSiblings = Arrays.copyOf(b._nextSiblings, count);
+        _names = Arrays.copyOf(b._names, count);
+        _data = Arrays.copyOf(b._data, count);
+        _attrs = Arrays.copyOf(b._attrs, b._attrsLength);
+        _segments = Arrays.copyOf(b._segments, b._segmentCount+1);
+        _segments[b._segmentCount] = b._charCount;
+        _chars = Arrays.copyOf(b._chars, b._charCount);
+    }
+
+    /*
+    /**********************************************************************
+    /* Construction
+    /**********************************************************************
+     */
+
+    /**
+     * Method for building a tree out of the sub-tree of START_ELEMENT
+     * given cursor points to, using a new name table, and retaining
+     * all text.
+     * After the call, cursor will point to the END_ELEMENT matching
+     * the START_ELEMENT.
+     */
+    public static SMCompactTree build(SMInputCursor crsr)
+        throws XMLStreamException
+    {
+        return build(crsr, new SMNameTable(), false);
+    }
+
+    /**
+     * Method for building a tree out of the sub-tree of START_ELEMENT
+     * given cursor points to.
+     * After the call, cursor will point to the END_ELEMENT matching
+     * the START_ELEMENT.
+     *
+     * @param nameTable Table for storing element and attribute names;
+     *   usually shared by trees built out of similar documents
+     * @param ignoreWs Whether text nodes that consist only of white space
+     *   are to be dropped (which is usually the case for element-only
+     *   content, like indentation)
+     */
+    public static SMCompactTree build(SMInputCursor crsr, SMNameTable nameTable, boolean ignoreWs)
+        throws XMLStreamException
+    {
+        if (crsr.getCurrEvent() != SMEvent.START_ELEMENT || !crsr.readerAccessible()) {
+            throw crsr.constructStreamException("Can not build compact tree: cursor does not point to START_ELEMENT");
+        }
+        SMCompactTree tree = new Builder(nameTable, ignoreWs).build(crsr.getStreamReader());
+        crsr.markSubtreeConsumed();
+        return tree;
+    }
+
+    /*
+    /**********************************************************************
+    /* Public API, tree information
+    /**********************************************************************
+     */
+
+    public SMNameTable getNameTable() { return _nameTable; }
+
+    /**
+     * @return Number of nodes (elements and text nodes) in the tree
+     */
+    public int getNodeCount() { return _nodeCount; }
+
+    /**
+     * @return Id of the root element
+     */
+    public int getRoot() { return 0; }
+
+    /*
+    /**********************************************************************
+    /* Public API, navigation
+    /**********************************************************************
+     */
+
+    /**
+     * @return Id of the parent element of given node; {@link #NO_NODE}
+     *   for the root element
+     */
+    public int getParent(int node) {
+        return _parents[node];
+    }
+
+    /**
+     * @return Id of the first child node (element or text) of given node,
+     *   if any; {@link #NO_NODE} if none
+     */
+    public int getFirstChild(int node) {
+        return _firstChildren[node];
+    }
+
+    /**
+     * @return Id of the next sibling node (element or text) of given node,
+     *   if any; {@link #NO_NODE} if none
+     */
+    public int getNextSibling(int node) {
+        return _nextSiblings[node];
+    }
+
+    /**
+     * @return Id of the first child element of given node, if any;
+     *   {@link #NO_NODE} if none
+     */
+    public int getFirstChildElement(int node) {
+        return _skipText(_firstChildren[node]);
+    }
+
+    /**
+     * @return Id of the next sibling element of given node, if any;
+     *   {@link #NO_NODE} if none
+     */
+    public int getNextSiblingElement(int node) {
+        return _skipText(_nextSiblings[node]);
+    }
+
+    /**
+     * Method for finding the first child element of given node with
+     * given local name (regardless of its namespace).
+     *
+     * @return Id of the element, if found; {@link #NO_NODE} if not
+     */
+    public int findChildElement(int node, String localName)
+    {
+        for (int n = getFirstChildElement(node); n != NO_NODE; n = getNextSiblingElement(n)) {
+            if (_nameTable.getName(_names[n]).getLocalPart().equals(localName)) {
+                return n;
+            }
+        }
+        return NO_NODE;
+    }
+
+    /**
+     * Method for finding the first child element of given node with
+     * given qualified name.
+     *
+     * @return Id of the element, if found; {@link #NO_NODE} if not
+     */
+    public int findChildElement(int node, QName name)
+    {
+        int id = _nameTable.findId(name);
+        if (id >= 0) {
+            for (int n = getFirstChildElement(node); n != NO_NODE; n = getNextSiblingElement(n)) {
+                if (_names[n] == id) {
+                    return n;
+                }
+            }
+        }
+        return NO_NODE;
+    }
+
+    /*
+    /**********************************************************************
+    /* Public API, node names and text
+    /**********************************************************************
+     */
+
+    public boolean isElement(int node) {
+        return _names[node] != TEXT_NODE;
+    }
+
+    /**
+     * @return Id of the name of given element (within {@link #getNameTable});
+     *   -1 for text nodes
+     */
+    public int getNameId(int node) {
+        return _names[node];
+    }
+
+    /**
+     * @throws IllegalArgumentException If node is not an element
+     */
+    public QName getQName(int node) {
+        return _nameTable.getName(_elementName(node));
+    }
+
+    /**
+     * @throws IllegalArgumentException If node is not an element
+     */
+    public String getLocalName(int node) {
+        return getQName(node).getLocalPart();
+    }
+
+    /**
+     * @return Namespace URI of given element; empty String if element
+     *   does not belong to a namespace
+     *
+     * @throws IllegalArgumentException If node is not an element
+     */
+    public String getNsUri(int node) {
+        return getQName(node).getNamespaceURI();
+    }
+
+    /**
+     * @return Text of given text node
+     *
+     * @throws IllegalArgumentException If node is not a text node
+     */
+    public String getText(int node)
+    {
+        if (_names[node] != TEXT_NODE) {
+            throw new IllegalArgumentException("Node "+node+" is not a text node");
+        }
+        return _segment(_data[node]);
+    }
+
+    /**
+     * Method for accessing all text <b>directly</b> contained within
+     * given element: text of child elements is not included.
+     *
+     * @return Text directly contained in the element; empty String
+     *   if none
+     */
+    public String getElemStringValue(int node)
+    {
+        _elementName(node);
+        String text = null;
+        StringBuilder sb = null;
+        for (int n = _firstChildren[node]; n != NO_NODE; n = _nextSiblings[n]) {
+            if (_names[n] == TEXT_NODE) {
+                if (text == null) {
+                    text = _segment(_data[n]);
+                } else {
+                    if (sb == null) {
+                        sb = new StringBuilder(text);
+                    }
+                    _appendSegment(sb, _data[n]);
+                }
+            }
+        }
+        if (sb != null) {
+            return sb.toString();
+        }
+        return (text == null) ? "" : text;
+    }
+
+    /**
+     * Method for accessing all text contained within given element,
+     * including that of its descendant elements.
+     */
+    public String collectDescendantText(int node)
+    {
+        _elementName(node);
+        StringBuilder sb = new StringBuilder();
+        // nodes are in document order, so descendants are contiguous
+        for (int n = node+1, end = _subtreeEnd(node); n < end; ++n) {
+            if (_names[n] == TEXT_NODE) {
+                _appendSegment(sb, _data[n]);
+            }
+        }
+        return sb.toString();
+    }
+
+    /*
+    /**********************************************************************
+    /* Public API, attributes
+    /**********************************************************************
+     */
+
+    /**
+     * @return Number of attributes of given node; 0 for text nodes
+     */
+    public int getAttrCount(int node)
+    {
+        int ix = (_names[node] == TEXT_NODE) ? -1 : _data[node];
+        return (ix < 0) ? 0 : _attrs[ix];
+    }
+
+    public QName getAttrName(int node, int index) {
+        return _nameTable.getName(_attrs[_attrOffset(node, index)]);
+    }
+
+    public String getAttrLocalName(int node, int index) {
+        return getAttrName(node, index).getLocalPart();
+    }
+
+    public String getAttrValue(int node, int index) {
+        return _segment(_attrs[_attrOffset(node, index)+1]);
+    }
+
+    /**
+     * Method for finding index of attribute with given name
+     * (within attributes of given node).
+     *
+     * @param nsURI Namespace URI of the attribute; null or empty String
+     *   for attributes that do not belong to a namespace
+     *
+     * @return Index of the attribute, if node has one; -1 if not
+     */
+    public int findAttrIndex(int node, String nsURI, String localName)
+    {
+        if (nsURI == null) {
+            nsURI = "";
+        }
+        for (int i = 0, len = getAttrCount(node); i < len; ++i) {
+            QName name = getAttrName(node, i);
+            if (name.getLocalPart().equals(localName) && name.getNamespaceURI().equals(nsURI)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Convenience accessor for value of attribute that does not
+     * belong to a namespace.
+     *
+     * @return Value of the attribute, if node has one; null if not
+     */
+    public String getAttrValue(int node, String localName) {
+        return getAttrValue(node, null, localName);
+    }
+
+    /**
+     * @return Value of the attribute, if node has one; null if not
+     */
+    public String getAttrValue(int node, String nsURI, String localName)
+    {
+        int ix = findAttrIndex(node, nsURI, localName);
+        return (ix < 0) ? null : getAttrValue(node, ix);
+    }
+
+    @Override
+    public String toString() {
+        return "[SMCompactTree: "+_nodeCount+" nodes, root <"+getQName(0)+">]";
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    private int _skipText(int node)
+    {
+        while (node != NO_NODE && _names[node] == TEXT_NODE) {
+            node = _nextSiblings[node];
+        }
+        return node;
+    }
+
+    private int _elementName(int node)
+    {
+        int id = _names[node];
+        if (id == TEXT_NODE) {
+            throw new IllegalArgumentException("Node "+node+" is not an element");
+        }
+        return id;
+    }
+
+    private int _attrOffset(int node, int index)
+    {
+        if (index < 0 || index >= getAttrCount(node)) {
+            throw new IllegalArgumentException("Invalid attribute index "+index+" for node "+node
+                    +" (has "+getAttrCount(node)+" attributes)");
+        }
+        return _data[node] + 1 + (index << 1);
+    }
+
+    /**
+     * @return Id following the last descendant of given node
+     */
+    private int _subtreeEnd(int node)
+    {
+        for (; node != NO_NODE; node = _parents[node]) {
+            int next = _nextSiblings[node];
+            if (next != NO_NODE) {
+                return next;
+            }
+        }
+        return _nodeCount;
+    }
+
+    private String _segment(int segment)
+    {
+        int start = _segments[segment];
+        return new String(_chars, start, _segments[segment+1] - start);
+    }
+
+    private void _appendSegment(StringBuilder sb, int segment)
+    {
+        int start = _segments[segment];
+        sb.append(_chars, start, _segments[segment+1] - start);
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    /**
+     * Helper class that reads events of a sub-tree from a stream reader
+     * into growable arrays
+     */
+    private final static class Builder
+    {
+        final SMNameTable _nameTable;
+
+        final boolean _ignoreWs;
+
+        /**
+         * Ids of names seen so far; to reduce access to (synchronized)
+         * name table
+         */
+        final HashMap<QName,Integer> _nameIds = new HashMap<QName,Integer>();
+
+        int _nodeCount;
+        int[] _parents = new int[32];
+        int[] _firstChildren = new int[32];
+        int[] _nextSiblings = new int[32];
+        int[] _names = new int[32];
+        int[] _data = new int[32];
+
+        int[] _attrs = new int[32];
+        int _attrsLength;
+
+        int[] _segments = new int[32];
+        int _segmentCount;
+
+        char[] _chars = new char[256];
+        int _charCount;
+
+        /**
+         * Ids of currently open elements
+         */
+        int[] _openElements = new int[16];
+
+        /**
+         * Ids of the last child nodes of currently open elements
+         */
+        int[] _lastChildren = new int[16];
+
+        int _depth;
+
+        /**
+         * Offset of the first character of text not yet added as a node;
+         * -1 if none
+         */
+        int _textStart = -1;
+
+        Builder(SMNameTable nameTable, boolean ignoreWs)
+        {
+            _nameTable = nameTable;
+            _ignoreWs = ignoreWs;
+        }
+
+        SMCompactTree build(XMLStreamReader2 sr)
+            throws XMLStreamException
+        {
+            int type = XMLStreamConstants.START_ELEMENT;
+            while (true) {
+                switch (type) {
+                case XMLStreamConstants.START_ELEMENT:
+                    _flushText();
+                    _startElement(sr);
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    _flushText();
+                    if (--_depth == 0) {
+                        return new SMCompactTree(this);
+                    }
+                    break;
+                case XMLStreamConstants.SPACE:
+                    if (_ignoreWs) {
+                        break;
+                    }
+                    // fall through
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                    _appendText(sr.getTextCharacters(), sr.getTextStart(), sr.getTextLength());
+                    break;
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    {
+                        String text = sr.getText();
+                        if (text != null) {
+                            _appendText(text.toCharArray(), 0, text.length());
+                        }
+                    }
+                    break;
+                default: // comments, processing instructions are dropped
+                }
+                type = sr.next();
+            }
+        }
+
+        private void _startElement(XMLStreamReader2 sr)
+        {
+            int node = _addNode(_nameId(sr.getName()));
+            int attrCount = sr.getAttributeCount();
+            if (attrCount > 0) {
+                int ix = _attrsLength;
+                int end = ix + 1 + (attrCount << 1);
+                if (end > _attrs.length) {
+                    _attrs = Arrays.copyOf(_attrs, Math.max(end, _attrs.length << 1));
+                }
+                _data[node] = ix;
+                _attrs[ix++] = attrCount;
+                for (int i = 0; i < attrCount; ++i) {
+                    _attrs[ix++] = _nameId(sr.getAttributeName(i));
+                    int start = _charCount;
+                    String value = sr.getAttributeValue(i);
+                    _appendText(value.toCharArray(), 0, value.length());
+                    _attrs[ix++] = _addSegment(start);
+                }
+                _attrsLength = end;
+            }
+            if (_depth == _openElements.length) {
+                _openElements = Arrays.copyOf(_openElements, _depth << 1);
+                _lastChildren = Arrays.copyOf(_lastChildren, _depth << 1);
+            }
+            _openElements[_depth] = node;
+            _lastChildren[_depth] = NO_NODE;
+            ++_depth;
+        }
+
+        private int _addNode(int nameId)
+        {
+            int node = _nodeCount;
+            if (node == _parents.length) {
+                int newSize = node << 1;
+                _parents = Arrays.copyOf(_parents, newSize);
+                _firstChildren = Arrays.copyOf(_firstChildren, newSize);
+                _nextSiblings = Arrays.copyOf(_nextSiblings, newSize);
+                _names = Arrays.copyOf(_names, newSize);
+                _data = Arrays.copyOf(_data, newSize);
+            }
+            ++_nodeCount;
+            _names[node] = nameId;
+            _firstChildren[node] = NO_NODE;
+            _nextSiblings[node] = NO_NODE;
+            _data[node] = -1;
+            if (_depth == 0) { // root
+                _parents[node] = NO_NODE;
+            } else {
+                int level = _depth-1;
+                int parent = _openElements[level];
+                _parents[node] = parent;
+                int prev = _lastChildren[level];
+                if (prev == NO_NODE) {
+                    _firstChildren[parent] = node;
+                } else {
+                    _nextSiblings[prev] = node;
+                }
+                _lastChildren[level] = node;
+            }
+            return node;
+        }
+
+        private int _nameId(QName name)
+        {
+            Integer id = _nameIds.get(name);
+            if (id == null) {
+                id = Integer.valueOf(_nameTable.getId(name));
+                _nameIds.put(name, id);
+            }
+            return id.intValue();
+        }
+
+        private void _appendText(char[] buf, int offset, int len)
+        {
+            if (_textStart < 0) {
+                _textStart = _charCount;
+            }
+            int end = _charCount + len;
+            if (end > _chars.length) {
+                _chars = Arrays.copyOf(_chars, Math.max(end, _chars.length << 1));
+            }
+            System.arraycopy(buf, offset, _chars, _charCount, len);
+            _charCount = end;
+        }
+
+        /**
+         * Method called before adding an element, or closing one, to add
+         * a text node for preceding text, if any.
+         */
+        private void _flushText()
+        {
+            int start = _textStart;
+            if (start < 0) {
+                return;
+            }
+            _textStart = -1;
+            if (_ignoreWs && _isAllWhitespace(start, _charCount)) {
+                _charCount = start;
+                return;
+            }
+            int node = _addNode(TEXT_NODE);
+            _data[node] = _addSegment(start);
+        }
+
+        private int _addSegment(int start)
+        {
+            // one extra slot is needed for the end marker
+            if (_segmentCount+1 >= _segments.length) {
+                _segments = Arrays.copyOf(_segments, _segments.length << 1);
+            }
+            _segments[_segmentCount] = start;
+            // attribute values are complete when added; text may not be
+            _textStart = -1;
+            return _segmentCount++;
+        }
+
+        private boolean _isAllWhitespace(int start, int end)
+        {
+            for (int i = start; i < end; ++i) {
+                if (_chars[i] > ' ') {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
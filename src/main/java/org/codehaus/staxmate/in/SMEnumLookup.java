@@ -0,0 +1,265 @@
+package org.codehaus.staxmate.in;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lookup table used for efficiently converting textual values
+ * into values of an Enum type; used by {@link SMInputCursor}
+ * accessors like {@link SMInputCursor#getAttrEnumValue(int, SMEnumLookup, Enum)}
+ * and {@link SMInputCursor#getElemEnumValue(SMEnumLookup, Enum)}.
+ * Values can be looked up directly from character buffers, without
+ * constructing Strings; leading and trailing white space is ignored.
+ * Misses are indicated by returning null, instead of throwing exceptions.
+ *<p>
+ * By default, values match {@link Enum#name} of Enum values exactly;
+ * lookups can also be case-insensitive, and aliases can be added using
+ * {@link #withAlias}. Default instances (without aliases) are
+ * cached per Enum type, so {@link #forType} is cheap to call; instances
+ * with aliases should be constructed once and shared.
+ * Instances are immutable and thread-safe.
+ *
+ * @since 2.4.2
+ */
+public final class SMEnumLookup<T extends Enum<T>>
+{
+    private final static ConcurrentHashMap<Class<?>,SMEnumLookup<?>> _exactLookups
+        = new ConcurrentHashMap<Class<?>,SMEnumLookup<?>>();
+
+    private final static ConcurrentHashMap<Class<?>,SMEnumLookup<?>> _caseInsensitiveLookups
+        = new ConcurrentHashMap<Class<?>,SMEnumLookup<?>>();
+
+    private final Class<T> _type;
+
+    private final boolean _caseInsensitive;
+
+    /**
+     * All textual representations, with values they map to; used
+     * for constructing variants with aliases
+     */
+    private final Map<String,T> _entries;
+
+    /**
+     * Hash area for keys (lower-cased for case-insensitive lookups);
+     * uses linear probing
+     */
+    private final char[][] _keys;
+
+    private final Object[] _values;
+
+    private final int _mask;
+
+    private SMEnumLookup(Class<T> type, boolean caseInsensitive, Map<String,T> entries)
+    {
+        _type = type;
+        _caseInsensitive = caseInsensitive;
+        _entries = entries;
+        int size = 8;
+        while (size < (entries.size() << 1)) {
+            size += size;
+        }
+        _keys = new char[size][];
+        _values = new Object[size];
+        _mask = size-1;
+        for (Map.Entry<String,T> en : entries.entrySet()) {
+            char[] key = en.getKey().toCharArray();
+            if (caseInsensitive) {
+                for (int i = 0; i < key.length; ++i) {
+                    key[i] = Character.toLowerCase(key[i]);
+                }
+            }
+            int ix = _hash(key, 0, key.length) & _mask;
+            while (_keys[ix] != null) {
+                if (_matches(_keys[ix], key, 0, key.length)) {
+                    if (_values[ix] != en.getValue()) {
+                        throw new IllegalArgumentException("Ambiguous enumeration value '"+en.getKey()
+                                +"' for "+type.getName()+": matches both "+_values[ix]+" and "+en.getValue());
+                    }
+                    break;
+                }
+                ix = (ix + 1) & _mask;
+            }
+            _keys[ix] = key;
+            _values[ix] = en.getValue();
+        }
+    }
+
+    /**
+     * Factory method for accessing (shared) lookup for given Enum type,
+     * that only accepts exact names of values.
+     */
+    public static <T extends Enum<T>> SMEnumLookup<T> forType(Class<T> type)
+    {
+        return forType(type, false);
+    }
+
+    /**
+     * Factory method for accessing (shared) lookup for given Enum type,
+     * that accepts names of values either exactly, or regardless of case.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Enum<T>> SMEnumLookup<T> forType(Class<T> type, boolean caseInsensitive)
+    {
+        ConcurrentHashMap<Class<?>,SMEnumLookup<?>> cache = caseInsensitive
+            ? _caseInsensitiveLookups : _exactLookups;
+        SMEnumLookup<T> lookup = (SMEnumLookup<T>) cache.get(type);
+        if (lookup == null) {
+            Map<String,T> entries = new LinkedHashMap<String,T>();
+            for (T value : type.getEnumConstants()) {
+                entries.put(value.name(), value);
+            }
+            // May get constructed more than once concurrently; no harm done
+            lookup = new SMEnumLookup<T>(type, caseInsensitive, entries);
+            cache.put(type, lookup);
+        }
+        return lookup;
+    }
+
+    /**
+     * Method for constructing a lookup that also maps given alias
+     * to given value (with same case-sensitivity as this lookup).
+     *
+     * @throws IllegalArgumentException If alias already maps to
+     *   a different value
+     */
+    public SMEnumLookup<T> withAlias(String alias, T value)
+    {
+        String key = alias.trim();
+        if (key.length() == 0) {
+            throw new IllegalArgumentException("Alias can not be empty");
+        }
+        T old = _entries.get(key);
+        if (old != null && old != value) {
+            throw new IllegalArgumentException("Ambiguous enumeration value '"+key
+                    +"' for "+_type.getName()+": matches both "+old+" and "+value);
+        }
+        Map<String,T> entries = new LinkedHashMap<String,T>(_entries);
+        entries.put(key, value);
+        return new SMEnumLookup<T>(_type, _caseInsensitive, entries);
+    }
+
+    public Class<T> getEnumType() { return _type; }
+
+    public boolean isCaseInsensitive() { return _caseInsensitive; }
+
+    /*
+    /**********************************************************************
+    /* Lookup methods
+    /**********************************************************************
+     */
+
+    /**
+     * @return Value that given text maps to (ignoring leading and trailing
+     *   white space), if any; null if none
+     */
+    @SuppressWarnings("unchecked")
+    public T find(char[] buffer, int offset, int len)
+    {
+        int end = offset+len;
+        while (offset < end && buffer[offset] <= ' ') {
+            ++offset;
+        }
+        while (end > offset && buffer[end-1] <= ' ') {
+            --end;
+        }
+        if (offset == end) {
+            return null;
+        }
+        final char[][] keys = _keys;
+        int ix = _hash(buffer, offset, end) & _mask;
+        char[] key;
+        while ((key = keys[ix]) != null) {
+            if (_matches(key, buffer, offset, end)) {
+                return (T) _values[ix];
+            }
+            ix = (ix + 1) & _mask;
+        }
+        return null;
+    }
+
+    /**
+     * @return Value that given text maps to (ignoring leading and trailing
+     *   white space), if any; null if none
+     */
+    @SuppressWarnings("unchecked")
+    public T find(String text)
+    {
+        int offset = 0;
+        int end = text.length();
+        while (offset < end && text.charAt(offset) <= ' ') {
+            ++offset;
+        }
+        while (end > offset && text.charAt(end-1) <= ' ') {
+            --end;
+        }
+        if (offset == end) {
+            return null;
+        }
+        int hash = 0;
+        for (int i = offset; i < end; ++i) {
+            char c = text.charAt(i);
+            hash = (hash * 31) + (_caseInsensitive ? Character.toLowerCase(c) : c);
+        }
+        final char[][] keys = _keys;
+        int ix = hash & _mask;
+        char[] key;
+        main_loop:
+        while ((key = keys[ix]) != null) {
+            if (key.length == (end - offset)) {
+                for (int i = 0; i < key.length; ++i) {
+                    char c = text.charAt(offset+i);
+                    if (_caseInsensitive) {
+                        c = Character.toLowerCase(c);
+                    }
+                    if (c != key[i]) {
+                        ix = (ix + 1) & _mask;
+                        continue main_loop;
+                    }
+                }
+                return (T) _values[ix];
+            }
+            ix = (ix + 1) & _mask;
+        }
+        return null;
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    private int _hash(char[] buffer, int offset, int end)
+    {
+        int hash = 0;
+        for (; offset < end; ++offset) {
+            char c = buffer[offset];
+            hash = (hash * 31) + (_caseInsensitive ? Character.toLowerCase(c) : c);
+        }
+        return hash;
+    }
+
+    private boolean _matches(char[] key, char[] buffer, int offset, int end)
+    {
+        if (key.length != (end - offset)) {
+            return false;
+        }
+        for (int i = 0; i < key.length; ++i) {
+            char c = buffer[offset+i];
+            if (_caseInsensitive) {
+                c = Character.toLowerCase(c);
+            }
+            if (c != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "[SMEnumLookup for "+_type.getName()+", case-insensitive: "+_caseInsensitive+"]";
+    }
+}
@@ -0,0 +1,916 @@
+package org.codehaus.staxmate.in;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.codehaus.stax2.XMLStreamReader2;
+import org.codehaus.stax2.ri.Stax2ReaderAdapter;
+
+import org.codehaus.staxmate.SMInputFactory;
+
+/**
+ * Compact, array-backed store for events of an XML sub-tree
+ * (an element and all its contents), constructed using
+ * {@link SMInputCursor#bufferSubtree}; or of a whole document,
+ * constructed using {@link #bufferDocument}. Contents can be read any number
+ * of times, using cursors constructed with {@link #rootElementCursor}
+ * (or stream readers constructed with {@link #createStreamReader}),
+ * which makes buffers useful for "look-ahead" processing, without
+ * overhead of building a DOM tree.
+ *<p>
+ * Buffers can also be written out in a compact binary format (see
+ * {@link #writeTo}) and read back (see {@link #readFrom}), which is
+ * useful for caching documents that are read repeatedly: reading
+ * binary format is much faster than parsing XML.
+ *<p>
+ * Events are stored as fixed-size entries of an int array; all
+ * textual content in a single char array; and names in a symbol
+ * table, so that each distinct name is only stored once.
+ * Namespace declarations that are in scope for the root element
+ * are retained as well.
+ *<p>
+ * Instances are immutable once constructed, and can be read concurrently.
+ *
+ * @since 2.4.2
+ */
+public final class SMEventBuffer
+{
+    /**
+     * Number of ints used for each event:
+     *<ul>
+     * <li>START_ELEMENT, END_ELEMENT: type, name index, index of the first
+     *   attribute, index of the first namespace declaration, and counts of
+     *   attributes (upper 16 bits) and namespace declarations (lower 16 bits)
+     *  </li>
+     * <li>Textual events: type, text offset, text length</li>
+     * <li>PROCESSING_INSTRUCTION, ENTITY_REFERENCE: type, offset and length
+     *   of target (name); offset and length of data (text)</li>
+     *</ul>
+     */
+    final static int EVENT_SIZE = 5;
+
+    /**
+     * Number of ints used for each attribute: name index, value offset,
+     * value length
+     */
+    final static int ATTR_SIZE = 3;
+
+    /**
+     * Maximum number of attributes, and of namespace declarations, a
+     * single element may have, since both counts are packed into a
+     * single int of an event entry
+     */
+    final static int MAX_PACKED_COUNT = 0xFFFF;
+
+    final int[] _events;
+
+    final int _eventCount;
+
+    final QName[] _names;
+
+    /**
+     * Namespace declarations, as pairs of prefix ("" for the default
+     * namespace) and URI
+     */
+    final String[] _nsDecls;
+
+    final int[] _attrs;
+
+    final char[] _text;
+
+    /**
+     * Namespace bindings in scope for the root element; null if not known.
+     */
+    final NamespaceContext _rootNsContext;
+
+    /**
+     * Identifier written at the beginning of binary serialization
+     */
+    private final static byte[] BINARY_HEADER = new byte[] { 'S', 'M', 'E', 'B' };
+
+    private final static int BINARY_VERSION = 1;
+
+    private SMEventBuffer(int[] events, int eventCount, QName[] names, String[] nsDecls,
+            int[] attrs, char[] text, NamespaceContext rootNsContext)
+    {
+        _events = events;
+        _eventCount = eventCount;
+        _names = names;
+        _nsDecls = nsDecls;
+        _attrs = attrs;
+        _text = text;
+        _rootNsContext = rootNsContext;
+    }
+
+    private SMEventBuffer(Builder b)
+    {
+        _events = Arrays.copyOf(b._events, b._eventCount * EVENT_SIZE);
+        _eventCount = b._eventCount;
+        _names = Arrays.copyOf(b._names, b._nameCount);
+        _nsDecls = Arrays.copyOf(b._nsDecls, b._nsDeclCount * 2);
+        _attrs = Arrays.copyOf(b._attrs, b._attrCount * ATTR_SIZE);
+        _text = Arrays.copyOf(b._text, b._textLength);
+        _rootNsContext = b._rootNsContext;
+    }
+
+    /**
+     * Method for constructing a buffer from the sub-tree of the
+     * START_ELEMENT given stream reader points to. After the call,
+     * stream reader points to the matching END_ELEMENT.
+     */
+    static SMEventBuffer construct(XMLStreamReader2 sr)
+        throws XMLStreamException
+    {
+        if (sr.getEventType() != XMLStreamConstants.START_ELEMENT) {
+            throw new IllegalStateException("Stream reader not positioned at START_ELEMENT");
+        }
+        Builder b = new Builder(sr.getNonTransientNamespaceContext());
+        while (true) {
+            b.append(sr);
+            if (b.depth() == 0) {
+                return b.build();
+            }
+            sr.next();
+        }
+    }
+
+    /**
+     * Method for constructing a buffer that contains all events of
+     * the document given stream reader reads, starting from
+     * START_DOCUMENT. After the call, stream reader points to
+     * END_DOCUMENT (but is not closed).
+     *
+     * @throws IllegalStateException If stream reader is not positioned
+     *   at START_DOCUMENT
+     */
+    public static SMEventBuffer bufferDocument(XMLStreamReader sr)
+        throws XMLStreamException
+    {
+        if (sr.getEventType() != XMLStreamConstants.START_DOCUMENT) {
+            throw new IllegalStateException("Stream reader not positioned at START_DOCUMENT");
+        }
+        XMLStreamReader2 sr2 = Stax2ReaderAdapter.wrapIfNecessary(sr);
+        Builder b = new Builder(null);
+        while (true) {
+            b.append(sr2);
+            if (sr2.getEventType() == XMLStreamConstants.END_DOCUMENT) {
+                return b.build();
+            }
+            sr2.next();
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Public API
+    /**********************************************************************
+     */
+
+    /**
+     * Method for constructing a stream reader for reading contents
+     * of this buffer: for document buffers it will return buffered events;
+     * for sub-tree buffers START_DOCUMENT, then buffered
+     * events, and finally END_DOCUMENT.
+     */
+    public XMLStreamReader2 createStreamReader()
+    {
+        EventBufferReader r = isDocument() ? new EventBufferReader(this, 0) : new EventBufferReader(this);
+        return Stax2ReaderAdapter.wrapIfNecessary(r);
+    }
+
+    /**
+     * @return True if this buffer contains a whole document (constructed
+     *   using {@link #bufferDocument}); false if it contains an element
+     *   sub-tree
+     */
+    public boolean isDocument() {
+        return (_eventCount > 0) && (_events[0] == XMLStreamConstants.START_DOCUMENT);
+    }
+
+    /**
+     * Method for constructing a hierarchic cursor that iterates over
+     * the root element of the buffered sub-tree or document (similar to
+     * {@link SMInputFactory#rootElementCursor(XMLStreamReader)}).
+     */
+    public SMHierarchicCursor rootElementCursor()
+    {
+        return SMInputFactory.rootElementCursor(createStreamReader());
+    }
+
+    /**
+     * @return Number of events buffered (including START_ELEMENT and
+     *   END_ELEMENT of the root element; and START_DOCUMENT and END_DOCUMENT
+     *   for document buffers)
+     */
+    public int getEventCount() { return _eventCount; }
+
+    /**
+     * @return Approximate amount of memory used for buffered content,
+     *   in bytes (not including names and namespace URIs)
+     */
+    public int getBufferSize()
+    {
+        return (_events.length + _attrs.length) * 4 + _text.length * 2;
+    }
+
+    @Override
+    public String toString()
+    {
+        for (int ix = 0, end = _eventCount * EVENT_SIZE; ix < end; ix += EVENT_SIZE) {
+            if (_events[ix] == XMLStreamConstants.START_ELEMENT) {
+                return "[SMEventBuffer: "+_eventCount+" events, root <"+_names[_events[ix+1]]+">]";
+            }
+        }
+        return "[SMEventBuffer: "+_eventCount+" events]";
+    }
+
+    /*
+    /**********************************************************************
+    /* Public API, binary serialization
+    /**********************************************************************
+     */
+
+    /**
+     * Method for writing contents of this buffer using a compact binary
+     * format, that can be read back using {@link #readFrom}. Format
+     * consists of a symbol table for names and namespace declarations,
+     * events with variable-length encoded integer values, and all text
+     * as UTF-8.
+     *<p>
+     * For sub-tree buffers, namespace bindings of enclosing elements
+     * are retained for prefixes used by element and attribute names.
+     *<p>
+     * Stream is not closed after writing.
+     */
+    public void writeTo(OutputStream out)
+        throws IOException
+    {
+        BinaryWriter w = new BinaryWriter();
+        final QName[] names = _names;
+        w.writeVInt(names.length);
+        for (QName name : names) {
+            w.writeString(name.getNamespaceURI());
+            w.writeString(name.getLocalPart());
+            w.writeString(name.getPrefix());
+        }
+        final String[] nsDecls = _nsDecls;
+        w.writeVInt(nsDecls.length >> 1);
+        for (String str : nsDecls) {
+            w.writeString(str);
+        }
+        // Outer bindings can not be enumerated; but those used by names are known
+        LinkedHashMap<String,String> rootBindings = new LinkedHashMap<String,String>();
+        if (_rootNsContext != null) {
+            for (QName name : names) {
+                String prefix = name.getPrefix();
+                if (!rootBindings.containsKey(prefix) && !XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+                    String uri = _rootNsContext.getNamespaceURI(prefix);
+                    if (uri != null && uri.length() > 0) {
+                        rootBindings.put(prefix, uri);
+                    }
+                }
+            }
+        }
+        w.writeVInt(rootBindings.size());
+        for (Map.Entry<String,String> en : rootBindings.entrySet()) {
+            w.writeString(en.getKey());
+            w.writeString(en.getValue());
+        }
+        w.writeLengthPrefixed(new String(_text).getBytes("UTF-8"));
+        w.writeVInt(_text.length);
+        w.writeVInt(_attrs.length / ATTR_SIZE);
+        w.writeVInt(_eventCount);
+        /* Text, attributes and namespace declarations are stored in the
+         * order events were appended, so their offsets need not be written,
+         * just lengths and counts; and END_ELEMENTs only need information
+         * if their START_ELEMENT is not buffered
+         */
+        final int[] events = _events;
+        final int[] attrs = _attrs;
+        int depth = 0;
+        for (int ix = 0, end = _eventCount * EVENT_SIZE; ix < end; ix += EVENT_SIZE) {
+            int type = events[ix];
+            w.writeVInt(type);
+            switch (type) {
+            case XMLStreamConstants.START_ELEMENT:
+                {
+                    ++depth;
+                    w.writeVInt(events[ix+1]);
+                    w.writeVInt(events[ix+4] & 0xFFFF);
+                    int attrCount = events[ix+4] >>> 16;
+                    w.writeVInt(attrCount);
+                    for (int i = events[ix+2] * ATTR_SIZE, attrEnd = i + attrCount * ATTR_SIZE; i < attrEnd; i += ATTR_SIZE) {
+                        w.writeVInt(attrs[i]);
+                        w.writeVInt(attrs[i+2]);
+                    }
+                }
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                if (depth > 0) {
+                    --depth;
+                } else {
+                    w.writeVInt(events[ix+1]);
+                    w.writeVInt(events[ix+4] & 0xFFFF);
+                }
+                break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+            case XMLStreamConstants.ENTITY_REFERENCE:
+                w.writeVInt(events[ix+2]);
+                w.writeVInt(events[ix+4]);
+                break;
+            case XMLStreamConstants.START_DOCUMENT:
+            case XMLStreamConstants.END_DOCUMENT:
+                break;
+            default: // textual events
+                w.writeVInt(events[ix+2]);
+            }
+        }
+        DataOutputStream dout = new DataOutputStream(out);
+        dout.write(BINARY_HEADER);
+        dout.writeByte(BINARY_VERSION);
+        dout.writeInt(w.size());
+        w.writeTo(dout);
+        dout.flush();
+    }
+
+    /**
+     * Method for reading a buffer written using {@link #writeTo}. Exactly
+     * the bytes written are read from the stream, which is not closed.
+     *
+     * @throws IOException If reading fails, or if content is not valid
+     *   binary event buffer data
+     */
+    public static SMEventBuffer readFrom(InputStream in)
+        throws IOException
+    {
+        DataInputStream din = new DataInputStream(in);
+        byte[] header = new byte[BINARY_HEADER.length];
+        din.readFully(header);
+        if (!Arrays.equals(header, BINARY_HEADER)) {
+            throw new IOException("Invalid SMEventBuffer data: unrecognized header");
+        }
+        int version = din.readUnsignedByte();
+        if (version != BINARY_VERSION) {
+            throw new IOException("Invalid SMEventBuffer data: unsupported format version "+version);
+        }
+        int len = din.readInt();
+        if (len < 0) {
+            throw new IOException("Invalid SMEventBuffer data: negative length ("+len+")");
+        }
+        byte[] data = new byte[len];
+        din.readFully(data);
+        try {
+            return _decode(new BinaryReader(data));
+        } catch (RuntimeException e) { // for truncated or otherwise corrupt data
+            IOException ioe = new IOException("Invalid SMEventBuffer data: "+e.getMessage());
+            ioe.initCause(e);
+            throw ioe;
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    private static SMEventBuffer _decode(BinaryReader r)
+        throws IOException
+    {
+        QName[] names = new QName[r.readCount()];
+        for (int i = 0; i < names.length; ++i) {
+            String uri = r.readString();
+            String localName = r.readString();
+            names[i] = new QName(uri, localName, r.readString());
+        }
+        String[] nsDecls = new String[r.readCount() * 2];
+        for (int i = 0; i < nsDecls.length; ++i) {
+            nsDecls[i] = r.readString();
+        }
+        NamespaceContext rootNsContext = null;
+        int bindingCount = r.readCount();
+        if (bindingCount > 0) {
+            HashMap<String,String> bindings = new HashMap<String,String>();
+            for (int i = 0; i < bindingCount; ++i) {
+                String prefix = r.readString();
+                bindings.put(prefix, r.readString());
+            }
+            rootNsContext = new EventBufferReader.SnapshotNamespaceContext(bindings, null);
+        }
+        char[] text = r.readString().toCharArray();
+        if (text.length != r.readVInt()) {
+            throw new IOException("Invalid SMEventBuffer data: text length mismatch");
+        }
+        int[] attrs = new int[r.readCount() * ATTR_SIZE];
+        int eventCount = r.readCount();
+        int[] events = new int[eventCount * EVENT_SIZE];
+        int textPtr = 0;
+        int attrCount = 0;
+        int nsDeclCount = 0;
+        int[] openElements = new int[16];
+        int depth = 0;
+        for (int ix = 0; ix < events.length; ix += EVENT_SIZE) {
+            int type = r.readVInt();
+            events[ix] = type;
+            switch (type) {
+            case XMLStreamConstants.START_ELEMENT:
+                {
+                    events[ix+1] = r.readVInt();
+                    events[ix+2] = attrCount;
+                    events[ix+3] = nsDeclCount;
+                    int nsCount = r.readVInt();
+                    int count = r.readVInt();
+                    if (nsCount > MAX_PACKED_COUNT || count > MAX_PACKED_COUNT || (attrCount + count) * ATTR_SIZE > attrs.length) {
+                        throw new IOException("Invalid SMEventBuffer data: invalid attribute or namespace declaration count");
+                    }
+                    events[ix+4] = (count << 16) | nsCount;
+                    nsDeclCount += nsCount;
+                    for (int i = 0; i < count; ++i) {
+                        int attrIx = (attrCount++) * ATTR_SIZE;
+                        attrs[attrIx] = r.readVInt();
+                        attrs[attrIx+1] = textPtr;
+                        textPtr += (attrs[attrIx+2] = r.readVInt());
+                    }
+                    if (depth >= openElements.length) {
+                        openElements = Arrays.copyOf(openElements, depth + depth);
+                    }
+                    openElements[depth++] = ix;
+                }
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                if (depth > 0) {
+                    int startIx = openElements[--depth];
+                    events[ix+1] = events[startIx+1];
+                    events[ix+3] = events[startIx+3];
+                    events[ix+4] = events[startIx+4] & 0xFFFF;
+                } else {
+                    events[ix+1] = r.readVInt();
+                    events[ix+3] = nsDeclCount;
+                    int nsCount = r.readVInt();
+                    if (nsCount > MAX_PACKED_COUNT) {
+                        throw new IOException("Invalid SMEventBuffer data: invalid namespace declaration count");
+                    }
+                    events[ix+4] = nsCount;
+                    nsDeclCount += nsCount;
+                }
+                break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+            case XMLStreamConstants.ENTITY_REFERENCE:
+                events[ix+1] = textPtr;
+                textPtr += (events[ix+2] = r.readVInt());
+                events[ix+3] = textPtr;
+                textPtr += (events[ix+4] = r.readVInt());
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+            case XMLStreamConstants.COMMENT:
+            case XMLStreamConstants.DTD:
+                events[ix+1] = textPtr;
+                textPtr += (events[ix+2] = r.readVInt());
+                break;
+            case XMLStreamConstants.START_DOCUMENT:
+            case XMLStreamConstants.END_DOCUMENT:
+                break;
+            default:
+                throw new IOException("Invalid SMEventBuffer data: unrecognized event type "+type);
+            }
+        }
+        if (textPtr != text.length || attrCount * ATTR_SIZE != attrs.length || nsDeclCount * 2 != nsDecls.length) {
+            throw new IOException("Invalid SMEventBuffer data: inconsistent text, attribute or namespace declaration counts");
+        }
+        if (!r.isAtEnd()) {
+            throw new IOException("Invalid SMEventBuffer data: trailing content");
+        }
+        SMEventBuffer buffer = new SMEventBuffer(events, eventCount, names, nsDecls, attrs, text, rootNsContext);
+        buffer._verifyReferences();
+        return buffer;
+    }
+
+    /**
+     * Method called to verify that all indexes and offsets of read
+     * content are valid, so that invalid data can not cause problems
+     * when reading buffered events.
+     */
+    private void _verifyReferences()
+        throws IOException
+    {
+        final int nsDeclCount = _nsDecls.length >> 1;
+        final int attrCount = _attrs.length / ATTR_SIZE;
+        for (int ix = 0; ix < _attrs.length; ix += ATTR_SIZE) {
+            _verifyIndex(_attrs[ix], _names.length, "attribute name");
+            _verifyText(_attrs[ix+1], _attrs[ix+2]);
+        }
+        for (int ix = 0, end = _eventCount * EVENT_SIZE; ix < end; ix += EVENT_SIZE) {
+            switch (_events[ix]) {
+            case XMLStreamConstants.START_ELEMENT:
+            case XMLStreamConstants.END_ELEMENT:
+                _verifyIndex(_events[ix+1], _names.length, "element name");
+                _verifyRange(_events[ix+2], _events[ix+4] >>> 16, attrCount, "attribute");
+                _verifyRange(_events[ix+3], _events[ix+4] & 0xFFFF, nsDeclCount, "namespace declaration");
+                break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+            case XMLStreamConstants.ENTITY_REFERENCE:
+                _verifyText(_events[ix+3], _events[ix+4]);
+                // fall through
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+            case XMLStreamConstants.COMMENT:
+            case XMLStreamConstants.DTD:
+                _verifyText(_events[ix+1], _events[ix+2]);
+                break;
+            }
+        }
+    }
+
+    private static void _verifyIndex(int index, int count, String desc)
+        throws IOException
+    {
+        if (index < 0 || index >= count) {
+            throw new IOException("Invalid SMEventBuffer data: "+desc+" index "+index+" out of range (0 - "+(count-1)+")");
+        }
+    }
+
+    private static void _verifyRange(int start, int len, int count, String desc)
+        throws IOException
+    {
+        if (start < 0 || len < 0 || (start + len) > count) {
+            throw new IOException("Invalid SMEventBuffer data: "+desc+" range ["+start+", "+(start+len)
+                    +") out of bounds (have "+count+")");
+        }
+    }
+
+    private void _verifyText(int offset, int len)
+        throws IOException
+    {
+        _verifyRange(offset, len, _text.length, "text");
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    /**
+     * Helper class for writing binary content; variable-length ints use
+     * 7 bits per byte, with the high bit set for all but the last byte
+     */
+    private final static class BinaryWriter
+        extends ByteArrayOutputStream
+    {
+        BinaryWriter() { super(1000); }
+
+        void writeVInt(int value)
+        {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        void writeLengthPrefixed(byte[] data)
+        {
+            writeVInt(data.length);
+            write(data, 0, data.length);
+        }
+
+        void writeString(String str)
+            throws IOException
+        {
+            writeLengthPrefixed(str.getBytes("UTF-8"));
+        }
+    }
+
+    /**
+     * Helper class for reading binary content written by {@link BinaryWriter}
+     */
+    private final static class BinaryReader
+    {
+        private final byte[] _data;
+
+        private int _ptr;
+
+        BinaryReader(byte[] data) {
+            _data = data;
+        }
+
+        boolean isAtEnd() {
+            return _ptr == _data.length;
+        }
+
+        int readVInt()
+        {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = _data[_ptr++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("invalid variable-length int");
+        }
+
+        /**
+         * Method for reading count or length, which must not exceed
+         * the amount of remaining data (used to prevent allocating
+         * huge arrays for invalid data)
+         */
+        int readCount()
+        {
+            int count = readVInt();
+            if (count < 0 || count > (_data.length - _ptr)) {
+                throw new IllegalArgumentException("invalid count/length "+count);
+            }
+            return count;
+        }
+
+        String readUTF8(int len)
+            throws IOException
+        {
+            if (len > (_data.length - _ptr)) {
+                throw new IllegalArgumentException("invalid length "+len);
+            }
+            String str = new String(_data, _ptr, len, "UTF-8");
+            _ptr += len;
+            return str;
+        }
+
+        String readString()
+            throws IOException
+        {
+            return readUTF8(readCount());
+        }
+    }
+
+    /**
+     * Helper class used for collecting events from a stream reader,
+     * one event at a time
+     */
+    final static class Builder
+    {
+        int[] _events = new int[EVENT_SIZE * 32];
+        int _eventCount;
+
+        QName[] _names = new QName[16];
+        int _nameCount;
+
+        /**
+         * Indexes of names in {@link #_names}; since QName equality
+         * ignores prefix, each entry contains indexes of all names with
+         * same namespace URI and local name (one per distinct prefix).
+         */
+        final HashMap<QName,int[]> _nameIndexes = new HashMap<QName,int[]>();
+
+        String[] _nsDecls = new String[8];
+        int _nsDeclCount;
+
+        int[] _attrs = new int[ATTR_SIZE * 8];
+        int _attrCount;
+
+        char[] _text = new char[500];
+        int _textLength;
+
+        final NamespaceContext _rootNsContext;
+
+        /**
+         * Offsets of START_ELEMENT events of currently open elements;
+         * END_ELEMENTs share names and namespace declarations with them.
+         */
+        int[] _openElements = new int[16];
+
+        int _depth;
+
+        Builder(NamespaceContext rootNsContext)
+        {
+            _rootNsContext = rootNsContext;
+        }
+
+        /**
+         * @return Number of currently open elements started after the
+         *    first recorded event
+         */
+        int depth() { return _depth; }
+
+        int eventCount() { return _eventCount; }
+
+        SMEventBuffer build() {
+            return new SMEventBuffer(this);
+        }
+
+        /**
+         * Method for recording the event stream reader currently
+         * points to.
+         */
+        void append(XMLStreamReader2 sr)
+            throws XMLStreamException
+        {
+            int type = sr.getEventType();
+            int ix = _appendEvent(type);
+            switch (type) {
+            case XMLStreamConstants.START_ELEMENT:
+                {
+                    int nsStart = _nsDeclCount;
+                    int nsCount = _verifyCount(sr, sr.getNamespaceCount(), "namespace declarations");
+                    for (int i = 0; i < nsCount; ++i) {
+                        _appendNsDecl(sr.getNamespacePrefix(i), sr.getNamespaceURI(i));
+                    }
+                    int attrStart = _attrCount;
+                    int attrCount = _verifyCount(sr, sr.getAttributeCount(), "attributes");
+                    for (int i = 0; i < attrCount; ++i) {
+                        _appendAttr(_nameIndex(sr.getAttributeNamespace(i), sr.getAttributeLocalName(i),
+                                sr.getAttributePrefix(i)), sr.getAttributeValue(i));
+                    }
+                    int nameIx = _nameIndex(sr.getNamespaceURI(), sr.getLocalName(), sr.getPrefix());
+                    _events[ix+1] = nameIx;
+                    _events[ix+2] = attrStart;
+                    _events[ix+3] = nsStart;
+                    _events[ix+4] = (attrCount << 16) | nsCount;
+                    if (_depth >= _openElements.length) {
+                        _openElements = Arrays.copyOf(_openElements, _depth + _depth);
+                    }
+                    _openElements[_depth++] = ix;
+                }
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                if (_depth > 0) {
+                    int startIx = _openElements[--_depth];
+                    _events[ix+1] = _events[startIx+1];
+                    _events[ix+3] = _events[startIx+3];
+                    _events[ix+4] = _events[startIx+4] & 0xFFFF;
+                } else { // element started before the first recorded event
+                    int nsStart = _nsDeclCount;
+                    int nsCount = _verifyCount(sr, sr.getNamespaceCount(), "namespace declarations");
+                    for (int i = 0; i < nsCount; ++i) {
+                        _appendNsDecl(sr.getNamespacePrefix(i), sr.getNamespaceURI(i));
+                    }
+                    _events[ix+1] = _nameIndex(sr.getNamespaceURI(), sr.getLocalName(), sr.getPrefix());
+                    _events[ix+3] = nsStart;
+                    _events[ix+4] = nsCount;
+                }
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+            case XMLStreamConstants.COMMENT:
+                _events[ix+1] = _textLength;
+                _events[ix+2] = sr.getTextLength();
+                _appendText(sr.getTextCharacters(), sr.getTextStart(), sr.getTextLength());
+                break;
+            case XMLStreamConstants.DTD:
+                {
+                    String text = sr.getText();
+                    if (text == null) {
+                        text = "";
+                    }
+                    _events[ix+1] = _textLength;
+                    _events[ix+2] = text.length();
+                    _appendText(text);
+                }
+                break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                _appendTextPair(ix, sr.getPITarget(), sr.getPIData());
+                break;
+            case XMLStreamConstants.ENTITY_REFERENCE:
+                _appendTextPair(ix, sr.getLocalName(), sr.getText());
+                break;
+            case XMLStreamConstants.START_DOCUMENT:
+            case XMLStreamConstants.END_DOCUMENT:
+                break;
+            default:
+                throw new IllegalStateException("Unexpected event type "+type);
+            }
+        }
+
+        private int _appendEvent(int type)
+        {
+            int ix = _eventCount * EVENT_SIZE;
+            if (ix >= _events.length) {
+                _events = Arrays.copyOf(_events, _events.length * 2);
+            }
+            ++_eventCount;
+            _events[ix] = type;
+            return ix;
+        }
+
+        private int _nameIndex(String nsURI, String localName, String prefix)
+        {
+            if (nsURI == null) {
+                nsURI = "";
+            }
+            if (prefix == null) {
+                prefix = "";
+            }
+            QName name = new QName(nsURI, localName, prefix);
+            int[] indexes = _nameIndexes.get(name);
+            if (indexes != null) {
+                for (int ix : indexes) {
+                    if (_names[ix].getPrefix().equals(prefix)) {
+                        return ix;
+                    }
+                }
+            }
+            if (_nameCount >= _names.length) {
+                _names = Arrays.copyOf(_names, _names.length * 2);
+            }
+            int newIx = _nameCount++;
+            _names[newIx] = name;
+            if (indexes == null) {
+                indexes = new int[] { newIx };
+            } else {
+                indexes = Arrays.copyOf(indexes, indexes.length + 1);
+                indexes[indexes.length - 1] = newIx;
+            }
+            _nameIndexes.put(name, indexes);
+            return newIx;
+        }
+
+        private int _verifyCount(XMLStreamReader2 sr, int count, String desc)
+            throws XMLStreamException
+        {
+            if (count > MAX_PACKED_COUNT) {
+                throw new XMLStreamException("Can not buffer element <"+sr.getLocalName()+"> with "
+                        +count+" "+desc+" (maximum "+MAX_PACKED_COUNT+")", sr.getLocation());
+            }
+            return count;
+        }
+
+        private void _appendNsDecl(String prefix, String uri)
+        {
+            int ix = _nsDeclCount * 2;
+            if (ix >= _nsDecls.length) {
+                _nsDecls = Arrays.copyOf(_nsDecls, _nsDecls.length * 2);
+            }
+            ++_nsDeclCount;
+            _nsDecls[ix] = (prefix == null) ? "" : prefix;
+            _nsDecls[ix+1] = (uri == null) ? "" : uri;
+        }
+
+        private void _appendAttr(int nameIx, String value)
+        {
+            int ix = _attrCount * ATTR_SIZE;
+            if (ix >= _attrs.length) {
+                _attrs = Arrays.copyOf(_attrs, _attrs.length * 2);
+            }
+            ++_attrCount;
+            _attrs[ix] = nameIx;
+            _attrs[ix+1] = _textLength;
+            _attrs[ix+2] = value.length();
+            _appendText(value);
+        }
+
+        private void _appendTextPair(int ix, String first, String second)
+        {
+            if (second == null) {
+                second = "";
+            }
+            _events[ix+1] = _textLength;
+            _events[ix+2] = first.length();
+            _appendText(first);
+            _events[ix+3] = _textLength;
+            _events[ix+4] = second.length();
+            _appendText(second);
+        }
+
+        private void _ensureTextRoom(int len)
+        {
+            int needed = _textLength + len;
+            if (needed > _text.length) {
+                _text = Arrays.copyOf(_text, Math.max(needed, _text.length * 2));
+            }
+        }
+
+        private void _appendText(char[] buf, int offset, int len)
+        {
+            _ensureTextRoom(len);
+            System.arraycopy(buf, offset, _text, _textLength, len);
+            _textLength += len;
+        }
+
+        private void _appendText(String str)
+        {
+            int len = str.length();
+            _ensureTextRoom(len);
+            str.getChars(0, len, _text, _textLength);
+            _textLength += len;
+        }
+    }
+}
@@ -15,6 +15,14 @@ import javax.xml.stream.XMLStreamException;
  */
 public abstract class SMFilter
 {
+    /**
+     * Type mask (see {@link #getAcceptedTypes}) that contains all
+     * event types.
+     *
+     * @since 2.4.2
+     */
+    public final static int ALL_TYPES = 0xFFFF;
+
     /**
      * Methods iterators call to check whether specified event should
      * be return, or filtered out.
@@ -31,4 +39,35 @@ public abstract class SMFilter
      */
     public abstract boolean accept(SMEvent evt, SMInputCursor caller)
         throws XMLStreamException;
+
+    /**
+     * Method that cursors call (once, when filter is set) to find
+     * out which event types this filter may accept: mask has bit
+     * <code>(1 &lt;&lt; eventCode)</code> set for each such type.
+     * Events of other types are rejected by cursors without calling
+     * {@link #accept}.
+     *<p>
+     * Default implementation returns {@link #ALL_TYPES}, so that
+     * {@link #accept} is called for all events; sub-classes that
+     * only accept some types of events should override this method.
+     *
+     * @since 2.4.2
+     */
+    public int getAcceptedTypes() {
+        return ALL_TYPES;
+    }
+
+    /**
+     * Method that cursors call (once, when filter is set) to find
+     * out whether this filter accepts all events of types indicated
+     * by {@link #getAcceptedTypes}: if so, cursors need not call
+     * {@link #accept} at all.
+     *<p>
+     * Default implementation returns false.
+     *
+     * @since 2.4.2
+     */
+    public boolean isTypeOnly() {
+        return false;
+    }
 }
@@ -61,6 +61,29 @@ public final class SMFilterFactory
         return new ElementFilter(elemLocalName);
     }
 
+    /**
+     * Method for constructing a filter that only passes through
+     * element events for elements that have one of specified names.
+     * Names are compiled into a hash table, so that matching cost
+     * does not grow with the number of names.
+     *
+     * @since 2.4.2
+     */
+    public final static SMFilter getElementNameSetFilter(QName... elemNames) {
+        return new ElementNameSetFilter(elemNames);
+    }
+
+    /**
+     * Method for constructing a filter that only passes through
+     * element events for elements that have one of specified local
+     * names, and that do not belong to a namespace.
+     *
+     * @since 2.4.2
+     */
+    public final static SMFilter getElementNameSetFilter(String... elemLocalNames) {
+        return new ElementNameSetFilter(elemLocalNames);
+    }
+
     /**
      * @return Filter that will pass element events as well as all
      *    text events (including ignorable white space).
@@ -68,4 +91,113 @@ public final class SMFilterFactory
     public final static SMFilter getMixedFilter() {
         return sMixedFilter;
     }
+
+    /*
+    /**********************************************************************
+    /* Attribute filters
+    /**********************************************************************
+     */
+
+    /**
+     * Method for constructing a filter that only passes through
+     * START_ELEMENTs that have specified attribute (that does not
+     * belong to a namespace).
+     *
+     * @since 2.4.2
+     */
+    public final static SMFilter getAttributeExistsFilter(String attrLocalName) {
+        return new AttributeFilter(null, attrLocalName, null);
+    }
+
+    /**
+     * Method for constructing a filter that only passes through
+     * START_ELEMENTs that have specified attribute.
+     *
+     * @since 2.4.2
+     */
+    public final static SMFilter getAttributeExistsFilter(QName attrName) {
+        return new AttributeFilter(attrName, null);
+    }
+
+    /**
+     * Method for constructing a filter that only passes through
+     * START_ELEMENTs that have specified attribute (that does not
+     * belong to a namespace) with specified value.
+     *
+     * @since 2.4.2
+     */
+    public final static SMFilter getAttributeEqualsFilter(String attrLocalName, String value) {
+        return new AttributeFilter(null, attrLocalName, _checkValue(value));
+    }
+
+    /**
+     * Method for constructing a filter that only passes through
+     * START_ELEMENTs that have specified attribute with specified value.
+     *
+     * @since 2.4.2
+     */
+    public final static SMFilter getAttributeEqualsFilter(QName attrName, String value) {
+        return new AttributeFilter(attrName, _checkValue(value));
+    }
+
+    private static String _checkValue(String value)
+    {
+        if (value == null) {
+            throw new IllegalArgumentException("Attribute value can not be null");
+        }
+        return value;
+    }
+
+    /*
+    /**********************************************************************
+    /* Combining filters
+    /**********************************************************************
+     */
+
+    /**
+     * Method for constructing a filter that passes through events
+     * that all of given filters pass through. Filters are called
+     * in given order (and only until one does not pass the event),
+     * so cheaper checks should be given first; except that checks
+     * of event type are combined and done before calling any filters.
+     *<p>
+     * Filters are normalized when combined (see {@link CompositeFilter}),
+     * so that resulting filter may be a simpler one; and cursors can
+     * skip events of other types without calling it.
+     *
+     * @since 2.4.2
+     */
+    public final static SMFilter and(SMFilter... filters) {
+        return CompositeFilter.and(filters);
+    }
+
+    /**
+     * Method for constructing a filter that passes through events
+     * that any of given filters passes through. Filters are called
+     * in given order (and only until one passes the event), except
+     * that checks of event type are combined and done before calling
+     * any filters.
+     *
+     * @since 2.4.2
+     */
+    public final static SMFilter or(SMFilter... filters) {
+        return CompositeFilter.or(filters);
+    }
+
+    /**
+     * Method for constructing a filter that passes through events
+     * that given filter does not pass through.
+     *<p>
+     * Note that negation of an element filter also passes through
+     * all non-element events (such as text); to only get other elements,
+     * combine the negation with an element filter, like
+     *<pre>
+     *   and(getElementOnlyFilter(), not(getElementOnlyFilter("skip")))
+     *</pre>
+     *
+     * @since 2.4.2
+     */
+    public final static SMFilter not(SMFilter filter) {
+        return CompositeFilter.not(filter);
+    }
 }
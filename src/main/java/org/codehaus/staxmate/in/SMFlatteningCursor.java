@@ -79,6 +79,9 @@ public class SMFlatteningCursor
         throws XMLStreamException
     {
         if (_state == State.CLOSED) {
+            if (_released) {
+                throw _releasedCursorUsed("getNext");
+            }
             return null;
         }
 
@@ -130,6 +133,10 @@ public class SMFlatteningCursor
                 }
             } else if (type == XMLStreamConstants.START_ELEMENT) {
                 ++_elemCount;
+                // Path tracking needs all elements, not just visible ones
+                if (mElemTracking == Tracking.PATH) {
+                    _context._trackPath(_streamReader.getDepth(), _nodeCount-1, _elemCount-1);
+                }
 
                 /* !!! 24-Oct-2007, tatus: This sanity check really
                  *   shouldn't be needed any more... but let's leave
@@ -143,14 +150,14 @@ public class SMFlatteningCursor
             _currEvent = evt;
 
             // Ok, are we interested in this event?
-            if (mFilter != null && !mFilter.accept(evt, this)) {
+            if (!_accept(type, evt)) {
                 // Nope, let's just skip over
 
                 // May still need to create the tracked element?
                 if (type == XMLStreamConstants.START_ELEMENT) { 
                     if (mElemTracking == Tracking.ALL_SIBLINGS) {
                         _trackedElement = constructElementInfo
-                            (_parentTrackedElement, _trackedElement);
+                            (getParentTrackedElement(), _trackedElement);
                     }
                 }
                 continue;
@@ -159,10 +166,14 @@ public class SMFlatteningCursor
             // Need to update tracked element?
             if (type == XMLStreamConstants.START_ELEMENT
                 && mElemTracking != Tracking.NONE) {
+                if (mElemTracking == Tracking.PATH) {
+                    _trackedDepth = _streamReader.getDepth();
+                    return evt;
+                }
                 SMElementInfo prev = (mElemTracking == Tracking.PARENTS) ?
                     null : _trackedElement;
                 _trackedElement = constructElementInfo
-                    (_parentTrackedElement, prev);
+                    (getParentTrackedElement(), prev);
             }
             return evt;
         }
@@ -174,10 +185,16 @@ public class SMFlatteningCursor
     }
 
     public SMInputCursor constructChildCursor(SMFilter f) {
+        if (_context._recycleCursors) {
+            return _context._recycledChildCursor(this, f);
+        }
         return new SMHierarchicCursor(_context, this, f);
     }
 
     public SMInputCursor constructDescendantCursor(SMFilter f) {
+        if (_context._recycleCursors) {
+            return _context._recycledDescendantCursor(this, f);
+        }
         return new SMFlatteningCursor(_context, this, f);
     }
 }
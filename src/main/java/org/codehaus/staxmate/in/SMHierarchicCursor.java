@@ -7,12 +7,38 @@ import org.codehaus.stax2.XMLStreamReader2;
 /**
  * Default implementation of generic nested (scoped) cursor; cursor that only
  * traverses direct children of a single start element.
+ *<p>
+ * Since 2.4.2, hierarchic cursors constructed over a
+ * {@link MarkableStreamReader} (see
+ * {@link org.codehaus.staxmate.SMInputFactory#markableRootElementCursor})
+ * also support {@link #mark} and {@link #reset}, to allow
+ * returning back to an earlier position within sibling sequence.
  * 
  * @author Tatu Saloranta
  */
 public class SMHierarchicCursor
     extends SMInputCursor
 {
+    /*
+    /**********************************************************************
+    /* Cursor state saved by mark()
+    /**********************************************************************
+     */
+
+    protected boolean _marked;
+
+    protected State _markState;
+
+    protected SMEvent _markEvent;
+
+    protected int _markNodeCount;
+
+    protected int _markElemCount;
+
+    protected SMElementInfo _markTrackedElement;
+
+    protected int _markTrackedDepth;
+
     /*
     /**********************************************************************
     /* Life cycle
@@ -44,6 +70,9 @@ public class SMHierarchicCursor
         throws XMLStreamException
     {
         if (_state == State.CLOSED) {
+            if (_released) {
+                throw _releasedCursorUsed("getNext");
+            }
             return null;
         }
         // If there is a child cursor, it has to be traversed through
@@ -84,6 +113,9 @@ public class SMHierarchicCursor
             }
             if (type == XMLStreamConstants.START_ELEMENT) {
                 ++_elemCount;
+                if (mElemTracking == Tracking.PATH) {
+                    _context._trackPath(_baseDepth+1, _nodeCount-1, _elemCount-1);
+                }
             } else if (type == XMLStreamConstants.END_DOCUMENT) {
                 // just a sanity check; shouldn't really be needed
                 _throwUnexpectedEndDoc();
@@ -92,13 +124,13 @@ public class SMHierarchicCursor
             _currEvent = evt;
             
             // Ok, are we interested in this event?
-            if (mFilter != null && !mFilter.accept(evt, this)) {
+            if (!_accept(type, evt)) {
                 /* Nope, let's just skip over; but we may still need to
                  * create the tracked element?
                  */
                 if (type == XMLStreamConstants.START_ELEMENT) {
                     if (mElemTracking == Tracking.ALL_SIBLINGS) {
-                        _trackedElement = constructElementInfo(_parentTrackedElement, _trackedElement);
+                        _trackedElement = constructElementInfo(getParentTrackedElement(), _trackedElement);
                     }
                     skipToEndElement();
                 }
@@ -107,8 +139,12 @@ public class SMHierarchicCursor
             
             // Need to update tracked element?
             if (type == XMLStreamConstants.START_ELEMENT && mElemTracking != Tracking.NONE) {
+                if (mElemTracking == Tracking.PATH) {
+                    _trackedDepth = _baseDepth+1;
+                    return evt;
+                }
                 SMElementInfo prev = (mElemTracking == Tracking.PARENTS) ? null : _trackedElement;
-                _trackedElement = constructElementInfo(_parentTrackedElement, prev);
+                _trackedElement = constructElementInfo(getParentTrackedElement(), prev);
             }
             return evt;
         }
@@ -119,13 +155,102 @@ public class SMHierarchicCursor
         return null;
     }
 
+    /*
+    /**********************************************************************
+    /* Public API, mark/reset
+    /**********************************************************************
+     */
+
+    /**
+     * @return True if this cursor supports {@link #mark} and {@link #reset}
+     *
+     * @since 2.4.2
+     */
+    public boolean markSupported() {
+        return (_streamReader instanceof MarkableStreamReader);
+    }
+
+    /**
+     * Method for marking the current position of this cursor, so that
+     * it can be returned to by calling {@link #reset}. Events read after
+     * the mark (by this cursor, and its child cursors) are buffered,
+     * up to the maximum number configured for the underlying
+     * {@link MarkableStreamReader}; there can only be one mark for
+     * all cursors sharing the underlying reader.
+     *
+     * @throws UnsupportedOperationException If cursor was not
+     *   constructed over a {@link MarkableStreamReader}
+     * @throws IllegalStateException If cursor has an open child cursor
+     *
+     * @since 2.4.2
+     */
+    public void mark()
+        throws XMLStreamException
+    {
+        MarkableStreamReader r = _markableReader("mark");
+        if (_state == State.HAS_CHILD) {
+            throw new IllegalStateException("Can not call mark() when cursor has an active child cursor");
+        }
+        r.mark(this);
+        _marked = true;
+        _markState = _state;
+        _markEvent = _currEvent;
+        _markNodeCount = _nodeCount;
+        _markElemCount = _elemCount;
+        _markTrackedElement = _trackedElement;
+        _markTrackedDepth = _trackedDepth;
+    }
+
+    /**
+     * Method for returning this cursor to the position it had when
+     * {@link #mark} was called; mark remains valid, so it is possible
+     * to reset to it multiple times. Any child cursors opened after
+     * the mark are invalidated.
+     *
+     * @throws UnsupportedOperationException If cursor was not
+     *   constructed over a {@link MarkableStreamReader}
+     * @throws IllegalStateException If there is no valid mark to reset
+     *   to: mark was never set, was replaced by another mark, or too
+     *   many events were read after it
+     *
+     * @since 2.4.2
+     */
+    public void reset()
+        throws XMLStreamException
+    {
+        MarkableStreamReader r = _markableReader("reset");
+        if (!_marked) {
+            throw new IllegalStateException("Can not call reset(): no mark set for this cursor");
+        }
+        r.reset(this);
+        if (_childCursor != null) {
+            _childCursor.invalidate();
+            _childCursor = null;
+        }
+        _state = _markState;
+        _currEvent = _markEvent;
+        _nodeCount = _markNodeCount;
+        _elemCount = _markElemCount;
+        _trackedElement = _markTrackedElement;
+        _trackedDepth = _markTrackedDepth;
+        if (mElemTracking == Tracking.PATH && _currEvent == SMEvent.START_ELEMENT) {
+            _context._trackPath(_baseDepth+1, _nodeCount-1, _elemCount-1);
+        }
+    }
+
     public SMInputCursor constructChildCursor(SMFilter f)
     {
+        if (_context._recycleCursors) {
+            return _context._recycledChildCursor(this, f);
+        }
         return new SMHierarchicCursor(_context, this, f);
     }
 
     public SMInputCursor constructDescendantCursor(SMFilter f)
     {
+        if (_context._recycleCursors) {
+            return _context._recycledDescendantCursor(this, f);
+        }
         return new SMFlatteningCursor(_context, this, f);
     }
 
@@ -135,6 +260,43 @@ public class SMHierarchicCursor
     /**********************************************************************
      */
 
+    @Override
+    protected void invalidate()
+        throws XMLStreamException
+    {
+        _clearMark();
+        super.invalidate();
+    }
+
+    @Override
+    protected void _reinit(SMInputCursor parent, SMFilter filter)
+    {
+        _clearMark();
+        super._reinit(parent, filter);
+    }
+
+    private void _clearMark()
+    {
+        if (_marked) {
+            _marked = false;
+            _markEvent = null;
+            _markTrackedElement = null;
+            ((MarkableStreamReader) _streamReader).clearMark(this);
+        }
+    }
+
+    private MarkableStreamReader _markableReader(String method)
+    {
+        if (_released) {
+            throw _releasedCursorUsed(method);
+        }
+        if (!(_streamReader instanceof MarkableStreamReader)) {
+            throw new UnsupportedOperationException("Can not call '"+method+"()': cursor not constructed over a"
+                    +" MarkableStreamReader (see SMInputFactory.markableRootElementCursor())");
+        }
+        return (MarkableStreamReader) _streamReader;
+    }
+
     /**
      * Method called when current event/token is START_ELEMENT, but
      * we are not interested in its contents (children). Hence, needs
@@ -152,6 +314,16 @@ public class SMHierarchicCursor
         //int endDepth = sr.getDepth();
         int endDepth = _baseDepth+1;
 
+        // Native Stax2 readers can skip the whole sub-tree themselves:
+        if (_nativeSkip && sr.getEventType() == XMLStreamConstants.START_ELEMENT) {
+            sr.skipElement();
+            int depth = sr.getDepth();
+            if (depth != endDepth) { // sanity check
+                _throwWrongEndElem(endDepth, depth);
+            }
+            return;
+        }
+        // Otherwise (wrapped Stax 1.0 readers), need to iterate over events
         while (true) {
             int type = sr.next();
             if (type == XMLStreamConstants.END_ELEMENT) {
@@ -1,11 +1,17 @@
 package org.codehaus.staxmate.in;
 
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
 import javax.xml.stream.*;
 import javax.xml.stream.events.XMLEvent;
 import javax.xml.stream.util.XMLEventAllocator;
 
 import org.codehaus.stax2.LocationInfo;
+import org.codehaus.stax2.XMLInputFactory2;
 import org.codehaus.stax2.XMLStreamReader2;
+import org.codehaus.stax2.ri.Stax2ReaderAdapter;
 import org.codehaus.stax2.ri.evt.Stax2EventAllocatorImpl;
 
 /**
@@ -18,11 +24,117 @@ public final class SMInputContext
 {
     final XMLStreamReader2 _streamReader;
 
+    /**
+     * Whether the stream reader can skip sub-trees natively, using
+     * {@link XMLStreamReader2#skipElement}: true for native Stax2
+     * implementations, false for Stax 1.0 readers wrapped in
+     * an adapter (for which cursors do skipping themselves).
+     *
+     * @since 2.4.2
+     */
+    final boolean _nativeSkip;
+
+    /**
+     * Whether the stream reader is known to intern local names
+     * of elements and attributes (see {@link XMLInputFactory2#P_INTERN_NAMES}),
+     * which allows name matching by identity.
+     *
+     * @since 2.4.2
+     */
+    final boolean _internNames;
+
+    /**
+     * Whether the stream reader is known to intern namespace URIs
+     * (see {@link XMLInputFactory2#P_INTERN_NS_URIS}).
+     *
+     * @since 2.4.2
+     */
+    final boolean _internNsUris;
+
     protected XMLEventAllocator _allocator;
 
+    /*
+    /**********************************************************************
+    /* Cursor recycling
+    /**********************************************************************
+     */
+
+    /**
+     * Maximum number of name-based element filters cached when
+     * cursor recycling is enabled
+     */
+    final static int MAX_CACHED_FILTERS = 64;
+
+    /**
+     * Whether child and descendant cursors are to be recycled:
+     * see {@link #setCursorRecycling} for details.
+     *
+     * @since 2.4.2
+     */
+    boolean _recycleCursors;
+
+    /**
+     * Whether use of recycled cursors is to be checked:
+     * see {@link #setCursorRecyclingChecks} for details.
+     *
+     * @since 2.4.2
+     */
+    boolean _checkRecycling;
+
+    /**
+     * Recycled child cursors, indexed by their base depth
+     */
+    private SMHierarchicCursor[] _childCursors;
+
+    /**
+     * Recycled descendant cursors, indexed by their base depth
+     */
+    private SMFlatteningCursor[] _descendantCursors;
+
+    /**
+     * Element filters constructed for names passed to
+     * {@link SMInputCursor#childElementCursor(String)} and similar
+     * methods, keyed by local name (String) or {@link QName}.
+     */
+    private Map<Object,SMFilter> _elementFilters;
+
+    /*
+    /**********************************************************************
+    /* Path stack for element tracking
+    /**********************************************************************
+     */
+
+    // // // Information on currently open tracked elements, indexed by depth
+    // // // (see {@link SMInputCursor.Tracking#PATH})
+
+    private String[] _pathPrefixes;
+    private String[] _pathNsUris;
+    private String[] _pathLocalNames;
+    private int[] _pathNodeIndexes;
+    private int[] _pathElemIndexes;
+
+    /**
+     * Buffer reused for short textual values that need to be
+     * combined from multiple text events (like enumerated values)
+     */
+    private char[] _textBuffer;
+
     public SMInputContext(XMLStreamReader2 sr)
     {
         _streamReader = sr;
+        _nativeSkip = !(sr instanceof Stax2ReaderAdapter);
+        _internNames = _isEnabled(sr, XMLInputFactory2.P_INTERN_NAMES);
+        _internNsUris = _isEnabled(sr, XMLInputFactory2.P_INTERN_NS_URIS);
+    }
+
+    private static boolean _isEnabled(XMLStreamReader2 sr, String property)
+    {
+        // Stax 1.0 readers (and adapters) may not recognize Stax2 properties
+        try {
+            return Boolean.TRUE.equals(sr.getProperty(property));
+        } catch (IllegalArgumentException iae) {
+            return false;
+        }
     }
 
     public XMLEvent currentAsEvent()
@@ -36,6 +148,286 @@ public final class SMInputContext
 
     protected XMLStreamReader2 getStreamReader() { return _streamReader; }
 
+    /**
+     * @return True if sub-tree skipping can be delegated to the stream
+     *   reader (see {@link XMLStreamReader2#skipElement})
+     *
+     * @since 2.4.2
+     */
+    public boolean canSkipNatively() { return _nativeSkip; }
+
+    /**
+     * @return True if the stream reader interns local names of elements
+     *   and attributes, so that they can be compared by identity
+     *   with other interned Strings
+     *
+     * @since 2.4.2
+     */
+    public boolean hasInternedNames() { return _internNames; }
+
+    /**
+     * @return True if the stream reader interns namespace URIs, so that
+     *   they can be compared by identity with other interned Strings
+     *
+     * @since 2.4.2
+     */
+    public boolean hasInternedNsUris() { return _internNsUris; }
+
+    /*
+    /**********************************************************************
+    /* Public API: cursor recycling
+    /**********************************************************************
+     */
+
+    /**
+     * Method for enabling or disabling recycling of child and descendant
+     * cursors (ones created by {@link SMInputCursor#childCursor} and
+     * {@link SMInputCursor#descendantCursor}, and their variants).
+     * When enabled, one cursor instance of each type is kept for every
+     * nesting depth, and re-initialized when a new cursor is requested
+     * at that depth; name-based element filters are also cached.
+     * This makes iterating over large numbers of small records
+     * allocation-free.
+     *<p>
+     * Enabling recycling requires that callers NEVER retain references
+     * to child (or descendant) cursors once the parent cursor has been
+     * advanced: at that point the child cursor is invalidated, and
+     * the same instance may be handed out again by the next call to
+     * create a child cursor at the same depth. Retaining such a cursor
+     * would then silently give access to some other element. Use
+     * {@link #setCursorRecyclingChecks} to find code that violates
+     * this contract.
+     *<p>
+     * Note that only cursors created by default {@link SMHierarchicCursor}
+     * and {@link SMFlatteningCursor} implementations are recycled;
+     * root cursors never are.
+     *
+     * @since 2.4.2
+     */
+    public void setCursorRecycling(boolean state)
+    {
+        _recycleCursors = state;
+        if (!state) { // let's not hold on to cursors unnecessarily
+            _childCursors = null;
+            _descendantCursors = null;
+            _elementFilters = null;
+        }
+    }
+
+    /**
+     * @since 2.4.2
+     */
+    public boolean isCursorRecyclingEnabled() { return _recycleCursors; }
+
+    /**
+     * Method for enabling a debug mode for cursor recycling (only has
+     * effect if recycling is also enabled): in this mode, cursors are
+     * not actually reused; instead, any use of a child cursor after
+     * its parent has been advanced (which is legal but not useful without
+     * recycling, and a bug with recycling) results in an
+     * {@link IllegalStateException}. This can be used in tests to verify
+     * that code is safe to run with recycling enabled.
+     *
+     * @since 2.4.2
+     */
+    public void setCursorRecyclingChecks(boolean state)
+    {
+        _checkRecycling = state;
+    }
+
+    /**
+     * @since 2.4.2
+     */
+    public boolean isCursorRecyclingChecked() { return _checkRecycling; }
+
+    /**
+     * Factory method called by cursors to get a child cursor to use,
+     * if cursor recycling is enabled.
+     */
+    SMHierarchicCursor _recycledChildCursor(SMInputCursor parent, SMFilter f)
+    {
+        final int depth = _streamReader.getDepth();
+        SMHierarchicCursor[] cursors = _childCursors;
+        if (cursors == null) {
+            _childCursors = cursors = new SMHierarchicCursor[Math.max(16, depth+1)];
+        } else if (depth >= cursors.length) {
+            _childCursors = cursors = _grow(cursors, new SMHierarchicCursor[depth+depth]);
+        }
+        SMHierarchicCursor crsr = cursors[depth];
+        if (crsr == null || _checkRecycling) {
+            crsr = new SMHierarchicCursor(this, parent, f);
+            if (_checkRecycling) {
+                crsr._checkRelease = true;
+            } else {
+                cursors[depth] = crsr;
+            }
+        } else {
+            crsr._reinit(parent, f);
+        }
+        return crsr;
+    }
+
+    /**
+     * Factory method called by cursors to get a descendant cursor to use,
+     * if cursor recycling is enabled.
+     */
+    SMFlatteningCursor _recycledDescendantCursor(SMInputCursor parent, SMFilter f)
+    {
+        final int depth = _streamReader.getDepth();
+        SMFlatteningCursor[] cursors = _descendantCursors;
+        if (cursors == null) {
+            _descendantCursors = cursors = new SMFlatteningCursor[Math.max(16, depth+1)];
+        } else if (depth >= cursors.length) {
+            _descendantCursors = cursors = _grow(cursors, new SMFlatteningCursor[depth+depth]);
+        }
+        SMFlatteningCursor crsr = cursors[depth];
+        if (crsr == null || _checkRecycling) {
+            crsr = new SMFlatteningCursor(this, parent, f);
+            if (_checkRecycling) {
+                crsr._checkRelease = true;
+            } else {
+                cursors[depth] = crsr;
+            }
+        } else {
+            crsr._reinit(parent, f);
+        }
+        return crsr;
+    }
+
+    /**
+     * Method called by cursors to get an element filter for given name
+     * (either a local name String, or a {@link QName}), if cursor
+     * recycling is enabled.
+     */
+    SMFilter _elementFilter(Object name)
+    {
+        Map<Object,SMFilter> filters = _elementFilters;
+        if (filters == null) {
+            _elementFilters = filters = new HashMap<Object,SMFilter>();
+        }
+        SMFilter f = filters.get(name);
+        if (f == null) {
+            f = (name instanceof QName) ? new ElementFilter((QName) name)
+                : new ElementFilter((String) name);
+            // let's not let cache grow without bounds
+            if (filters.size() < MAX_CACHED_FILTERS) {
+                filters.put(name, f);
+            }
+        }
+        return f;
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods, path stack
+    /**********************************************************************
+     */
+
+    /**
+     * Method called by cursors using {@link SMInputCursor.Tracking#PATH}
+     * when they move over a START_ELEMENT, to record its information
+     * at given depth.
+     */
+    void _trackPath(int depth, int nodeIndex, int elemIndex)
+    {
+        if (_pathLocalNames == null || depth >= _pathLocalNames.length) {
+            _growPathStack(depth);
+        }
+        final XMLStreamReader2 sr = _streamReader;
+        _pathPrefixes[depth] = sr.getPrefix();
+        _pathNsUris[depth] = sr.getNamespaceURI();
+        _pathLocalNames[depth] = sr.getLocalName();
+        _pathNodeIndexes[depth] = nodeIndex;
+        _pathElemIndexes[depth] = elemIndex;
+    }
+
+    private void _growPathStack(int depth)
+    {
+        int len = (_pathLocalNames == null) ? 16 : _pathLocalNames.length;
+        while (len <= depth) {
+            len += len;
+        }
+        if (_pathLocalNames == null) {
+            _pathPrefixes = new String[len];
+            _pathNsUris = new String[len];
+            _pathLocalNames = new String[len];
+            _pathNodeIndexes = new int[len];
+            _pathElemIndexes = new int[len];
+        } else {
+            _pathPrefixes = _grow(_pathPrefixes, new String[len]);
+            _pathNsUris = _grow(_pathNsUris, new String[len]);
+            _pathLocalNames = _grow(_pathLocalNames, new String[len]);
+            int[] old = _pathNodeIndexes;
+            _pathNodeIndexes = new int[len];
+            System.arraycopy(old, 0, _pathNodeIndexes, 0, old.length);
+            old = _pathElemIndexes;
+            _pathElemIndexes = new int[len];
+            System.arraycopy(old, 0, _pathElemIndexes, 0, old.length);
+        }
+    }
+
+    /**
+     * Method for constructing (immutable) element information objects
+     * for path stack entries from <code>start</code> to <code>end</code>
+     * (inclusive); returns information for the last element,
+     * or <code>base</code> if range is empty.
+     *
+     * @param base Information for the parent of the element at
+     *   <code>start</code>, if any
+     */
+    SMElementInfo _pathElementInfo(SMElementInfo base, int start, int end)
+    {
+        SMElementInfo info = base;
+        for (int depth = start; depth <= end; ++depth) {
+            info = new PathElementInfo(info, _pathPrefixes[depth], _pathNsUris[depth],
+                    _pathLocalNames[depth], _pathNodeIndexes[depth], _pathElemIndexes[depth],
+                    depth-1);
+        }
+        return info;
+    }
+
+    /**
+     * Method for appending path description of path stack entries
+     * from <code>start</code> to <code>end</code> (inclusive), using
+     * same notation as {@link SMInputCursor#getPathDesc}.
+     */
+    void _appendPathDesc(StringBuilder sb, int start, int end)
+    {
+        for (int depth = start; depth <= end; ++depth) {
+            sb.append('/');
+            String prefix = _pathPrefixes[depth];
+            if (prefix != null && prefix.length() > 0) {
+                sb.append(prefix);
+                sb.append(':');
+            }
+            sb.append(_pathLocalNames[depth]);
+            sb.append("[e").append(_pathElemIndexes[depth]).append(']');
+        }
+    }
+
+    private static <T> T[] _grow(T[] old, T[] result)
+    {
+        System.arraycopy(old, 0, result, 0, old.length);
+        return result;
+    }
+
+    /**
+     * Method for accessing reusable text buffer of at least given size,
+     * retaining contents up to <code>keep</code> characters.
+     */
+    char[] _textBuffer(int minSize, int keep)
+    {
+        char[] buf = _textBuffer;
+        if (buf == null || buf.length < minSize) {
+            char[] newBuf = new char[Math.max(minSize, 64)];
+            if (buf != null && keep > 0) {
+                System.arraycopy(buf, 0, newBuf, 0, keep);
+            }
+            _textBuffer = buf = newBuf;
+        }
+        return buf;
+    }
+
     /*
     /**********************************************************************
     /* Public API: access to location information
@@ -83,5 +475,43 @@ public final class SMInputContext
         // If not, fall back to regular method
         return _streamReader.getLocation();
     }
-}
 
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    /**
+     * Element information snapshot constructed on demand from the path
+     * stack; does not link to siblings.
+     */
+    private final static class PathElementInfo
+        extends SMElementInfo
+    {
+        final SMElementInfo _parent;
+        final String _prefix, _nsURI, _localName;
+        final int _nodeIndex, _elemIndex, _depth;
+
+        PathElementInfo(SMElementInfo parent, String prefix, String nsURI, String localName,
+                int nodeIndex, int elemIndex, int depth)
+        {
+            _parent = parent;
+            _prefix = prefix;
+            _nsURI = nsURI;
+            _localName = localName;
+            _nodeIndex = nodeIndex;
+            _elemIndex = elemIndex;
+            _depth = depth;
+        }
+
+        public SMElementInfo getParent() { return _parent; }
+        public SMElementInfo getPreviousSibling() { return null; }
+        public int getNodeIndex() { return _nodeIndex; }
+        public int getElementIndex() { return _elemIndex; }
+        public int getDepth() { return _depth; }
+        public String getNamespaceURI() { return _nsURI; }
+        public String getLocalName() { return _localName; }
+        public String getPrefix() { return _prefix; }
+    }
+}
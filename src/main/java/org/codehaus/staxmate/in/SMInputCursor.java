@@ -2,6 +2,8 @@ package org.codehaus.staxmate.in;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
 
 import javax.xml.namespace.QName;
 import javax.xml.stream.Location;
@@ -106,7 +108,28 @@ public abstract class SMInputCursor
          * {@link SMElementInfo#getPreviousSibling} unless it's the first element
          * iterated by this cursor.
          */
-        ALL_SIBLINGS
+        ALL_SIBLINGS,
+
+        /**
+         * Value that indicates that only the path of currently open
+         * elements should be tracked, without allocating per-element
+         * state objects: information is kept in a shared array-based
+         * stack of {@link SMInputContext}, indexed by element depth.
+         * Path descriptions (see {@link #getPathDesc}) can be produced
+         * just like with {@link #PARENTS}, and {@link #getTrackedElement}
+         * returns non-null values, but these are constructed on demand
+         * (as snapshots, with no sibling information), and are only
+         * guaranteed to reflect the last element cursor returned while
+         * cursor still points to that element.
+         * Custom {@link ElementInfoFactory} is not used in this mode.
+         *<p>
+         * For full paths, parent cursors need to use this mode as well
+         * (which is the default since child cursors inherit tracking
+         * settings from their parent).
+         *
+         * @since 2.4.2
+         */
+        PATH
     }
 
     /*
@@ -121,6 +144,24 @@ public abstract class SMInputCursor
      */
     protected SMFilter mFilter = null;
 
+    /**
+     * Event types {@link #mFilter} may accept (see
+     * {@link SMFilter#getAcceptedTypes}); cached when filter is set,
+     * so that events of other types can be rejected without calling
+     * the filter.
+     *
+     * @since 2.4.2
+     */
+    protected int _filterTypes = SMFilter.ALL_TYPES;
+
+    /**
+     * Whether {@link #mFilter} only checks event types (see
+     * {@link SMFilter#isTypeOnly}), in which case it need not be called.
+     *
+     * @since 2.4.2
+     */
+    protected boolean _filterTypeOnly = true;
+
     /**
      * Whether element information is to be tracked or not, and if it is,
      * how much of it will be stored. See {@link Tracking} for details.
@@ -160,7 +201,7 @@ public abstract class SMInputCursor
     public SMInputCursor(SMInputContext ctxt, SMInputCursor parent, SMFilter filter)
     {
         super(ctxt, (parent == null) ? 0 : ctxt.getDepth());
-        mFilter = filter;
+        _setFilter(filter);
         /* By default, we use parent cursor's element tracking setting;
          * or "no tracking" if we have no parent
          */
@@ -168,10 +209,25 @@ public abstract class SMInputCursor
             mElemTracking = Tracking.NONE;
             _parentTrackedElement = null;
             mElemInfoFactory = null;
+            _pathStart = _baseDepth+1;
+        } else {
+            _initFromParent(parent);
+        }
+    }
+
+    private void _initFromParent(SMInputCursor parent)
+    {
+        mElemTracking = parent.getElementTracking();
+        mElemInfoFactory = parent.getElementInfoFactory();
+        // No need to construct parent element information for path tracking
+        if (mElemTracking == Tracking.PATH) {
+            _parentTrackedElement = null;
+            _pathStart = parent._pathStart;
+            _pathBaseElement = parent._pathBaseElement;
         } else {
-            mElemTracking = parent.getElementTracking();
             _parentTrackedElement = parent.getTrackedElement();
-            mElemInfoFactory = parent.getElementInfoFactory();
+            _pathStart = _baseDepth+1;
+            _pathBaseElement = _parentTrackedElement;
         }
     }
 
@@ -181,7 +237,7 @@ public abstract class SMInputCursor
      * is called.
      */
     public final void setFilter(SMFilter f) {
-        mFilter = f;
+        _setFilter(f);
     }
 
     /**
@@ -331,6 +387,9 @@ public abstract class SMInputCursor
      *    last iterated over when tracking has been enabled.
      */
     public SMElementInfo getTrackedElement() {
+        if (mElemTracking == Tracking.PATH && _trackedDepth > 0) {
+            return _context._pathElementInfo(_pathBaseElement, _pathStart, _trackedDepth);
+        }
         return _trackedElement;
     }
 
@@ -340,6 +399,10 @@ public abstract class SMInputCursor
      *    information.
      */
     public SMElementInfo getParentTrackedElement() {
+        // Parent tracked path? If so, construct on demand (once)
+        if (_parentTrackedElement == null && _pathStart <= _baseDepth) {
+            _parentTrackedElement = _context._pathElementInfo(_pathBaseElement, _pathStart, _baseDepth);
+        }
         return _parentTrackedElement;
     }
 
@@ -384,6 +447,18 @@ public abstract class SMInputCursor
         return _getStreamReader();
     }
 
+    /**
+     * Method for accessing the input context shared by this cursor and
+     * all other cursors created for the same stream reader; needed
+     * for configuring things like cursor recycling (see
+     * {@link SMInputContext#setCursorRecycling}).
+     *
+     * @since 2.4.2
+     */
+    public final SMInputContext getContext() {
+        return _context;
+    }
+
     /**
      * Method to access starting Location of event (as defined by Stax
      * specification)
@@ -558,6 +633,54 @@ public abstract class SMInputCursor
         }
     }
 
+    /**
+     * Method similar to {@link #collectDescendantText}, but will pass
+     * the text to specified sink (as segments of the stream reader's
+     * character buffer) instead of collecting it into a String.
+     * After the call, cursor will be positioned at the END_ELEMENT matching
+     * initial START_ELEMENT.
+     *
+     * @param sink Sink to pass text segments to
+     * @param includeIgnorable Whether text for events of type SPACE should
+     *   be ignored in the results or not. If false, SPACE events will be
+     *   skipped; if true, white space will be included in results.
+     *
+     * @since 2.4.2
+     */
+    public void processDescendantText(SMTextSink sink, boolean includeIgnorable)
+        throws XMLStreamException
+    {
+        if (!readerAccessible()) {
+            throw _notAccessible("processDescendantText");
+        }
+        SMFilter f = includeIgnorable
+            ? SMFilterFactory.getTextOnlyFilter()
+            : SMFilterFactory.getNonIgnorableTextFilter();
+        SMInputCursor childIt = descendantCursor(f);
+        XMLStreamReader2 sr = childIt._getStreamReader();
+        while (childIt.getNext() != null) {
+            sink.appendText(sr.getTextCharacters(), sr.getTextStart(), sr.getTextLength());
+        }
+    }
+
+    /**
+     * Method similar to {@link #collectDescendantText}, but will append
+     * the text to given (usually reused) StringBuilder, instead of
+     * constructing a new String.
+     *
+     * @param sb StringBuilder to append text to
+     * @param includeIgnorable Whether text for events of type SPACE should
+     *   be ignored in the results or not. If false, SPACE events will be
+     *   skipped; if true, white space will be included in results.
+     *
+     * @since 2.4.2
+     */
+    public void processDescendantText(StringBuilder sb, boolean includeIgnorable)
+        throws XMLStreamException
+    {
+        processDescendantText(new StringBuilderSink(sb), includeIgnorable);
+    }
+
     /*
     /**********************************************************************
     /* Public API, accessing current element information
@@ -1249,15 +1372,41 @@ public abstract class SMInputCursor
         if (!readerAccessible()) {
             throw _notAccessible("getAttrEnumValue");
         }
-        String value = _streamReader.getAttributeValue(index).trim();
-        if (value.length() == 0) {
-            return null;
+        String value = _streamReader.getAttributeValue(index);
+        T result = SMEnumLookup.forType(enumType).find(value);
+        if (result == null && !_isAllWhitespace(value)) {
+            value = value.trim();
+            throw _constructTypedException(value, null, "Invalid enumeration value '"+value+"'; not one of values of "+enumType.getName());
         }
-        try {
-            return Enum.valueOf(enumType, value);
-        } catch (IllegalArgumentException iae) {
-            throw _constructTypedException(value, iae, "Invalid enumeration value '"+value+"'; not one of values of "+enumType.getName());
+        return result;
+    }
+
+    /**
+     * Method for accessing value of specified attribute as an
+     * Enum value, using given lookup table (which can allow
+     * case-insensitive matching, aliases). Leading and trailing
+     * white space is ignored.
+     *
+     * @param index Index of attribute to access
+     * @param lookup Lookup table to use for finding the value
+     * @param defValue Value to return if attribute value is empty or
+     *   not one of values lookup recognizes
+     *
+     * @throws XMLStreamException If specified attribute can not be
+     *   accessed (due to cursor state)
+     * @throws IllegalArgumentException If given attribute index
+     *   is invalid
+     *
+     * @since 2.4.2
+     */
+    public <T extends Enum<T>> T getAttrEnumValue(int index, SMEnumLookup<T> lookup, T defValue)
+        throws XMLStreamException
+    {
+        if (!readerAccessible()) {
+            throw _notAccessible("getAttrEnumValue");
         }
+        T result = lookup.find(_streamReader.getAttributeValue(index));
+        return (result == null) ? defValue : result;
     }
 
     /**
@@ -1285,6 +1434,250 @@ public abstract class SMInputCursor
         return getAttrBinaryValue(index, Base64Variants.getDefaultVariant());
     }
     
+    /*
+    /**********************************************************************
+    /* Public API, accessing attributes using precompiled keys
+    /**********************************************************************
+     */
+
+    /**
+     * Method that can be called when this cursor points to START_ELEMENT,
+     * and which will return index of attribute specified by given key,
+     * if element has it; or -1 if not. Compared to
+     * {@link #findAttrIndex(String,String)}, this is usually faster
+     * for repeated lookups, see {@link SMAttrKey} for details.
+     *
+     * @throws XMLStreamException if cursor is not valid or not
+     *   pointing to START_ELEMENT
+     *
+     * @since 2.4.2
+     */
+    public int findAttrIndex(SMAttrKey key)
+        throws XMLStreamException
+    {
+        if (!readerAccessible()) {
+            throw _notAccessible("findAttrIndex");
+        }
+        return key.findIndex(_streamReader, _context);
+    }
+
+    /**
+     * Method that can be called when this cursor points to START_ELEMENT,
+     * and returns unmodified textual value of attribute specified by
+     * given key, if element has it; or null if not.
+     *
+     * @throws XMLStreamException if cursor is not valid or not
+     *   pointing to START_ELEMENT
+     *
+     * @since 2.4.2
+     */
+    public String getAttrValue(SMAttrKey key)
+        throws XMLStreamException
+    {
+        if (!readerAccessible()) {
+            throw _notAccessible("getAttrValue");
+        }
+        int ix = key.findIndex(_streamReader, _context);
+        return (ix < 0) ? null : _streamReader.getAttributeValue(ix);
+    }
+
+    /**
+     * Method for accessing value of specified attribute as boolean.
+     * Method will only succeed if element has the attribute, and its value
+     * is a valid boolean, as specified by XML Schema specification.
+     *
+     * @throws XMLStreamException If specified attribute can not be
+     *   accessed (due to cursor state), if element does not have it,
+     *   or if attribute value is not a valid textual representation
+     *   of boolean.
+     *
+     * @since 2.4.2
+     */
+    public boolean getAttrBooleanValue(SMAttrKey key)
+        throws XMLStreamException
+    {
+        return _streamReader.getAttributeAsBoolean(_requiredAttrIndex(key, "getAttrBooleanValue"));
+    }
+
+    /**
+     * Method for accessing value of specified attribute as boolean.
+     * If element does not have the attribute, or its value is not
+     * a valid boolean (as specified by XML Schema specification),
+     * will instead return specified "default value".
+     *
+     * @throws XMLStreamException If specified attribute can not be
+     *   accessed (due to cursor state)
+     *
+     * @since 2.4.2
+     */
+    public boolean getAttrBooleanValue(SMAttrKey key, boolean defValue)
+        throws XMLStreamException
+    {
+        if (!readerAccessible()) {
+            throw _notAccessible("getAttrBooleanValue");
+        }
+        int ix = key.findIndex(_streamReader, _context);
+        if (ix < 0) {
+            return defValue;
+        }
+        try {
+            return _streamReader.getAttributeAsBoolean(ix);
+        } catch (TypedXMLStreamException e) {
+            return defValue;
+        }
+    }
+
+    /**
+     * Method for accessing value of specified attribute as int.
+     * Method will only succeed if element has the attribute, and its value
+     * is a valid int, as specified by XML Schema specification.
+     *
+     * @throws XMLStreamException If specified attribute can not be
+     *   accessed (due to cursor state), if element does not have it,
+     *   or if attribute value is not a valid textual representation
+     *   of int.
+     *
+     * @since 2.4.2
+     */
+    public int getAttrIntValue(SMAttrKey key)
+        throws XMLStreamException
+    {
+        return _streamReader.getAttributeAsInt(_requiredAttrIndex(key, "getAttrIntValue"));
+    }
+
+    /**
+     * Method for accessing value of specified attribute as int.
+     * If element does not have the attribute, or its value is not
+     * a valid int (as specified by XML Schema specification),
+     * will instead return specified "default value".
+     *
+     * @throws XMLStreamException If specified attribute can not be
+     *   accessed (due to cursor state)
+     *
+     * @since 2.4.2
+     */
+    public int getAttrIntValue(SMAttrKey key, int defValue)
+        throws XMLStreamException
+    {
+        if (!readerAccessible()) {
+            throw _notAccessible("getAttrIntValue");
+        }
+        int ix = key.findIndex(_streamReader, _context);
+        if (ix < 0) {
+            return defValue;
+        }
+        try {
+            return _streamReader.getAttributeAsInt(ix);
+        } catch (TypedXMLStreamException e) {
+            return defValue;
+        }
+    }
+
+    /**
+     * Method for accessing value of specified attribute as long.
+     * Method will only succeed if element has the attribute, and its value
+     * is a valid long, as specified by XML Schema specification.
+     *
+     * @throws XMLStreamException If specified attribute can not be
+     *   accessed (due to cursor state), if element does not have it,
+     *   or if attribute value is not a valid textual representation
+     *   of long.
+     *
+     * @since 2.4.2
+     */
+    public long getAttrLongValue(SMAttrKey key)
+        throws XMLStreamException
+    {
+        return _streamReader.getAttributeAsLong(_requiredAttrIndex(key, "getAttrLongValue"));
+    }
+
+    /**
+     * Method for accessing value of specified attribute as long.
+     * If element does not have the attribute, or its value is not
+     * a valid long (as specified by XML Schema specification),
+     * will instead return specified "default value".
+     *
+     * @throws XMLStreamException If specified attribute can not be
+     *   accessed (due to cursor state)
+     *
+     * @since 2.4.2
+     */
+    public long getAttrLongValue(SMAttrKey key, long defValue)
+        throws XMLStreamException
+    {
+        if (!readerAccessible()) {
+            throw _notAccessible("getAttrLongValue");
+        }
+        int ix = key.findIndex(_streamReader, _context);
+        if (ix < 0) {
+            return defValue;
+        }
+        try {
+            return _streamReader.getAttributeAsLong(ix);
+        } catch (TypedXMLStreamException e) {
+            return defValue;
+        }
+    }
+
+    /**
+     * Method for accessing value of specified attribute as double.
+     * Method will only succeed if element has the attribute, and its value
+     * is a valid double, as specified by XML Schema specification.
+     *
+     * @throws XMLStreamException If specified attribute can not be
+     *   accessed (due to cursor state), if element does not have it,
+     *   or if attribute value is not a valid textual representation
+     *   of double.
+     *
+     * @since 2.4.2
+     */
+    public double getAttrDoubleValue(SMAttrKey key)
+        throws XMLStreamException
+    {
+        return _streamReader.getAttributeAsDouble(_requiredAttrIndex(key, "getAttrDoubleValue"));
+    }
+
+    /**
+     * Method for accessing value of specified attribute as double.
+     * If element does not have the attribute, or its value is not
+     * a valid double (as specified by XML Schema specification),
+     * will instead return specified "default value".
+     *
+     * @throws XMLStreamException If specified attribute can not be
+     *   accessed (due to cursor state)
+     *
+     * @since 2.4.2
+     */
+    public double getAttrDoubleValue(SMAttrKey key, double defValue)
+        throws XMLStreamException
+    {
+        if (!readerAccessible()) {
+            throw _notAccessible("getAttrDoubleValue");
+        }
+        int ix = key.findIndex(_streamReader, _context);
+        if (ix < 0) {
+            return defValue;
+        }
+        try {
+            return _streamReader.getAttributeAsDouble(ix);
+        } catch (TypedXMLStreamException e) {
+            return defValue;
+        }
+    }
+
+    private int _requiredAttrIndex(SMAttrKey key, String method)
+        throws XMLStreamException
+    {
+        if (!readerAccessible()) {
+            throw _notAccessible(method);
+        }
+        int ix = key.findIndex(_streamReader, _context);
+        if (ix < 0) {
+            throw constructStreamException("Missing attribute '"+key+"' for element <"+getPrefixedName()+">");
+        }
+        return ix;
+    }
+
     /*
     /**********************************************************************
     /* Deprecated data access
@@ -1292,8 +1685,9 @@ public abstract class SMInputCursor
      */
 
     /**
-     * @deprecated Use combination of {@link #findAttrIndex} and
-     *   {@link #getAttrIntValue(int)} instead.
+     * @deprecated Use {@link #getAttrIntValue(SMAttrKey)} instead
+     *   (or combination of {@link #findAttrIndex} and
+     *   {@link #getAttrIntValue(int)}).
      */
     @Deprecated
     public int getAttrIntValue(String uri, String localName)
@@ -1306,8 +1700,9 @@ public abstract class SMInputCursor
     }
 
     /**
-     * @deprecated Use combination of {@link #findAttrIndex} and
-     *   {@link #getAttrIntValue(int,int)} instead.
+     * @deprecated Use {@link #getAttrIntValue(SMAttrKey,int)} instead
+     *   (or combination of {@link #findAttrIndex} and
+     *   {@link #getAttrIntValue(int,int)}).
      */
     @Deprecated
     public int getAttrIntValue(String uri, String localName, int defValue)
@@ -1358,6 +1753,129 @@ public abstract class SMInputCursor
         return str;
     }
 
+    /**
+     * Method similar to {@link #getElemStringValue}, but that will pass
+     * text <b>directly</b> contained within START_ELEMENT currently
+     * pointed by this cursor to specified sink (as segments of the
+     * stream reader's character buffer), instead of constructing
+     * a String. Comments and processing instructions are skipped, as is
+     * ignorable white space; child elements are not allowed.
+     * After the call, cursor will be positioned at the END_ELEMENT
+     * matching the START_ELEMENT.
+     *
+     * @throws XMLStreamException if content is not accessible, or
+     *  if a child element is encountered.
+     *
+     * @since 2.4.2
+     */
+    public void processElemText(SMTextSink sink)
+        throws XMLStreamException
+    {
+        _verifyElemAccess("processElemText");
+        final XMLStreamReader2 sr = _streamReader;
+        while (true) {
+            switch (sr.next()) {
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+                sink.appendText(sr.getTextCharacters(), sr.getTextStart(), sr.getTextLength());
+                break;
+            case XMLStreamConstants.ENTITY_REFERENCE: // only if not expanded
+                {
+                    char[] ch = sr.getText().toCharArray();
+                    sink.appendText(ch, 0, ch.length);
+                }
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                _markConsumed();
+                return;
+            case XMLStreamConstants.START_ELEMENT:
+                throw constructStreamException("Unexpected START_ELEMENT <"+sr.getLocalName()
+                        +"> encountered when expecting text-only content (called processElemText)");
+            default: // comments, PIs, ignorable white space
+            }
+        }
+    }
+
+    /**
+     * Method similar to {@link #getElemStringValue}, but that will append
+     * text <b>directly</b> contained within START_ELEMENT currently
+     * pointed by this cursor to given (usually reused) StringBuilder,
+     * instead of constructing a new String.
+     *
+     * @throws XMLStreamException if content is not accessible, or
+     *  if a child element is encountered.
+     *
+     * @since 2.4.2
+     */
+    public void processElemText(StringBuilder sb)
+        throws XMLStreamException
+    {
+        processElemText(new StringBuilderSink(sb));
+    }
+
+    /**
+     * Method that will read the sub-tree of START_ELEMENT currently
+     * pointed by this cursor (the element and all its contents) into
+     * a compact buffer, contents of which can then be read using
+     * cursors constructed by {@link SMEventBuffer#rootElementCursor}
+     * any number of times.
+     * After the call, cursor will be positioned at the END_ELEMENT
+     * matching the START_ELEMENT.
+     *
+     * @throws XMLStreamException if content is not accessible
+     *
+     * @since 2.4.2
+     */
+    public SMEventBuffer bufferSubtree()
+        throws XMLStreamException
+    {
+        _verifyElemAccess("bufferSubtree");
+        SMEventBuffer buffer = SMEventBuffer.construct(_streamReader);
+        _markConsumed();
+        return buffer;
+    }
+
+    /**
+     * Method to call after the sub-tree of START_ELEMENT currently
+     * pointed by this cursor has been read directly using the underlying
+     * stream reader (see {@link #getStreamReader}), so that the reader
+     * points to the matching END_ELEMENT: this lets cursor know that
+     * it need not skip contents of the element when advanced.
+     *
+     * @throws XMLStreamException if cursor does not point to a START_ELEMENT,
+     *   or stream reader does not point to an END_ELEMENT
+     *
+     * @since 2.4.2
+     */
+    public void markSubtreeConsumed()
+        throws XMLStreamException
+    {
+        _verifyElemAccess("markSubtreeConsumed");
+        if (_streamReader.getEventType() != XMLStreamConstants.END_ELEMENT) {
+            throw constructStreamException("Can not mark sub-tree consumed: stream reader not pointing to END_ELEMENT but "
+                    +eventObjectByEventId(_streamReader.getEventType()));
+        }
+        _markConsumed();
+    }
+
+    /**
+     * Method for constructing a {@link SMRecordStream} for iterating over
+     * results of mapping elements this cursor iterates over (usually
+     * repeated child elements, "records") using given mapper; optionally
+     * mapping them concurrently using given executor.
+     * Cursor must not be advanced by caller during iteration.
+     *
+     * @param executor Executor used for mapping records, if any; if null,
+     *   records are mapped by the thread doing iteration
+     *
+     * @since 2.4.2
+     */
+    public <T> SMRecordStream<T> recordStream(SMRecordProcessor.RecordMapper<T> mapper,
+            ExecutorService executor)
+    {
+        return new SMRecordStream<T>(this, mapper, executor);
+    }
+
     /**
      * Method that can collect text <b>directly</b> contained within
      * START_ELEMENT currently pointed by this cursor and convert
@@ -1541,16 +2059,89 @@ public abstract class SMInputCursor
         throws XMLStreamException
     {
         _verifyElemAccess("getElemEnumValue");
-        _markConsumed();
-        String value = _streamReader.getElementText().trim();
-        if (value.length() == 0) {
-            return null;
+        int len = _readElemTextToBuffer();
+        char[] buf = _context._textBuffer(len, len);
+        T result = SMEnumLookup.forType(enumType).find(buf, 0, len);
+        if (result == null) {
+            String value = new String(buf, 0, len).trim();
+            if (value.length() > 0) {
+                throw _constructTypedException(value, null, "Invalid enumeration value '"+value+"'; not one of values of "+enumType.getName());
+            }
         }
-        try {
-            return Enum.valueOf(enumType, value);
-        } catch (IllegalArgumentException iae) {
-            throw _constructTypedException(value, iae, "Invalid enumeration value '"+value+"'; not one of values of "+enumType.getName());
+        return result;
+    }
+
+    /**
+     * Method that can collect text <b>directly</b> contained within
+     * START_ELEMENT currently pointed by this cursor and convert
+     * it to an Enum value, using given lookup table (which can allow
+     * case-insensitive matching, aliases). Leading and trailing
+     * white space is ignored; and value is looked up without
+     * constructing a String.
+     *<p>
+     * Element also can not contain mixed content (child elements;
+     * comments and processing instructions are allowed and ignored
+     * if encountered).
+     *
+     * @param lookup Lookup table to use for finding the value
+     * @param defValue Value to return if element value is empty or
+     *   not one of values lookup recognizes
+     *
+     * @throws XMLStreamException if content is not accessible
+     *
+     * @since 2.4.2
+     */
+    public <T extends Enum<T>> T getElemEnumValue(SMEnumLookup<T> lookup, T defValue)
+        throws XMLStreamException
+    {
+        _verifyElemAccess("getElemEnumValue");
+        int len = _readElemTextToBuffer();
+        T result = lookup.find(_context._textBuffer(len, len), 0, len);
+        return (result == null) ? defValue : result;
+    }
+
+    /**
+     * Helper method for reading text directly contained in the current
+     * START_ELEMENT into the reusable text buffer of the context.
+     *
+     * @return Length of text read
+     */
+    private int _readElemTextToBuffer()
+        throws XMLStreamException
+    {
+        final XMLStreamReader2 sr = _streamReader;
+        int len = 0;
+        while (true) {
+            switch (sr.next()) {
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                {
+                    int segLen = sr.getTextLength();
+                    char[] buf = _context._textBuffer(len + segLen, len);
+                    System.arraycopy(sr.getTextCharacters(), sr.getTextStart(), buf, len, segLen);
+                    len += segLen;
+                }
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                _markConsumed();
+                return len;
+            case XMLStreamConstants.START_ELEMENT:
+                throw constructStreamException("Unexpected START_ELEMENT <"+sr.getLocalName()
+                        +"> encountered when expecting text-only content");
+            default: // comments, PIs
+            }
+        }
+    }
+
+    private static boolean _isAllWhitespace(String str)
+    {
+        for (int i = 0, len = str.length(); i < len; ++i) {
+            if (str.charAt(i) > ' ') {
+                return false;
+            }
         }
+        return true;
     }
 
     /**
@@ -1575,6 +2166,276 @@ public abstract class SMInputCursor
     public byte[] getElemBinaryValue() throws XMLStreamException {
         return getElemBinaryValue(Base64Variants.getDefaultVariant());
     }    
+
+    /*
+    /**********************************************************************
+    /* Public API, Typed Access, element arrays
+    /**********************************************************************
+     */
+
+    /**
+     * Method that can collect text <b>directly</b> contained within
+     * START_ELEMENT currently pointed by this cursor and convert
+     * it to an array of int values. Values are separated by white space,
+     * and each value must be legal textual representation of
+     *<b>int</b> data type as specified by W3C Schema (as well as
+     * Stax2 Typed Access API).
+     * Element also can not contain mixed content (child elements;
+     * comments and processing instructions are allowed and ignored
+     * if encountered).
+     *<p>
+     * For very large arrays, {@link #readElemIntArray} can be used
+     * to avoid having to hold all values in memory at the same time.
+     *
+     * @throws XMLStreamException if content is not accessible or
+     *    convertible to required return type
+     *
+     * @since 2.4.2
+     */
+    public int[] getElemIntArray()
+        throws XMLStreamException
+    {
+        int[] result = new int[16];
+        int count = 0;
+        int amount;
+        while ((amount = readElemIntArray(result, count, result.length - count)) >= 0) {
+            count += amount;
+            if (count == result.length) {
+                result = Arrays.copyOf(result, count + count);
+            }
+        }
+        return (count == result.length) ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Method for reading a chunk of int values from
+     * text <b>directly</b> contained within START_ELEMENT currently pointed
+     * by this cursor (see {@link #getElemIntArray} for details on
+     * content). Method is to be called repeatedly until it returns -1,
+     * to read all values; after which cursor points to the matching
+     * END_ELEMENT (and can be advanced normally).
+     * If cursor is advanced before all values are read, remaining
+     * content is skipped.
+     *
+     * @param buffer Array to read values to
+     * @param offset Index of the first value to read
+     * @param length Maximum number of values to read
+     *
+     * @return Number of values read, if any; -1 if there are no more values
+     *
+     * @throws XMLStreamException if content is not accessible or
+     *    convertible to required type
+     *
+     * @since 2.4.2
+     */
+    public int readElemIntArray(int[] buffer, int offset, int length)
+        throws XMLStreamException
+    {
+        _verifyElemAccess("readElemIntArray");
+        int count = _streamReader.readElementAsIntArray(buffer, offset, length);
+        if (count < 0) {
+            _markConsumed();
+        }
+        return count;
+    }
+
+    /**
+     * Method that can collect text <b>directly</b> contained within
+     * START_ELEMENT currently pointed by this cursor and convert
+     * it to an array of long values. Values are separated by white space,
+     * and each value must be legal textual representation of
+     *<b>long</b> data type as specified by W3C Schema (as well as
+     * Stax2 Typed Access API).
+     * Element also can not contain mixed content (child elements;
+     * comments and processing instructions are allowed and ignored
+     * if encountered).
+     *<p>
+     * For very large arrays, {@link #readElemLongArray} can be used
+     * to avoid having to hold all values in memory at the same time.
+     *
+     * @throws XMLStreamException if content is not accessible or
+     *    convertible to required return type
+     *
+     * @since 2.4.2
+     */
+    public long[] getElemLongArray()
+        throws XMLStreamException
+    {
+        long[] result = new long[16];
+        int count = 0;
+        int amount;
+        while ((amount = readElemLongArray(result, count, result.length - count)) >= 0) {
+            count += amount;
+            if (count == result.length) {
+                result = Arrays.copyOf(result, count + count);
+            }
+        }
+        return (count == result.length) ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Method for reading a chunk of long values from
+     * text <b>directly</b> contained within START_ELEMENT currently pointed
+     * by this cursor (see {@link #getElemLongArray} for details on
+     * content). Method is to be called repeatedly until it returns -1,
+     * to read all values; after which cursor points to the matching
+     * END_ELEMENT (and can be advanced normally).
+     * If cursor is advanced before all values are read, remaining
+     * content is skipped.
+     *
+     * @param buffer Array to read values to
+     * @param offset Index of the first value to read
+     * @param length Maximum number of values to read
+     *
+     * @return Number of values read, if any; -1 if there are no more values
+     *
+     * @throws XMLStreamException if content is not accessible or
+     *    convertible to required type
+     *
+     * @since 2.4.2
+     */
+    public int readElemLongArray(long[] buffer, int offset, int length)
+        throws XMLStreamException
+    {
+        _verifyElemAccess("readElemLongArray");
+        int count = _streamReader.readElementAsLongArray(buffer, offset, length);
+        if (count < 0) {
+            _markConsumed();
+        }
+        return count;
+    }
+
+    /**
+     * Method that can collect text <b>directly</b> contained within
+     * START_ELEMENT currently pointed by this cursor and convert
+     * it to an array of float values. Values are separated by white space,
+     * and each value must be legal textual representation of
+     *<b>float</b> data type as specified by W3C Schema (as well as
+     * Stax2 Typed Access API).
+     * Element also can not contain mixed content (child elements;
+     * comments and processing instructions are allowed and ignored
+     * if encountered).
+     *<p>
+     * For very large arrays, {@link #readElemFloatArray} can be used
+     * to avoid having to hold all values in memory at the same time.
+     *
+     * @throws XMLStreamException if content is not accessible or
+     *    convertible to required return type
+     *
+     * @since 2.4.2
+     */
+    public float[] getElemFloatArray()
+        throws XMLStreamException
+    {
+        float[] result = new float[16];
+        int count = 0;
+        int amount;
+        while ((amount = readElemFloatArray(result, count, result.length - count)) >= 0) {
+            count += amount;
+            if (count == result.length) {
+                result = Arrays.copyOf(result, count + count);
+            }
+        }
+        return (count == result.length) ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Method for reading a chunk of float values from
+     * text <b>directly</b> contained within START_ELEMENT currently pointed
+     * by this cursor (see {@link #getElemFloatArray} for details on
+     * content). Method is to be called repeatedly until it returns -1,
+     * to read all values; after which cursor points to the matching
+     * END_ELEMENT (and can be advanced normally).
+     * If cursor is advanced before all values are read, remaining
+     * content is skipped.
+     *
+     * @param buffer Array to read values to
+     * @param offset Index of the first value to read
+     * @param length Maximum number of values to read
+     *
+     * @return Number of values read, if any; -1 if there are no more values
+     *
+     * @throws XMLStreamException if content is not accessible or
+     *    convertible to required type
+     *
+     * @since 2.4.2
+     */
+    public int readElemFloatArray(float[] buffer, int offset, int length)
+        throws XMLStreamException
+    {
+        _verifyElemAccess("readElemFloatArray");
+        int count = _streamReader.readElementAsFloatArray(buffer, offset, length);
+        if (count < 0) {
+            _markConsumed();
+        }
+        return count;
+    }
+
+    /**
+     * Method that can collect text <b>directly</b> contained within
+     * START_ELEMENT currently pointed by this cursor and convert
+     * it to an array of double values. Values are separated by white space,
+     * and each value must be legal textual representation of
+     *<b>double</b> data type as specified by W3C Schema (as well as
+     * Stax2 Typed Access API).
+     * Element also can not contain mixed content (child elements;
+     * comments and processing instructions are allowed and ignored
+     * if encountered).
+     *<p>
+     * For very large arrays, {@link #readElemDoubleArray} can be used
+     * to avoid having to hold all values in memory at the same time.
+     *
+     * @throws XMLStreamException if content is not accessible or
+     *    convertible to required return type
+     *
+     * @since 2.4.2
+     */
+    public double[] getElemDoubleArray()
+        throws XMLStreamException
+    {
+        double[] result = new double[16];
+        int count = 0;
+        int amount;
+        while ((amount = readElemDoubleArray(result, count, result.length - count)) >= 0) {
+            count += amount;
+            if (count == result.length) {
+                result = Arrays.copyOf(result, count + count);
+            }
+        }
+        return (count == result.length) ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Method for reading a chunk of double values from
+     * text <b>directly</b> contained within START_ELEMENT currently pointed
+     * by this cursor (see {@link #getElemDoubleArray} for details on
+     * content). Method is to be called repeatedly until it returns -1,
+     * to read all values; after which cursor points to the matching
+     * END_ELEMENT (and can be advanced normally).
+     * If cursor is advanced before all values are read, remaining
+     * content is skipped.
+     *
+     * @param buffer Array to read values to
+     * @param offset Index of the first value to read
+     * @param length Maximum number of values to read
+     *
+     * @return Number of values read, if any; -1 if there are no more values
+     *
+     * @throws XMLStreamException if content is not accessible or
+     *    convertible to required type
+     *
+     * @since 2.4.2
+     */
+    public int readElemDoubleArray(double[] buffer, int offset, int length)
+        throws XMLStreamException
+    {
+        _verifyElemAccess("readElemDoubleArray");
+        int count = _streamReader.readElementAsDoubleArray(buffer, offset, length);
+        if (count < 0) {
+            _markConsumed();
+        }
+        return count;
+    }
     
     /**
      * Helper method called by getElemXxxValue methods to ensure that
@@ -1815,7 +2676,7 @@ public abstract class SMInputCursor
     public final SMInputCursor childElementCursor(QName elemName)
         throws XMLStreamException
     {
-        return childCursor(SMFilterFactory.getElementOnlyFilter(elemName));
+        return childCursor(_elementFilter(elemName));
     }
 
     /**
@@ -1828,7 +2689,7 @@ public abstract class SMInputCursor
     public final SMInputCursor childElementCursor(String elemLocalName)
         throws XMLStreamException
     {
-        return childCursor(SMFilterFactory.getElementOnlyFilter(elemLocalName));
+        return childCursor(_elementFilter(elemLocalName));
     }
 
     /**
@@ -1850,7 +2711,7 @@ public abstract class SMInputCursor
     public final SMInputCursor descendantElementCursor(QName elemName)
         throws XMLStreamException
     {
-        return descendantCursor(SMFilterFactory.getElementOnlyFilter(elemName));
+        return descendantCursor(_elementFilter(elemName));
     }
 
     /**
@@ -1863,7 +2724,7 @@ public abstract class SMInputCursor
     public final SMInputCursor descendantElementCursor(String elemLocalName)
         throws XMLStreamException
     {
-        return descendantCursor(SMFilterFactory.getElementOnlyFilter(elemLocalName));
+        return descendantCursor(_elementFilter(elemLocalName));
     }
 
     /**
@@ -1938,6 +2799,9 @@ public abstract class SMInputCursor
      */
     public String getPathDesc()
     {
+        if (mElemTracking == Tracking.PATH) {
+            return _pathStackDesc();
+        }
         /* Need to start with parent, since current element may
          * or may not exist (depeneding on traversal)?
          */
@@ -1963,6 +2827,24 @@ public abstract class SMInputCursor
         return sb.toString();
     }
 
+    /**
+     * Method for constructing path description using the path stack,
+     * without constructing element information objects.
+     */
+    private String _pathStackDesc()
+    {
+        StringBuilder sb = new StringBuilder(100);
+        // Need to start with elements tracked by cursors not tracking paths, if any
+        appendPathDesc(sb, _pathBaseElement, true);
+        if (_trackedDepth > 0 && getCurrEvent() == SMEvent.START_ELEMENT) {
+            _context._appendPathDesc(sb, _pathStart, _trackedDepth);
+        } else {
+            _context._appendPathDesc(sb, _pathStart, _baseDepth);
+            sb.append("/*[n").append(getNodeCount()).append(']');
+        }
+        return sb.toString();
+    }
+
     private static void appendPathDesc(StringBuilder sb, SMElementInfo info,
                                        boolean recursive)
     {
@@ -2050,6 +2932,45 @@ public abstract class SMInputCursor
     protected abstract SMInputCursor constructDescendantCursor(SMFilter f)
         throws XMLStreamException;
 
+    /**
+     * Method called by recycling-enabled {@link SMInputContext} to
+     * re-initialize an invalidated cursor instance for use as a new
+     * child (or descendant) cursor of given parent cursor; state
+     * is reset to what a newly constructed cursor would have.
+     *
+     * @since 2.4.2
+     */
+    protected void _reinit(SMInputCursor parent, SMFilter filter)
+    {
+        _baseDepth = _context.getDepth();
+        _state = State.INITIAL;
+        _currEvent = null;
+        _nodeCount = 0;
+        _elemCount = 0;
+        _trackedElement = null;
+        _trackedDepth = 0;
+        _childCursor = null;
+        _setFilter(filter);
+        mData = null;
+        _initFromParent(parent);
+    }
+
+    private SMFilter _elementFilter(String localName)
+    {
+        if (_context._recycleCursors) {
+            return _context._elementFilter(localName);
+        }
+        return SMFilterFactory.getElementOnlyFilter(localName);
+    }
+
+    private SMFilter _elementFilter(QName name)
+    {
+        if (_context._recycleCursors) {
+            return _context._elementFilter(name);
+        }
+        return SMFilterFactory.getElementOnlyFilter(name);
+    }
+
     /*
     /**********************************************************************
     /* Helper methods for sub-classes, related objects
@@ -2067,4 +2988,54 @@ public abstract class SMInputCursor
     {
         _currEvent = SMEvent.END_ELEMENT;
     }
+
+    private void _setFilter(SMFilter f)
+    {
+        mFilter = f;
+        if (f == null) {
+            _filterTypes = SMFilter.ALL_TYPES;
+            _filterTypeOnly = true;
+        } else {
+            _filterTypes = f.getAcceptedTypes();
+            _filterTypeOnly = f.isTypeOnly();
+        }
+    }
+
+    /**
+     * Method called by sub-classes to check whether event of given
+     * type is accepted by the filter of this cursor (if any):
+     * event type is checked first, and filter is only called if
+     * it needs to check more than event type.
+     *
+     * @since 2.4.2
+     */
+    protected final boolean _accept(int type, SMEvent evt)
+        throws XMLStreamException
+    {
+        if ((_filterTypes & (1 << type)) == 0) {
+            return false;
+        }
+        return _filterTypeOnly || mFilter.accept(evt, this);
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    /**
+     * Simple {@link SMTextSink} that appends text to a StringBuilder
+     */
+    private final static class StringBuilderSink
+        implements SMTextSink
+    {
+        private final StringBuilder _builder;
+
+        StringBuilderSink(StringBuilder sb) { _builder = sb; }
+
+        public void appendText(char[] buffer, int offset, int len) {
+            _builder.append(buffer, offset, len);
+        }
+    }
 }
@@ -0,0 +1,202 @@
+package org.codehaus.staxmate.in;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.codehaus.staxmate.SMInputFactory;
+
+/**
+ * Helper class that allows any number of independent handlers, each
+ * interested in elements matching a path (and optionally a filter),
+ * to process a single input in one pass. All paths are compiled
+ * into a single {@link SMPathQuery}, and each handler is called with
+ * the cursor that iterates over the matching element, positioned at
+ * its START_ELEMENT. Handlers may access the element and its contents,
+ * but must not move the cursor itself (using {@link SMInputCursor#getNext}
+ * or {@link SMInputCursor#advance}), since it is shared by all handlers:
+ * if a handler does, dispatching fails with an {@link XMLStreamException}.
+ *<p>
+ * Since input is only read once, content of an element can only be
+ * consumed (read as text, or iterated using child cursors) by one
+ * handler. If more than one handler needs an element, all but the
+ * last one to be called (handlers are called in registration order)
+ * may only access the element itself (name, attributes); and if a
+ * handler consumes an element that contains elements other handlers
+ * would need, dispatching fails with an {@link XMLStreamException},
+ * instead of silently skipping matches.
+ *<p>
+ * Registration of handlers is not thread-safe; but once all handlers
+ * have been added, dispatcher can be used concurrently for different
+ * inputs, if handlers themselves are thread-safe.
+ *
+ * @since 2.4.2
+ */
+public class SMInputDispatcher
+{
+    /**
+     * Interface for objects that get called for elements that
+     * match the path (and filter) they were registered with.
+     */
+    public interface Handler
+    {
+        /**
+         * @param crsr Cursor pointing to the START_ELEMENT of the matching
+         *   element; can be used to access the element and (if the handler
+         *   is the only one interested in the element) its contents,
+         *   but must not be advanced: if it is, dispatching fails with
+         *   an {@link XMLStreamException}
+         */
+        public void handleElement(SMInputCursor crsr)
+            throws XMLStreamException;
+    }
+
+    /**
+     * Namespace bindings (prefix to URI) used for resolving prefixed
+     * names in paths
+     */
+    protected final Map<String,String> _nsBindings;
+
+    protected final List<String> _paths = new ArrayList<String>();
+
+    protected final List<SMFilter> _filters = new ArrayList<SMFilter>();
+
+    protected final List<Handler> _handlers = new ArrayList<Handler>();
+
+    /**
+     * Query compiled from paths of all registered handlers; constructed
+     * lazily, and cleared when new handlers are added.
+     */
+    protected volatile SMPathQuery _query;
+
+    /*
+    /**********************************************************************
+    /* Life-cycle, configuration
+    /**********************************************************************
+     */
+
+    public SMInputDispatcher()
+    {
+        this(Collections.<String,String>emptyMap());
+    }
+
+    /**
+     * @param nsBindings Namespace bindings (prefix to URI) to use for
+     *   resolving prefixed names in paths
+     */
+    public SMInputDispatcher(Map<String,String> nsBindings)
+    {
+        _nsBindings = new HashMap<String,String>(nsBindings);
+    }
+
+    /**
+     * Method for registering a handler to call for elements that match
+     * given path (see {@link SMPathQuery} for supported syntax).
+     *
+     * @throws IllegalArgumentException If path is invalid
+     */
+    public SMInputDispatcher addHandler(String path, Handler h)
+    {
+        return addHandler(path, null, h);
+    }
+
+    /**
+     * Method for registering a handler to call for elements that match
+     * given path (see {@link SMPathQuery} for supported syntax), and
+     * are accepted by given filter.
+     *
+     * @param filter Additional filter to apply to matching elements;
+     *   if null, all elements that match the path are accepted
+     *
+     * @throws IllegalArgumentException If path is invalid
+     */
+    public SMInputDispatcher addHandler(String path, SMFilter filter, Handler h)
+    {
+        if (h == null) {
+            throw new IllegalArgumentException("Handler can not be null");
+        }
+        // Compile separately first, to report problems early
+        SMPathQuery.compile(_nsBindings, path);
+        _paths.add(path);
+        _filters.add(filter);
+        _handlers.add(h);
+        _query = null;
+        return this;
+    }
+
+    public int getHandlerCount() { return _handlers.size(); }
+
+    /*
+    /**********************************************************************
+    /* Public API, dispatching
+    /**********************************************************************
+     */
+
+    /**
+     * Method for processing all elements given cursor iterates over
+     * (and their descendants), dispatching matching elements to
+     * handlers. Paths are evaluated relative to the cursor, as per
+     * {@link SMPathQuery#evaluate(SMInputCursor, SMPathQuery.Handler)}.
+     */
+    public void dispatch(SMInputCursor crsr)
+        throws XMLStreamException
+    {
+        SMPathQuery q = _query;
+        if (q == null) {
+            if (_paths.isEmpty()) {
+                throw new IllegalStateException("No handlers registered");
+            }
+            _query = q = SMPathQuery.compile(_nsBindings, _paths.toArray(new String[_paths.size()]));
+        }
+        q.evaluateStrict(crsr, new Dispatch(_filters.toArray(new SMFilter[_filters.size()]),
+                _handlers.toArray(new Handler[_handlers.size()])));
+    }
+
+    /**
+     * Convenience method for dispatching all elements of the document
+     * given stream reader reads.
+     */
+    public void dispatch(XMLStreamReader sr)
+        throws XMLStreamException
+    {
+        dispatch(SMInputFactory.rootElementCursor(sr));
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    private final static class Dispatch implements SMPathQuery.Handler
+    {
+        final SMFilter[] _filters;
+        final Handler[] _handlers;
+
+        Dispatch(SMFilter[] filters, Handler[] handlers)
+        {
+            _filters = filters;
+            _handlers = handlers;
+        }
+
+        public void handleMatch(SMPathQuery query, int pathIndex, SMInputCursor crsr)
+            throws XMLStreamException
+        {
+            SMFilter f = _filters[pathIndex];
+            if (f == null || f.accept(SMEvent.START_ELEMENT, crsr)) {
+                final int nodeCount = crsr._nodeCount;
+                _handlers[pathIndex].handleElement(crsr);
+                // Cursor is shared: moving it would skip elements for all handlers
+                if (crsr._nodeCount != nodeCount || crsr._state == CursorBase.State.CLOSED) {
+                    throw crsr.constructStreamException("Handler for path '"+query._paths[pathIndex]
+                            +"' advanced the dispatching cursor");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.codehaus.staxmate.in;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import javax.xml.namespace.QName;
+
+/**
+ * Symbol table that assigns small integer ids to qualified names,
+ * used by {@link SMCompactTree}s to store element and attribute names.
+ * A single table can (and usually should) be shared by all trees built
+ * from similar documents: each distinct name is then only stored once,
+ * and names of nodes in different trees can be compared using ids.
+ *<p>
+ * Names are matched as {@link QName}s are: by namespace URI and local
+ * name; prefix of the name first added is retained.
+ *<p>
+ * Instances are thread-safe: ids can be assigned and names accessed
+ * concurrently. Name access is lock-free.
+ *
+ * @since 2.4.2
+ */
+public final class SMNameTable
+{
+    /**
+     * Names by id; replaced (not modified) when names are added,
+     * so that it can be read without locking
+     */
+    private volatile QName[] _names = new QName[0];
+
+    private final HashMap<QName,Integer> _ids = new HashMap<QName,Integer>();
+
+    public SMNameTable() { }
+
+    /*
+    /**********************************************************************
+    /* Public API
+    /**********************************************************************
+     */
+
+    /**
+     * Method for finding id of given name, adding it to the table
+     * if it has not yet been added.
+     */
+    public synchronized int getId(QName name)
+    {
+        Integer id = _ids.get(name);
+        if (id != null) {
+            return id.intValue();
+        }
+        QName[] names = _names;
+        int ix = names.length;
+        names = Arrays.copyOf(names, ix+1);
+        names[ix] = name;
+        _ids.put(name, Integer.valueOf(ix));
+        _names = names;
+        return ix;
+    }
+
+    /**
+     * Method for finding id of given name, if it has been added
+     * to the table.
+     *
+     * @return Id of the name, if it has been added; -1 if not
+     */
+    public synchronized int findId(QName name)
+    {
+        Integer id = _ids.get(name);
+        return (id == null) ? -1 : id.intValue();
+    }
+
+    /**
+     * @return Name with given id
+     *
+     * @throws IllegalArgumentException if there is no name with given id
+     */
+    public QName getName(int id)
+    {
+        QName[] names = _names;
+        if (id < 0 || id >= names.length) {
+            throw new IllegalArgumentException("No name with id "+id+" (table has "+names.length+" names)");
+        }
+        return names[id];
+    }
+
+    /**
+     * @return Number of names in the table
+     */
+    public int size() {
+        return _names.length;
+    }
+
+    @Override
+    public String toString() {
+        return "[SMNameTable: "+size()+" names]";
+    }
+}
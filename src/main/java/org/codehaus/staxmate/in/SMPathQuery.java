@@ -0,0 +1,627 @@
+package org.codehaus.staxmate.in;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.codehaus.stax2.XMLStreamReader2;
+
+import org.codehaus.staxmate.SMInputFactory;
+
+/**
+ * Compiled set of simple path expressions that can be evaluated
+ * in a single forward-only pass over input, using a
+ * {@link SMInputCursor}, calling a {@link Handler} for every element
+ * that matches one of paths.
+ *<p>
+ * Supported path syntax is a small subset of XPath, limited to
+ * what can be evaluated without buffering:
+ *<ul>
+ * <li>Steps separated by <code>/</code> (child axis) or
+ *   <code>//</code> (descendant axis)
+ *  </li>
+ * <li>Name tests: <code>local</code> (no namespace),
+ *   <code>prefix:local</code> (prefix bound using the namespace
+ *   bindings passed to {@link #compile(Map, String...)}),
+ *   <code>{uri}local</code> (namespace URI inlined),
+ *   or <code>*</code> (any element); wildcard can also be used for
+ *   local name only, as <code>prefix:*</code> or <code>{uri}*</code>
+ *   (any element in given namespace; <code>{}*</code> for any element
+ *   that does not belong to a namespace)
+ *  </li>
+ * <li>Attribute predicates: <code>[@attr]</code> (attribute exists)
+ *   and <code>[@attr='value']</code> (attribute has given value);
+ *   multiple predicates can be used for a step
+ *  </li>
+ *</ul>
+ * So for example <code>/feed/entry[@type='x']/id</code> or
+ * <code>//item[@id]</code> are legal paths.
+ *<p>
+ * Paths are compiled into an automaton over steps: at every element,
+ * set of active states determines which steps can match
+ * children of that element; if no states remain active,
+ * whole sub-tree is skipped without inspecting it.
+ * Thus, any number of paths can be matched in one pass.
+ *<p>
+ * Instances are immutable and thread-safe; each evaluation
+ * keeps its state separately.
+ *
+ * @since 2.4.2
+ */
+public final class SMPathQuery
+{
+    /**
+     * Interface for objects called for elements matching one of
+     * the paths of a {@link SMPathQuery}.
+     */
+    public interface Handler
+    {
+        /**
+         * Method called when an element matching a path is encountered.
+         * Cursor points to the START_ELEMENT of the matching element;
+         * handler can access its attributes, and read its contents (for
+         * example, by calling {@link SMInputCursor#getElemStringValue} or
+         * by constructing child cursors). If it does so, matching of
+         * descendants of the element is skipped. Handler must not
+         * advance the cursor itself, however.
+         *<p>
+         * If more than one path matches the same element, handler is
+         * called once for each path (in order paths were given); in that
+         * case only the last call should consume contents of the element.
+         *
+         * @param query Query that is being evaluated
+         * @param pathIndex Index of the path that matched
+         * @param crsr Cursor that points to the matching element
+         */
+        public void handleMatch(SMPathQuery query, int pathIndex, SMInputCursor crsr)
+            throws XMLStreamException;
+    }
+
+    /*
+    /**********************************************************************
+    /* Compiled state
+    /**********************************************************************
+     */
+
+    /**
+     * Paths this query was compiled from
+     */
+    final String[] _paths;
+
+    // // // Steps of all paths; steps of a single path are contiguous
+
+    /**
+     * Interned local names for steps; null for wildcard
+     */
+    final String[] _stepLocalNames;
+
+    /**
+     * Interned namespace URIs for steps; "" for "no namespace",
+     * null for wildcard
+     */
+    final String[] _stepNsUris;
+
+    /**
+     * Whether step uses descendant (<code>//</code>) axis
+     */
+    final boolean[] _stepDescendant;
+
+    /**
+     * Index of the path step belongs to, for last steps of paths;
+     * -1 for other steps (for which next step is the following one)
+     */
+    final int[] _stepMatch;
+
+    /**
+     * Index of the path each step belongs to
+     */
+    final int[] _stepPath;
+
+    /**
+     * Attribute predicates for steps, if any; null if none
+     */
+    final AttrTest[][] _stepAttrTests;
+
+    /**
+     * Index of the first step of each path
+     */
+    final int[] _initialStates;
+
+    private SMPathQuery(String[] paths, List<Step> steps, int[] initialStates)
+    {
+        _paths = paths;
+        final int count = steps.size();
+        _stepLocalNames = new String[count];
+        _stepNsUris = new String[count];
+        _stepDescendant = new boolean[count];
+        _stepMatch = new int[count];
+        _stepPath = new int[count];
+        _stepAttrTests = new AttrTest[count][];
+        for (int i = 0; i < count; ++i) {
+            Step step = steps.get(i);
+            _stepLocalNames[i] = step.localName;
+            _stepNsUris[i] = step.nsUri;
+            _stepDescendant[i] = step.descendant;
+            _stepMatch[i] = step.last ? step.pathIndex : -1;
+            _stepPath[i] = step.pathIndex;
+            if (!step.attrTests.isEmpty()) {
+                _stepAttrTests[i] = step.attrTests.toArray(new AttrTest[step.attrTests.size()]);
+            }
+        }
+        _initialStates = initialStates;
+    }
+
+    /**
+     * Method for compiling given paths, none of which may use namespace
+     * prefixes (names with no prefix are considered to not belong to a
+     * namespace; <code>{uri}local</code> notation may be used for
+     * namespaced names).
+     *
+     * @throws IllegalArgumentException If any of paths is invalid
+     */
+    public static SMPathQuery compile(String... paths)
+    {
+        return compile(Collections.<String,String>emptyMap(), paths);
+    }
+
+    /**
+     * Method for compiling given paths, using given namespace
+     * bindings (prefix to namespace URI) for resolving prefixed names.
+     *
+     * @throws IllegalArgumentException If any of paths is invalid
+     */
+    public static SMPathQuery compile(Map<String,String> nsBindings, String... paths)
+    {
+        if (paths.length == 0) {
+            throw new IllegalArgumentException("Need at least one path to compile");
+        }
+        List<Step> steps = new ArrayList<Step>();
+        int[] initial = new int[paths.length];
+        for (int i = 0; i < paths.length; ++i) {
+            initial[i] = steps.size();
+            new PathParser(paths[i], nsBindings).parse(i, steps);
+        }
+        return new SMPathQuery(paths.clone(), steps, initial);
+    }
+
+    /*
+    /**********************************************************************
+    /* Public API
+    /**********************************************************************
+     */
+
+    public int getPathCount() { return _paths.length; }
+
+    public String getPath(int index) { return _paths[index]; }
+
+    /**
+     * Method for evaluating this query over elements given cursor
+     * iterates over: each START_ELEMENT cursor returns is matched
+     * against the first step of paths (so that absolute paths
+     * like <code>/root/leaf</code> work as expected with a root
+     * cursor; and are relative to the parent element for child cursors).
+     * When method returns, cursor has been fully traversed.
+     */
+    public void evaluate(SMInputCursor crsr, Handler h)
+        throws XMLStreamException
+    {
+        new Evaluation(this, crsr, h, false).run(crsr, _initialStates, _initialStates.length, 0);
+    }
+
+    /**
+     * Variant of {@link #evaluate(SMInputCursor, Handler)} that fails
+     * if a handler consumes contents of an element that other paths
+     * still need: either because the element also matches other paths
+     * (for which handler has not yet been called), or because handler
+     * iterated over descendants that other paths could match.
+     * This guarantees that no match is silently skipped.
+     */
+    void evaluateStrict(SMInputCursor crsr, Handler h)
+        throws XMLStreamException
+    {
+        new Evaluation(this, crsr, h, true).run(crsr, _initialStates, _initialStates.length, 0);
+    }
+
+    /**
+     * Convenience method for evaluating this query over the whole
+     * document that given stream reader reads.
+     */
+    public void evaluate(XMLStreamReader sr, Handler h)
+        throws XMLStreamException
+    {
+        evaluate(SMInputFactory.rootElementCursor(sr), h);
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder("[SMPathQuery: ");
+        for (int i = 0; i < _paths.length; ++i) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(_paths[i]);
+        }
+        return sb.append(']').toString();
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods, matching
+    /**********************************************************************
+     */
+
+    /**
+     * Method for checking whether the element stream reader points
+     * to matches given step
+     */
+    final boolean _matches(int step, XMLStreamReader2 sr, String ln, String uri,
+                           boolean internedNames)
+    {
+        String exp = _stepLocalNames[step];
+        if (exp != null && exp != ln && (internedNames || !exp.equals(ln))) {
+            return false;
+        }
+        exp = _stepNsUris[step];
+        if (exp != null) {
+            if (exp.length() == 0) {
+                if (uri != null && uri.length() > 0) {
+                    return false;
+                }
+            } else if (exp != uri && !exp.equals(uri)) {
+                return false;
+            }
+        }
+        AttrTest[] tests = _stepAttrTests[step];
+        if (tests != null) {
+            for (AttrTest test : tests) {
+                if (!test.matches(sr)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    /**
+     * Per-evaluation state: handler, and reusable per-level buffers
+     * for active states and matches.
+     */
+    private final static class Evaluation
+    {
+        final SMPathQuery _query;
+        final Handler _handler;
+        final boolean _internedNames;
+        final boolean _strict;
+
+        int[][] _states = new int[8][];
+        int[][] _matches = new int[8][];
+
+        Evaluation(SMPathQuery q, SMInputCursor crsr, Handler h, boolean strict)
+        {
+            _query = q;
+            _handler = h;
+            _strict = strict;
+            _internedNames = crsr._context._internNames;
+        }
+
+        /**
+         * @param states Steps that elements cursor iterates over may match
+         */
+        void run(SMInputCursor crsr, int[] states, int stateCount, int level)
+            throws XMLStreamException
+        {
+            final SMPathQuery q = _query;
+            final XMLStreamReader2 sr = crsr._getStreamReader();
+            if (level+1 >= _states.length) {
+                _states = _grow(_states);
+                _matches = _grow(_matches);
+            }
+            int[] next = _states[level+1];
+            if (next == null) {
+                _states[level+1] = next = new int[q._stepMatch.length];
+                _matches[level] = new int[q._paths.length];
+            }
+            final int[] matches = _matches[level];
+
+            SMEvent evt;
+            while ((evt = crsr.getNext()) != null) {
+                if (evt != SMEvent.START_ELEMENT) {
+                    continue;
+                }
+                final String ln = sr.getLocalName();
+                final String uri = sr.getNamespaceURI();
+                int nextCount = 0;
+                int matchCount = 0;
+
+                for (int i = 0; i < stateCount; ++i) {
+                    final int step = states[i];
+                    if (q._stepDescendant[step]) { // may match deeper, too
+                        nextCount = _add(next, nextCount, step);
+                    }
+                    if (q._matches(step, sr, ln, uri, _internedNames)) {
+                        int pathIndex = q._stepMatch[step];
+                        if (pathIndex < 0) {
+                            nextCount = _add(next, nextCount, step+1);
+                        } else {
+                            matchCount = _add(matches, matchCount, pathIndex);
+                        }
+                    }
+                }
+                if (matchCount > 0) {
+                    if (matchCount > 1) { // report in path order
+                        Arrays.sort(matches, 0, matchCount);
+                    }
+                    for (int i = 0; i < matchCount; ++i) {
+                        if (i > 0 && _strict && _consumed(crsr)) {
+                            _reportConsumed(crsr, matches[i-1], "also matches path '"+q._paths[matches[i]]+"'");
+                        }
+                        _handler.handleMatch(q, matches[i], crsr);
+                    }
+                    // Did handler consume contents?
+                    if (_consumed(crsr)) {
+                        /* Text and typed accessors fail if element has child
+                         * elements, so only iteration via child cursors can
+                         * have hidden descendants from other paths.
+                         * And for the consuming path itself, it is fine to
+                         * skip further matches.
+                         */
+                        if (_strict && crsr._state != CursorBase.State.ACTIVE) {
+                            final int consumer = matches[matchCount-1];
+                            for (int i = 0; i < nextCount; ++i) {
+                                if (q._stepPath[next[i]] != consumer) {
+                                    _reportConsumed(crsr, consumer, "may have descendants that match path '"
+                                            +q._paths[q._stepPath[next[i]]]+"'");
+                                }
+                            }
+                        }
+                        continue;
+                    }
+                }
+                // If nothing could match deeper, parent cursor will skip sub-tree
+                if (nextCount > 0) {
+                    run(crsr.childElementCursor(), next, nextCount, level+1);
+                }
+            }
+        }
+
+        private static boolean _consumed(SMInputCursor crsr)
+        {
+            return (crsr._state != CursorBase.State.ACTIVE)
+                || (crsr._currEvent != SMEvent.START_ELEMENT);
+        }
+
+        private void _reportConsumed(SMInputCursor crsr, int pathIndex, String reason)
+            throws XMLStreamException
+        {
+            throw crsr.constructStreamException("Handler for path '"+_query._paths[pathIndex]
+                    +"' consumed contents of an element that "+reason);
+        }
+
+        private static int _add(int[] set, int count, int value)
+        {
+            for (int i = 0; i < count; ++i) {
+                if (set[i] == value) {
+                    return count;
+                }
+            }
+            set[count] = value;
+            return count+1;
+        }
+
+        private static int[][] _grow(int[][] arr)
+        {
+            int[][] result = new int[arr.length << 1][];
+            System.arraycopy(arr, 0, result, 0, arr.length);
+            return result;
+        }
+    }
+
+    /**
+     * Compiled attribute predicate
+     */
+    final static class AttrTest
+    {
+        /**
+         * Namespace URI of the attribute; null for "no namespace"
+         */
+        final String _nsUri;
+        final String _localName;
+
+        /**
+         * Value attribute must have; null if any value is fine
+         */
+        final String _value;
+
+        AttrTest(String nsUri, String localName, String value)
+        {
+            _nsUri = nsUri;
+            _localName = localName;
+            _value = value;
+        }
+
+        boolean matches(XMLStreamReader2 sr)
+        {
+            // null for no-namespace, see SMInputCursor.getAttrValue(String)
+            String value = sr.getAttributeValue(_nsUri, _localName);
+            if (value == null) {
+                return false;
+            }
+            return (_value == null) || _value.equals(value);
+        }
+    }
+
+    /**
+     * Step definition during compilation
+     */
+    final static class Step
+    {
+        boolean descendant;
+        String localName, nsUri;
+        int pathIndex;
+        boolean last;
+        final List<AttrTest> attrTests = new ArrayList<AttrTest>(2);
+    }
+
+    /**
+     * Simple recursive-descent parser for the supported path syntax
+     */
+    final static class PathParser
+    {
+        final String _path;
+        final Map<String,String> _nsBindings;
+        int _ptr;
+
+        PathParser(String path, Map<String,String> nsBindings)
+        {
+            if (path == null) {
+                throw new IllegalArgumentException("Path can not be null");
+            }
+            _path = path.trim();
+            _nsBindings = nsBindings;
+        }
+
+        void parse(int pathIndex, List<Step> steps)
+        {
+            final int end = _path.length();
+            if (end == 0) {
+                _reportProblem("empty path");
+            }
+            Step step = null;
+            // leading slash is optional (paths are always relative to cursor)
+            if (_path.charAt(0) != '/') {
+                step = new Step();
+                _parseStep(step);
+                step.pathIndex = pathIndex;
+                steps.add(step);
+            }
+            while (_ptr < end) {
+                if (_path.charAt(_ptr) != '/') {
+                    _reportProblem("expected '/'");
+                }
+                step = new Step();
+                if (++_ptr < end && _path.charAt(_ptr) == '/') {
+                    step.descendant = true;
+                    ++_ptr;
+                }
+                _parseStep(step);
+                step.pathIndex = pathIndex;
+                steps.add(step);
+            }
+            step.last = true;
+        }
+
+        private void _parseStep(Step step)
+        {
+            String[] name = _parseName(false);
+            step.nsUri = name[0];
+            step.localName = name[1];
+            while (_ptr < _path.length() && _path.charAt(_ptr) == '[') {
+                ++_ptr;
+                _expect('@');
+                String[] attrName = _parseName(true);
+                String value = null;
+                if (_ptr < _path.length() && _path.charAt(_ptr) == '=') {
+                    ++_ptr;
+                    value = _parseLiteral();
+                }
+                _expect(']');
+                String ns = attrName[0];
+                step.attrTests.add(new AttrTest((ns.length() == 0) ? null : ns,
+                        attrName[1], value));
+            }
+        }
+
+        /**
+         * @return Two-element array with namespace URI (or null for wildcard)
+         *   and local name (or null for wildcard)
+         */
+        private String[] _parseName(boolean attr)
+        {
+            final String path = _path;
+            final int end = path.length();
+            String uri = null;
+            if (_ptr < end && path.charAt(_ptr) == '{') {
+                int close = path.indexOf('}', _ptr);
+                if (close < 0) {
+                    _reportProblem("missing '}'");
+                }
+                uri = path.substring(_ptr+1, close);
+                _ptr = close+1;
+            }
+            int start = _ptr;
+            while (_ptr < end) {
+                char c = path.charAt(_ptr);
+                if (c == '/' || c == '[' || c == ']' || c == '=') {
+                    break;
+                }
+                ++_ptr;
+            }
+            String name = path.substring(start, _ptr).trim();
+            if (name.length() == 0) {
+                _reportProblem("missing name");
+            }
+            int ix = name.indexOf(':');
+            if (ix >= 0) {
+                String prefix = name.substring(0, ix);
+                uri = _nsBindings.get(prefix);
+                if (uri == null) {
+                    _reportProblem("unbound namespace prefix '"+prefix+"'");
+                }
+                name = name.substring(ix+1);
+            }
+            if ("*".equals(name)) {
+                if (attr) {
+                    _reportProblem("wildcard not allowed for attributes");
+                }
+                // plain '*' matches any namespace; '{uri}*' and 'prefix:*' just given one
+                return new String[] { (uri == null) ? null : uri.intern(), null };
+            }
+            if (uri == null) {
+                uri = "";
+            }
+            return new String[] { uri.intern(), name.intern() };
+        }
+
+        private String _parseLiteral()
+        {
+            final String path = _path;
+            char quote = (_ptr < path.length()) ? path.charAt(_ptr) : ' ';
+            if (quote != '\'' && quote != '"') {
+                _reportProblem("expected quoted value");
+            }
+            int close = path.indexOf(quote, _ptr+1);
+            if (close < 0) {
+                _reportProblem("unterminated value");
+            }
+            String value = path.substring(_ptr+1, close);
+            _ptr = close+1;
+            return value;
+        }
+
+        private void _expect(char c)
+        {
+            if (_ptr >= _path.length() || _path.charAt(_ptr) != c) {
+                _reportProblem("expected '"+c+"'");
+            }
+            ++_ptr;
+        }
+
+        private void _reportProblem(String msg)
+        {
+            throw new IllegalArgumentException("Invalid path expression \""+_path
+                    +"\" (at offset "+_ptr+"): "+msg);
+        }
+    }
+}
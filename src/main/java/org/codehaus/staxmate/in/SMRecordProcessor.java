@@ -0,0 +1,425 @@
+package org.codehaus.staxmate.in;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.codehaus.stax2.XMLStreamReader2;
+
+import org.codehaus.staxmate.SMInputFactory;
+
+/**
+ * Helper class for processing documents that consist of a large number
+ * of "records" (child elements of the root element) in parallel.
+ * Input is split into chunks of records using a fast byte-level
+ * scan (that only tracks element nesting, without parsing), and each
+ * chunk is parsed as a separate document (using its own stream reader
+ * and {@link SMHierarchicCursor}) by a task run on the given
+ * {@link ExecutorService}. Chunk documents consist of the XML declaration
+ * and root element start tag of the original document (so that
+ * encoding, as well as namespace declarations and other attributes
+ * of the root element are retained), followed by records.
+ *<p>
+ * For every record, a {@link RecordMapper} is called (concurrently,
+ * from executor threads) to produce a result; and results are then
+ * passed to a {@link ResultConsumer}, either in document order or
+ * as soon as chunks are completed, depending on
+ * {@link #setOrderedResults}. Consumer is only called from the thread
+ * that called <code>process</code>, so it need not be thread-safe.
+ * Number of chunks in progress is bounded, so memory usage is
+ * bounded as well, regardless of document size.
+ *<p>
+ * Limitations: encoding of the document must be ASCII-compatible
+ * (such as UTF-8 or ISO-8859-1); and since DOCTYPE declarations are not
+ * passed to chunks, records can not use entities it declares.
+ *<p>
+ * Instances are created using
+ * {@link SMInputFactory#recordProcessor(ExecutorService)}, and
+ * can be reused (but configuration should not be changed during
+ * processing).
+ *
+ * @since 2.4.2
+ */
+public class SMRecordProcessor
+{
+    /**
+     * Interface for objects that produce results from records; called
+     * concurrently from multiple threads.
+     */
+    public interface RecordMapper<T>
+    {
+        /**
+         * @param crsr Cursor that points to the START_ELEMENT of a record;
+         *   must not be advanced by the mapper (but contents of the record
+         *   can be read)
+         *
+         * @return Result for the record; if null, nothing is passed
+         *   to the consumer
+         */
+        public T mapRecord(SMInputCursor crsr) throws XMLStreamException;
+    }
+
+    /**
+     * Interface for objects that receive results produced by
+     * {@link RecordMapper}s; only called from the thread doing processing.
+     */
+    public interface ResultConsumer<T>
+    {
+        public void consumeResult(T result) throws XMLStreamException;
+    }
+
+    /**
+     * Default minimum chunk size: 256 kB
+     */
+    public final static int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+    protected final SMInputFactory _inputFactory;
+
+    protected final ExecutorService _executor;
+
+    protected int _chunkSize = DEFAULT_CHUNK_SIZE;
+
+    protected int _maxPendingChunks = 2 * Runtime.getRuntime().availableProcessors();
+
+    protected boolean _orderedResults = true;
+
+    /*
+    /**********************************************************************
+    /* Life-cycle, configuration
+    /**********************************************************************
+     */
+
+    public SMRecordProcessor(SMInputFactory f, ExecutorService executor)
+    {
+        _inputFactory = f;
+        _executor = executor;
+    }
+
+    /**
+     * Method for setting minimum size of chunks (in bytes); chunks end at
+     * the first record boundary after this many bytes.
+     */
+    public SMRecordProcessor setChunkSize(int size)
+    {
+        if (size < 1) {
+            throw new IllegalArgumentException("Chunk size has to be positive");
+        }
+        _chunkSize = size;
+        return this;
+    }
+
+    /**
+     * Method for setting maximum number of chunks that may be in
+     * progress (queued, processing, or completed but not yet consumed)
+     * at any given time.
+     */
+    public SMRecordProcessor setMaxPendingChunks(int count)
+    {
+        if (count < 1) {
+            throw new IllegalArgumentException("Maximum pending chunk count has to be positive");
+        }
+        _maxPendingChunks = count;
+        return this;
+    }
+
+    /**
+     * Method for choosing whether results are to be passed to consumer
+     * in document order (true; default), or in order in which chunks
+     * complete (false), which may increase throughput.
+     */
+    public SMRecordProcessor setOrderedResults(boolean state)
+    {
+        _orderedResults = state;
+        return this;
+    }
+
+    public int getChunkSize() { return _chunkSize; }
+
+    public int getMaxPendingChunks() { return _maxPendingChunks; }
+
+    public boolean isOrderedResults() { return _orderedResults; }
+
+    /*
+    /**********************************************************************
+    /* Public API, processing
+    /**********************************************************************
+     */
+
+    /**
+     * Method for processing all records of given document.
+     *
+     * @return Number of records processed
+     */
+    public <T> long process(byte[] data, int offset, int len,
+            RecordMapper<T> mapper, ResultConsumer<? super T> consumer)
+        throws XMLStreamException
+    {
+        RecordBoundaryScanner.verifyEncoding(data, offset, offset+len);
+        Run<T> run = new Run<T>(mapper, consumer);
+        boolean ok = false;
+        try {
+            final int end = offset+len;
+            RecordBoundaryScanner scanner = new RecordBoundaryScanner(offset);
+            int chunkStart = -1;
+            int lastEnd = -1;
+            for (int ptr = offset; ; ) {
+                int recordEnd = scanner.scan(data, ptr, end);
+                if (chunkStart < 0 && scanner.rootTagEnd >= 0) {
+                    run.initWrapper(data, scanner);
+                    chunkStart = lastEnd = scanner.rootTagEnd;
+                }
+                if (recordEnd < 0) {
+                    break;
+                }
+                ptr = lastEnd = recordEnd;
+                if ((recordEnd - chunkStart) >= _chunkSize) {
+                    run.submit(data, chunkStart, recordEnd);
+                    chunkStart = recordEnd;
+                }
+            }
+            scanner.verifyComplete();
+            if (lastEnd > chunkStart) {
+                run.submit(data, chunkStart, lastEnd);
+            }
+            run.finish();
+            ok = true;
+        } finally {
+            if (!ok) {
+                run.abort();
+            }
+        }
+        return run._recordCount;
+    }
+
+    /**
+     * Method for processing all records of given document.
+     * Document is read sequentially, so only chunks being processed
+     * need to be kept in memory.
+     *
+     * @return Number of records processed
+     */
+    public <T> long process(File f, RecordMapper<T> mapper, ResultConsumer<? super T> consumer)
+        throws IOException, XMLStreamException
+    {
+        InputStream in = new FileInputStream(f);
+        try {
+            return process(in, mapper, consumer);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Method for processing all records of document read from given
+     * stream. Stream is read sequentially, so only chunks being processed
+     * need to be kept in memory. Stream is not closed by this method.
+     *
+     * @return Number of records processed
+     */
+    public <T> long process(InputStream in, RecordMapper<T> mapper, ResultConsumer<? super T> consumer)
+        throws IOException, XMLStreamException
+    {
+        Run<T> run = new Run<T>(mapper, consumer);
+        boolean ok = false;
+        try {
+            RecordBoundaryScanner scanner = new RecordBoundaryScanner(0);
+            byte[] buf = new byte[Math.min(_chunkSize, 1 << 30) + 64000];
+            int len = 0;
+            int ptr = 0;
+            int chunkStart = -1;
+            int lastEnd = -1;
+            int count;
+
+            while ((count = in.read(buf, len, buf.length - len)) >= 0) {
+                if (len == 0 && count > 0) {
+                    RecordBoundaryScanner.verifyEncoding(buf, 0, count);
+                }
+                len += count;
+                while (true) {
+                    int recordEnd = scanner.scan(buf, ptr, len);
+                    if (chunkStart < 0 && scanner.rootTagEnd >= 0) {
+                        run.initWrapper(buf, scanner);
+                        chunkStart = lastEnd = scanner.rootTagEnd;
+                    }
+                    if (recordEnd < 0) {
+                        ptr = len;
+                        break;
+                    }
+                    ptr = lastEnd = recordEnd;
+                    if ((recordEnd - chunkStart) >= _chunkSize) {
+                        run.submit(buf, chunkStart, recordEnd);
+                        // Buffer now owned by the chunk; need a new one for the rest
+                        byte[] newBuf = new byte[buf.length];
+                        len -= recordEnd;
+                        System.arraycopy(buf, recordEnd, newBuf, 0, len);
+                        buf = newBuf;
+                        ptr = chunkStart = lastEnd = 0;
+                    }
+                }
+                // Record longer than buffer? Need to expand
+                if (len == buf.length) {
+                    byte[] newBuf = new byte[buf.length + (buf.length >> 1)];
+                    System.arraycopy(buf, 0, newBuf, 0, len);
+                    buf = newBuf;
+                }
+            }
+            scanner.verifyComplete();
+            if (lastEnd > chunkStart) {
+                run.submit(buf, chunkStart, lastEnd);
+            }
+            run.finish();
+            ok = true;
+        } finally {
+            if (!ok) {
+                run.abort();
+            }
+        }
+        return run._recordCount;
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    /**
+     * Method called (concurrently) to process a single chunk
+     */
+    protected <T> List<T> _processChunk(InputStream in, RecordMapper<T> mapper)
+        throws XMLStreamException
+    {
+        XMLStreamReader2 sr = _inputFactory.createStax2Reader(in);
+        try {
+            SMInputCursor root = SMInputFactory.rootElementCursor(sr).advance();
+            SMInputCursor records = root.childElementCursor();
+            List<T> results = new ArrayList<T>();
+            while (records.getNext() != null) {
+                T result = mapper.mapRecord(records);
+                // null results still need to be counted
+                results.add(result);
+            }
+            return results;
+        } finally {
+            sr.closeCompletely();
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    /**
+     * State of a single processing run
+     */
+    private final class Run<T>
+    {
+        final RecordMapper<T> _mapper;
+
+        final ResultConsumer<? super T> _consumer;
+
+        /**
+         * Chunks submitted but not yet consumed, in submission order
+         */
+        final ArrayDeque<Future<List<T>>> _pending = new ArrayDeque<Future<List<T>>>();
+
+        /**
+         * Used for unordered results, to find out chunks in order of completion
+         */
+        final CompletionService<List<T>> _completion;
+
+        byte[] _prefix, _suffix;
+
+        long _recordCount;
+
+        Run(RecordMapper<T> mapper, ResultConsumer<? super T> consumer)
+        {
+            _mapper = mapper;
+            _consumer = consumer;
+            _completion = _orderedResults ? null : new ExecutorCompletionService<List<T>>(_executor);
+        }
+
+        /**
+         * Method called once root element start tag has been found, to
+         * construct start and end of chunk documents
+         */
+        void initWrapper(byte[] doc, RecordBoundaryScanner scanner)
+        {
+            _prefix = scanner.constructChunkPrefix(doc);
+            _suffix = scanner.constructChunkSuffix(doc);
+        }
+
+        void submit(final byte[] buf, final int start, final int end)
+            throws XMLStreamException
+        {
+            while (_pending.size() >= _maxPendingChunks) {
+                _consumeOne();
+            }
+            Callable<List<T>> task = new Callable<List<T>>() {
+                public List<T> call() throws XMLStreamException {
+                    InputStream in = new SequenceInputStream(new ByteArrayInputStream(_prefix),
+                            new SequenceInputStream(new ByteArrayInputStream(buf, start, end-start),
+                                    new ByteArrayInputStream(_suffix)));
+                    return _processChunk(in, _mapper);
+                }
+            };
+            _pending.add((_completion == null) ? _executor.submit(task) : _completion.submit(task));
+        }
+
+        void finish() throws XMLStreamException
+        {
+            while (!_pending.isEmpty()) {
+                _consumeOne();
+            }
+        }
+
+        void abort()
+        {
+            for (Future<List<T>> f : _pending) {
+                f.cancel(true);
+            }
+            _pending.clear();
+        }
+
+        private void _consumeOne() throws XMLStreamException
+        {
+            Future<List<T>> f;
+            try {
+                if (_completion == null) {
+                    f = _pending.removeFirst();
+                } else {
+                    f = _completion.take();
+                    _pending.remove(f);
+                }
+                List<T> results = f.get();
+                _recordCount += results.size();
+                for (T result : results) {
+                    if (result != null) {
+                        _consumer.consumeResult(result);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new XMLStreamException("Interrupted while waiting for record chunks to be processed");
+            } catch (ExecutionException e) {
+                Throwable t = e.getCause();
+                if (t instanceof XMLStreamException) {
+                    throw (XMLStreamException) t;
+                }
+                if (t instanceof RuntimeException) {
+                    throw (RuntimeException) t;
+                }
+                if (t instanceof Error) {
+                    throw (Error) t;
+                }
+                throw new XMLStreamException(t);
+            }
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package org.codehaus.staxmate.in;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.codehaus.staxmate.in.SMRecordProcessor.RecordMapper;
+
+/**
+ * Helper class for iterating over results produced from repeated
+ * elements ("records") a cursor iterates over (usually child elements
+ * of an element), by calling a {@link RecordMapper} for each record.
+ * Results are returned in document order by {@link #nextRecord}.
+ *<p>
+ * If an {@link ExecutorService} is given, mapping is done concurrently:
+ * records are read (sequentially, by the calling thread) ahead in
+ * batches, buffered as {@link SMEventBuffer}s, and each batch is
+ * mapped by a task run on the executor; so that CPU-heavy mapping
+ * can use multiple cores, while parsing stays on the calling thread.
+ * Number of batches in progress is bounded, so memory usage is
+ * bounded as well. Without executor, records are mapped by the calling
+ * thread directly from the cursor, without buffering.
+ *<p>
+ * Unlike {@link SMRecordProcessor}, which splits raw input into chunks
+ * parsed concurrently, this class works on any cursor, and so can be
+ * used for records at any level, and with any input source.
+ *<p>
+ * Results can also be accessed using {@link Iterator} methods (so that,
+ * for example, a Java 8 <code>Stream</code> can be constructed using
+ * <code>Spliterators.spliteratorUnknownSize()</code>); since these can
+ * not throw checked exceptions, {@link XMLStreamException}s are wrapped
+ * in {@link IllegalStateException}s. Records for which mapper returns
+ * null are skipped by iterators as well.
+ *<p>
+ * Instances are not thread-safe (except for mapping), and can only
+ * be used for a single iteration.
+ *
+ * @since 2.4.2
+ */
+public class SMRecordStream<T>
+    implements Iterator<T>
+{
+    /**
+     * Default number of records in a batch mapped by a single task
+     */
+    public final static int DEFAULT_BATCH_SIZE = 64;
+
+    protected final SMInputCursor _cursor;
+
+    protected final RecordMapper<T> _mapper;
+
+    protected final ExecutorService _executor;
+
+    protected int _batchSize = DEFAULT_BATCH_SIZE;
+
+    protected int _maxPendingBatches = 2 * Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Batches submitted for mapping, in document order
+     */
+    protected final ArrayDeque<Future<List<T>>> _pending = new ArrayDeque<Future<List<T>>>();
+
+    /**
+     * Results of the batch being returned, if any
+     */
+    protected List<T> _results;
+
+    protected int _resultIndex;
+
+    protected boolean _cursorDone;
+
+    protected long _recordCount;
+
+    /**
+     * Result fetched by {@link #hasNext} but not yet returned, if any
+     */
+    protected T _nextResult;
+
+    /**
+     * Whether {@link #hasNext} has fetched the next result (which is
+     * null if there are no more records)
+     */
+    protected boolean _hasNextResult;
+
+    /*
+    /**********************************************************************
+    /* Life-cycle, configuration
+    /**********************************************************************
+     */
+
+    /**
+     * @param crsr Cursor that iterates over records; events other than
+     *   START_ELEMENTs are skipped
+     * @param mapper Mapper called for records
+     * @param executor Executor used for mapping records, if any; if null,
+     *   records are mapped by the thread calling {@link #nextRecord}
+     */
+    public SMRecordStream(SMInputCursor crsr, RecordMapper<T> mapper, ExecutorService executor)
+    {
+        if (crsr == null || mapper == null) {
+            throw new IllegalArgumentException("Cursor and mapper can not be null");
+        }
+        _cursor = crsr;
+        _mapper = mapper;
+        _executor = executor;
+    }
+
+    /**
+     * Method for setting number of records mapped by a single task
+     * (only used when mapping concurrently).
+     */
+    public SMRecordStream<T> setBatchSize(int size)
+    {
+        if (size < 1) {
+            throw new IllegalArgumentException("Batch size has to be positive");
+        }
+        _batchSize = size;
+        return this;
+    }
+
+    /**
+     * Method for setting maximum number of batches that may be in
+     * progress (queued, being mapped, or mapped but not yet returned)
+     * at any given time (only used when mapping concurrently).
+     */
+    public SMRecordStream<T> setMaxPendingBatches(int count)
+    {
+        if (count < 1) {
+            throw new IllegalArgumentException("Maximum pending batch count has to be positive");
+        }
+        _maxPendingBatches = count;
+        return this;
+    }
+
+    public int getBatchSize() { return _batchSize; }
+
+    public int getMaxPendingBatches() { return _maxPendingBatches; }
+
+    /**
+     * @return Number of records read from the cursor so far (including
+     *   ones read ahead, and ones for which mapper returned null)
+     */
+    public long getRecordCount() { return _recordCount; }
+
+    /*
+    /**********************************************************************
+    /* Public API, iteration
+    /**********************************************************************
+     */
+
+    /**
+     * Method for getting the result for the next record; records for
+     * which mapper returns null are skipped.
+     *
+     * @return Result for the next record, if any; null if there are
+     *   no more records
+     */
+    public T nextRecord()
+        throws XMLStreamException
+    {
+        if (_hasNextResult) {
+            T result = _nextResult;
+            _nextResult = null;
+            _hasNextResult = false;
+            return result;
+        }
+        if (_executor == null) {
+            return _nextMapped();
+        }
+        while (true) {
+            if (_results != null) {
+                while (_resultIndex < _results.size()) {
+                    T result = _results.get(_resultIndex++);
+                    if (result != null) {
+                        return result;
+                    }
+                }
+                _results = null;
+            }
+            while (!_cursorDone && _pending.size() < _maxPendingBatches) {
+                _submitBatch();
+            }
+            if (_pending.isEmpty()) {
+                return null;
+            }
+            _results = _waitFor(_pending.removeFirst());
+            _resultIndex = 0;
+        }
+    }
+
+    /**
+     * Method for stopping iteration: batches still in progress
+     * are cancelled. Cursor is not closed or advanced.
+     */
+    public void close()
+    {
+        for (Future<List<T>> f : _pending) {
+            f.cancel(true);
+        }
+        _pending.clear();
+        _results = null;
+        _nextResult = null;
+        _hasNextResult = false;
+        _cursorDone = true;
+    }
+
+    /*
+    /**********************************************************************
+    /* Iterator implementation
+    /**********************************************************************
+     */
+
+    /**
+     * @throws IllegalStateException If reading or mapping of records
+     *   fails (with {@link XMLStreamException} as the cause)
+     */
+    public boolean hasNext()
+    {
+        if (!_hasNextResult) {
+            try {
+                _nextResult = nextRecord();
+            } catch (XMLStreamException e) {
+                throw new IllegalStateException("Failed to read next record: "+e.getMessage(), e);
+            }
+            _hasNextResult = true;
+        }
+        return (_nextResult != null);
+    }
+
+    /**
+     * @throws IllegalStateException If reading or mapping of records
+     *   fails (with {@link XMLStreamException} as the cause)
+     */
+    public T next()
+    {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T result = _nextResult;
+        _nextResult = null;
+        _hasNextResult = false;
+        return result;
+    }
+
+    /**
+     * Not supported, since results are not stored.
+     */
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    private T _nextMapped() throws XMLStreamException
+    {
+        while (!_cursorDone) {
+            SMEvent evt = _cursor.getNext();
+            if (evt == null) {
+                _cursorDone = true;
+                break;
+            }
+            if (evt == SMEvent.START_ELEMENT) {
+                ++_recordCount;
+                T result = _mapper.mapRecord(_cursor);
+                if (result != null) {
+                    return result;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void _submitBatch() throws XMLStreamException
+    {
+        final List<SMEventBuffer> records = new ArrayList<SMEventBuffer>(_batchSize);
+        while (records.size() < _batchSize) {
+            SMEvent evt = _cursor.getNext();
+            if (evt == null) {
+                _cursorDone = true;
+                break;
+            }
+            if (evt == SMEvent.START_ELEMENT) {
+                records.add(_cursor.bufferSubtree());
+            }
+        }
+        if (records.isEmpty()) {
+            return;
+        }
+        _recordCount += records.size();
+        _pending.add(_executor.submit(new Callable<List<T>>() {
+            public List<T> call() throws XMLStreamException {
+                List<T> results = new ArrayList<T>(records.size());
+                for (SMEventBuffer record : records) {
+                    SMInputCursor crsr = record.rootElementCursor();
+                    crsr.getNext();
+                    results.add(_mapper.mapRecord(crsr));
+                }
+                return results;
+            }
+        }));
+    }
+
+    private List<T> _waitFor(Future<List<T>> f) throws XMLStreamException
+    {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new XMLStreamException("Interrupted while waiting for records to be mapped");
+        } catch (ExecutionException e) {
+            close();
+            Throwable t = e.getCause();
+            if (t instanceof XMLStreamException) {
+                throw (XMLStreamException) t;
+            }
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+            throw new XMLStreamException(t);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.codehaus.staxmate.in;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Interface for objects that receive textual content from cursors
+ * (see {@link SMInputCursor#processElemText(SMTextSink)} and
+ * {@link SMInputCursor#processDescendantText(SMTextSink, boolean)})
+ * as segments of the stream reader's internal character buffer,
+ * to avoid constructing Strings for the content.
+ *<p>
+ * Content of an element may be passed in any number of segments
+ * (including none, for elements without text), since parsers
+ * need not coalesce adjacent text events.
+ *
+ * @since 2.4.2
+ */
+public interface SMTextSink
+{
+    /**
+     * Method called with a segment of textual content.
+     * Contents of the buffer are only valid during the call,
+     * and must not be modified by the sink.
+     *
+     * @param buffer Buffer that contains text segment
+     * @param offset Offset of the first character of the segment
+     * @param len Length of the segment
+     */
+    public void appendText(char[] buffer, int offset, int len)
+        throws XMLStreamException;
+}
@@ -0,0 +1,538 @@
+package org.codehaus.staxmate.in;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Utility class for finding structural differences between two
+ * element sub-trees (usually, whole documents), accessed using
+ * cursors that are moved in lockstep, so that neither document needs
+ * to be fully loaded in memory. Differences are reported to a
+ * {@link Handler} as they are found.
+ *<p>
+ * Child elements of matching elements are matched by their "keys":
+ * qualified name, plus values of key attributes configured for the
+ * element name (see {@link #addKeyAttributes}); without key attributes,
+ * same-named siblings are matched by position. When next children
+ * of compared elements do not match, up to {@link #getMaxLookahead}
+ * following siblings are buffered (as {@link SMEventBuffer}s) to find
+ * whether children were added or removed; if no match is found,
+ * child of the old document is reported as removed and child of
+ * the new document as added.
+ *<p>
+ * Text content of an element consists of all its direct text
+ * (excluding text of child elements); it is compared as a whole,
+ * after trimming leading and trailing white space (unless white space
+ * handling is changed with {@link #setTrimWhitespace}).
+ * Comments and processing instructions are ignored.
+ *<p>
+ * Paths passed to handlers consist of names of elements (with
+ * prefixes, if any), with values of key attributes as predicates:
+ * for example "/catalog/item[@id='12']/price".
+ *<p>
+ * Configuration is not thread-safe; but once configured, instances
+ * can be used concurrently.
+ *
+ * @since 2.4.2
+ */
+public class SMTreeDiff
+{
+    /**
+     * Interface for objects that are notified of differences found.
+     * "Old" refers to the first tree passed to {@link SMTreeDiff#diff},
+     * "new" to the second one.
+     */
+    public interface Handler
+    {
+        /**
+         * Method called for elements that only exist in the new tree.
+         *
+         * @param path Path of the added element (including the element itself)
+         * @param crsr Cursor positioned at the START_ELEMENT of the added
+         *   element; may be used to read the element and its contents,
+         *   but must not be advanced.
+         */
+        public void elementAdded(String path, SMInputCursor crsr)
+            throws XMLStreamException;
+
+        /**
+         * Method called for elements that only exist in the old tree.
+         *
+         * @param path Path of the removed element (including the element itself)
+         * @param crsr Cursor positioned at the START_ELEMENT of the removed
+         *   element; may be used to read the element and its contents,
+         *   but must not be advanced.
+         */
+        public void elementRemoved(String path, SMInputCursor crsr)
+            throws XMLStreamException;
+
+        /**
+         * Method called for attributes that were added, removed or
+         * have different values in matching elements.
+         *
+         * @param oldValue Value in the old tree; null if attribute was added
+         * @param newValue Value in the new tree; null if attribute was removed
+         */
+        public void attributeChanged(String path, QName attrName, String oldValue, String newValue)
+            throws XMLStreamException;
+
+        /**
+         * Method called when direct text content of matching elements
+         * differs.
+         */
+        public void textChanged(String path, String oldText, String newText)
+            throws XMLStreamException;
+    }
+
+    /**
+     * Element name to use for key attributes that apply to all elements
+     */
+    public final static String ANY_ELEMENT = "*";
+
+    public final static int DEFAULT_MAX_LOOKAHEAD = 100;
+
+    protected final Handler _handler;
+
+    /**
+     * Key attribute names, by local name of elements they apply to
+     */
+    protected final Map<String,String[]> _keyAttributes = new HashMap<String,String[]>();
+
+    protected int _maxLookahead = DEFAULT_MAX_LOOKAHEAD;
+
+    protected boolean _trimWhitespace = true;
+
+    /*
+    /**********************************************************************
+    /* Life-cycle, configuration
+    /**********************************************************************
+     */
+
+    public SMTreeDiff(Handler h)
+    {
+        if (h == null) {
+            throw new IllegalArgumentException("Handler can not be null");
+        }
+        _handler = h;
+    }
+
+    /**
+     * Method for specifying attributes (by local name) whose values are
+     * used, in addition to element name, for matching child elements
+     * with given local name (or all elements, if {@link #ANY_ELEMENT}).
+     * Attributes configured for specific element name have precedence
+     * over ones for {@link #ANY_ELEMENT}.
+     *
+     * @return This instance, to allow call chaining
+     */
+    public SMTreeDiff addKeyAttributes(String elemLocalName, String... attrLocalNames)
+    {
+        if (attrLocalNames.length == 0) {
+            throw new IllegalArgumentException("Need to specify at least one key attribute");
+        }
+        _keyAttributes.put(elemLocalName, attrLocalNames.clone());
+        return this;
+    }
+
+    /**
+     * Method for specifying maximum number of siblings that are
+     * buffered (per document) to find matching children, when
+     * next children do not match.
+     *
+     * @return This instance, to allow call chaining
+     */
+    public SMTreeDiff setMaxLookahead(int max)
+    {
+        if (max < 1) {
+            throw new IllegalArgumentException("Maximum lookahead must be positive (got "+max+")");
+        }
+        _maxLookahead = max;
+        return this;
+    }
+
+    public int getMaxLookahead() { return _maxLookahead; }
+
+    /**
+     * Method for specifying whether leading and trailing white space
+     * of text content is ignored when comparing it (true, default), or not.
+     *
+     * @return This instance, to allow call chaining
+     */
+    public SMTreeDiff setTrimWhitespace(boolean state)
+    {
+        _trimWhitespace = state;
+        return this;
+    }
+
+    /*
+    /**********************************************************************
+    /* Public API
+    /**********************************************************************
+     */
+
+    /**
+     * Method for comparing elements given cursors point to, and
+     * their contents. After the call, cursors still point to the
+     * (consumed) elements, and can be advanced as usual.
+     *
+     * @param oldCrsr Cursor positioned at the START_ELEMENT of the old tree
+     * @param newCrsr Cursor positioned at the START_ELEMENT of the new tree
+     *
+     * @return Number of differences reported
+     */
+    public int diff(SMInputCursor oldCrsr, SMInputCursor newCrsr)
+        throws XMLStreamException
+    {
+        _verifyStart(oldCrsr);
+        _verifyStart(newCrsr);
+        Run run = new Run();
+        String oldKey = _key(oldCrsr);
+        if (oldKey.equals(_key(newCrsr))) {
+            run.diffElements("/"+_step(oldCrsr), oldCrsr, newCrsr);
+        } else {
+            run.removed("/"+_step(oldCrsr), oldCrsr);
+            run.added("/"+_step(newCrsr), newCrsr);
+        }
+        return run._diffCount;
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    private static void _verifyStart(SMInputCursor crsr)
+        throws XMLStreamException
+    {
+        if (crsr.getCurrEvent() != SMEvent.START_ELEMENT) {
+            throw crsr.constructStreamException("Can not diff: cursor not positioned over START_ELEMENT but "
+                    +crsr.getCurrEvent());
+        }
+    }
+
+    /**
+     * @return Path step for the element cursor points to: qualified
+     *   name, with key attribute values as predicates
+     */
+    protected String _step(SMInputCursor crsr)
+        throws XMLStreamException
+    {
+        String prefix = crsr.getPrefix();
+        String localName = crsr.getLocalName();
+        String[] attrs = _keyAttributes.get(localName);
+        if (attrs == null) {
+            attrs = _keyAttributes.get(ANY_ELEMENT);
+        }
+        StringBuilder sb = new StringBuilder();
+        if (prefix != null && prefix.length() > 0) {
+            sb.append(prefix).append(':');
+        }
+        sb.append(localName);
+        if (attrs != null) {
+            for (String attr : attrs) {
+                String value = crsr.getAttrValue(attr);
+                if (value != null) {
+                    sb.append("[@").append(attr).append("='").append(value).append("']");
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return Key used for matching the element cursor points to
+     *   with elements of the other tree
+     */
+    protected String _key(SMInputCursor crsr)
+        throws XMLStreamException
+    {
+        String ns = crsr.getNsUri();
+        String step = _step(crsr);
+        String prefix = crsr.getPrefix();
+        // prefixes do not matter for matching
+        if (prefix != null && prefix.length() > 0) {
+            step = step.substring(prefix.length()+1);
+        }
+        return (ns == null || ns.length() == 0) ? step : ("{"+ns+"}"+step);
+    }
+
+    private String _normalizeText(StringBuilder sb)
+    {
+        String text = sb.toString();
+        return _trimWhitespace ? text.trim() : text;
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    /**
+     * Child element that has been read, but not yet matched; either
+     * currently pointed to by a child cursor, or buffered.
+     */
+    private final static class Pending
+    {
+        final String _key;
+
+        final String _step;
+
+        /**
+         * Buffered contents, if element has been buffered; null if
+         * child cursor still points to it.
+         */
+        SMEventBuffer _buffer;
+
+        Pending(String key, String step)
+        {
+            _key = key;
+            _step = step;
+        }
+    }
+
+    /**
+     * Children of one of the elements being compared: pending children
+     * (in document order) and accumulated direct text.
+     */
+    private final class Side
+    {
+        final SMInputCursor _children;
+
+        final StringBuilder _text = new StringBuilder();
+
+        /**
+         * Buffered children; if not empty, child cursor does not point
+         * to a pending element
+         */
+        final ArrayDeque<Pending> _buffered = new ArrayDeque<Pending>();
+
+        /**
+         * Element child cursor currently points to, if not yet matched
+         */
+        Pending _current;
+
+        boolean _finished;
+
+        Side(SMInputCursor parent)
+            throws XMLStreamException
+        {
+            _children = parent.childMixedCursor();
+        }
+
+        /**
+         * @return First pending child, if any; null if there are no
+         *   more children
+         */
+        Pending head()
+            throws XMLStreamException
+        {
+            if (!_buffered.isEmpty()) {
+                return _buffered.peekFirst();
+            }
+            if (_current == null) {
+                _advance();
+            }
+            return _current;
+        }
+
+        void pop()
+        {
+            if (_buffered.isEmpty()) {
+                _current = null;
+            } else {
+                _buffered.removeFirst();
+            }
+        }
+
+        /**
+         * @return Cursor positioned at the START_ELEMENT of given pending child
+         */
+        SMInputCursor cursorFor(Pending p)
+            throws XMLStreamException
+        {
+            return (p._buffer == null) ? _children : p._buffer.rootElementCursor().advance();
+        }
+
+        /**
+         * @return Index of the first pending child with given key, within
+         *   lookahead limit, if any; -1 if none
+         */
+        int find(String key)
+            throws XMLStreamException
+        {
+            if (_current != null) {
+                if (_current._key.equals(key)) {
+                    return 0;
+                }
+                _bufferCurrent();
+            }
+            int ix = 0;
+            for (Iterator<Pending> it = _buffered.iterator(); it.hasNext(); ++ix) {
+                if (it.next()._key.equals(key)) {
+                    return ix;
+                }
+            }
+            while (_buffered.size() < _maxLookahead) {
+                _advance();
+                if (_current == null) {
+                    break;
+                }
+                Pending p = _current;
+                _bufferCurrent();
+                if (p._key.equals(key)) {
+                    return _buffered.size()-1;
+                }
+            }
+            return -1;
+        }
+
+        private void _bufferCurrent()
+            throws XMLStreamException
+        {
+            _current._buffer = _children.bufferSubtree();
+            _buffered.addLast(_current);
+            _current = null;
+        }
+
+        /**
+         * Method for moving child cursor to the next child element,
+         * collecting text on the way
+         */
+        private void _advance()
+            throws XMLStreamException
+        {
+            if (_finished) {
+                return;
+            }
+            SMEvent evt;
+            while ((evt = _children.getNext()) != null) {
+                if (evt == SMEvent.START_ELEMENT) {
+                    _current = new Pending(_key(_children), _step(_children));
+                    return;
+                }
+                if (evt.hasText()) {
+                    _text.append(_children.getText());
+                }
+            }
+            _finished = true;
+        }
+    }
+
+    /**
+     * State of a single diff operation
+     */
+    private final class Run
+    {
+        int _diffCount;
+
+        void added(String path, SMInputCursor crsr)
+            throws XMLStreamException
+        {
+            ++_diffCount;
+            _handler.elementAdded(path, crsr);
+        }
+
+        void removed(String path, SMInputCursor crsr)
+            throws XMLStreamException
+        {
+            ++_diffCount;
+            _handler.elementRemoved(path, crsr);
+        }
+
+        void diffElements(String path, SMInputCursor oldCrsr, SMInputCursor newCrsr)
+            throws XMLStreamException
+        {
+            _diffAttributes(path, oldCrsr, newCrsr);
+
+            Side oldSide = new Side(oldCrsr);
+            Side newSide = new Side(newCrsr);
+            while (true) {
+                Pending o = oldSide.head();
+                Pending n = newSide.head();
+                if (o == null) {
+                    if (n == null) {
+                        break;
+                    }
+                    added(path+"/"+n._step, newSide.cursorFor(n));
+                    newSide.pop();
+                    continue;
+                }
+                if (n == null) {
+                    removed(path+"/"+o._step, oldSide.cursorFor(o));
+                    oldSide.pop();
+                    continue;
+                }
+                if (o._key.equals(n._key)) {
+                    diffElements(path+"/"+o._step, oldSide.cursorFor(o), newSide.cursorFor(n));
+                    oldSide.pop();
+                    newSide.pop();
+                    continue;
+                }
+                // Mismatch: added children before old one, or removed ones before new one?
+                int newIx = newSide.find(o._key);
+                int oldIx = oldSide.find(n._key);
+                if (newIx > 0 && (oldIx < 0 || newIx <= oldIx)) {
+                    for (int i = 0; i < newIx; ++i) {
+                        Pending p = newSide.head();
+                        added(path+"/"+p._step, newSide.cursorFor(p));
+                        newSide.pop();
+                    }
+                } else if (oldIx > 0) {
+                    for (int i = 0; i < oldIx; ++i) {
+                        Pending p = oldSide.head();
+                        removed(path+"/"+p._step, oldSide.cursorFor(p));
+                        oldSide.pop();
+                    }
+                } else { // no match within lookahead; consider replaced
+                    removed(path+"/"+o._step, oldSide.cursorFor(o));
+                    oldSide.pop();
+                    added(path+"/"+n._step, newSide.cursorFor(n));
+                    newSide.pop();
+                }
+            }
+            String oldText = _normalizeText(oldSide._text);
+            String newText = _normalizeText(newSide._text);
+            if (!oldText.equals(newText)) {
+                ++_diffCount;
+                _handler.textChanged(path, oldText, newText);
+            }
+        }
+
+        private void _diffAttributes(String path, SMInputCursor oldCrsr, SMInputCursor newCrsr)
+            throws XMLStreamException
+        {
+            Map<QName,String> newAttrs = new LinkedHashMap<QName,String>();
+            for (int i = 0, len = newCrsr.getAttrCount(); i < len; ++i) {
+                newAttrs.put(_attrName(newCrsr, i), newCrsr.getAttrValue(i));
+            }
+            for (int i = 0, len = oldCrsr.getAttrCount(); i < len; ++i) {
+                QName name = _attrName(oldCrsr, i);
+                String oldValue = oldCrsr.getAttrValue(i);
+                String newValue = newAttrs.remove(name);
+                if (!oldValue.equals(newValue)) {
+                    ++_diffCount;
+                    _handler.attributeChanged(path, name, oldValue, newValue);
+                }
+            }
+            for (Map.Entry<QName,String> en : newAttrs.entrySet()) {
+                ++_diffCount;
+                _handler.attributeChanged(path, en.getKey(), null, en.getValue());
+            }
+        }
+
+        private QName _attrName(SMInputCursor crsr, int index)
+            throws XMLStreamException
+        {
+            String ns = crsr.getAttrNsUri(index);
+            return new QName((ns == null) ? "" : ns, crsr.getAttrLocalName(index));
+        }
+    }
+}
@@ -47,5 +47,20 @@ public class SimpleFilter
     {
        return (mAllowedTypes & (1 << evt.getEventCode())) != 0;
     }
+
+    @Override
+    public int getAcceptedTypes() {
+        return mAllowedTypes;
+    }
+
+    /**
+     * Instances of this class only check event type; sub-classes
+     * are assumed to add other checks (by overriding {@link #accept}),
+     * and need to override this method if they do not.
+     */
+    @Override
+    public boolean isTypeOnly() {
+        return getClass() == SimpleFilter.class;
+    }
 }
 
@@ -0,0 +1,101 @@
+package org.codehaus.staxmate.out;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.codehaus.staxmate.in.SMInputCursor;
+
+/**
+ * Base class for hooks that can be passed to
+ * {@link SMOutputContainer#addCopyOf(SMInputCursor, SMElementRewriter)}
+ * to modify elements as they are copied from input to output:
+ * rewriter is called for each element, and can rename elements,
+ * change their attributes, or drop them altogether.
+ *<p>
+ * Default implementation copies elements as is; sub-classes
+ * usually override {@link #rewriteElement}, and call
+ * {@link #copyElement} (or {@link #copyAttributes}) for elements
+ * they do not need to change.
+ *
+ * @since 2.4.2
+ */
+public class SMElementRewriter
+{
+    /*
+    /**********************************************************
+    /* Overridable API
+    /**********************************************************
+     */
+
+    /**
+     * Method called for each element to copy, with given input cursor
+     * pointing to its START_ELEMENT. Implementation can add an element
+     * into given parent container and return it, in which case contents
+     * of the input element are copied into the returned element (with
+     * this method called for its child elements). Alternatively it can
+     * return null to skip the contents: either to drop the element, or
+     * after having output it by some other means (for example, using
+     * {@link SMOutputContainer#addCopyOf(SMInputCursor)} for copying
+     * sub-trees that need not be modified).
+     *
+     * @param parent Container to which the element is to be added
+     * @param crsr Cursor pointing to START_ELEMENT of the input element
+     *
+     * @return Output element into which contents of input element are
+     *   to be copied, if any; null if contents are not to be copied
+     */
+    public SMOutputElement rewriteElement(SMOutputContainer parent, SMInputCursor crsr)
+        throws XMLStreamException
+    {
+        return copyElement(parent, crsr);
+    }
+
+    /*
+    /**********************************************************
+    /* Helper methods for sub-classes
+    /**********************************************************
+     */
+
+    /**
+     * Method for adding an element with the same name (namespace URI
+     * and local name) and attributes as the input element cursor
+     * points to; input prefixes are used as preferred prefixes.
+     * Contents of the element are not copied.
+     */
+    protected SMOutputElement copyElement(SMOutputContainer parent, SMInputCursor crsr)
+        throws XMLStreamException
+    {
+        SMOutputElement elem = parent.addElement(copyNamespace(parent, crsr.getNsUri(), crsr.getPrefix()),
+                crsr.getLocalName());
+        copyAttributes(elem, crsr);
+        return elem;
+    }
+
+    /**
+     * Method for adding all attributes of the input element cursor
+     * points to, to given output element.
+     */
+    protected void copyAttributes(SMOutputElement elem, SMInputCursor crsr)
+        throws XMLStreamException
+    {
+        for (int i = 0, len = crsr.getAttrCount(); i < len; ++i) {
+            elem.addAttribute(copyNamespace(elem, crsr.getAttrNsUri(i), crsr.getAttrPrefix(i)),
+                    crsr.getAttrLocalName(i), crsr.getAttrValue(i));
+        }
+    }
+
+    /**
+     * Method for finding output namespace for given input namespace URI,
+     * using input prefix as the preferred prefix if the namespace
+     * is not yet bound.
+     */
+    protected SMNamespace copyNamespace(SMOutputContainer cont, String uri, String prefix)
+    {
+        if (uri == null || uri.length() == 0) {
+            return null;
+        }
+        if (prefix != null && prefix.length() == 0) {
+            prefix = null;
+        }
+        return cont.getNamespace(uri, prefix);
+    }
+}
@@ -0,0 +1,34 @@
+package org.codehaus.staxmate.out;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.codehaus.stax2.XMLStreamReader2;
+
+import org.codehaus.staxmate.in.SMEventBuffer;
+
+/**
+ * Simple container class for storing a buffered copy of an input
+ * element sub-tree (see {@link SMOutputContainer#addCopyOf}).
+ *
+ * @since 2.4.2
+ */
+public class SMOSubtreeCopy
+    extends SMSimpleOutput
+{
+    final SMEventBuffer mEvents;
+
+    public SMOSubtreeCopy(SMEventBuffer events) {
+        super();
+        mEvents = events;
+    }
+
+    protected boolean _output(SMOutputContext ctxt, boolean canClose)
+        throws XMLStreamException
+    {
+        XMLStreamReader2 sr = mEvents.createStreamReader();
+        // skip START_DOCUMENT to get to the root element
+        sr.next();
+        ctxt.writeSubtreeCopy(sr);
+        return true;
+    }
+}
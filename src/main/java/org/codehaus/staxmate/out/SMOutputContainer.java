@@ -2,6 +2,11 @@ package org.codehaus.staxmate.out;
 
 import javax.xml.stream.XMLStreamException;
 
+import org.codehaus.stax2.XMLStreamReader2;
+
+import org.codehaus.staxmate.in.SMEvent;
+import org.codehaus.staxmate.in.SMInputCursor;
+
 /**
  * Intermediate abstract output class for StaxMate, which is used as the base
  * for all output nodes that can contain other nodes.
@@ -500,6 +505,97 @@ public abstract class SMOutputContainer
         return buffered;
     }
 
+    /*
+    /**********************************************************
+    /* Output methods for copying input content
+    /**********************************************************
+     */
+
+    /**
+     * Method for adding a copy of the event given input cursor points
+     * to as a child of this container. For START_ELEMENT the whole
+     * sub-tree (element and all its contents) is copied, after which
+     * the cursor points to the matching END_ELEMENT (similar to
+     * {@link SMInputCursor#bufferSubtree}); for textual events, comments,
+     * processing instructions and entity references just the event.
+     *<p>
+     * Sub-trees are copied event by event from the underlying stream
+     * reader to the stream writer, without constructing intermediate
+     * output objects; namespace declarations are passed through as is
+     * (with declarations added for bindings inherited from ancestors
+     * in input, see {@link SMOutputContext#writeSubtreeCopy}).
+     * If output of this container is blocked, sub-tree is first
+     * buffered, and output when the container is released.
+     *
+     * @since 2.4.2
+     */
+    public void addCopyOf(SMInputCursor crsr)
+        throws XMLStreamException
+    {
+        if (!crsr.readerAccessible()) {
+            throw crsr.constructStreamException("Can not copy input event: cursor does not point to an event");
+        }
+        final XMLStreamReader2 sr = crsr.getStreamReader();
+        SMEvent evt = crsr.getCurrEvent();
+        switch (evt) {
+        case START_ELEMENT:
+            if (_canOutputNewChild()) {
+                _context.writeSubtreeCopy(sr);
+                crsr.markSubtreeConsumed();
+            } else {
+                _linkNewChild(_context.createSubtreeCopy(crsr.bufferSubtree()));
+            }
+            return;
+        case TEXT:
+        case IGNORABLE_WS:
+            addCharacters(sr.getTextCharacters(), sr.getTextStart(), sr.getTextLength());
+            return;
+        case CDATA:
+            addCData(sr.getTextCharacters(), sr.getTextStart(), sr.getTextLength());
+            return;
+        case COMMENT:
+            addComment(sr.getText());
+            return;
+        case PROCESSING_INSTR:
+            addProcessingInstruction(sr.getPITarget(), sr.getPIData());
+            return;
+        case ENTITY_REF:
+            addEntityRef(sr.getLocalName());
+            return;
+        default:
+        }
+        throw crsr.constructStreamException("Can not copy input event of type "+evt);
+    }
+
+    /**
+     * Method similar to {@link #addCopyOf(SMInputCursor)}, except that
+     * elements are copied by calling given rewriter, which can
+     * rename, modify or drop elements (see
+     * {@link SMElementRewriter#rewriteElement}). Other events are
+     * copied as is.
+     *
+     * @param rewriter Rewriter to call for the element cursor points to,
+     *   as well as all its descendant elements; if null, behaves
+     *   exactly like {@link #addCopyOf(SMInputCursor)}.
+     *
+     * @since 2.4.2
+     */
+    public void addCopyOf(SMInputCursor crsr, SMElementRewriter rewriter)
+        throws XMLStreamException
+    {
+        if (rewriter == null || crsr.getCurrEvent() != SMEvent.START_ELEMENT) {
+            addCopyOf(crsr);
+            return;
+        }
+        SMOutputElement elem = rewriter.rewriteElement(this, crsr);
+        if (elem != null) {
+            SMInputCursor childCrsr = crsr.childCursor();
+            while (childCrsr.getNext() != null) {
+                elem.addCopyOf(childCrsr, rewriter);
+            }
+        }
+    }
+
     /*
     /**********************************************************
     /* Buffered fragment/element construction
@@ -6,8 +6,11 @@ import javax.xml.XMLConstants;
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.stream.*;
 
+import org.codehaus.stax2.XMLStreamReader2;
 import org.codehaus.stax2.XMLStreamWriter2;
 
+import org.codehaus.staxmate.in.SMEventBuffer;
+
 /**
  * Class that encapsulates details about context in which StaxMate output
  * is done. The most important of the details is the stream writer to use
@@ -383,6 +386,13 @@ public final class SMOutputContext
         return new SMOProcInstr(target, data);
     }
 
+    /**
+     * @since 2.4.2
+     */
+    public SMOutputtable createSubtreeCopy(SMEventBuffer events) {
+        return new SMOSubtreeCopy(events);
+    }
+
     // // // Typed value nodes
 
     public SMOutputtable createValue(boolean value) {
@@ -556,6 +566,60 @@ public final class SMOutputContext
         }
     }
 
+    /**
+     * Method for copying the sub-tree of START_ELEMENT given stream reader
+     * points to (element and all its contents) as is, one event at a time
+     * using {@link XMLStreamWriter2#copyEventFromReader}. After the call
+     * reader points to the END_ELEMENT matching the START_ELEMENT.
+     *<p>
+     * Unless the writer is namespace-repairing, namespace declarations are
+     * added for bindings that copied elements and attributes inherit from
+     * their ancestors in the input, but that are not in scope in the output.
+     *
+     * @since 2.4.2
+     */
+    public void writeSubtreeCopy(XMLStreamReader2 sr)
+        throws XMLStreamException
+    {
+        if (sr.getEventType() != XMLStreamConstants.START_ELEMENT) {
+            throw new IllegalStateException("Can not copy sub-tree: stream reader not pointing to START_ELEMENT");
+        }
+        // Indented like other child elements; but contents are copied verbatim
+        if (_indentSuppress == 0) {
+            outputIndentation();
+            _indentLevelEmpty = false;
+        }
+        final XMLStreamWriter2 sw = _streamWriter;
+        int depth = 0;
+        int type = XMLStreamConstants.START_ELEMENT;
+        while (true) {
+            if (type == XMLStreamConstants.PROCESSING_INSTRUCTION) {
+                /* Some writers access PI data using getText(), which
+                 * not all readers support; so let's output it ourselves
+                 */
+                String data = sr.getPIData();
+                if (data == null) {
+                    sw.writeProcessingInstruction(sr.getPITarget());
+                } else {
+                    sw.writeProcessingInstruction(sr.getPITarget(), data);
+                }
+            } else {
+                sw.copyEventFromReader(sr, false);
+            }
+            if (type == XMLStreamConstants.START_ELEMENT) {
+                if (!_cfgRepairing) {
+                    declareInheritedNamespaces(sr);
+                }
+                ++depth;
+            } else if (type == XMLStreamConstants.END_ELEMENT) {
+                if (--depth == 0) {
+                    return;
+                }
+            }
+            type = sr.next();
+        }
+    }
+
     public void writeAttribute(SMNamespace ns, String localName, String value)
         throws XMLStreamException
     {
@@ -1041,6 +1105,51 @@ public final class SMOutputContext
         _streamWriter.writeNamespace(prefix, ns.getURI());
     }
 
+    /**
+     * Helper method called after copying a START_ELEMENT, to declare
+     * namespaces that the element and its attributes use, but that are
+     * not bound (or are bound to different URIs) in the output.
+     * Relies on the writer to keep track of declarations written.
+     */
+    private void declareInheritedNamespaces(XMLStreamReader2 sr)
+        throws XMLStreamException
+    {
+        NamespaceContext outCtxt = _streamWriter.getNamespaceContext();
+        declareIfNotBound(outCtxt, sr.getPrefix(), sr.getNamespaceURI());
+        for (int i = 0, len = sr.getAttributeCount(); i < len; ++i) {
+            String prefix = sr.getAttributePrefix(i);
+            // unprefixed attributes are never in a namespace
+            if (prefix != null && prefix.length() > 0) {
+                declareIfNotBound(outCtxt, prefix, sr.getAttributeNamespace(i));
+            }
+        }
+    }
+
+    private void declareIfNotBound(NamespaceContext outCtxt, String prefix, String uri)
+        throws XMLStreamException
+    {
+        if (prefix == null) {
+            prefix = "";
+        }
+        if (uri == null) {
+            uri = "";
+        }
+        if (XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+            return;
+        }
+        String outUri = outCtxt.getNamespaceURI(prefix);
+        if (outUri == null) {
+            outUri = "";
+        }
+        if (!uri.equals(outUri)) {
+            if (prefix.length() == 0) {
+                _streamWriter.writeDefaultNamespace(uri);
+            } else {
+                _streamWriter.writeNamespace(prefix, uri);
+            }
+        }
+    }
+
     private void outputIndentation()
         throws XMLStreamException
     {
@@ -0,0 +1,166 @@
+package org.codehaus.staxmate.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link InputStream} implementation that reads contents of a
+ * {@link FileChannel} by memory-mapping it, one segment at a time;
+ * this avoids copying content through an intermediate read buffer
+ * (since the OS page cache is accessed directly), and limits size
+ * of each mapping (which can not exceed 2 gigabytes anyway).
+ *<p>
+ * Channel is not closed when this stream is closed, unless
+ * so requested at construction.
+ *
+ * @since 2.4.2
+ */
+public final class MappedChannelInputStream
+    extends InputStream
+{
+    /**
+     * Default size of segments to map: 64 megabytes
+     */
+    public final static int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private final FileChannel _channel;
+
+    private final boolean _closeChannel;
+
+    private final int _segmentSize;
+
+    /**
+     * Channel offset right after the last byte to read
+     */
+    private final long _end;
+
+    /**
+     * Channel offset of the first byte following the currently mapped segment
+     */
+    private long _nextSegment;
+
+    private MappedByteBuffer _segment;
+
+    private boolean _closed;
+
+    /**
+     * @param channel Channel to read from
+     * @param start Offset in channel of the first byte to read
+     * @param end Offset in channel right after the last byte to read
+     * @param segmentSize Maximum size of mapped segments
+     * @param closeChannel Whether closing this stream should also close
+     *   the channel
+     */
+    public MappedChannelInputStream(FileChannel channel, long start, long end,
+            int segmentSize, boolean closeChannel)
+    {
+        if (start < 0L || end < start) {
+            throw new IllegalArgumentException("Invalid range ["+start+", "+end+"]");
+        }
+        if (segmentSize < 1) {
+            throw new IllegalArgumentException("Segment size has to be positive");
+        }
+        _channel = channel;
+        _closeChannel = closeChannel;
+        _segmentSize = segmentSize;
+        _end = end;
+        _nextSegment = start;
+    }
+
+    /**
+     * Constructs a stream that reads contents of given channel from its
+     * current position to its end, mapped in segments of
+     * {@link #DEFAULT_SEGMENT_SIZE}.
+     */
+    public static MappedChannelInputStream forChannel(FileChannel channel, boolean closeChannel)
+        throws IOException
+    {
+        return new MappedChannelInputStream(channel, channel.position(), channel.size(),
+                DEFAULT_SEGMENT_SIZE, closeChannel);
+    }
+
+    /*
+    /**********************************************************************
+    /* InputStream implementation
+    /**********************************************************************
+     */
+
+    @Override
+    public int read() throws IOException
+    {
+        if (!_ensureData()) {
+            return -1;
+        }
+        return _segment.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buf, int offset, int len) throws IOException
+    {
+        if (len == 0) {
+            return 0;
+        }
+        if (!_ensureData()) {
+            return -1;
+        }
+        int count = Math.min(len, _segment.remaining());
+        _segment.get(buf, offset, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+        if (n <= 0L || !_ensureData()) {
+            return 0L;
+        }
+        int count = (int) Math.min(n, (long) _segment.remaining());
+        _segment.position(_segment.position() + count);
+        return count;
+    }
+
+    @Override
+    public int available()
+    {
+        return (_segment == null) ? 0 : _segment.remaining();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (!_closed) {
+            _closed = true;
+            // Can not explicitly unmap; GC will take care of it
+            _segment = null;
+            if (_closeChannel) {
+                _channel.close();
+            }
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    private boolean _ensureData() throws IOException
+    {
+        if (_segment != null && _segment.hasRemaining()) {
+            return true;
+        }
+        if (_closed) {
+            throw new IOException("Stream closed");
+        }
+        if (_nextSegment >= _end) {
+            _segment = null;
+            return false;
+        }
+        long size = Math.min((long) _segmentSize, _end - _nextSegment);
+        _segment = _channel.map(FileChannel.MapMode.READ_ONLY, _nextSegment, size);
+        _nextSegment += size;
+        return true;
+    }
+}
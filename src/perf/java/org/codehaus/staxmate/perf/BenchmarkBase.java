@@ -0,0 +1,94 @@
+package org.codehaus.staxmate.perf;
+
+import java.io.*;
+
+import javax.xml.stream.*;
+
+import org.codehaus.stax2.XMLInputFactory2;
+import org.codehaus.stax2.XMLOutputFactory2;
+import org.codehaus.stax2.XMLStreamReader2;
+
+import org.codehaus.staxmate.SMInputFactory;
+import org.codehaus.staxmate.SMOutputFactory;
+
+/**
+ * Shared set up for StaxMate benchmarks: factories, and a synthetic
+ * "record feed" document that resembles typical ingest payloads:
+ *<pre>
+ *  &lt;records&gt;
+ *    &lt;record id="1" count="17" type="a"&gt;
+ *      &lt;name&gt;record-1&lt;/name&gt;
+ *      &lt;value&gt;1234&lt;/value&gt;
+ *      &lt;extra&gt;&lt;note&gt;...&lt;/note&gt;&lt;/extra&gt;
+ *    &lt;/record&gt;
+ *    ...
+ *  &lt;/records&gt;
+ *</pre>
+ * All benchmarks report time per record (see
+ * {@link org.openjdk.jmh.annotations.OperationsPerInvocation}),
+ * so results can be compared directly between raw Stax2 access
+ * and StaxMate convenience layer.
+ */
+public abstract class BenchmarkBase
+{
+    /**
+     * Number of &lt;record&gt; elements in the test document
+     */
+    public final static int RECORD_COUNT = 2000;
+
+    protected final static XMLInputFactory2 STAX_IN;
+    protected final static XMLOutputFactory2 STAX_OUT;
+    static {
+        STAX_IN = (XMLInputFactory2) XMLInputFactory.newInstance();
+        STAX_OUT = (XMLOutputFactory2) XMLOutputFactory.newInstance();
+    }
+
+    protected final static SMInputFactory SM_IN = new SMInputFactory(STAX_IN);
+    protected final static SMOutputFactory SM_OUT = new SMOutputFactory(STAX_OUT);
+
+    protected final static byte[] DOC = buildDocument(RECORD_COUNT);
+
+    protected static byte[] buildDocument(int records)
+    {
+        StringBuilder sb = new StringBuilder(records * 120);
+        sb.append("<?xml version='1.0' encoding='UTF-8'?>\n<records>\n");
+        for (int i = 0; i < records; ++i) {
+            sb.append("  <record id='").append(i)
+                .append("' count='").append(i % 97)
+                .append("' type='").append((char) ('a' + (i % 5)))
+                .append("'>\n");
+            sb.append("    <name>record-").append(i).append("</name>\n");
+            sb.append("    <value>").append(i * 31).append("</value>\n");
+            sb.append("    <extra><note>Some text &amp; more text</note><!-- c --></extra>\n");
+            sb.append("  </record>\n");
+        }
+        sb.append("</records>\n");
+        try {
+            return sb.toString().getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) { // never happens
+            throw new IllegalStateException(e);
+        }
+    }
+
+    protected static XMLStreamReader2 rawReader() throws XMLStreamException {
+        return (XMLStreamReader2) STAX_IN.createXMLStreamReader(new ByteArrayInputStream(DOC));
+    }
+
+    /**
+     * Minimal no-op Writer, to keep output benchmarks from measuring
+     * buffer growth
+     */
+    protected final static class NopWriter extends Writer
+    {
+        @Override
+        public void write(char[] cbuf, int off, int len) { }
+        @Override
+        public void write(String str, int off, int len) { }
+        @Override
+        public void write(int c) { }
+        @Override
+        public void flush() { }
+        @Override
+        public void close() { }
+    }
+}
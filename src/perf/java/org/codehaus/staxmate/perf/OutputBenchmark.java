@@ -0,0 +1,146 @@
+package org.codehaus.staxmate.perf;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.codehaus.stax2.XMLStreamWriter2;
+
+import org.codehaus.staxmate.in.SMEvent;
+import org.codehaus.staxmate.in.SMInputCursor;
+import org.codehaus.staxmate.out.*;
+
+/**
+ * Benchmarks for writing the record document: using
+ * {@link SMOutputElement}s, {@link SMBufferedFragment}s, and
+ * a raw {@link XMLStreamWriter2} as the baseline; as well as for
+ * copying records of the input document to output ("filter-and-forward").
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(BenchmarkBase.RECORD_COUNT)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class OutputBenchmark extends BenchmarkBase
+{
+    private final static String NOTE = "Some text & more text";
+
+    @Benchmark
+    public void rawStax2Writer() throws XMLStreamException
+    {
+        XMLStreamWriter2 sw = (XMLStreamWriter2) STAX_OUT.createXMLStreamWriter(new NopWriter());
+        sw.writeStartDocument();
+        sw.writeStartElement("records");
+        for (int i = 0; i < RECORD_COUNT; ++i) {
+            sw.writeStartElement("record");
+            sw.writeIntAttribute(null, null, "id", i);
+            sw.writeIntAttribute(null, null, "count", i % 97);
+            sw.writeStartElement("name");
+            sw.writeCharacters("record");
+            sw.writeEndElement();
+            sw.writeStartElement("value");
+            sw.writeInt(i * 31);
+            sw.writeEndElement();
+            sw.writeStartElement("extra");
+            sw.writeStartElement("note");
+            sw.writeCharacters(NOTE);
+            sw.writeEndElement();
+            sw.writeEndElement();
+            sw.writeEndElement();
+        }
+        sw.writeEndElement();
+        sw.writeEndDocument();
+        sw.close();
+    }
+
+    @Benchmark
+    public void outputElements() throws XMLStreamException
+    {
+        SMOutputDocument doc = SM_OUT.createOutputDocument(new NopWriter());
+        SMOutputElement root = doc.addElement("records");
+        for (int i = 0; i < RECORD_COUNT; ++i) {
+            _writeRecord(root, i);
+        }
+        doc.closeRoot();
+    }
+
+    /**
+     * Output where every record is first built as a buffered fragment,
+     * and then released; this is the worst case for buffering overhead.
+     */
+    @Benchmark
+    public void bufferedFragments() throws XMLStreamException
+    {
+        SMOutputDocument doc = SM_OUT.createOutputDocument(new NopWriter());
+        SMOutputElement root = doc.addElement("records");
+        for (int i = 0; i < RECORD_COUNT; ++i) {
+            SMBufferedFragment frag = root.createBufferedFragment();
+            root.addBuffered(frag);
+            _writeRecord(frag, i);
+            frag.release();
+        }
+        doc.closeRoot();
+    }
+
+    /**
+     * Copying of records by re-adding elements, attributes and text
+     * one by one.
+     */
+    @Benchmark
+    public void copyRecordsReAdd() throws XMLStreamException
+    {
+        SMOutputDocument doc = SM_OUT.createOutputDocument(new NopWriter());
+        SMOutputElement root = doc.addElement("records");
+        SMInputCursor crsr = SM_IN.rootElementCursor(rawReader()).advance().childElementCursor();
+        while (crsr.getNext() != null) {
+            _reAdd(root, crsr);
+        }
+        doc.closeRoot();
+    }
+
+    @Benchmark
+    public void copyRecordsAddCopyOf() throws XMLStreamException
+    {
+        SMOutputDocument doc = SM_OUT.createOutputDocument(new NopWriter());
+        SMOutputElement root = doc.addElement("records");
+        SMInputCursor crsr = SM_IN.rootElementCursor(rawReader()).advance().childElementCursor();
+        while (crsr.getNext() != null) {
+            root.addCopyOf(crsr);
+        }
+        doc.closeRoot();
+    }
+
+    private static void _reAdd(SMOutputContainer parent, SMInputCursor crsr)
+        throws XMLStreamException
+    {
+        SMOutputElement elem = parent.addElement(parent.getNamespace(crsr.getNsUri()), crsr.getLocalName());
+        for (int i = 0, len = crsr.getAttrCount(); i < len; ++i) {
+            elem.addAttribute(parent.getNamespace(crsr.getAttrNsUri(i)), crsr.getAttrLocalName(i), crsr.getAttrValue(i));
+        }
+        SMInputCursor childCrsr = crsr.childCursor();
+        SMEvent evt;
+        while ((evt = childCrsr.getNext()) != null) {
+            if (evt == SMEvent.START_ELEMENT) {
+                _reAdd(elem, childCrsr);
+            } else if (evt == SMEvent.COMMENT) {
+                elem.addComment(childCrsr.getText());
+            } else if (evt.hasText()) {
+                elem.addCharacters(childCrsr.getText());
+            }
+        }
+    }
+
+    private static void _writeRecord(SMOutputContainer parent, int i)
+        throws XMLStreamException
+    {
+        SMOutputElement record = parent.addElement("record");
+        record.addAttribute(null, "id", i);
+        record.addAttribute(null, "count", i % 97);
+        record.addElement("name").addCharacters("record");
+        record.addElement("value").addValue(i * 31);
+        record.addElement("extra").addElement("note").addCharacters(NOTE);
+    }
+}
@@ -0,0 +1,175 @@
+package org.codehaus.staxmate.perf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.codehaus.stax2.XMLStreamReader2;
+
+import org.codehaus.staxmate.SMInputFactory;
+import org.codehaus.staxmate.in.*;
+
+/**
+ * Benchmarks that compare full-document traversal using raw
+ * {@link XMLStreamReader2}, {@link SMHierarchicCursor} and
+ * {@link SMFlatteningCursor}; as well as name-filtered child cursors
+ * (which are expected to mostly measure sub-tree skipping cost);
+ * and traversal of documents cached in {@link SMEventBuffer} binary format.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(BenchmarkBase.RECORD_COUNT)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TraversalBenchmark extends BenchmarkBase
+{
+    /**
+     * Test document in binary event buffer format
+     */
+    protected byte[] _cachedDoc;
+
+    @Setup
+    public void setupCached() throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SM_IN.bufferDocument(new ByteArrayInputStream(DOC)).writeTo(bytes);
+        _cachedDoc = bytes.toByteArray();
+    }
+
+    @Benchmark
+    public int rawStax2Reader() throws XMLStreamException
+    {
+        XMLStreamReader2 sr = rawReader();
+        int count = 0;
+        while (sr.hasNext()) {
+            if (sr.next() == XMLStreamConstants.START_ELEMENT) {
+                ++count;
+            }
+        }
+        sr.close();
+        return count;
+    }
+
+    @Benchmark
+    public int hierarchicCursor() throws XMLStreamException
+    {
+        return _hierarchic(SMInputCursor.Tracking.NONE);
+    }
+
+    @Benchmark
+    public int hierarchicCursorTrackParents() throws XMLStreamException
+    {
+        return _hierarchic(SMInputCursor.Tracking.PARENTS);
+    }
+
+    @Benchmark
+    public int hierarchicCursorTrackPath() throws XMLStreamException
+    {
+        return _hierarchic(SMInputCursor.Tracking.PATH);
+    }
+
+    private int _hierarchic(SMInputCursor.Tracking tracking) throws XMLStreamException
+    {
+        SMInputCursor root = SM_IN.rootElementCursor(DOC, 0, DOC.length);
+        root.setElementTracking(tracking);
+        root.advance();
+        int count = 1 + _traverse(root.childElementCursor());
+        root.getStreamReader().close();
+        return count;
+    }
+
+    /**
+     * Same as {@link #hierarchicCursor}, but reading document from
+     * binary event buffer format, instead of parsing XML.
+     */
+    @Benchmark
+    public int hierarchicCursorCachedBinary() throws Exception
+    {
+        SMEventBuffer buffer = SMEventBuffer.readFrom(new ByteArrayInputStream(_cachedDoc));
+        SMInputCursor root = buffer.rootElementCursor().advance();
+        return 1 + _traverse(root.childElementCursor());
+    }
+
+    private int _traverse(SMInputCursor crsr) throws XMLStreamException
+    {
+        int count = 0;
+        while (crsr.getNext() != null) {
+            count += 1 + _traverse(crsr.childElementCursor());
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int flatteningCursor() throws XMLStreamException
+    {
+        SMInputCursor crsr = SMInputFactory.flatteningCursor(rawReader(),
+                SMFilterFactory.getElementOnlyFilter());
+        int count = 0;
+        SMEvent evt;
+        while ((evt = crsr.getNext()) != null) {
+            if (evt == SMEvent.START_ELEMENT) {
+                ++count;
+            }
+        }
+        crsr.getStreamReader().close();
+        return count;
+    }
+
+    /**
+     * Iteration using a name-filtered child cursor, selecting only
+     * one child ('value') per record, and skipping the rest.
+     */
+    @Benchmark
+    public void childElementCursorByName(Blackhole bh) throws XMLStreamException
+    {
+        _childElementCursorByName(bh, false);
+    }
+
+    /**
+     * Same as {@link #childElementCursorByName} but with cursor recycling
+     * enabled, so that per-record cursors (and filters) are not allocated.
+     */
+    @Benchmark
+    public void childElementCursorByNameRecycled(Blackhole bh) throws XMLStreamException
+    {
+        _childElementCursorByName(bh, true);
+    }
+
+    private void _childElementCursorByName(Blackhole bh, boolean recycle) throws XMLStreamException
+    {
+        SMInputCursor root = SM_IN.rootElementCursor(DOC, 0, DOC.length).advance();
+        root.getContext().setCursorRecycling(recycle);
+        SMInputCursor records = root.childElementCursor("record");
+        while (records.getNext() != null) {
+            SMInputCursor values = records.childElementCursor("value");
+            while (values.getNext() != null) {
+                bh.consume(values.getCurrEvent());
+            }
+        }
+        root.getStreamReader().close();
+    }
+
+    /**
+     * Baseline for {@link #childElementCursorByName}: same access
+     * with hand-written raw reader code.
+     */
+    @Benchmark
+    public void rawStax2ByName(Blackhole bh) throws XMLStreamException
+    {
+        XMLStreamReader2 sr = rawReader();
+        while (sr.hasNext()) {
+            if (sr.next() == XMLStreamConstants.START_ELEMENT
+                && sr.getDepth() == 3 && "value".equals(sr.getLocalName())) {
+                bh.consume(sr.getEventType());
+            }
+        }
+        sr.close();
+    }
+}
@@ -0,0 +1,180 @@
+package org.codehaus.staxmate.perf;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.codehaus.stax2.XMLStreamReader2;
+
+import org.codehaus.staxmate.bind.*;
+import org.codehaus.staxmate.in.*;
+
+/**
+ * Benchmarks for Typed Access: reading int-valued attributes
+ * and elements of every record, via {@link SMInputCursor} and
+ * directly via {@link XMLStreamReader2}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(BenchmarkBase.RECORD_COUNT)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TypedAccessBenchmark extends BenchmarkBase
+{
+    @Benchmark
+    public long cursorTyped() throws XMLStreamException
+    {
+        SMInputCursor root = SM_IN.rootElementCursor(DOC, 0, DOC.length).advance();
+        SMInputCursor records = root.childElementCursor();
+        long sum = 0L;
+        while (records.getNext() != null) {
+            sum += records.getAttrIntValue(records.findAttrIndex(null, "id"));
+            sum += records.getAttrIntValue(records.findAttrIndex(null, "count"));
+            SMInputCursor fields = records.childElementCursor();
+            while (fields.getNext() != null) {
+                if (fields.hasLocalName("value")) {
+                    sum += fields.getElemIntValue();
+                }
+            }
+        }
+        root.getStreamReader().close();
+        return sum;
+    }
+
+    private final static SMAttrKey ATTR_ID = new SMAttrKey("id");
+    private final static SMAttrKey ATTR_COUNT = new SMAttrKey("count");
+
+    /**
+     * Same as {@link #cursorTyped}, but using precompiled attribute keys
+     */
+    @Benchmark
+    public long cursorTypedAttrKeys() throws XMLStreamException
+    {
+        SMInputCursor root = SM_IN.rootElementCursor(DOC, 0, DOC.length).advance();
+        SMInputCursor records = root.childElementCursor();
+        long sum = 0L;
+        while (records.getNext() != null) {
+            sum += records.getAttrIntValue(ATTR_ID);
+            sum += records.getAttrIntValue(ATTR_COUNT);
+            SMInputCursor fields = records.childElementCursor();
+            while (fields.getNext() != null) {
+                if (fields.hasLocalName("value")) {
+                    sum += fields.getElemIntValue();
+                }
+            }
+        }
+        root.getStreamReader().close();
+        return sum;
+    }
+
+    static class Record {
+        @SMBindAttribute int id;
+        @SMBindAttribute int count;
+        @SMBindElement String name;
+        @SMBindElement int value;
+    }
+
+    private final static SMBinder BINDER = new SMBinder();
+
+    /**
+     * Same access as {@link #cursorTyped}, but using {@link SMBinder}
+     * to bind records into objects.
+     */
+    @Benchmark
+    public long cursorBinder() throws XMLStreamException
+    {
+        SMInputCursor root = SM_IN.rootElementCursor(DOC, 0, DOC.length).advance();
+        SMInputCursor records = root.childElementCursor();
+        long sum = 0L;
+        while (records.getNext() != null) {
+            Record r = BINDER.read(records, Record.class);
+            sum += r.id + r.count + r.value;
+        }
+        root.getStreamReader().close();
+        return sum;
+    }
+
+    /**
+     * Hashing text of all record fields, using Strings
+     */
+    @Benchmark
+    public long cursorElemStrings() throws XMLStreamException
+    {
+        SMInputCursor root = SM_IN.rootElementCursor(DOC, 0, DOC.length).advance();
+        SMInputCursor records = root.childElementCursor();
+        long sum = 0L;
+        while (records.getNext() != null) {
+            SMInputCursor fields = records.childElementCursor();
+            while (fields.getNext() != null) {
+                if (!fields.hasLocalName("extra")) {
+                    sum += fields.getElemStringValue().hashCode();
+                }
+            }
+        }
+        root.getStreamReader().close();
+        return sum;
+    }
+
+    final static class HashSink implements SMTextSink
+    {
+        int hash;
+
+        public void appendText(char[] buffer, int offset, int len) {
+            int h = hash;
+            for (int end = offset+len; offset < end; ++offset) {
+                h = 31 * h + buffer[offset];
+            }
+            hash = h;
+        }
+    }
+
+    /**
+     * Same as {@link #cursorElemStrings}, but passing text to
+     * a {@link SMTextSink} without constructing Strings
+     */
+    @Benchmark
+    public long cursorElemTextSink() throws XMLStreamException
+    {
+        SMInputCursor root = SM_IN.rootElementCursor(DOC, 0, DOC.length).advance();
+        SMInputCursor records = root.childElementCursor();
+        HashSink sink = new HashSink();
+        long sum = 0L;
+        while (records.getNext() != null) {
+            SMInputCursor fields = records.childElementCursor();
+            while (fields.getNext() != null) {
+                if (!fields.hasLocalName("extra")) {
+                    sink.hash = 0;
+                    fields.processElemText(sink);
+                    sum += sink.hash;
+                }
+            }
+        }
+        root.getStreamReader().close();
+        return sum;
+    }
+
+    @Benchmark
+    public long rawStax2Typed() throws XMLStreamException
+    {
+        XMLStreamReader2 sr = rawReader();
+        long sum = 0L;
+        while (sr.hasNext()) {
+            if (sr.next() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            int depth = sr.getDepth();
+            if (depth == 2) {
+                sum += sr.getAttributeAsInt(sr.getAttributeIndex(null, "id"));
+                sum += sr.getAttributeAsInt(sr.getAttributeIndex(null, "count"));
+            } else if (depth == 3 && "value".equals(sr.getLocalName())) {
+                sum += sr.getElementAsInt();
+            }
+        }
+        sr.close();
+        return sum;
+    }
+}
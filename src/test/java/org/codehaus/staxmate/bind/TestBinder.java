@@ -0,0 +1,157 @@
+package org.codehaus.staxmate.bind;
+
+import java.io.StringReader;
+import java.util.*;
+
+import javax.xml.stream.*;
+
+import org.codehaus.staxmate.SMInputFactory;
+import org.codehaus.staxmate.StaxMateTestBase;
+import org.codehaus.staxmate.in.*;
+
+/**
+ * Unit tests for verifying that {@link SMBinder} binds annotated
+ * classes as expected.
+ */
+public class TestBinder
+    extends StaxMateTestBase
+{
+    enum Status { NEW, DONE }
+
+    static class Base {
+        @SMBindAttribute("id")
+        long id;
+    }
+
+    static class Order extends Base {
+        @SMBindAttribute
+        Status status;
+
+        @SMBindAttribute(value="prio", namespace="urn:x")
+        Integer priority;
+
+        @SMBindElement
+        String customer;
+
+        @SMBindElement("total")
+        double amount;
+
+        @SMBindElement
+        boolean paid;
+
+        @SMBindElement("item")
+        List<Item> items;
+
+        @SMBindElement("tag")
+        List<String> tags;
+
+        String notBound = "default";
+
+        private Order() { }
+    }
+
+    static class Item {
+        @SMBindAttribute
+        int qty;
+
+        @SMBindElement
+        String sku;
+    }
+
+    final static String DOC = "<?xml version='1.0'?>"
+        +"<orders xmlns:x='urn:x'>"
+        +"<order id='12345678901' status='DONE' x:prio='3' unknown='x'>"
+        +"<customer>Bob</customer><total>12.5</total><paid>true</paid>"
+        +"<item qty='2'><sku>A-1</sku><extra><sku>ignored</sku></extra></item>"
+        +"<tag>a</tag><notBound>x</notBound><item qty='1'><sku>B-2</sku></item><tag>b</tag>"
+        +"</order>"
+        +"<order id='2' status='NEW'><customer>Alice</customer></order>"
+        +"</orders>";
+
+    public void testReadAll() throws Exception
+    {
+        SMBinder binder = new SMBinder();
+        List<Order> orders = binder.readAll(_rootCursor(DOC).childElementCursor(), Order.class);
+        assertEquals(2, orders.size());
+
+        Order o = orders.get(0);
+        assertEquals(12345678901L, o.id);
+        assertEquals(Status.DONE, o.status);
+        assertEquals(Integer.valueOf(3), o.priority);
+        assertEquals("Bob", o.customer);
+        assertEquals(12.5, o.amount);
+        assertTrue(o.paid);
+        assertEquals(2, o.items.size());
+        assertEquals(2, o.items.get(0).qty);
+        assertEquals("A-1", o.items.get(0).sku);
+        assertEquals(1, o.items.get(1).qty);
+        assertEquals("B-2", o.items.get(1).sku);
+        assertEquals(Arrays.asList("a", "b"), o.tags);
+        assertEquals("default", o.notBound);
+
+        o = orders.get(1);
+        assertEquals(2L, o.id);
+        assertEquals(Status.NEW, o.status);
+        assertNull(o.priority);
+        assertEquals("Alice", o.customer);
+        assertFalse(o.paid);
+        assertNull(o.items);
+    }
+
+    public void testReadSingle() throws Exception
+    {
+        SMInputCursor crsr = _rootCursor("<item qty='7'><sku>X</sku></item>");
+        Item item = new SMBinder().read(crsr, Item.class);
+        assertEquals(7, item.qty);
+        assertEquals("X", item.sku);
+        assertNull(crsr.getNext());
+    }
+
+    public void testInvalidValue() throws Exception
+    {
+        SMInputCursor crsr = _rootCursor("<item qty='many' />");
+        try {
+            new SMBinder().read(crsr, Item.class);
+            fail("Expected exception for invalid int value");
+        } catch (XMLStreamException e) {
+            assertException(e, "many");
+        }
+    }
+
+    static class NoDefaultCtor {
+        @SMBindElement String x;
+        NoDefaultCtor(String x) { this.x = x; }
+    }
+
+    static class BadAttr {
+        @SMBindAttribute Item item;
+    }
+
+    static class BadList {
+        @SMBindElement @SuppressWarnings("rawtypes") List values;
+    }
+
+    public void testInvalidTypes() throws Exception
+    {
+        SMBinder binder = new SMBinder();
+        _verifyInvalid(binder, NoDefaultCtor.class, "no default");
+        _verifyInvalid(binder, BadAttr.class, "Unsupported type for attribute field");
+        _verifyInvalid(binder, BadList.class, "Can not determine element type");
+    }
+
+    private void _verifyInvalid(SMBinder binder, Class<?> type, String msg)
+    {
+        try {
+            binder.prepare(type);
+            fail("Expected exception for "+type.getName());
+        } catch (IllegalArgumentException e) {
+            assertException(e, msg);
+        }
+    }
+
+    private SMInputCursor _rootCursor(String doc) throws XMLStreamException
+    {
+        XMLStreamReader sr = getStaxInputFactory().createXMLStreamReader(new StringReader(doc));
+        return SMInputFactory.rootElementCursor(sr).advance();
+    }
+}
@@ -9,6 +9,9 @@ import static javax.xml.stream.XMLStreamConstants.*;
 import org.w3c.dom.*;
 
 import org.codehaus.staxmate.StaxMateTestBase;
+import org.codehaus.staxmate.in.SMEvent;
+import org.codehaus.staxmate.in.SMFilterFactory;
+import org.codehaus.staxmate.in.SMInputCursor;
 
 public class TestDOMConverter
     extends StaxMateTestBase
@@ -225,6 +228,69 @@ public class TestDOMConverter
         // should probably traverse, instead of direct comparison but...
         assertEquals("<?xml version='1.0' encoding='UTF-8'?><test><child/></test>", xml);
     }
+
+    public void testRecordBuilding() throws Exception
+    {
+        final String XML = "<root xmlns:x='urn:x'>"
+            +"<rec id='1'>a<!--c--></rec><skip><rec id='x'/></skip>"
+            +"<rec id='2'><x:sub>b</x:sub></rec><rec id='3'/>"
+            +"</root>";
+        DOMConverter conv = new DOMConverter();
+        SMInputCursor crsr = getInputFactory().rootElementCursor(new StringReader(XML))
+            .advance().childElementCursor();
+        Document doc = conv.buildNextRecord(crsr, "rec", null);
+        assertNotNull(doc);
+        Element elem = doc.getDocumentElement();
+        assertEquals("rec", elem.getLocalName());
+        assertEquals("1", elem.getAttribute("id"));
+        assertEquals(Node.TEXT_NODE, elem.getFirstChild().getNodeType());
+        assertEquals(Node.COMMENT_NODE, elem.getLastChild().getNodeType());
+
+        // cursor points to END_ELEMENT of the record, can be used in between
+        assertEquals(SMEvent.START_ELEMENT, crsr.getNext());
+        assertEquals("skip", crsr.getLocalName());
+
+        // records within skipped elements are not found by child cursors
+        assertSame(doc, conv.buildNextRecord(crsr, "rec", doc));
+        elem = doc.getDocumentElement();
+        assertEquals("2", elem.getAttribute("id"));
+        // document contents are replaced, not added to
+        assertEquals(1, doc.getChildNodes().getLength());
+        Node sub = elem.getFirstChild();
+        assertEquals("urn:x", sub.getNamespaceURI());
+        assertEquals("b", sub.getTextContent());
+
+        assertSame(doc, conv.buildNextRecord(crsr, "rec", doc));
+        assertEquals("3", doc.getDocumentElement().getAttribute("id"));
+        assertNull(doc.getDocumentElement().getFirstChild());
+        assertNull(conv.buildNextRecord(crsr, "rec", doc));
+    }
+
+    public void testNestedRecordBuilding() throws Exception
+    {
+        final String XML = "<root><a><rec id='1'/><b><rec id='2'><rec id='3'/></rec></b></a><rec id='4'/></root>";
+        DOMConverter conv = new DOMConverter();
+        SMInputCursor crsr = getInputFactory().rootElementCursor(new StringReader(XML))
+            .advance().descendantElementCursor();
+        StringBuilder sb = new StringBuilder();
+        Document doc = null;
+        while ((doc = conv.buildNextRecord(crsr, SMFilterFactory.getElementOnlyFilter("rec"), doc)) != null) {
+            sb.append(doc.getDocumentElement().getAttribute("id"));
+        }
+        // nested records are included in the enclosing record
+        assertEquals("124", sb.toString());
+    }
+
+    public void testInvalidRecordBuilding() throws Exception
+    {
+        SMInputCursor crsr = getInputFactory().rootElementCursor(new StringReader("<root/>"));
+        try {
+            new DOMConverter().buildRecord(crsr, null);
+            fail("Expected an exception");
+        } catch (XMLStreamException e) {
+            assertException(e, "does not point to START_ELEMENT");
+        }
+    }
     
     /*
     /**********************************************************************
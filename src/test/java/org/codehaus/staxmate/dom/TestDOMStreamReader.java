@@ -0,0 +1,94 @@
+package org.codehaus.staxmate.dom;
+
+import java.io.*;
+
+import javax.xml.parsers.*;
+
+import org.w3c.dom.*;
+import org.xml.sax.InputSource;
+
+import org.codehaus.staxmate.StaxMateTestBase;
+import org.codehaus.staxmate.in.SMEvent;
+import org.codehaus.staxmate.in.SMInputCursor;
+
+/**
+ * Unit tests for verifying that DOM trees can be traversed using
+ * cursors backed by {@link DOMStreamReader}.
+ */
+public class TestDOMStreamReader
+    extends StaxMateTestBase
+{
+    final static String XML = "<root xmlns:x='urn:x' version='3'>"
+        +"<item id='1'>12</item><!--comment--><?pi data?>"
+        +"<x:item x:id='2'>text <b>bold</b><![CDATA[ cdata]]></x:item>"
+        +"</root>";
+
+    public void testDocumentCursor() throws Exception
+    {
+        Document doc = _parse(XML, true);
+        SMInputCursor rootC = getInputFactory().rootElementCursor(doc).advance();
+        assertEquals("root", rootC.getLocalName());
+        assertEquals(3, rootC.getAttrIntValue(rootC.findAttrIndex(null, "version")));
+
+        SMInputCursor mixedC = rootC.childCursor();
+        assertEquals(SMEvent.START_ELEMENT, mixedC.getNext());
+        assertEquals("item", mixedC.getLocalName());
+        assertEquals("", mixedC.getNsUri());
+        assertEquals("1", mixedC.getAttrValue("id"));
+        assertEquals(12, mixedC.getElemIntValue());
+        assertEquals(SMEvent.COMMENT, mixedC.getNext());
+        assertEquals("comment", mixedC.getText());
+        assertEquals(SMEvent.PROCESSING_INSTR, mixedC.getNext());
+        assertEquals(SMEvent.START_ELEMENT, mixedC.getNext());
+        assertElem(mixedC.getStreamReader(), "urn:x", "item");
+        assertEquals("x", mixedC.getPrefix());
+        assertEquals("2", mixedC.getAttrValue("urn:x", "id"));
+        assertEquals("text bold cdata", mixedC.collectDescendantText());
+        assertNull(mixedC.getNext());
+        assertNull(rootC.getNext());
+    }
+
+    public void testElementCursor() throws Exception
+    {
+        Document doc = _parse(XML, true);
+        // namespace declared by the (unread) parent element
+        Element item = (Element) doc.getElementsByTagNameNS("urn:x", "item").item(0);
+        SMInputCursor itemC = getInputFactory().rootElementCursor(item).advance();
+        assertElem(itemC.getStreamReader(), "urn:x", "item");
+        SMInputCursor childC = itemC.childElementCursor();
+        assertNotNull(childC.getNext());
+        assertEquals("b", childC.getLocalName());
+        assertEquals("bold", childC.getElemStringValue());
+        assertNull(childC.getNext());
+        assertNull(itemC.getNext());
+    }
+
+    public void testNonNamespaceAware() throws Exception
+    {
+        Document doc = _parse("<root><item a='1'>x</item></root>", false);
+        SMInputCursor rootC = getInputFactory().rootElementCursor(doc).advance();
+        assertEquals("root", rootC.getLocalName());
+        SMInputCursor childC = rootC.childElementCursor("item").advance();
+        assertEquals("1", childC.getAttrValue("a"));
+        assertEquals("x", childC.getElemStringValue());
+    }
+
+    /**
+     * Test to verify that DOM-backed cursors can be used with
+     * DOM building, to ensure that all events are reported.
+     */
+    public void testRoundTrip() throws Exception
+    {
+        Document doc = _parse(XML, true);
+        SMInputCursor rootC = getInputFactory().rootElementCursor(doc).advance();
+        Document copy = new DOMConverter().buildRecord(rootC, null);
+        assertTrue(doc.getDocumentElement().isEqualNode(copy.getDocumentElement()));
+    }
+
+    private Document _parse(String xml, boolean nsAware) throws Exception
+    {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(nsAware);
+        return dbf.newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+    }
+}
@@ -0,0 +1,157 @@
+package org.codehaus.staxmate.in;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import javax.xml.stream.*;
+
+/**
+ * Unit tests for verifying that {@link SMAsyncRecordReader} returns
+ * records as soon as they are complete, regardless of how input
+ * is split into chunks.
+ */
+public class TestAsyncRecordReader
+    extends ReaderTestBase
+{
+    final static String DOC = "<?xml version='1.0' encoding='UTF-8'?>\n"
+        +"<!-- prolog <root> -->"
+        +"<root xmlns:x='urn:x' a='>'>\n"
+        +"  <x:rec id='1'>first &amp; <b>bold</b></x:rec>\n"
+        +"  <rec id='2'/><!-- <rec id='bogus'> -->\n"
+        +"  <rec id='3'><![CDATA[</rec></root>]]>é</rec>\n"
+        +"</root>\n";
+
+    final static List<String> EXP = Arrays.asList("1:urn:x:first & bold",
+            "2::", "3::</rec></root>é");
+
+    public void testSingleFeed() throws Exception
+    {
+        SMAsyncRecordReader r = getInputFactory().asyncRecordReader();
+        assertTrue(r.needMoreInput());
+        byte[] doc = DOC.getBytes("UTF-8");
+        r.feedInput(doc, 0, doc.length);
+        assertFalse(r.needMoreInput());
+        List<String> result = new ArrayList<String>();
+        _readAvailable(r, result);
+        assertEquals(EXP, result);
+        assertTrue(r.needMoreInput());
+        assertFalse(r.isFinished());
+        r.endOfInput();
+        assertNull(r.nextRecord());
+        assertTrue(r.isFinished());
+        assertFalse(r.needMoreInput());
+    }
+
+    public void testChunkedFeeds() throws Exception
+    {
+        byte[] doc = DOC.getBytes("UTF-8");
+        for (int chunk = 1; chunk < 20; ++chunk) {
+            SMAsyncRecordReader r = getInputFactory().asyncRecordReader();
+            List<String> result = new ArrayList<String>();
+            for (int i = 0; i < doc.length; i += chunk) {
+                r.feedInput(ByteBuffer.wrap(doc, i, Math.min(chunk, doc.length - i)));
+                _readAvailable(r, result);
+            }
+            r.endOfInput();
+            _readAvailable(r, result);
+            assertTrue(r.isFinished());
+            assertEquals("(chunk "+chunk+")", EXP, result);
+        }
+    }
+
+    public void testRecordsAvailableEarly() throws Exception
+    {
+        SMAsyncRecordReader r = getInputFactory().asyncRecordReader();
+        _feed(r, "<root><rec id='1'/><rec id");
+        SMInputCursor crsr = r.nextRecord();
+        assertNotNull(crsr);
+        assertEquals("1", crsr.getAttrValue("id"));
+        assertNull(r.nextRecord());
+        assertTrue(r.needMoreInput());
+
+        // feed more while not reading everything
+        _feed(r, "='2'><a>x</a></rec><rec id='3'/>");
+        crsr = r.nextRecord();
+        assertEquals("2", crsr.getAttrValue("id"));
+        _feed(r, "<rec id='4'>" + _repeat("text", 5000) + "</rec>");
+        assertEquals("3", r.nextRecord().getAttrValue("id"));
+        crsr = r.nextRecord();
+        assertEquals("4", crsr.getAttrValue("id"));
+        assertEquals(20000, crsr.getElemStringValue().length());
+        assertNull(r.nextRecord());
+        _feed(r, "</root>");
+        r.endOfInput();
+        assertNull(r.nextRecord());
+        assertTrue(r.isFinished());
+    }
+
+    public void testErrors() throws Exception
+    {
+        SMAsyncRecordReader r = getInputFactory().asyncRecordReader();
+        _feed(r, "<root><rec id='1'/><rec>");
+        assertNotNull(r.nextRecord());
+        r.endOfInput();
+        try {
+            r.nextRecord();
+            fail("Expected an exception");
+        } catch (XMLStreamException e) {
+            assertException(e, "root element not closed");
+        }
+        try {
+            _feed(r, "</rec>");
+            fail("Expected an exception");
+        } catch (IllegalStateException e) {
+            assertException(e, "end of input");
+        }
+
+        // malformed content within a record
+        r = getInputFactory().asyncRecordReader();
+        _feed(r, "<root><rec><a></b></rec></root>");
+        try {
+            while (r.nextRecord() != null) { }
+            fail("Expected an exception");
+        } catch (XMLStreamException e) {
+            ;
+        }
+
+        r = getInputFactory().asyncRecordReader();
+        try {
+            byte[] b = "<root/>".getBytes("UTF-16BE");
+            r.feedInput(b, 0, b.length);
+            fail("Expected an exception");
+        } catch (IllegalArgumentException e) {
+            assertException(e, "encoding");
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper methods
+    /**********************************************************************
+     */
+
+    private void _readAvailable(SMAsyncRecordReader r, List<String> result)
+        throws XMLStreamException
+    {
+        SMInputCursor crsr;
+        while ((crsr = r.nextRecord()) != null) {
+            String prefix = crsr.getAttrValue("id")+":"+crsr.getNsUri()+":";
+            result.add(prefix+crsr.collectDescendantText(false).trim());
+        }
+    }
+
+    private void _feed(SMAsyncRecordReader r, String content) throws Exception
+    {
+        byte[] b = content.getBytes("UTF-8");
+        r.feedInput(b, 0, b.length);
+    }
+
+    private String _repeat(String str, int count)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; ++i) {
+            sb.append(str);
+        }
+        return sb.toString();
+    }
+}
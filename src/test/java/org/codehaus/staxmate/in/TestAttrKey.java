@@ -0,0 +1,98 @@
+package org.codehaus.staxmate.in;
+
+import java.io.StringReader;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.*;
+
+import org.codehaus.staxmate.SMInputFactory;
+
+/**
+ * Unit tests for verifying that attribute access using
+ * {@link SMAttrKey}s works as expected.
+ */
+public class TestAttrKey
+    extends ReaderTestBase
+{
+    final static SMAttrKey ID = new SMAttrKey("id");
+    final static SMAttrKey COUNT = new SMAttrKey("count");
+    final static SMAttrKey FLAG = new SMAttrKey(new QName("urn:x", "flag"));
+    final static SMAttrKey MISSING = new SMAttrKey("missing");
+
+    final static String DOC = "<?xml version='1.0'?>"
+        +"<root xmlns:x='urn:x'>"
+        +"<r id='1' count='10' x:flag='true' />"
+        +"<r id='2' count='20' x:flag='false' />"
+        // different order; and 'flag' without namespace
+        +"<r count='30' flag='true' id='3' />"
+        +"<r id='4' count='abc' />"
+        +"</root>";
+
+    public void testWithNativeReader() throws Exception
+    {
+        _verify(false);
+    }
+
+    public void testWithWrappedReader() throws Exception
+    {
+        _verify(true);
+    }
+
+    private void _verify(boolean wrap) throws Exception
+    {
+        XMLStreamReader sr = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(DOC));
+        if (wrap) {
+            sr = forceWrapping(sr);
+        }
+        SMInputCursor root = SMInputFactory.rootElementCursor(sr).advance();
+        SMInputCursor rs = root.childElementCursor("r");
+
+        assertNotNull(rs.getNext());
+        assertEquals(0, rs.findAttrIndex(ID));
+        assertEquals("1", rs.getAttrValue(ID));
+        assertEquals(10, rs.getAttrIntValue(COUNT));
+        assertEquals(10L, rs.getAttrLongValue(COUNT));
+        assertEquals(10.0, rs.getAttrDoubleValue(COUNT, -1.0));
+        assertTrue(rs.getAttrBooleanValue(FLAG));
+        assertNull(rs.getAttrValue(MISSING));
+        assertEquals(-1, rs.findAttrIndex(MISSING));
+        assertEquals(-5, rs.getAttrIntValue(MISSING, -5));
+
+        assertNotNull(rs.getNext());
+        assertEquals(2, rs.getAttrIntValue(ID));
+        assertFalse(rs.getAttrBooleanValue(FLAG, true));
+
+        assertNotNull(rs.getNext());
+        assertEquals(2, rs.findAttrIndex(ID));
+        assertEquals(3, rs.getAttrIntValue(ID));
+        assertEquals(30, rs.getAttrIntValue(COUNT));
+        // non-namespaced 'flag' must not match namespaced key
+        assertEquals(-1, rs.findAttrIndex(FLAG));
+        assertTrue(rs.getAttrBooleanValue(FLAG, true));
+        try {
+            rs.getAttrBooleanValue(FLAG);
+            fail("Expected exception for missing attribute");
+        } catch (XMLStreamException e) {
+            assertException(e, "Missing attribute '{urn:x}flag'");
+        }
+
+        assertNotNull(rs.getNext());
+        assertEquals(0, rs.findAttrIndex(ID));
+        assertEquals(-1, rs.getAttrIntValue(COUNT, -1));
+        try {
+            rs.getAttrIntValue(COUNT);
+            fail("Expected exception for invalid int value");
+        } catch (XMLStreamException e) {
+            assertNotNull(e.getMessage());
+        }
+
+        assertNull(rs.getNext());
+        try {
+            rs.getAttrValue(ID);
+            fail("Expected exception for invalid cursor state");
+        } catch (XMLStreamException e) {
+            assertException(e, "Can not call");
+        }
+        sr.close();
+    }
+}
@@ -0,0 +1,136 @@
+package org.codehaus.staxmate.in;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+
+import javax.xml.stream.*;
+
+import org.codehaus.staxmate.util.MappedChannelInputStream;
+
+/**
+ * Unit tests for verifying that reading from {@link FileChannel}s
+ * (memory-mapped, or read in fully for small files) works as expected.
+ */
+public class TestChannelInput
+    extends ReaderTestBase
+{
+    public void testSmallFile() throws Exception
+    {
+        File f = _writeDoc(10, "<!-- padding -->");
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        try {
+            FileChannel ch = raf.getChannel();
+            // skip the leading comment; offsets relative to starting position
+            ch.position(16);
+            SMInputCursor rootc = getInputFactory().rootElementCursor(ch).advance();
+            assertEquals("root", rootc.getLocalName());
+            assertEquals(0L, rootc.getStreamReader().getLocationInfo().getStartingCharOffset());
+            assertEquals(10, _countRecords(rootc));
+            assertEquals(16L, ch.position());
+            rootc.getStreamReader().closeCompletely();
+            assertTrue(ch.isOpen());
+        } finally {
+            raf.close();
+            f.delete();
+        }
+    }
+
+    public void testMappedFile() throws Exception
+    {
+        // needs to be big enough to get mapped
+        final int count = 30000;
+        File f = _writeDoc(count, "");
+        assertTrue(f.length() > 1024 * 1024);
+        FileInputStream in = new FileInputStream(f);
+        try {
+            SMInputCursor crsr = getInputFactory().flatteningCursor(in.getChannel(),
+                    SMFilterFactory.getElementOnlyFilter());
+            int elems = 0;
+            SMEvent evt;
+            while ((evt = crsr.getNext()) != null) {
+                if (evt == SMEvent.START_ELEMENT) {
+                    ++elems;
+                }
+            }
+            assertEquals(1 + 2 * count, elems);
+            crsr.getStreamReader().closeCompletely();
+        } finally {
+            in.close();
+            f.delete();
+        }
+    }
+
+    public void testSegments() throws Exception
+    {
+        File f = _writeDoc(200, "");
+        byte[] exp = _readFully(new FileInputStream(f));
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        try {
+            // use tiny segments to cross boundaries often
+            for (int segSize : new int[] { 1, 7, 100, exp.length, 100000 }) {
+                InputStream in = new MappedChannelInputStream(raf.getChannel(), 0L,
+                        raf.length(), segSize, false);
+                assertEquals(segSize+"", new String(exp, "UTF-8"),
+                        new String(_readFully(in), "UTF-8"));
+                in.close();
+            }
+            // and sub-range
+            InputStream in = new MappedChannelInputStream(raf.getChannel(), 3L, 10L, 4, false);
+            assertEquals(new String(exp, 3, 7, "UTF-8"), new String(_readFully(in), "UTF-8"));
+            in.close();
+            assertTrue(raf.getChannel().isOpen());
+
+            in = new MappedChannelInputStream(raf.getChannel(), 0L, raf.length(), 64, true);
+            SMInputCursor rootc = getInputFactory().rootElementCursor(in).advance();
+            assertEquals(200, _countRecords(rootc));
+            rootc.getStreamReader().closeCompletely();
+            in.close();
+            assertFalse(raf.getChannel().isOpen());
+        } finally {
+            raf.close();
+            f.delete();
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper methods
+    /**********************************************************************
+     */
+
+    private int _countRecords(SMInputCursor rootc) throws XMLStreamException
+    {
+        SMInputCursor crsr = rootc.childElementCursor("rec");
+        int count = 0;
+        while (crsr.getNext() != null) {
+            assertEquals(String.valueOf(count), crsr.getAttrValue("id"));
+            ++count;
+        }
+        return count;
+    }
+
+    private File _writeDoc(int count, String prefix) throws IOException
+    {
+        File f = File.createTempFile("staxmate", ".xml");
+        Writer w = new OutputStreamWriter(new FileOutputStream(f), "UTF-8");
+        w.write(prefix);
+        w.write("<root>\n");
+        for (int i = 0; i < count; ++i) {
+            w.write("<rec id='"+i+"'><value>Some value é "+i+"</value></rec>\n");
+        }
+        w.write("</root>");
+        w.close();
+        return f;
+    }
+
+    private byte[] _readFully(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buf = new byte[33];
+        int count;
+        while ((count = in.read(buf)) >= 0) {
+            bytes.write(buf, 0, count);
+        }
+        return bytes.toByteArray();
+    }
+}
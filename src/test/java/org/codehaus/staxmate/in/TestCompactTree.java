@@ -0,0 +1,143 @@
+package org.codehaus.staxmate.in;
+
+import java.io.StringReader;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Unit tests for verifying that {@link SMCompactTree} retains
+ * contents of the sub-tree it is built from.
+ */
+public class TestCompactTree
+    extends ReaderTestBase
+{
+    final static String DOC = "<config xmlns:x='urn:x' version='2'>\n"
+        +"  <entry key='a' x:type='int'>1</entry>\n"
+        +"  <!-- comment -->\n"
+        +"  <entry key='b'>text <b>bold</b> &amp; <![CDATA[cdata]]><?pi?>end</entry>\n"
+        +"  <x:other/>\n"
+        +"</config>";
+
+    public void testNavigation() throws Exception
+    {
+        SMInputCursor crsr = _rootCursor(DOC);
+        SMCompactTree tree = SMCompactTree.build(crsr);
+        int root = tree.getRoot();
+        assertEquals("config", tree.getLocalName(root));
+        assertEquals(SMCompactTree.NO_NODE, tree.getParent(root));
+        assertEquals("2", tree.getAttrValue(root, "version"));
+        // namespace declarations are not retained as attributes
+        assertEquals(1, tree.getAttrCount(root));
+
+        // white space is retained by default
+        int n = tree.getFirstChild(root);
+        assertFalse(tree.isElement(n));
+        assertEquals("\n  ", tree.getText(n));
+
+        int entry = tree.getFirstChildElement(root);
+        assertEquals("entry", tree.getLocalName(entry));
+        assertEquals(root, tree.getParent(entry));
+        assertEquals(2, tree.getAttrCount(entry));
+        assertEquals("a", tree.getAttrValue(entry, "key"));
+        assertEquals("int", tree.getAttrValue(entry, "urn:x", "type"));
+        assertNull(tree.getAttrValue(entry, "type"));
+        assertEquals(new QName("urn:x", "type"), tree.getAttrName(entry, 1));
+        assertEquals("1", tree.getElemStringValue(entry));
+
+        // comment dropped, surrounding white space combined
+        n = tree.getNextSibling(entry);
+        assertEquals("\n  \n  ", tree.getText(n));
+
+        entry = tree.getNextSiblingElement(entry);
+        assertEquals("b", tree.getAttrValue(entry, "key"));
+        assertEquals("text  & cdataend", tree.getElemStringValue(entry));
+        assertEquals("text bold & cdataend", tree.collectDescendantText(entry));
+        int b = tree.findChildElement(entry, "b");
+        assertEquals("bold", tree.getElemStringValue(b));
+        assertEquals(SMCompactTree.NO_NODE, tree.getFirstChildElement(b));
+        assertEquals(SMCompactTree.NO_NODE, tree.getNextSiblingElement(b));
+
+        int other = tree.getNextSiblingElement(entry);
+        assertEquals(new QName("urn:x", "other"), tree.getQName(other));
+        assertEquals(other, tree.findChildElement(root, new QName("urn:x", "other")));
+        assertEquals(SMCompactTree.NO_NODE, tree.findChildElement(root, new QName("other")));
+        assertEquals("", tree.getElemStringValue(other));
+        assertEquals(SMCompactTree.NO_NODE, tree.getNextSiblingElement(other));
+        assertEquals(SMCompactTree.NO_NODE, tree.getNextSibling(tree.getNextSibling(other)));
+    }
+
+    public void testIgnoreWhitespace() throws Exception
+    {
+        SMCompactTree tree = SMCompactTree.build(_rootCursor(DOC), new SMNameTable(), true);
+        int root = tree.getRoot();
+        int n = tree.getFirstChild(root);
+        assertTrue(tree.isElement(n));
+        n = tree.getNextSibling(n);
+        assertTrue(tree.isElement(n));
+        n = tree.getNextSibling(n);
+        assertEquals("other", tree.getLocalName(n));
+        assertEquals(SMCompactTree.NO_NODE, tree.getNextSibling(n));
+        // 3 children of root, 'b', and 4 text nodes (one within 'b')
+        assertEquals(1 + 3 + 1 + 4, tree.getNodeCount());
+        assertEquals("1text bold & cdataend", tree.collectDescendantText(tree.getRoot()));
+    }
+
+    public void testSharedNameTable() throws Exception
+    {
+        SMNameTable names = new SMNameTable();
+        SMCompactTree tree1 = SMCompactTree.build(_rootCursor(DOC), names, true);
+        int count = names.size();
+        SMCompactTree tree2 = SMCompactTree.build(_rootCursor("<config><entry key='x'/></config>"), names, true);
+        assertEquals(count, names.size());
+        int entry1 = tree1.getFirstChildElement(tree1.getRoot());
+        int entry2 = tree2.getFirstChildElement(tree2.getRoot());
+        assertEquals(tree1.getNameId(entry1), tree2.getNameId(entry2));
+        assertEquals("x", tree2.getAttrValue(entry2, "key"));
+    }
+
+    public void testCursorAfterBuild() throws Exception
+    {
+        SMInputCursor crsr = getInputFactory().rootElementCursor(new StringReader(DOC))
+            .advance().childElementCursor();
+        assertNotNull(crsr.getNext());
+        SMCompactTree tree = SMCompactTree.build(crsr);
+        assertEquals("1", tree.getElemStringValue(tree.getRoot()));
+        assertEquals(2, tree.getNodeCount());
+        assertNotNull(crsr.getNext());
+        tree = SMCompactTree.build(crsr);
+        assertEquals("b", tree.getAttrValue(tree.getRoot(), "key"));
+        assertNotNull(crsr.getNext());
+        assertEquals("other", crsr.getLocalName());
+        assertNull(crsr.getNext());
+    }
+
+    public void testInvalid() throws Exception
+    {
+        SMInputCursor crsr = getInputFactory().rootElementCursor(new StringReader(DOC));
+        try {
+            SMCompactTree.build(crsr);
+            fail("Expected an exception");
+        } catch (XMLStreamException e) {
+            assertException(e, "does not point to START_ELEMENT");
+        }
+        SMCompactTree tree = SMCompactTree.build(crsr.advance());
+        try {
+            tree.getText(tree.getRoot());
+            fail("Expected an exception");
+        } catch (IllegalArgumentException e) {
+            assertException(e, "not a text node");
+        }
+        try {
+            tree.getAttrValue(tree.getRoot(), 3);
+            fail("Expected an exception");
+        } catch (IllegalArgumentException e) {
+            assertException(e, "Invalid attribute index");
+        }
+    }
+
+    private SMInputCursor _rootCursor(String xml) throws XMLStreamException
+    {
+        return getInputFactory().rootElementCursor(new StringReader(xml)).advance();
+    }
+}
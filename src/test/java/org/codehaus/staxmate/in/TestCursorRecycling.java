@@ -0,0 +1,125 @@
+package org.codehaus.staxmate.in;
+
+import java.io.StringReader;
+import java.util.*;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.*;
+
+import org.codehaus.staxmate.SMInputFactory;
+
+/**
+ * Unit tests for verifying that child and descendant cursors are
+ * recycled when {@link SMInputContext#setCursorRecycling} is enabled,
+ * and that misuse is detected when recycling checks are enabled.
+ */
+public class TestCursorRecycling
+    extends ReaderTestBase
+{
+    final static String DOC = "<?xml version='1.0'?>"
+        +"<root>"
+        +"<record id='1'><name>a</name><value>1</value></record>"
+        +"<record id='2'><name>b</name><value>2</value><x><value>2b</value></x></record>"
+        +"<record id='3'><value>3</value></record>"
+        +"</root>";
+
+    public void testSameResults() throws Exception
+    {
+        assertEquals(_collect(false, false), _collect(true, false));
+        assertEquals(_collect(false, false), _collect(true, true));
+        assertEquals(_collect(false, true), _collect(true, true));
+    }
+
+    public void testInstancesReused() throws Exception
+    {
+        SMInputCursor root = _rootCursor(false);
+        root.getContext().setCursorRecycling(true);
+        assertTrue(root.getContext().isCursorRecyclingEnabled());
+        SMInputCursor records = root.childElementCursor("record");
+        Set<SMInputCursor> childCursors = new HashSet<SMInputCursor>();
+        Set<SMInputCursor> descCursors = new HashSet<SMInputCursor>();
+        int count = 0;
+        while (records.getNext() != null) {
+            ++count;
+            SMInputCursor values = (count == 2)
+                ? records.descendantElementCursor(new QName("value"))
+                : records.childElementCursor("value");
+            if (count == 2) {
+                descCursors.add(values);
+            } else {
+                childCursors.add(values);
+            }
+            // recycled or not, state must be that of a new cursor
+            assertNull(values.getCurrEvent());
+            assertEquals(0, values.getNodeCount());
+            assertEquals(SMEvent.START_ELEMENT, values.getNext());
+            assertEquals(String.valueOf(count), values.getElemStringValue());
+        }
+        assertEquals(3, count);
+        assertEquals(1, childCursors.size());
+        assertEquals(1, descCursors.size());
+        root.getStreamReader().close();
+    }
+
+    public void testRetainedCursorDetected() throws Exception
+    {
+        SMInputCursor root = _rootCursor(false);
+        root.getContext().setCursorRecycling(true);
+        root.getContext().setCursorRecyclingChecks(true);
+        SMInputCursor records = root.childElementCursor();
+        assertNotNull(records.getNext());
+        SMInputCursor retained = records.childElementCursor();
+        assertNotNull(retained.getNext());
+        assertEquals("name", retained.getLocalName());
+        assertNotNull(records.getNext());
+        try {
+            retained.getNext();
+            fail("Expected exception for using retained cursor");
+        } catch (IllegalStateException e) {
+            assertException(e, "cursors must not be retained");
+        }
+        try {
+            retained.getLocalName();
+            fail("Expected exception for using retained cursor");
+        } catch (IllegalStateException e) {
+            assertException(e, "cursors must not be retained");
+        }
+        root.getStreamReader().close();
+    }
+
+    private List<String> _collect(boolean recycle, boolean wrap) throws XMLStreamException
+    {
+        SMInputCursor root = _rootCursor(wrap);
+        root.getContext().setCursorRecycling(recycle);
+        root.setElementTracking(SMInputCursor.Tracking.PARENTS);
+        List<String> result = new ArrayList<String>();
+        SMInputCursor records = root.childElementCursor("record");
+        while (records.getNext() != null) {
+            String id = records.getAttrValue("id");
+            SMInputCursor kids = records.childElementCursor();
+            while (kids.getNext() != null) {
+                if (kids.getLocalName().equals("x")) {
+                    SMInputCursor desc = kids.descendantElementCursor();
+                    while (desc.getNext() != null) {
+                        result.add(id+"/x/"+desc.getPathDesc()+"="+desc.getElemStringValue());
+                    }
+                } else {
+                    result.add(id+"/"+kids.getPathDesc()+"="+kids.getElemStringValue());
+                }
+            }
+        }
+        root.getStreamReader().close();
+        return result;
+    }
+
+    private SMInputCursor _rootCursor(boolean wrap) throws XMLStreamException
+    {
+        XMLStreamReader sr = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(DOC));
+        if (wrap) {
+            sr = forceWrapping(sr);
+        }
+        SMInputCursor root = SMInputFactory.rootElementCursor(sr);
+        root.getNext();
+        return root;
+    }
+}
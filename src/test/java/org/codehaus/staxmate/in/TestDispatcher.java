@@ -0,0 +1,180 @@
+package org.codehaus.staxmate.in;
+
+import java.io.StringReader;
+import java.util.*;
+
+import javax.xml.stream.*;
+
+/**
+ * Unit tests for verifying that {@link SMInputDispatcher} dispatches
+ * matching elements to all registered handlers in a single pass.
+ */
+public class TestDispatcher
+    extends ReaderTestBase
+{
+    final static String DOC = "<?xml version='1.0'?>"
+        +"<orders>"
+        +"<order id='1' status='new'><item>a</item><item>b</item></order>"
+        +"<order id='2' status='done'><item>c</item></order>"
+        +"<summary>2</summary>"
+        +"</orders>";
+
+    final static class Collector implements SMInputDispatcher.Handler
+    {
+        final String prefix;
+        final List<String> results;
+        final boolean readText;
+
+        Collector(String prefix, List<String> results, boolean readText)
+        {
+            this.prefix = prefix;
+            this.results = results;
+            this.readText = readText;
+        }
+
+        public void handleElement(SMInputCursor crsr)
+            throws XMLStreamException
+        {
+            String value = readText ? crsr.getElemStringValue() : crsr.getAttrValue("id");
+            results.add(prefix+":"+value);
+        }
+    }
+
+    public void testFanOut() throws Exception
+    {
+        List<String> results = new ArrayList<String>();
+        SMInputDispatcher d = new SMInputDispatcher()
+            .addHandler("/orders/order", new Collector("order", results, false))
+            .addHandler("//item", new Collector("item", results, true))
+            .addHandler("/orders/summary", new Collector("summary", results, true));
+        assertEquals(3, d.getHandlerCount());
+        d.dispatch(_reader(false));
+        assertEquals(Arrays.asList("order:1", "item:a", "item:b", "order:2", "item:c", "summary:2"),
+                results);
+
+        // and dispatcher is reusable, also with wrapped readers
+        results.clear();
+        d.dispatch(_reader(true));
+        assertEquals(6, results.size());
+    }
+
+    public void testSamePathMultipleHandlers() throws Exception
+    {
+        List<String> results = new ArrayList<String>();
+        SMInputDispatcher d = new SMInputDispatcher()
+            .addHandler("/orders/order/item", new Collector("first", results, false))
+            .addHandler("/orders/order/item", new Collector("second", results, true));
+        d.dispatch(_reader(false));
+        assertEquals(Arrays.asList("first:null", "second:a", "first:null", "second:b",
+                "first:null", "second:c"), results);
+    }
+
+    public void testFilter() throws Exception
+    {
+        List<String> results = new ArrayList<String>();
+        SMFilter doneOnly = new SimpleFilter(SMEvent.START_ELEMENT) {
+            @Override
+            public boolean accept(SMEvent evt, SMInputCursor caller)
+                throws XMLStreamException
+            {
+                return "done".equals(caller.getAttrValue("status"));
+            }
+        };
+        new SMInputDispatcher()
+            .addHandler("/orders/order", doneOnly, new Collector("done", results, false))
+            .addHandler("/orders/order", new Collector("any", results, false))
+            .dispatch(_reader(false));
+        assertEquals(Arrays.asList("any:1", "done:2", "any:2"), results);
+    }
+
+    /**
+     * Test to verify that a handler consuming an element other handlers
+     * need is reported, instead of matches being silently skipped
+     */
+    public void testConflictingConsumers() throws Exception
+    {
+        List<String> results = new ArrayList<String>();
+        SMInputDispatcher d = new SMInputDispatcher()
+            .addHandler("/orders/order", new SMInputDispatcher.Handler() {
+                public void handleElement(SMInputCursor crsr) throws XMLStreamException {
+                    SMInputCursor items = crsr.childElementCursor();
+                    while (items.getNext() != null) { }
+                }
+            })
+            .addHandler("//item", new Collector("item", results, true));
+        try {
+            d.dispatch(_reader(false));
+            fail("Expected exception for conflicting handlers");
+        } catch (XMLStreamException e) {
+            assertException(e, "may have descendants that match path '//item'");
+        }
+
+        d = new SMInputDispatcher()
+            .addHandler("//item", new Collector("text", results, true))
+            .addHandler("/orders/order/item", new Collector("attr", results, false));
+        try {
+            d.dispatch(_reader(false));
+            fail("Expected exception for conflicting handlers");
+        } catch (XMLStreamException e) {
+            assertException(e, "also matches path '/orders/order/item'");
+        }
+    }
+
+    public void testAdvancingHandler() throws Exception
+    {
+        List<String> results = new ArrayList<String>();
+        SMInputDispatcher d = new SMInputDispatcher()
+            .addHandler("/orders/order", new SMInputDispatcher.Handler() {
+                public void handleElement(SMInputCursor crsr) throws XMLStreamException {
+                    // would skip the next order, for all handlers
+                    crsr.getNext();
+                }
+            })
+            .addHandler("/orders/order", new Collector("order", results, false));
+        try {
+            d.dispatch(_reader(false));
+            fail("Expected exception for handler that advances cursor");
+        } catch (XMLStreamException e) {
+            assertException(e, "Handler for path '/orders/order' advanced the dispatching cursor");
+        }
+        assertEquals(0, results.size());
+
+        // also when there is nothing to advance to
+        d = new SMInputDispatcher()
+            .addHandler("/orders/summary", new SMInputDispatcher.Handler() {
+                public void handleElement(SMInputCursor crsr) throws XMLStreamException {
+                    assertNull(crsr.getNext());
+                }
+            });
+        try {
+            d.dispatch(_reader(false));
+            fail("Expected exception for handler that advances cursor");
+        } catch (XMLStreamException e) {
+            assertException(e, "advanced the dispatching cursor");
+        }
+    }
+
+    public void testInvalidRegistration() throws Exception
+    {
+        SMInputDispatcher d = new SMInputDispatcher();
+        try {
+            d.addHandler("/a[", new Collector("x", null, false));
+            fail("Expected exception for invalid path");
+        } catch (IllegalArgumentException e) {
+            assertException(e, "Invalid path expression");
+        }
+        assertEquals(0, d.getHandlerCount());
+        try {
+            d.dispatch(_reader(false));
+            fail("Expected exception for no handlers");
+        } catch (IllegalStateException e) {
+            assertException(e, "No handlers");
+        }
+    }
+
+    private XMLStreamReader _reader(boolean wrap) throws XMLStreamException
+    {
+        XMLStreamReader sr = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(DOC));
+        return wrap ? forceWrapping(sr) : sr;
+    }
+}
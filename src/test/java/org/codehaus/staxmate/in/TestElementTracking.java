@@ -0,0 +1,130 @@
+package org.codehaus.staxmate.in;
+
+import java.io.StringReader;
+import java.util.*;
+
+import javax.xml.stream.*;
+
+import org.codehaus.staxmate.SMInputFactory;
+
+/**
+ * Unit tests for verifying element tracking, and especially that
+ * {@link SMInputCursor.Tracking#PATH} produces same path descriptions
+ * as {@link SMInputCursor.Tracking#PARENTS}.
+ */
+public class TestElementTracking
+    extends ReaderTestBase
+{
+    final static String DOC = "<?xml version='1.0'?>"
+        +"<root xmlns:ns='urn:x'>"
+        +"<a><ns:b>x</ns:b><c /></a>"
+        +"text"
+        +"<a><c><d /></c></a>"
+        +"</root>";
+
+    public void testHierarchicPaths() throws Exception
+    {
+        List<String> exp = _hierarchicPaths(SMInputCursor.Tracking.PARENTS, false);
+        assertEquals(Arrays.asList("/root[e0]/a[e0]", "/root[e0]/a[e0]/ns:b[e0]",
+                "/root[e0]/a[e0]/c[e1]", "/root[e0]/*[n2]", "/root[e0]/a[e1]",
+                "/root[e0]/a[e1]/c[e0]", "/root[e0]/a[e1]/c[e0]/d[e0]"), exp);
+        assertEquals(exp, _hierarchicPaths(SMInputCursor.Tracking.PATH, false));
+        assertEquals(exp, _hierarchicPaths(SMInputCursor.Tracking.PATH, true));
+    }
+
+    public void testFlatteningPaths() throws Exception
+    {
+        SMInputCursor root = _rootCursor(SMInputCursor.Tracking.PATH);
+        SMInputCursor crsr = root.descendantElementCursor();
+        List<String> paths = new ArrayList<String>();
+        while (crsr.getNext() != null) {
+            if (crsr.getCurrEvent() == SMEvent.START_ELEMENT) {
+                paths.add(crsr.getPathDesc());
+            }
+        }
+        assertEquals(Arrays.asList("/root[e0]/a[e0]", "/root[e0]/a[e0]/ns:b[e1]",
+                "/root[e0]/a[e0]/c[e2]", "/root[e0]/a[e3]", "/root[e0]/a[e3]/c[e4]",
+                "/root[e0]/a[e3]/c[e4]/d[e5]"), paths);
+        root.getStreamReader().close();
+    }
+
+    public void testTrackedElementViews() throws Exception
+    {
+        SMInputCursor root = _rootCursor(SMInputCursor.Tracking.PATH);
+        SMInputCursor as = root.childElementCursor();
+        assertNotNull(as.getNext());
+        SMInputCursor kids = as.childElementCursor();
+        assertNotNull(kids.getNext());
+
+        SMElementInfo info = kids.getTrackedElement();
+        assertNotNull(info);
+        assertEquals("b", info.getLocalName());
+        assertEquals("ns", info.getPrefix());
+        assertEquals("urn:x", info.getNamespaceURI());
+        assertEquals(2, info.getDepth());
+        assertEquals(0, info.getElementIndex());
+        assertNull(info.getPreviousSibling());
+
+        SMElementInfo parent = kids.getParentTrackedElement();
+        assertEquals("a", parent.getLocalName());
+        assertEquals(1, parent.getDepth());
+        assertEquals("a", info.getParent().getLocalName());
+        assertEquals("root", parent.getParent().getLocalName());
+        assertTrue(parent.getParent().isRoot());
+        root.getStreamReader().close();
+    }
+
+    /**
+     * Test to verify that modes can be mixed: path tracking for child
+     * cursor of a cursor that tracks parents, and vice versa.
+     */
+    public void testMixedModes() throws Exception
+    {
+        SMInputCursor root = _rootCursor(SMInputCursor.Tracking.PARENTS);
+        SMInputCursor as = root.childElementCursor();
+        as.setElementTracking(SMInputCursor.Tracking.PATH);
+        assertNotNull(as.getNext());
+        SMInputCursor kids = as.childElementCursor();
+        kids.setElementTracking(SMInputCursor.Tracking.PARENTS);
+        assertNotNull(kids.getNext());
+        assertEquals("/root[e0]/a[e0]", as.getPathDesc());
+        assertEquals("/root[e0]/a[e0]/ns:b[e0]", kids.getPathDesc());
+        assertEquals("root", kids.getTrackedElement().getParent().getParent().getLocalName());
+        root.getStreamReader().close();
+    }
+
+    private List<String> _hierarchicPaths(SMInputCursor.Tracking tracking, boolean recycle)
+        throws XMLStreamException
+    {
+        SMInputCursor root = _rootCursor(tracking);
+        root.getContext().setCursorRecycling(recycle);
+        List<String> result = new ArrayList<String>();
+        _collect(root.childMixedCursor(), result);
+        root.getStreamReader().close();
+        return result;
+    }
+
+    private void _collect(SMInputCursor crsr, List<String> result)
+        throws XMLStreamException
+    {
+        SMEvent evt;
+        while ((evt = crsr.getNext()) != null) {
+            if (evt == SMEvent.START_ELEMENT) {
+                result.add(crsr.getPathDesc());
+                _collect(crsr.childElementCursor(), result);
+            } else if (evt == SMEvent.TEXT) {
+                result.add(crsr.getPathDesc());
+            }
+        }
+    }
+
+    private SMInputCursor _rootCursor(SMInputCursor.Tracking tracking)
+        throws XMLStreamException
+    {
+        XMLStreamReader sr = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(DOC));
+        SMInputCursor root = SMInputFactory.rootElementCursor(sr);
+        root.setElementTracking(tracking);
+        root.getNext();
+        return root;
+    }
+}
@@ -0,0 +1,178 @@
+package org.codehaus.staxmate.in;
+
+import java.io.*;
+
+import javax.xml.stream.*;
+
+import org.codehaus.stax2.XMLStreamReader2;
+
+/**
+ * Unit tests for verifying that {@link SMEventBuffer}s can be written
+ * out in binary format, and read back.
+ */
+public class TestEventBufferSerialization
+    extends ReaderTestBase
+{
+    final static String DOC = "<?xml version='1.0' encoding='UTF-8'?>"
+        +"<!-- prolog --><?pi data?>"
+        +"<root xmlns='urn:default' xmlns:ns='urn:ns' ns:attr='a&amp;b'>"
+        +"<entry id='1'>café &lt;€&gt;</entry>"
+        +"<ns:entry id='2'><![CDATA[cdata]]><!--c--><?x y?></ns:entry>"
+        +"<values>1 2 3</values>"
+        +"</root><!-- epilog -->";
+
+    public void testDocumentRoundtrip() throws Exception
+    {
+        SMEventBuffer buffer = getInputFactory().bufferDocument(new ByteArrayInputStream(DOC.getBytes("UTF-8")));
+        assertTrue(buffer.isDocument());
+        byte[] data = serialize(buffer);
+        // binary format should be more compact than textual
+        assertTrue(data.length < DOC.length());
+
+        // append some trailing content to verify only buffer content is read
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(data);
+        bytes.write(new byte[] { 1, 2, 3 });
+        InputStream in = new ByteArrayInputStream(bytes.toByteArray());
+        SMEventBuffer result = SMEventBuffer.readFrom(in);
+        assertEquals(1, in.read());
+
+        assertEquals(buffer.getEventCount(), result.getEventCount());
+        String exp = describeEvents(getStaxInputFactory().createXMLStreamReader(new StringReader(DOC)));
+        assertEquals(exp, describeEvents(buffer.createStreamReader()));
+        assertEquals(exp, describeEvents(result.createStreamReader()));
+
+        // and should be able to use cursors, with typed access
+        SMInputCursor rootc = result.rootElementCursor().advance();
+        assertElem(rootc, "urn:default", "root");
+        assertEquals("a&b", rootc.getAttrValue("urn:ns", "attr"));
+        SMInputCursor crsr = rootc.childElementCursor();
+        assertNotNull(crsr.getNext());
+        assertEquals(1, crsr.getAttrIntValue(0));
+        assertEquals("café <€>", crsr.collectDescendantText());
+        assertNotNull(crsr.getNext());
+        assertElem(crsr, "urn:ns", "entry");
+        assertNotNull(crsr.getNext());
+        int[] values = crsr.getElemIntArray();
+        assertEquals(3, values.length);
+        assertEquals(3, values[2]);
+        assertNull(crsr.getNext());
+    }
+
+    public void testSubtreeRoundtrip() throws Exception
+    {
+        SMInputCursor crsr = getInputFactory().rootElementCursor(new StringReader(DOC))
+            .advance().childElementCursor();
+        assertNotNull(crsr.getNext());
+        assertNotNull(crsr.getNext());
+        SMEventBuffer buffer = crsr.bufferSubtree();
+        SMEventBuffer result = SMEventBuffer.readFrom(new ByteArrayInputStream(serialize(buffer)));
+        assertFalse(result.isDocument());
+        assertEquals(describeEvents(buffer.createStreamReader()), describeEvents(result.createStreamReader()));
+
+        // namespace declared by ancestor should still be bound
+        XMLStreamReader2 sr = result.createStreamReader();
+        assertTokenType(XMLStreamConstants.START_ELEMENT, sr.next());
+        assertEquals(0, sr.getNamespaceCount());
+        assertEquals("urn:ns", sr.getNamespaceURI("ns"));
+        assertEquals("urn:default", sr.getNamespaceURI(""));
+    }
+
+    public void testInvalidData() throws Exception
+    {
+        SMEventBuffer buffer = getInputFactory().bufferDocument(new ByteArrayInputStream(DOC.getBytes("UTF-8")));
+        byte[] data = serialize(buffer);
+
+        byte[] bogus = data.clone();
+        bogus[0] = 'X';
+        try {
+            SMEventBuffer.readFrom(new ByteArrayInputStream(bogus));
+            fail("Expected an exception");
+        } catch (IOException e) {
+            assertException(e, "header");
+        }
+
+        byte[] truncated = new byte[data.length - 10];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        try {
+            SMEventBuffer.readFrom(new ByteArrayInputStream(truncated));
+            fail("Expected an exception");
+        } catch (EOFException e) {
+            ; // fine
+        }
+
+        // and corrupted content within
+        bogus = data.clone();
+        bogus[bogus.length - 3] = (byte) 0x7F;
+        try {
+            SMEventBuffer.readFrom(new ByteArrayInputStream(bogus));
+            fail("Expected an exception");
+        } catch (IOException e) {
+            assertException(e, "Invalid SMEventBuffer data");
+        }
+    }
+
+    public void testNotAtDocumentStart() throws Exception
+    {
+        XMLStreamReader sr = getStaxInputFactory().createXMLStreamReader(new StringReader(DOC));
+        sr.next();
+        try {
+            SMEventBuffer.bufferDocument(sr);
+            fail("Expected an exception");
+        } catch (IllegalStateException e) {
+            assertException(e, "START_DOCUMENT");
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper methods
+    /**********************************************************************
+     */
+
+    private byte[] serialize(SMEventBuffer buffer) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        buffer.writeTo(bytes);
+        return bytes.toByteArray();
+    }
+
+    // readers may use either null or "" for "no prefix"
+    private String nonNull(String str) {
+        return (str == null) ? "" : str;
+    }
+
+    private String describeEvents(XMLStreamReader sr) throws XMLStreamException
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int type = sr.getEventType(); true; type = sr.next()) {
+            sb.append(type).append(':');
+            switch (type) {
+            case XMLStreamConstants.START_ELEMENT:
+                for (int i = 0; i < sr.getNamespaceCount(); ++i) {
+                    sb.append("xmlns:").append(nonNull(sr.getNamespacePrefix(i))).append('=').append(sr.getNamespaceURI(i)).append(' ');
+                }
+                for (int i = 0; i < sr.getAttributeCount(); ++i) {
+                    sb.append(sr.getAttributeName(i)).append('=').append(sr.getAttributeValue(i)).append(' ');
+                }
+                // fall through
+            case XMLStreamConstants.END_ELEMENT:
+                sb.append(sr.getName()).append('/').append(nonNull(sr.getPrefix()));
+                break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                sb.append(sr.getPITarget()).append('/').append(sr.getPIData());
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.COMMENT:
+            case XMLStreamConstants.SPACE:
+                sb.append(sr.getText());
+                break;
+            }
+            sb.append('\n');
+            if (type == XMLStreamConstants.END_DOCUMENT) {
+                return sb.toString();
+            }
+        }
+    }
+}
@@ -2,7 +2,11 @@ package org.codehaus.staxmate.in;
 
 import java.io.StringReader;
 
+import javax.xml.namespace.QName;
 import javax.xml.stream.*;
+import static javax.xml.stream.XMLStreamConstants.*;
+
+import org.codehaus.stax2.XMLInputFactory2;
 
 import org.codehaus.staxmate.SMInputFactory;
 
@@ -159,5 +163,192 @@ public class TestFilter
 
         sr.close();
     }
-}
 
+    public void testElementNameSetFilter()
+        throws Exception
+    {
+        _testElementNameSetFilter(true, false);
+        _testElementNameSetFilter(false, false);
+        _testElementNameSetFilter(true, true);
+    }
+
+    private void _testElementNameSetFilter(boolean intern, boolean wrap)
+        throws Exception
+    {
+        String XML = "<root xmlns:ns='urn:x'><a /><b><a /></b><ns:a /><c />"
+            +"<ns:c>x</ns:c><d /><e /></root>";
+        XMLInputFactory inf = XMLInputFactory.newInstance();
+        inf.setProperty(XMLInputFactory2.P_INTERN_NAMES, Boolean.valueOf(intern));
+        inf.setProperty(XMLInputFactory2.P_INTERN_NS_URIS, Boolean.valueOf(intern));
+        XMLStreamReader sr = inf.createXMLStreamReader(new StringReader(XML));
+        if (wrap) {
+            sr = forceWrapping(sr);
+        }
+        SMInputCursor rootc = SMInputFactory.rootElementCursor(sr).advance();
+        // (note: Woodstox may intern names regardless of setting)
+        if (intern) {
+            assertTrue(rootc._context.hasInternedNames());
+        }
+
+        SMFilter f = SMFilterFactory.getElementNameSetFilter(new QName("a"),
+                new QName("urn:x", "c"), new QName("e"), new QName("a"));
+        assertEquals(3, ((ElementNameSetFilter) f).size());
+        SMInputCursor crsr = rootc.childCursor(f);
+        assertEquals(SMEvent.START_ELEMENT, crsr.getNext());
+        assertElem(crsr, null, "a");
+        assertEquals(SMEvent.START_ELEMENT, crsr.getNext());
+        assertElem(crsr, "urn:x", "c");
+        assertEquals(SMEvent.START_ELEMENT, crsr.getNext());
+        assertElem(crsr, null, "e");
+        assertNull(crsr.getNext());
+        assertNull(rootc.getNext());
+        sr.close();
+    }
+
+    public void testElementNameSetFilterLocalNames()
+        throws Exception
+    {
+        StringBuilder sb = new StringBuilder("<root>");
+        String[] names = new String[40];
+        for (int i = 0; i < names.length; ++i) {
+            names[i] = "name"+i;
+            sb.append("<name").append(i).append("/><other").append(i).append("/>");
+        }
+        sb.append("</root>");
+        XMLStreamReader sr = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(sb.toString()));
+        SMInputCursor crsr = SMInputFactory.flatteningCursor(sr,
+                SMFilterFactory.getElementNameSetFilter(names));
+        for (int i = 0; i < names.length; ++i) {
+            assertEquals(SMEvent.START_ELEMENT, crsr.getNext());
+            assertEquals(names[i], crsr.getLocalName());
+            assertEquals(SMEvent.END_ELEMENT, crsr.getNext());
+        }
+        assertNull(crsr.getNext());
+        sr.close();
+    }
+
+    public void testAttributeFilters()
+        throws Exception
+    {
+        String XML = "<root xmlns:x='urn:x'><a id='1'/><b/><c id='2'/><d x:id='1'/>text</root>";
+        SMInputCursor rootc = getInputFactory().rootElementCursor(new StringReader(XML)).advance();
+        SMInputCursor crsr = rootc.childCursor(SMFilterFactory.getAttributeExistsFilter("id"));
+        assertEquals(SMEvent.START_ELEMENT, crsr.getNext());
+        assertEquals("a", crsr.getLocalName());
+        assertEquals(SMEvent.START_ELEMENT, crsr.getNext());
+        assertEquals("c", crsr.getLocalName());
+        assertNull(crsr.getNext());
+
+        rootc = getInputFactory().rootElementCursor(new StringReader(XML)).advance();
+        crsr = rootc.childCursor(SMFilterFactory.getAttributeEqualsFilter(new QName("urn:x", "id"), "1"));
+        assertEquals(SMEvent.START_ELEMENT, crsr.getNext());
+        assertEquals("d", crsr.getLocalName());
+        assertNull(crsr.getNext());
+    }
+
+    public void testCombinedFilters()
+        throws Exception
+    {
+        String XML = "<root><item type='a'/><item type='b'/><entry type='a'/>"
+            +"<item/><other type='a'/>text<!--x--></root>";
+        SMFilter f = SMFilterFactory.and(SMFilterFactory.getElementNameSetFilter("item", "entry"),
+                SMFilterFactory.or(SMFilterFactory.not(SMFilterFactory.getAttributeExistsFilter("type")),
+                        SMFilterFactory.getAttributeEqualsFilter("type", "a")));
+        SMInputCursor crsr = getInputFactory().rootElementCursor(new StringReader(XML)).advance()
+            .childCursor(f);
+        StringBuilder sb = new StringBuilder();
+        while (crsr.getNext() != null) {
+            sb.append(crsr.getLocalName()).append('/').append(crsr.getAttrValue("type")).append(' ');
+        }
+        assertEquals("item/a entry/a item/null ", sb.toString());
+
+        // and one with text, using flattening cursor
+        f = SMFilterFactory.or(SMFilterFactory.getTextOnlyFilter(),
+                SMFilterFactory.and(SMFilterFactory.getElementOnlyFilter("item"),
+                        SMFilterFactory.getAttributeExistsFilter("type")));
+        crsr = getInputFactory().flatteningCursor(new StringReader(XML), f);
+        assertEquals(SMEvent.START_ELEMENT, crsr.getNext());
+        assertEquals("a", crsr.getAttrValue("type"));
+        assertEquals(SMEvent.START_ELEMENT, crsr.getNext());
+        assertEquals("b", crsr.getAttrValue("type"));
+        assertEquals(SMEvent.TEXT, crsr.getNext());
+        assertEquals("text", crsr.getText());
+        assertNull(crsr.getNext());
+    }
+
+    public void testFilterNormalization()
+        throws Exception
+    {
+        final int elemTypes = (1 << START_ELEMENT) | (1 << END_ELEMENT);
+        // type-only combinations result in simple filters
+        SMFilter f = SMFilterFactory.or(SMFilterFactory.getElementOnlyFilter(),
+                SMFilterFactory.getTextOnlyFilter());
+        assertTrue(f.isTypeOnly());
+        assertEquals(SMFilterFactory.getMixedFilter().getAcceptedTypes(), f.getAcceptedTypes());
+        f = SMFilterFactory.not(SMFilterFactory.getElementOnlyFilter());
+        assertTrue(f.isTypeOnly());
+        assertEquals(SMFilter.ALL_TYPES & ~elemTypes, f.getAcceptedTypes());
+
+        // and redundant type checks are dropped
+        SMFilter nameF = SMFilterFactory.getElementOnlyFilter("a");
+        assertSame(nameF, SMFilterFactory.and(SMFilterFactory.getElementOnlyFilter(), nameF));
+        SMFilter notF = SMFilterFactory.not(nameF);
+        assertSame(nameF, SMFilterFactory.not(notF));
+
+        // nested combinations are flattened, type checks combined
+        SMFilter attrF = SMFilterFactory.getAttributeExistsFilter("x");
+        f = SMFilterFactory.and(SMFilterFactory.and(nameF, SMFilterFactory.getMixedFilter()),
+                SMFilterFactory.and(attrF, notF));
+        assertEquals(3, ((CompositeFilter) f).size());
+        assertFalse(f.isTypeOnly());
+        assertEquals(1 << START_ELEMENT, f.getAcceptedTypes());
+
+        f = SMFilterFactory.or(SMFilterFactory.or(SMFilterFactory.getTextOnlyFilter(), nameF),
+                SMFilterFactory.or(attrF, SMFilterFactory.getElementOnlyFilter()));
+        assertTrue(f.isTypeOnly());
+
+        try {
+            SMFilterFactory.and();
+            fail("Expected an exception");
+        } catch (IllegalArgumentException e) {
+            assertException(e, "at least one filter");
+        }
+    }
+
+    /**
+     * Test to verify that cursors do not call filters for events
+     * of types filters do not accept.
+     */
+    public void testTypeMaskFastPath()
+        throws Exception
+    {
+        final int[] calls = new int[1];
+        SMFilter f = new SMFilter() {
+            @Override
+            public boolean accept(SMEvent evt, SMInputCursor caller) throws XMLStreamException {
+                assertEquals(SMEvent.START_ELEMENT, evt);
+                ++calls[0];
+                return "b".equals(caller.getLocalName());
+            }
+
+            @Override
+            public int getAcceptedTypes() {
+                return 1 << START_ELEMENT;
+            }
+        };
+        String XML = "<root>x<a>1</a><!--c-->y<b>2</b>z<?pi?></root>";
+        SMInputCursor crsr = getInputFactory().flatteningCursor(new StringReader(XML), f);
+        assertEquals(SMEvent.START_ELEMENT, crsr.getNext());
+        assertEquals("b", crsr.getLocalName());
+        assertNull(crsr.getNext());
+        assertEquals(3, calls[0]);
+
+        // same with combinations
+        calls[0] = 0;
+        crsr = getInputFactory().flatteningCursor(new StringReader(XML),
+                SMFilterFactory.or(f, SMFilterFactory.getAttributeExistsFilter("id")));
+        assertEquals(SMEvent.START_ELEMENT, crsr.getNext());
+        assertNull(crsr.getNext());
+        assertEquals(3, calls[0]);
+    }
+}
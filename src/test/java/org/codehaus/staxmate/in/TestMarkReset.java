@@ -0,0 +1,159 @@
+package org.codehaus.staxmate.in;
+
+import java.io.StringReader;
+
+import javax.xml.stream.*;
+
+import org.codehaus.staxmate.SMInputFactory;
+
+/**
+ * Unit tests for verifying that {@link SMHierarchicCursor#mark} and
+ * {@link SMHierarchicCursor#reset} work as expected.
+ */
+public class TestMarkReset
+    extends ReaderTestBase
+{
+    final static String XML = "<root xmlns:ns='urn:ns'>"
+        +"<a>1</a><!-- x --><b attr='2'><ns:c>3</ns:c></b><ns:d>4</ns:d><e>5</e>"
+        +"</root>";
+
+    public void testSniffFromStart() throws Exception
+    {
+        SMHierarchicCursor rootc = markableCursor(XML, 100);
+        assertTrue(rootc.markSupported());
+        rootc.mark();
+        // "sniff" first couple of elements
+        assertNotNull(rootc.getNext());
+        assertEquals("root", rootc.getLocalName());
+        SMInputCursor crsr = rootc.childElementCursor();
+        assertNotNull(crsr.getNext());
+        assertEquals("a", crsr.getLocalName());
+        assertNotNull(crsr.getNext());
+        assertEquals("b", crsr.getLocalName());
+
+        rootc.reset();
+        // and then process the whole document
+        for (int round = 0; round < 2; ++round) {
+            if (round > 0) {
+                rootc.reset();
+            }
+            assertNotNull(rootc.getNext());
+            assertEquals("root", rootc.getLocalName());
+            assertEquals(1, rootc.getNodeCount());
+            crsr = rootc.childElementCursor();
+            assertNotNull(crsr.getNext());
+            assertEquals(1, crsr.getElemIntValue());
+            assertNotNull(crsr.getNext());
+            assertEquals("b", crsr.getLocalName());
+            assertEquals(2, crsr.getAttrIntValue(0));
+            SMInputCursor childc = crsr.childElementCursor();
+            assertNotNull(childc.getNext());
+            assertElem(childc, "urn:ns", "c");
+            assertEquals(3, childc.getElemIntValue());
+            assertNull(childc.getNext());
+            assertNotNull(crsr.getNext());
+            assertElem(crsr, "urn:ns", "d");
+            assertEquals("4", crsr.getElemStringValue());
+            assertNotNull(crsr.getNext());
+            assertEquals(5, crsr.getElemIntValue());
+            assertNull(crsr.getNext());
+            assertNull(rootc.getNext());
+        }
+    }
+
+    public void testMarkWithinSiblings() throws Exception
+    {
+        SMHierarchicCursor rootc = markableCursor(XML, 100);
+        assertNotNull(rootc.getNext());
+        SMHierarchicCursor crsr = (SMHierarchicCursor) rootc.childElementCursor();
+        assertNotNull(crsr.getNext());
+        assertNotNull(crsr.getNext());
+        assertEquals("b", crsr.getLocalName());
+        crsr.mark();
+        assertEquals("3", crsr.childElementCursor().advance().getElemStringValue());
+        assertNotNull(crsr.getNext());
+        assertEquals("d", crsr.getLocalName());
+        assertNotNull(crsr.getNext());
+        assertEquals("e", crsr.getLocalName());
+        assertNull(crsr.getNext());
+
+        crsr.reset();
+        assertEquals("b", crsr.getLocalName());
+        assertEquals(2, crsr.getElementCount());
+        assertEquals("2", crsr.getAttrValue("attr"));
+        assertNotNull(crsr.getNext());
+        assertElem(crsr, "urn:ns", "d");
+        assertEquals(3, crsr.getElementCount());
+
+        // can also mark again while replaying, and read past buffered events
+        crsr.mark();
+        assertNotNull(crsr.getNext());
+        assertEquals(5, crsr.getElemIntValue());
+        assertNull(crsr.getNext());
+        crsr.reset();
+        assertElem(crsr, "urn:ns", "d");
+        assertEquals(4, crsr.getElemIntValue());
+        assertNotNull(crsr.getNext());
+        assertEquals("e", crsr.getLocalName());
+        assertNull(crsr.getNext());
+        assertNull(rootc.getNext());
+    }
+
+    public void testMarkLimit() throws Exception
+    {
+        SMHierarchicCursor rootc = markableCursor(XML, 4);
+        assertNotNull(rootc.getNext());
+        SMHierarchicCursor crsr = (SMHierarchicCursor) rootc.childElementCursor();
+        crsr.mark();
+        assertNotNull(crsr.getNext());
+        crsr.reset();
+        assertNotNull(crsr.getNext());
+        assertEquals("a", crsr.getLocalName());
+        assertNotNull(crsr.getNext());
+        assertEquals("b", crsr.getLocalName());
+        try {
+            crsr.reset();
+            fail("Expected an exception");
+        } catch (IllegalStateException e) {
+            assertException(e, "no valid mark");
+        }
+        // but reading should continue normally
+        assertNotNull(crsr.getNext());
+        assertEquals("d", crsr.getLocalName());
+    }
+
+    public void testMarkReplaced() throws Exception
+    {
+        SMHierarchicCursor rootc = markableCursor(XML, 100);
+        rootc.mark();
+        assertNotNull(rootc.getNext());
+        SMHierarchicCursor crsr = (SMHierarchicCursor) rootc.childElementCursor();
+        assertNotNull(crsr.getNext());
+        crsr.mark();
+        try {
+            rootc.reset();
+            fail("Expected an exception");
+        } catch (IllegalStateException e) {
+            assertException(e, "no valid mark");
+        }
+    }
+
+    public void testNotMarkable() throws Exception
+    {
+        SMHierarchicCursor rootc = getInputFactory().rootElementCursor(new StringReader(XML));
+        assertFalse(rootc.markSupported());
+        try {
+            rootc.mark();
+            fail("Expected an exception");
+        } catch (UnsupportedOperationException e) {
+            assertException(e, "MarkableStreamReader");
+        }
+    }
+
+    private SMHierarchicCursor markableCursor(String xml, int maxEvents)
+        throws XMLStreamException
+    {
+        XMLStreamReader sr = getStaxInputFactory().createXMLStreamReader(new StringReader(xml));
+        return SMInputFactory.markableRootElementCursor(sr, maxEvents);
+    }
+}
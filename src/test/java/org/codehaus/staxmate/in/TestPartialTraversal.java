@@ -147,6 +147,57 @@ public class TestPartialTraversal
     assertNull(a_iterator.getNext());
   }
   
+  // And then same with skipping done by Stax2 reader, as well as by cursors
+  // themselves (for wrapped Stax 1.0 readers)
+
+  public void testSkippingWithNativeReader() throws Exception
+  {
+    _verifySkipping(false);
+  }
+
+  public void testSkippingWithWrappedReader() throws Exception
+  {
+    _verifySkipping(true);
+  }
+
+  private SMInputCursor _rootCursor(boolean wrap) throws XMLStreamException
+  {
+    XMLStreamReader parser = XMLInputFactory.newInstance().createXMLStreamReader(new java.io.StringReader(XML));
+    if (wrap) {
+      parser = forceWrapping(parser);
+    }
+    SMInputCursor crsr = SMInputFactory.hierarchicCursor(parser, SMFilterFactory.getElementOnlyFilter());
+    assertEquals(!wrap, crsr._nativeSkip);
+    return crsr;
+  }
+
+  private void _verifySkipping(boolean wrap) throws Exception
+  {
+    SMInputCursor rootc = _rootCursor(wrap);
+    assertGotNextElementNamed(rootc, "A1");
+    // filter skips A1B1 sub-tree
+    SMInputCursor bc = rootc.childElementCursor("A1B2");
+    assertGotNextElementNamed(bc, "A1B2");
+    SMInputCursor cc = bc.childElementCursor();
+    assertGotNextElementNamed(cc, "A1B2C1");
+    // skipping rest of the child cursor's content
+    assertNull(bc.getNext());
+    assertNull(rootc.getNext());
+
+    // Plus skipping of unused child cursor, partially advanced descendant
+    rootc = _rootCursor(wrap);
+    assertGotNextElementNamed(rootc, "A1");
+    bc = rootc.childElementCursor();
+    assertGotNextElementNamed(bc, "A1B1");
+    SMInputCursor desc = bc.descendantElementCursor();
+    assertGotNextElementNamed(desc, "A1B1C1");
+    assertGotNextElementNamed(desc, "A1B1C1D1");
+    assertGotNextElementNamed(bc, "A1B2");
+    bc.childElementCursor();
+    assertNull(bc.getNext());
+    assertNull(rootc.getNext());
+  }
+
   // It works, is everything right with the world!?
   
   public void assertGotNextElementNamed(SMInputCursor cursor, String name) throws Exception
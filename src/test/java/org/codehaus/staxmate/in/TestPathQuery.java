@@ -0,0 +1,189 @@
+package org.codehaus.staxmate.in;
+
+import java.io.StringReader;
+import java.util.*;
+
+import javax.xml.stream.*;
+
+import org.codehaus.staxmate.SMInputFactory;
+
+/**
+ * Unit tests for verifying that {@link SMPathQuery} compiles and
+ * evaluates paths as expected
+ */
+public class TestPathQuery
+    extends ReaderTestBase
+{
+    final static String FEED = "<?xml version='1.0'?>"
+        +"<feed xmlns:m='urn:meta'>"
+        +"<title>Feed</title>"
+        +"<entry type='x'><id>1</id><m:id>m1</m:id><link href='a' /></entry>"
+        +"<entry type='y'><id>2</id><sub><id>2b</id></sub></entry>"
+        +"<entry><id>3</id></entry>"
+        +"<entry type='x' lang='fi'><id>4</id><link href='b' /></entry>"
+        +"</feed>";
+
+    /**
+     * Simple handler that collects text content of matched elements,
+     * prefixed by path index
+     */
+    final static class TextCollector implements SMPathQuery.Handler
+    {
+        final List<String> results = new ArrayList<String>();
+
+        String lastText;
+
+        public void handleMatch(SMPathQuery query, int pathIndex, SMInputCursor crsr)
+            throws XMLStreamException
+        {
+            // same element may match multiple paths; can only read text once
+            if (crsr.getCurrEvent() == SMEvent.START_ELEMENT) {
+                lastText = crsr.getElemStringValue();
+            }
+            results.add(pathIndex+":"+lastText);
+        }
+    }
+
+    public void testSimpleAbsolute() throws Exception
+    {
+        SMPathQuery q = SMPathQuery.compile("/feed/entry[@type='x']/id");
+        assertEquals(Arrays.asList("0:1", "0:4"), _evaluate(q, false));
+        assertEquals(Arrays.asList("0:1", "0:4"), _evaluate(q, true));
+    }
+
+    public void testMultiplePaths() throws Exception
+    {
+        SMPathQuery q = SMPathQuery.compile("/feed/title", "/feed/entry[@lang]/id",
+                "feed/entry/id");
+        assertEquals(3, q.getPathCount());
+        assertEquals(Arrays.asList("0:Feed", "2:1", "2:2", "2:3", "1:4", "2:4"),
+                _evaluate(q, false));
+    }
+
+    public void testDescendantAndWildcard() throws Exception
+    {
+        SMPathQuery q = SMPathQuery.compile("//id");
+        assertEquals(Arrays.asList("0:1", "0:2", "0:2b", "0:3", "0:4"), _evaluate(q, false));
+
+        q = SMPathQuery.compile("/feed/*/sub/id", "/*/entry[@type='y']//id");
+        assertEquals(Arrays.asList("1:2", "0:2b", "1:2b"), _evaluate(q, true));
+    }
+
+    public void testNamespaces() throws Exception
+    {
+        Map<String,String> ns = new HashMap<String,String>();
+        ns.put("meta", "urn:meta");
+        SMPathQuery q = SMPathQuery.compile(ns, "/feed/entry/meta:id");
+        assertEquals(Arrays.asList("0:m1"), _evaluate(q, false));
+        q = SMPathQuery.compile("//{urn:meta}id");
+        assertEquals(Arrays.asList("0:m1"), _evaluate(q, false));
+    }
+
+    public void testNamespaceWildcards() throws Exception
+    {
+        Map<String,String> ns = new HashMap<String,String>();
+        ns.put("meta", "urn:meta");
+        // wildcard for local name only: elements in given namespace
+        SMPathQuery q = SMPathQuery.compile(ns, "/feed/entry/meta:*");
+        assertEquals(Arrays.asList("0:m1"), _evaluate(q, false));
+        q = SMPathQuery.compile("/feed/entry/{urn:meta}*");
+        assertEquals(Arrays.asList("0:m1"), _evaluate(q, true));
+        // or elements not in a namespace
+        q = SMPathQuery.compile("/feed/entry[@type='x']/{}*[@href]");
+        assertEquals(Arrays.asList("0:", "0:"), _evaluate(q, false));
+        q = SMPathQuery.compile("/feed/entry[@type='x']/{}*", "/feed/entry/*");
+        // 4 un-namespaced children of 'x' entries (but not 'm:id'); 8 children of all entries
+        assertEquals(4 + 8, _evaluateCount(q));
+    }
+
+    public void testAttributeHandler() throws Exception
+    {
+        SMPathQuery q = SMPathQuery.compile("/feed/entry/link[@href]");
+        final List<String> hrefs = new ArrayList<String>();
+        XMLStreamReader sr = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(FEED));
+        q.evaluate(sr, new SMPathQuery.Handler() {
+            public void handleMatch(SMPathQuery query, int pathIndex, SMInputCursor crsr)
+                throws XMLStreamException
+            {
+                hrefs.add(crsr.getAttrValue("href"));
+            }
+        });
+        assertEquals(Arrays.asList("a", "b"), hrefs);
+        sr.close();
+    }
+
+    /**
+     * Test to verify that handler can consume contents using child
+     * cursors, in which case nested matches are not reported.
+     */
+    public void testConsumingHandler() throws Exception
+    {
+        SMPathQuery q = SMPathQuery.compile("/feed/entry", "//id");
+        final List<String> results = new ArrayList<String>();
+        XMLStreamReader sr = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(FEED));
+        q.evaluate(sr, new SMPathQuery.Handler() {
+            public void handleMatch(SMPathQuery query, int pathIndex, SMInputCursor crsr)
+                throws XMLStreamException
+            {
+                if (pathIndex == 0) {
+                    if ("y".equals(crsr.getAttrValue("type"))) {
+                        SMInputCursor kids = crsr.childElementCursor();
+                        while (kids.getNext() != null) {
+                            results.add("child:"+kids.getLocalName());
+                        }
+                    }
+                } else {
+                    results.add(crsr.getElemStringValue());
+                }
+            }
+        });
+        assertEquals(Arrays.asList("1", "child:id", "child:sub", "3", "4"), results);
+        sr.close();
+    }
+
+    public void testInvalidPaths() throws Exception
+    {
+        _verifyInvalid("", "empty path");
+        _verifyInvalid("/a/", "missing name");
+        _verifyInvalid("/a[b]", "expected '@'");
+        _verifyInvalid("/a[@b='c]", "unterminated");
+        _verifyInvalid("/a[@b", "expected ']'");
+        _verifyInvalid("/x:a", "unbound namespace prefix 'x'");
+        _verifyInvalid("/a[@*]", "wildcard");
+        _verifyInvalid("/a[@{urn:x}*]", "wildcard");
+        _verifyInvalid("/x:*", "unbound namespace prefix 'x'");
+    }
+
+    private void _verifyInvalid(String path, String msg)
+    {
+        try {
+            SMPathQuery.compile(path);
+            fail("Expected exception for path \""+path+"\"");
+        } catch (IllegalArgumentException e) {
+            assertException(e, msg);
+        }
+    }
+
+    private int _evaluateCount(SMPathQuery q) throws XMLStreamException
+    {
+        final int[] count = new int[1];
+        q.evaluate(getInputFactory().rootElementCursor(new StringReader(FEED)), new SMPathQuery.Handler() {
+            public void handleMatch(SMPathQuery query, int pathIndex, SMInputCursor crsr) {
+                ++count[0];
+            }
+        });
+        return count[0];
+    }
+
+    private List<String> _evaluate(SMPathQuery q, boolean wrap) throws XMLStreamException
+    {
+        XMLStreamReader sr = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(FEED));
+        if (wrap) {
+            sr = forceWrapping(sr);
+        }
+        TextCollector h = new TextCollector();
+        q.evaluate(SMInputFactory.rootElementCursor(sr), h);
+        sr.close();
+        return h.results;
+    }
+}
@@ -0,0 +1,246 @@
+package org.codehaus.staxmate.in;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.xml.stream.*;
+
+/**
+ * Unit tests for verifying that {@link SMRecordProcessor} splits
+ * documents into chunks of records correctly, and that results
+ * are passed in expected order.
+ */
+public class TestRecordProcessor
+    extends ReaderTestBase
+{
+    private ExecutorService _executor;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        _executor = Executors.newFixedThreadPool(3);
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        _executor.shutdownNow();
+        super.tearDown();
+    }
+
+    final static SMRecordProcessor.RecordMapper<String> ID_MAPPER
+        = new SMRecordProcessor.RecordMapper<String>() {
+        public String mapRecord(SMInputCursor crsr) throws XMLStreamException {
+            String prefix = crsr.getLocalName()+":"+crsr.getAttrValue("id");
+            return prefix+"/"+crsr.collectDescendantText(false).trim();
+        }
+    };
+
+    final static class Collector implements SMRecordProcessor.ResultConsumer<String>
+    {
+        final Thread thread = Thread.currentThread();
+        final List<String> results = new ArrayList<String>();
+
+        public void consumeResult(String result) {
+            assertSame(thread, Thread.currentThread());
+            results.add(result);
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Test methods
+    /**********************************************************************
+     */
+
+    public void testOrdered() throws Exception
+    {
+        byte[] doc = _doc(200).getBytes("UTF-8");
+        for (int chunkSize : new int[] { 1, 100, 1000, 1000000 }) {
+            Collector c = new Collector();
+            long count = _processor().setChunkSize(chunkSize)
+                .process(doc, 0, doc.length, ID_MAPPER, c);
+            assertEquals(200L, count);
+            assertEquals(_expected(200), c.results);
+        }
+    }
+
+    public void testUnordered() throws Exception
+    {
+        byte[] doc = _doc(500).getBytes("UTF-8");
+        Collector c = new Collector();
+        long count = _processor().setChunkSize(300).setOrderedResults(false)
+            .process(doc, 0, doc.length, ID_MAPPER, c);
+        assertEquals(500L, count);
+        List<String> sorted = new ArrayList<String>(c.results);
+        Collections.sort(sorted);
+        List<String> exp = _expected(500);
+        Collections.sort(exp);
+        assertEquals(exp, sorted);
+    }
+
+    public void testNamespacesAndMarkup() throws Exception
+    {
+        String xml = "<?xml version='1.0' encoding='UTF-8'?>\n"
+            +"<!-- <fake> -->\n"
+            +"<root xmlns='urn:default' xmlns:x=\"urn:x\" attr='a>b'>\n"
+            +"<x:rec id='1'><!-- </x:rec> --><![CDATA[</root>]]></x:rec>\n"
+            +"<rec id='2' extra=\"/>\"/>"
+            +"<?pi </rec>?><rec id='3'><child id='c'>é</child></rec>"
+            +"</root>\n<!-- trailing -->";
+        byte[] doc = xml.getBytes("UTF-8");
+        // mappers run concurrently, so namespace needs to be part of the result
+        SMRecordProcessor.RecordMapper<String> mapper = new SMRecordProcessor.RecordMapper<String>() {
+            public String mapRecord(SMInputCursor crsr) throws XMLStreamException {
+                String ns = crsr.getNsUri();
+                return ns+" "+ID_MAPPER.mapRecord(crsr);
+            }
+        };
+        Collector c = new Collector();
+        assertEquals(3L, _processor().setChunkSize(1).process(doc, 0, doc.length, mapper, c));
+        assertEquals(Arrays.asList("urn:x rec:1/</root>", "urn:default rec:2/",
+                "urn:default rec:3/é"), c.results);
+    }
+
+    public void testNullResultsAndEmptyRoot() throws Exception
+    {
+        SMRecordProcessor.RecordMapper<String> mapper = new SMRecordProcessor.RecordMapper<String>() {
+            public String mapRecord(SMInputCursor crsr) throws XMLStreamException {
+                String id = crsr.getAttrValue("id");
+                return (Integer.parseInt(id) % 2 == 0) ? id : null;
+            }
+        };
+        byte[] doc = _doc(10).getBytes("UTF-8");
+        Collector c = new Collector();
+        assertEquals(10L, _processor().setChunkSize(50).process(doc, 0, doc.length, mapper, c));
+        assertEquals(Arrays.asList("0", "2", "4", "6", "8"), c.results);
+
+        for (String xml : new String[] { "<root/>", "<root  ></root>" }) {
+            doc = xml.getBytes("UTF-8");
+            c = new Collector();
+            assertEquals(0L, _processor().process(doc, 0, doc.length, mapper, c));
+            assertEquals(0, c.results.size());
+        }
+    }
+
+    public void testStreamInput() throws Exception
+    {
+        String xml = _doc(1000);
+        File f = File.createTempFile("staxmate", ".xml");
+        try {
+            OutputStream out = new FileOutputStream(f);
+            out.write(xml.getBytes("UTF-8"));
+            out.close();
+            for (int chunkSize : new int[] { 10, 4000, 1000000 }) {
+                Collector c = new Collector();
+                long count = _processor().setChunkSize(chunkSize).setMaxPendingChunks(2)
+                    .process(f, ID_MAPPER, c);
+                assertEquals(1000L, count);
+                assertEquals(_expected(1000), c.results);
+            }
+        } finally {
+            f.delete();
+        }
+
+        // and then with a stream that returns content in small pieces
+        final byte[] doc = xml.getBytes("UTF-8");
+        InputStream in = new ByteArrayInputStream(doc) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 7));
+            }
+        };
+        Collector c = new Collector();
+        assertEquals(1000L, _processor().setChunkSize(64).process(in, ID_MAPPER, c));
+        assertEquals(_expected(1000), c.results);
+    }
+
+    public void testErrors() throws Exception
+    {
+        // Mapper failure passed as is
+        final XMLStreamException fail = new XMLStreamException("Mapper failed");
+        SMRecordProcessor.RecordMapper<String> mapper = new SMRecordProcessor.RecordMapper<String>() {
+            public String mapRecord(SMInputCursor crsr) throws XMLStreamException {
+                if ("7".equals(crsr.getAttrValue("id"))) {
+                    throw fail;
+                }
+                return "x";
+            }
+        };
+        byte[] doc = _doc(20).getBytes("UTF-8");
+        try {
+            _processor().setChunkSize(20).process(doc, 0, doc.length, mapper, new Collector());
+            fail("Expected an exception");
+        } catch (XMLStreamException e) {
+            assertSame(fail, e);
+        }
+
+        // Truncated document
+        doc = "<root><rec id='1'/><rec id='2'>".getBytes("UTF-8");
+        try {
+            _processor().process(doc, 0, doc.length, ID_MAPPER, new Collector());
+            fail("Expected an exception");
+        } catch (XMLStreamException e) {
+            assertException(e, "root element not closed");
+        }
+        doc = "<!-- nothing -->".getBytes("UTF-8");
+        try {
+            _processor().process(doc, 0, doc.length, ID_MAPPER, new Collector());
+            fail("Expected an exception");
+        } catch (XMLStreamException e) {
+            assertException(e, "no root element");
+        }
+
+        // Non-ASCII-compatible encoding
+        doc = "<root><rec id='1'/></root>".getBytes("UTF-16");
+        try {
+            _processor().process(doc, 0, doc.length, ID_MAPPER, new Collector());
+            fail("Expected an exception");
+        } catch (IllegalArgumentException e) {
+            assertException(e, "encoding");
+        }
+
+        // Invalid configuration
+        try {
+            _processor().setChunkSize(0);
+            fail("Expected an exception");
+        } catch (IllegalArgumentException e) {
+            assertException(e, "chunk size");
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper methods
+    /**********************************************************************
+     */
+
+    private SMRecordProcessor _processor()
+    {
+        return getInputFactory().recordProcessor(_executor);
+    }
+
+    private static String _doc(int count)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version='1.0'?>\n<root version='1'>\n");
+        for (int i = 0; i < count; ++i) {
+            sb.append("  <rec id='").append(i).append("'>")
+                .append("<value>").append(i * 3).append("</value>")
+                .append("</rec>\n");
+        }
+        sb.append("</root>");
+        return sb.toString();
+    }
+
+    private static List<String> _expected(int count)
+    {
+        List<String> result = new ArrayList<String>();
+        for (int i = 0; i < count; ++i) {
+            result.add("rec:"+i+"/"+(i * 3));
+        }
+        return result;
+    }
+}
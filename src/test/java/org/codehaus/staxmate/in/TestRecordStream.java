@@ -0,0 +1,178 @@
+package org.codehaus.staxmate.in;
+
+import java.io.StringReader;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.xml.stream.*;
+
+/**
+ * Unit tests for verifying that {@link SMRecordStream} returns results
+ * for records in document order, both when mapping sequentially and
+ * concurrently.
+ */
+public class TestRecordStream
+    extends ReaderTestBase
+{
+    private ExecutorService _executor;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        _executor = Executors.newFixedThreadPool(3);
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        _executor.shutdownNow();
+        super.tearDown();
+    }
+
+    final static SMRecordProcessor.RecordMapper<String> ID_MAPPER
+        = new SMRecordProcessor.RecordMapper<String>() {
+        public String mapRecord(SMInputCursor crsr) throws XMLStreamException {
+            String id = crsr.getAttrValue("id");
+            // skip every tenth record
+            if (id.endsWith("5")) {
+                return null;
+            }
+            return id+"/"+crsr.collectDescendantText(false).trim();
+        }
+    };
+
+    /*
+    /**********************************************************************
+    /* Test methods
+    /**********************************************************************
+     */
+
+    public void testSequential() throws Exception
+    {
+        SMInputCursor crsr = _recordCursor(_doc(25));
+        SMRecordStream<String> stream = crsr.recordStream(ID_MAPPER, null);
+        _verify(stream, 25);
+        assertEquals(25, stream.getRecordCount());
+    }
+
+    public void testConcurrent() throws Exception
+    {
+        for (int batchSize : new int[] { 1, 3, 64 }) {
+            SMInputCursor crsr = _recordCursor(_doc(200));
+            SMRecordStream<String> stream = crsr.recordStream(ID_MAPPER, _executor)
+                .setBatchSize(batchSize).setMaxPendingBatches(2);
+            _verify(stream, 200);
+            assertEquals(200, stream.getRecordCount());
+        }
+    }
+
+    public void testConcurrentMappingThreads() throws Exception
+    {
+        final Thread caller = Thread.currentThread();
+        final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+        SMInputCursor crsr = _recordCursor(_doc(50));
+        SMRecordStream<String> stream = new SMRecordStream<String>(crsr,
+                new SMRecordProcessor.RecordMapper<String>() {
+            public String mapRecord(SMInputCursor c) throws XMLStreamException {
+                threads.add(Thread.currentThread());
+                return ID_MAPPER.mapRecord(c);
+            }
+        }, _executor).setBatchSize(5);
+        _verify(stream, 50);
+        assertFalse(threads.isEmpty());
+        assertFalse(threads.contains(caller));
+    }
+
+    public void testIterator() throws Exception
+    {
+        for (ExecutorService executor : new ExecutorService[] { null, _executor }) {
+            SMRecordStream<String> stream = _recordCursor(_doc(30)).recordStream(ID_MAPPER, executor)
+                .setBatchSize(4);
+            List<String> results = new ArrayList<String>();
+            // hasNext() may be called any number of times
+            assertTrue(stream.hasNext());
+            assertTrue(stream.hasNext());
+            assertEquals("0/0", stream.nextRecord());
+            while (stream.hasNext()) {
+                results.add(stream.next());
+            }
+            assertEquals(30 - 1 - 3, results.size());
+            assertEquals("1/2", results.get(0));
+            assertEquals("29/58", results.get(results.size()-1));
+            assertFalse(stream.hasNext());
+            try {
+                stream.next();
+                fail("Expected an exception");
+            } catch (NoSuchElementException e) { }
+        }
+    }
+
+    public void testMappingFailure() throws Exception
+    {
+        SMInputCursor crsr = _recordCursor(_doc(20));
+        SMRecordStream<String> stream = crsr.recordStream(new SMRecordProcessor.RecordMapper<String>() {
+            public String mapRecord(SMInputCursor c) throws XMLStreamException {
+                if ("12".equals(c.getAttrValue("id"))) {
+                    throw c.constructStreamException("Bad record");
+                }
+                return c.getAttrValue("id");
+            }
+        }, _executor).setBatchSize(4);
+        try {
+            while (stream.nextRecord() != null) { }
+            fail("Expected an exception");
+        } catch (XMLStreamException e) {
+            assertException(e, "Bad record");
+        }
+        assertNull(stream.nextRecord());
+
+        // and via Iterator, wrapped
+        stream = _recordCursor(_doc(20)).recordStream(new SMRecordProcessor.RecordMapper<String>() {
+            public String mapRecord(SMInputCursor c) throws XMLStreamException {
+                throw c.constructStreamException("Bad record");
+            }
+        }, null);
+        try {
+            stream.hasNext();
+            fail("Expected an exception");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof XMLStreamException);
+            assertException(e, "Bad record");
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper methods
+    /**********************************************************************
+     */
+
+    private String _doc(int count)
+    {
+        StringBuilder sb = new StringBuilder("<root>\n");
+        for (int i = 0; i < count; ++i) {
+            sb.append("<record id='").append(i).append("'><value>").append(i * 2)
+                .append("</value><!-- comment --></record>\n");
+        }
+        return sb.append("</root>").toString();
+    }
+
+    private SMInputCursor _recordCursor(String doc) throws XMLStreamException
+    {
+        return getInputFactory().rootElementCursor(new StringReader(doc))
+            .advance().childElementCursor("record");
+    }
+
+    private void _verify(SMRecordStream<String> stream, int count) throws XMLStreamException
+    {
+        for (int i = 0; i < count; ++i) {
+            if ((i % 10) == 5) {
+                continue;
+            }
+            assertEquals(i+"/"+(i * 2), stream.nextRecord());
+        }
+        assertNull(stream.nextRecord());
+        assertNull(stream.nextRecord());
+    }
+}
@@ -41,4 +41,51 @@ public class TestSimpleText
         SMInputCursor rootc = SMInputFactory.rootElementCursor(sr).advance();
         assertEquals("Some text to collect.", rootc.collectDescendantText(true));
     }
+
+    public void testProcessDescendantText()
+        throws XMLStreamException
+    {
+        String XML = "<root><a>Some<?proc instr?> <foo>text</foo> to <![CDATA[collect]]>.</a><b>x</b></root>";
+        XMLStreamReader sr = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(XML));
+        SMInputCursor crsr = SMInputFactory.rootElementCursor(sr).advance().childElementCursor();
+        assertNotNull(crsr.getNext());
+        StringBuilder sb = new StringBuilder("[");
+        crsr.processDescendantText(sb, false);
+        assertEquals("[Some text to collect.", sb.toString());
+        assertNotNull(crsr.getNext());
+        assertEquals("b", crsr.getLocalName());
+        final int[] counts = new int[1];
+        crsr.processDescendantText(new SMTextSink() {
+            public void appendText(char[] buffer, int offset, int len) {
+                counts[0] += len;
+            }
+        }, false);
+        assertEquals(1, counts[0]);
+        assertNull(crsr.getNext());
+    }
+
+    public void testProcessElemText()
+        throws XMLStreamException
+    {
+        String XML = "<root><a>1<!--c-->2<![CDATA[3]]><?pi?></a><empty/><mixed>x<b/></mixed></root>";
+        XMLStreamReader sr = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(XML));
+        SMInputCursor crsr = SMInputFactory.rootElementCursor(sr).advance().childElementCursor();
+        StringBuilder sb = new StringBuilder();
+        assertNotNull(crsr.getNext());
+        crsr.processElemText(sb);
+        assertEquals("123", sb.toString());
+        // should be able to continue with siblings
+        assertNotNull(crsr.getNext());
+        assertEquals("empty", crsr.getLocalName());
+        sb.setLength(0);
+        crsr.processElemText(sb);
+        assertEquals("", sb.toString());
+        assertNotNull(crsr.getNext());
+        try {
+            crsr.processElemText(sb);
+            fail("Expected an exception for mixed content");
+        } catch (XMLStreamException e) {
+            assertException(e, "START_ELEMENT");
+        }
+    }
 }
@@ -0,0 +1,167 @@
+package org.codehaus.staxmate.in;
+
+import java.io.StringReader;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.*;
+
+import org.codehaus.stax2.XMLStreamReader2;
+
+import org.codehaus.staxmate.SMInputFactory;
+
+/**
+ * Unit tests for verifying that sub-trees buffered using
+ * {@link SMInputCursor#bufferSubtree} can be re-read as expected.
+ */
+public class TestSubtreeBuffer
+    extends ReaderTestBase
+{
+    final static String XML = "<root xmlns:ns='urn:outer'>"
+        +"<item type='b' xmlns='urn:default'>"
+        +"<type>complex</type><!-- comment --><?pi data?>"
+        +"<value ns:attr='1' plain=\"x &amp; y\">12<![CDATA[3]]></value>"
+        +"<ns:child xmlns:ns='urn:inner'><ns:leaf/>text</ns:child>"
+        +"</item>"
+        +"<next/>"
+        +"</root>";
+
+    public void testBufferAndReplay() throws Exception
+    {
+        SMInputCursor crsr = getInputFactory().rootElementCursor(new StringReader(XML))
+            .advance().childElementCursor();
+        assertNotNull(crsr.getNext());
+        SMEventBuffer buffer = crsr.bufferSubtree();
+        // original cursor can continue with siblings
+        assertNotNull(crsr.getNext());
+        assertEquals("next", crsr.getLocalName());
+        assertNull(crsr.getNext());
+
+        // and buffered content can be read any number of times
+        for (int i = 0; i < 3; ++i) {
+            SMInputCursor itemC = buffer.rootElementCursor().advance();
+            assertElem(itemC, "urn:default", "item");
+            assertEquals("b", itemC.getAttrValue("type"));
+            SMInputCursor childC = itemC.childElementCursor();
+            assertNotNull(childC.getNext());
+            assertEquals("type", childC.getLocalName());
+            assertEquals("complex", childC.getElemStringValue());
+            assertNotNull(childC.getNext());
+            assertElem(childC, "urn:default", "value");
+            assertEquals("x & y", childC.getAttrValue("plain"));
+            assertEquals(1, childC.getAttrIntValue(childC.findAttrIndex("urn:outer", "attr")));
+            assertEquals(123, childC.getElemIntValue());
+            assertNotNull(childC.getNext());
+            assertElem(childC, "urn:inner", "child");
+            assertEquals("ns", childC.getPrefix());
+            assertEquals("text", childC.collectDescendantText());
+            assertNull(childC.getNext());
+            assertNull(itemC.getNext());
+        }
+    }
+
+    public void testStreamReaderEvents() throws Exception
+    {
+        XMLStreamReader2 sr = getInputFactory().createStax2Reader(new StringReader(XML));
+        SMInputCursor crsr = SMInputFactory.rootElementCursor(sr).advance().childElementCursor();
+        assertNotNull(crsr.getNext());
+        SMEventBuffer buffer = crsr.bufferSubtree();
+        // underlying reader should point to the matching END_ELEMENT
+        assertTokenType(XMLStreamConstants.END_ELEMENT, sr.getEventType());
+        assertEquals("item", sr.getLocalName());
+
+        XMLStreamReader2 r = buffer.createStreamReader();
+        assertTokenType(XMLStreamConstants.START_DOCUMENT, r.getEventType());
+        assertTokenType(XMLStreamConstants.START_ELEMENT, r.next());
+        assertEquals(1, r.getNamespaceCount());
+        assertEquals("urn:default", r.getNamespaceURI(0));
+        // namespaces declared by ancestors are retained, too
+        assertEquals("urn:outer", r.getNamespaceURI("ns"));
+        assertEquals(1, r.getDepth());
+        assertTokenType(XMLStreamConstants.START_ELEMENT, r.next());
+        assertEquals(new QName("urn:default", "type"), r.getName());
+        assertTokenType(XMLStreamConstants.CHARACTERS, r.next());
+        assertEquals("complex", r.getText());
+        assertTokenType(XMLStreamConstants.END_ELEMENT, r.next());
+        assertTokenType(XMLStreamConstants.COMMENT, r.next());
+        assertEquals(" comment ", r.getText());
+        assertTokenType(XMLStreamConstants.PROCESSING_INSTRUCTION, r.next());
+        assertEquals("pi", r.getPITarget());
+        assertEquals("data", r.getPIData());
+        assertTokenType(XMLStreamConstants.START_ELEMENT, r.nextTag());
+        assertEquals(2, r.getAttributeCount());
+        assertEquals("1", r.getAttributeValue("urn:outer", "attr"));
+        assertEquals("ns", r.getAttributePrefix(0));
+        assertEquals("123", r.getElementText());
+        assertTokenType(XMLStreamConstants.START_ELEMENT, r.nextTag());
+        assertEquals("urn:inner", r.getNamespaceURI("ns"));
+        assertEquals("ns", r.getNamespaceContext().getPrefix("urn:inner"));
+        r.skipElement();
+        // bindings still in scope for the END_ELEMENT
+        assertEquals("urn:inner", r.getNamespaceURI("ns"));
+        assertTokenType(XMLStreamConstants.END_ELEMENT, r.nextTag());
+        assertEquals("item", r.getLocalName());
+        assertEquals("urn:outer", r.getNamespaceURI("ns"));
+        assertTokenType(XMLStreamConstants.END_DOCUMENT, r.next());
+        assertFalse(r.hasNext());
+        assertEquals(16, buffer.getEventCount());
+    }
+
+    public void testNamesWithMixedPrefixes() throws Exception
+    {
+        StringBuilder sb = new StringBuilder("<root xmlns='urn:x' xmlns:p='urn:x'>");
+        for (int i = 0; i < 1000; ++i) {
+            sb.append("<item/><p:item p:a='1' a='2'/>");
+        }
+        sb.append("</root>");
+        SMEventBuffer buffer = getInputFactory().rootElementCursor(new StringReader(sb.toString()))
+            .advance().bufferSubtree();
+        // root, item, p:item, p:a, a: each stored just once
+        assertEquals(5, buffer._names.length);
+
+        SMInputCursor itemC = buffer.rootElementCursor().advance().childElementCursor();
+        assertNotNull(itemC.getNext());
+        assertEquals("", itemC.getPrefix());
+        assertNotNull(itemC.getNext());
+        assertElem(itemC, "urn:x", "item");
+        assertEquals("p", itemC.getPrefix());
+        assertEquals("1", itemC.getAttrValue("urn:x", "a"));
+        assertEquals("2", itemC.getAttrValue("", "a"));
+    }
+
+    public void testTooManyAttributes() throws Exception
+    {
+        XMLInputFactory f = XMLInputFactory.newInstance();
+        final String maxAttrs = "com.ctc.wstx.maxAttributesPerElement";
+        if (!f.isPropertySupported(maxAttrs)) {
+            return;
+        }
+        f.setProperty(maxAttrs, Integer.valueOf(100000));
+        int count = SMEventBuffer.MAX_PACKED_COUNT + 1;
+        StringBuilder sb = new StringBuilder("<root>");
+        for (int i = 0; i < count; ++i) {
+            sb.append(" a").append(i).append("=''");
+        }
+        sb.insert(6, "<elem").append("/></root>");
+        SMInputCursor crsr = new SMInputFactory(f).rootElementCursor(new StringReader(sb.toString()))
+            .advance().childElementCursor();
+        assertNotNull(crsr.getNext());
+        assertEquals(count, crsr.getAttrCount());
+        try {
+            crsr.bufferSubtree();
+            fail("Expected an exception");
+        } catch (XMLStreamException e) {
+            assertException(e, "maximum "+SMEventBuffer.MAX_PACKED_COUNT);
+        }
+    }
+
+    public void testInvalidState() throws Exception
+    {
+        SMInputCursor rootc = getInputFactory().rootElementCursor(new StringReader(XML));
+        try {
+            rootc.bufferSubtree();
+            fail("Expected an exception");
+        } catch (XMLStreamException e) {
+            assertException(e, "bufferSubtree");
+        }
+    }
+}
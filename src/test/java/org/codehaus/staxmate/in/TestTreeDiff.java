@@ -0,0 +1,138 @@
+package org.codehaus.staxmate.in;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Unit tests for verifying that {@link SMTreeDiff} reports differences
+ * between documents as expected.
+ */
+public class TestTreeDiff
+    extends ReaderTestBase
+{
+    final static String OLD_DOC = "<catalog version='1'>"
+        +"<item id='1'><price>10</price></item>"
+        +"<item id='2'><price>20</price></item>"
+        +"<item id='3' type='x'><price>30</price></item>"
+        +"<item id='4'><price>40</price></item>"
+        +"<note>Text</note>"
+        +"</catalog>";
+
+    public void testIdentical() throws Exception
+    {
+        Recorder r = new Recorder();
+        assertEquals(0, _diff(new SMTreeDiff(r).addKeyAttributes("item", "id"), OLD_DOC, OLD_DOC));
+        assertEquals(0, r.diffs.size());
+    }
+
+    public void testKeyedChanges() throws Exception
+    {
+        final String NEW_DOC = "<catalog version='2'>"
+            +"<item id='1'><price>10</price></item>"
+            +"<item id='3' type='y' extra='z'><price> 35 </price></item>"
+            +"<item id='5'><price>50</price></item>"
+            +"<item id='4'><price>40</price></item>"
+            +"<note>Text <b/>more</note>"
+            +"</catalog>";
+        Recorder r = new Recorder();
+        SMTreeDiff diff = new SMTreeDiff(r).addKeyAttributes("item", "id");
+        assertEquals(8, _diff(diff, OLD_DOC, NEW_DOC));
+        assertEquals(Arrays.asList(
+                "attr /catalog version: 1 -> 2",
+                "removed /catalog/item[@id='2']: 20",
+                "attr /catalog/item[@id='3'] type: x -> y",
+                "attr /catalog/item[@id='3'] extra: null -> z",
+                "text /catalog/item[@id='3']/price: 30 -> 35",
+                "added /catalog/item[@id='5']: 50",
+                "added /catalog/note/b: ",
+                "text /catalog/note: Text -> Text more"
+                ), r.diffs);
+    }
+
+    public void testPositionalMatching() throws Exception
+    {
+        Recorder r = new Recorder();
+        // without key attributes, items are matched by position
+        assertEquals(2, _diff(new SMTreeDiff(r), "<a><b>1</b><b>2</b><c/></a>", "<a><b>1</b><b>3</b><b>4</b><c/></a>"));
+        assertEquals(Arrays.asList(
+                "text /a/b: 2 -> 3",
+                "added /a/b: 4"
+                ), r.diffs);
+    }
+
+    public void testLookaheadLimit() throws Exception
+    {
+        final String NEW_DOC = "<catalog version='1'>"
+            +"<item id='7'/><item id='8'/><item id='9'/>"
+            +"<item id='1'><price>10</price></item>"
+            +"<item id='2'><price>20</price></item>"
+            +"<item id='3' type='x'><price>30</price></item>"
+            +"<item id='4'><price>40</price></item>"
+            +"<note>Text</note>"
+            +"</catalog>";
+        // with enough lookahead, insertions are detected
+        Recorder r = new Recorder();
+        assertEquals(3, _diff(new SMTreeDiff(r).addKeyAttributes(SMTreeDiff.ANY_ELEMENT, "id"), OLD_DOC, NEW_DOC));
+        assertEquals("added /catalog/item[@id='9']: ", r.diffs.get(2));
+
+        // but not with too little
+        r = new Recorder();
+        SMTreeDiff diff = new SMTreeDiff(r).addKeyAttributes("item", "id").setMaxLookahead(2);
+        assertEquals(2, diff.getMaxLookahead());
+        // all items get reported as replaced
+        assertEquals(13, _diff(diff, OLD_DOC, NEW_DOC));
+        assertEquals("removed /catalog/item[@id='1']: 10", r.diffs.get(0));
+        assertEquals("added /catalog/item[@id='7']: ", r.diffs.get(1));
+    }
+
+    public void testDifferentRoots() throws Exception
+    {
+        Recorder r = new Recorder();
+        assertEquals(2, _diff(new SMTreeDiff(r), "<a>x</a>", "<b>y</b>"));
+        assertEquals(Arrays.asList("removed /a: x", "added /b: y"), r.diffs);
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper methods, classes
+    /**********************************************************************
+     */
+
+    private int _diff(SMTreeDiff diff, String oldDoc, String newDoc)
+        throws XMLStreamException
+    {
+        SMInputCursor oldC = getInputFactory().rootElementCursor(new StringReader(oldDoc)).advance();
+        SMInputCursor newC = getInputFactory().rootElementCursor(new StringReader(newDoc)).advance();
+        int count = diff.diff(oldC, newC);
+        // cursors should still be usable afterwards
+        assertNull(oldC.getNext());
+        assertNull(newC.getNext());
+        return count;
+    }
+
+    final static class Recorder implements SMTreeDiff.Handler
+    {
+        final List<String> diffs = new ArrayList<String>();
+
+        public void elementAdded(String path, SMInputCursor crsr) throws XMLStreamException {
+            diffs.add("added "+path+": "+crsr.collectDescendantText());
+        }
+
+        public void elementRemoved(String path, SMInputCursor crsr) throws XMLStreamException {
+            diffs.add("removed "+path+": "+crsr.collectDescendantText());
+        }
+
+        public void attributeChanged(String path, QName attrName, String oldValue, String newValue) {
+            diffs.add("attr "+path+" "+attrName.getLocalPart()+": "+oldValue+" -> "+newValue);
+        }
+
+        public void textChanged(String path, String oldText, String newText) {
+            diffs.add("text "+path+": "+oldText+" -> "+newText);
+        }
+    }
+}
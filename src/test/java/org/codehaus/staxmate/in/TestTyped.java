@@ -204,4 +204,159 @@ public class TestTyped extends ReaderTestBase
             assertException(tex, "invalid enumeration value");
         }
     }
+
+    /*
+    /**********************************************************************
+    /* Tests for typed element arrays
+    /**********************************************************************
+     */
+
+    public void testTypedArrayElems()
+        throws XMLStreamException
+    {
+        SMInputFactory sf = getInputFactory();
+        String XML = "<root><ints> 1 -2\n3<!-- c -->   4 </ints><longs>12345678901</longs>"
+            +"<doubles>0.5 -1e3</doubles><floats>2.25</floats><empty /></root>";
+        SMInputCursor crsr = sf.rootElementCursor(new StringReader(XML)).advance().childElementCursor();
+        assertNotNull(crsr.getNext());
+        int[] ints = crsr.getElemIntArray();
+        assertEquals(4, ints.length);
+        assertEquals(1, ints[0]);
+        assertEquals(-2, ints[1]);
+        assertEquals(3, ints[2]);
+        assertEquals(4, ints[3]);
+        assertNotNull(crsr.getNext());
+        long[] longs = crsr.getElemLongArray();
+        assertEquals(1, longs.length);
+        assertEquals(12345678901L, longs[0]);
+        assertNotNull(crsr.getNext());
+        double[] doubles = crsr.getElemDoubleArray();
+        assertEquals(2, doubles.length);
+        assertEquals(0.5, doubles[0]);
+        assertEquals(-1000.0, doubles[1]);
+        assertNotNull(crsr.getNext());
+        float[] floats = crsr.getElemFloatArray();
+        assertEquals(1, floats.length);
+        assertEquals(2.25f, floats[0]);
+        assertNotNull(crsr.getNext());
+        assertEquals(0, crsr.getElemIntArray().length);
+        assertNull(crsr.getNext());
+    }
+
+    public void testChunkedTypedArrayElem()
+        throws XMLStreamException
+    {
+        SMInputFactory sf = getInputFactory();
+        StringBuilder sb = new StringBuilder("<root><values>");
+        final int COUNT = 10000;
+        for (int i = 0; i < COUNT; ++i) {
+            sb.append(i).append(' ');
+        }
+        sb.append("</values><values>1 2 3</values><next/></root>");
+        SMInputCursor crsr = sf.rootElementCursor(new StringReader(sb.toString())).advance().childElementCursor();
+        assertNotNull(crsr.getNext());
+        int[] buf = new int[7];
+        int total = 0;
+        int count;
+        while ((count = crsr.readElemIntArray(buf, 0, buf.length)) >= 0) {
+            for (int i = 0; i < count; ++i) {
+                assertEquals(total+i, buf[i]);
+            }
+            total += count;
+        }
+        assertEquals(COUNT, total);
+        // partial read; rest should be skipped when advancing
+        assertNotNull(crsr.getNext());
+        assertEquals(1, crsr.readElemIntArray(buf, 0, 1));
+        assertEquals(1, buf[0]);
+        assertNotNull(crsr.getNext());
+        assertEquals("next", crsr.getLocalName());
+        assertNull(crsr.getNext());
+    }
+
+    public void testInvalidTypedArrayElem()
+        throws XMLStreamException
+    {
+        SMInputFactory sf = getInputFactory();
+        String XML = "<root>1 2 x</root>";
+        SMInputCursor rootc = sf.rootElementCursor(new StringReader(XML)).advance();
+        try {
+            rootc.getElemIntArray();
+            fail("Expected an exception");
+        } catch (TypedXMLStreamException tex) {
+            assertException(tex, "x");
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Tests for enum lookups
+    /**********************************************************************
+     */
+
+    public void testEnumLookup()
+    {
+        SMEnumLookup<DummyEnum> exact = SMEnumLookup.forType(DummyEnum.class);
+        assertSame(exact, SMEnumLookup.forType(DummyEnum.class));
+        assertEquals(DummyEnum.OK, exact.find(" OK "));
+        assertEquals(DummyEnum.FAIL, exact.find("xFAILx".toCharArray(), 1, 4));
+        assertNull(exact.find("ok"));
+        assertNull(exact.find("  "));
+        assertNull(exact.find("OKAY".toCharArray(), 0, 4));
+
+        SMEnumLookup<DummyEnum> lenient = SMEnumLookup.forType(DummyEnum.class, true)
+            .withAlias("passed", DummyEnum.OK).withAlias("N/A", DummyEnum.UNKNOWN);
+        assertEquals(DummyEnum.OK, lenient.find("ok"));
+        assertEquals(DummyEnum.OK, lenient.find("Passed"));
+        assertEquals(DummyEnum.UNKNOWN, lenient.find("n/a".toCharArray(), 0, 3));
+        assertEquals(DummyEnum.FAIL, lenient.find("fAiL"));
+        // aliases do not modify the shared instance
+        assertNull(SMEnumLookup.forType(DummyEnum.class, true).find("passed"));
+
+        try {
+            lenient.withAlias("PASSED", DummyEnum.FAIL);
+            fail("Expected an exception");
+        } catch (IllegalArgumentException e) {
+            assertException(e, "ambiguous");
+        }
+        // exact same key, too, for both kinds of lookups
+        try {
+            lenient.withAlias("passed", DummyEnum.FAIL);
+            fail("Expected an exception");
+        } catch (IllegalArgumentException e) {
+            assertException(e, "ambiguous");
+        }
+        try {
+            exact.withAlias("OK", DummyEnum.FAIL);
+            fail("Expected an exception");
+        } catch (IllegalArgumentException e) {
+            assertException(e, "ambiguous");
+        }
+        assertEquals(DummyEnum.OK, exact.find("OK"));
+        // but re-adding same mapping is fine
+        assertEquals(DummyEnum.OK, exact.withAlias(" OK ", DummyEnum.OK).find("OK"));
+    }
+
+    public void testEnumWithLookup()
+        throws XMLStreamException
+    {
+        SMInputFactory sf = getInputFactory();
+        SMEnumLookup<DummyEnum> lookup = SMEnumLookup.forType(DummyEnum.class, true)
+            .withAlias("passed", DummyEnum.OK);
+        String XML = "<root attr=' passed ' attr2='bogus'><a> fail </a><b>x<!--c-->y</b>"
+            +"<c>o<![CDATA[K]]></c><d/></root>";
+        SMInputCursor rootc = sf.rootElementCursor(new StringReader(XML)).advance();
+        assertEquals(DummyEnum.OK, rootc.getAttrEnumValue(0, lookup, null));
+        assertEquals(DummyEnum.UNKNOWN, rootc.getAttrEnumValue(1, lookup, DummyEnum.UNKNOWN));
+        SMInputCursor crsr = rootc.childElementCursor();
+        assertNotNull(crsr.getNext());
+        assertEquals(DummyEnum.FAIL, crsr.getElemEnumValue(lookup, null));
+        assertNotNull(crsr.getNext());
+        assertNull(crsr.getElemEnumValue(lookup, null));
+        assertNotNull(crsr.getNext());
+        assertEquals(DummyEnum.OK, crsr.getElemEnumValue(lookup, null));
+        assertNotNull(crsr.getNext());
+        assertEquals(DummyEnum.UNKNOWN, crsr.getElemEnumValue(lookup, DummyEnum.UNKNOWN));
+        assertNull(crsr.getNext());
+    }
 }
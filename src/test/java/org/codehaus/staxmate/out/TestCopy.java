@@ -0,0 +1,182 @@
+package org.codehaus.staxmate.out;
+
+import java.io.*;
+
+import javax.xml.stream.*;
+import static javax.xml.stream.XMLStreamConstants.*;
+
+import org.codehaus.staxmate.SMOutputFactory;
+import org.codehaus.staxmate.in.SMEvent;
+import org.codehaus.staxmate.in.SMInputCursor;
+
+/**
+ * Unit tests for verifying that copying of input content using
+ * {@link SMOutputContainer#addCopyOf} works as expected.
+ */
+public class TestCopy
+    extends BaseWriterTest
+{
+    final static String INPUT = "<root xmlns:a='urn:a' xmlns='urn:def'>"
+        +"<a:item id='1' a:attr='x'>text &amp; more<!--c--><?pi data?><sub><![CDATA[cdata]]></sub></a:item>"
+        +"<other>2</other>"
+        +"</root>";
+
+    public void testSimpleCopy() throws Exception
+    {
+        SMInputCursor crsr = itemCursor(INPUT);
+        StringWriter w = new StringWriter();
+        SMOutputDocument doc = SMOutputFactory.createOutputDocument(getSimpleWriter(w));
+        SMOutputElement root = doc.addElement("out");
+        root.addCopyOf(crsr);
+        // cursor should point to END_ELEMENT of the copied element
+        assertEquals(SMEvent.START_ELEMENT, crsr.getNext());
+        assertEquals("other", crsr.getLocalName());
+        root.addCopyOf(crsr);
+        assertNull(crsr.getNext());
+        doc.closeRoot();
+
+        XMLStreamReader sr = getCoalescingReader(w.toString());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertElem(sr, "", "out");
+        assertTokenType(START_ELEMENT, sr.next());
+        // namespaces declared by ancestors in input need to be declared
+        assertElem(sr, "urn:a", "item");
+        assertEquals("x", sr.getAttributeValue("urn:a", "attr"));
+        assertEquals("1", sr.getAttributeValue("", "id"));
+        assertTokenType(CHARACTERS, sr.next());
+        assertEquals("text & more", sr.getText());
+        assertTokenType(COMMENT, sr.next());
+        assertTokenType(PROCESSING_INSTRUCTION, sr.next());
+        assertEquals("data", sr.getPIData());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertElem(sr, "urn:def", "sub");
+        assertEquals("cdata", sr.getElementText());
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertElem(sr, "urn:def", "other");
+        assertEquals("2", sr.getElementText());
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(END_DOCUMENT, sr.next());
+    }
+
+    public void testMaskedDefaultNamespace() throws Exception
+    {
+        SMInputCursor crsr = getInputFactory().rootElementCursor(new StringReader("<root><item>x</item></root>"))
+            .advance().childElementCursor().advance();
+        StringWriter w = new StringWriter();
+        SMOutputDocument doc = SMOutputFactory.createOutputDocument(getSimpleWriter(w));
+        SMNamespace ns = doc.getNamespace("urn:out");
+        ns.prefersDefaultNs(true);
+        SMOutputElement root = doc.addElement(ns, "out");
+        root.addCopyOf(crsr);
+        doc.closeRoot();
+
+        XMLStreamReader sr = getCoalescingReader(w.toString());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertElem(sr, "urn:out", "out");
+        assertTokenType(START_ELEMENT, sr.next());
+        assertElem(sr, "", "item");
+        assertEquals("x", sr.getElementText());
+    }
+
+    public void testBufferedCopy() throws Exception
+    {
+        SMInputCursor crsr = itemCursor(INPUT);
+        StringWriter w = new StringWriter();
+        SMOutputDocument doc = SMOutputFactory.createOutputDocument(getSimpleWriter(w));
+        SMOutputElement root = doc.addElement("out");
+        SMBufferedFragment frag = root.createBufferedFragment();
+        root.addBuffered(frag);
+        // output blocked by the fragment, need to buffer
+        root.addCopyOf(crsr);
+        frag.addCharacters("first");
+        assertNotNull(crsr.getNext());
+        frag.addCopyOf(crsr);
+        frag.release();
+        doc.closeRoot();
+
+        XMLStreamReader sr = getCoalescingReader(w.toString());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(CHARACTERS, sr.next());
+        assertEquals("first", sr.getText());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertElem(sr, "urn:def", "other");
+        assertEquals("2", sr.getElementText());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertElem(sr, "urn:a", "item");
+        assertEquals("x", sr.getAttributeValue("urn:a", "attr"));
+        assertTokenType(CHARACTERS, sr.next());
+        assertEquals("text & more", sr.getText());
+        assertTokenType(COMMENT, sr.next());
+        assertTokenType(PROCESSING_INSTRUCTION, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertElem(sr, "urn:def", "sub");
+        assertEquals("cdata", sr.getElementText());
+    }
+
+    public void testRewriter() throws Exception
+    {
+        SMInputCursor crsr = getInputFactory().rootElementCursor(new StringReader(INPUT)).advance();
+        StringWriter w = new StringWriter();
+        SMOutputDocument doc = SMOutputFactory.createOutputDocument(getSimpleWriter(w));
+        doc.addCopyOf(crsr, new SMElementRewriter() {
+            @Override
+            public SMOutputElement rewriteElement(SMOutputContainer parent, SMInputCursor c)
+                throws XMLStreamException
+            {
+                String name = c.getLocalName();
+                if ("sub".equals(name)) { // drop
+                    return null;
+                }
+                if ("other".equals(name)) { // copy as is
+                    parent.addCopyOf(c);
+                    return null;
+                }
+                if ("item".equals(name)) { // rename, modify attributes
+                    SMOutputElement elem = parent.addElement("entry");
+                    elem.addAttribute("key", c.getAttrValue("id"));
+                    return elem;
+                }
+                return copyElement(parent, c);
+            }
+        });
+        assertNull(crsr.getNext());
+        doc.closeRoot();
+        XMLStreamReader sr = getCoalescingReader(w.toString());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertElem(sr, "urn:def", "root");
+        assertTokenType(START_ELEMENT, sr.next());
+        assertElem(sr, "", "entry");
+        assertEquals(1, sr.getAttributeCount());
+        assertEquals("1", sr.getAttributeValue("", "key"));
+        assertTokenType(CHARACTERS, sr.next());
+        assertTokenType(COMMENT, sr.next());
+        assertTokenType(PROCESSING_INSTRUCTION, sr.next());
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertElem(sr, "urn:def", "other");
+        assertEquals("2", sr.getElementText());
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(END_DOCUMENT, sr.next());
+    }
+
+    public void testInvalidState() throws Exception
+    {
+        SMInputCursor crsr = itemCursor(INPUT);
+        SMInputCursor childCrsr = crsr.childElementCursor();
+        SMOutputDocument doc = SMOutputFactory.createOutputDocument(getSimpleWriter(new StringWriter()));
+        try {
+            doc.addCopyOf(crsr);
+            fail("Expected an exception");
+        } catch (XMLStreamException e) {
+            assertException(e, "does not point to an event");
+        }
+        assertNotNull(childCrsr.getNext());
+    }
+
+    private SMInputCursor itemCursor(String xml) throws XMLStreamException
+    {
+        return getInputFactory().rootElementCursor(new StringReader(xml))
+            .advance().childMixedCursor().advance();
+    }
+}